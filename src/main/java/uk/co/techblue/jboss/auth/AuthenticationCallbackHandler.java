@@ -16,22 +16,27 @@
 package uk.co.techblue.jboss.auth;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.NameCallback;
 import javax.security.auth.callback.PasswordCallback;
 import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.security.auth.Destroyable;
 import javax.security.sasl.RealmCallback;
 
 import uk.co.techblue.jboss.util.StringUtils;
 
 /**
  * The implementation of {@link javax.security.auth.callback.CallbackHandler} for passing to underlying authentication services.
+ * <p>
+ * The handler can be reused for any number of connections. Once it is no longer needed, {@link #destroy() destroying} it
+ * clears the password held in memory.
  * 
  * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
  */
-public class AuthenticationCallbackHandler implements CallbackHandler {
+public class AuthenticationCallbackHandler implements CallbackHandler, Destroyable {
 
     /** The realm. */
     private final String realm;
@@ -42,6 +47,9 @@ public class AuthenticationCallbackHandler implements CallbackHandler {
     /** The password. */
     private final char[] password;
 
+    /** Whether the credentials are destroyed. */
+    private volatile boolean destroyed;
+
     /**
      * Instantiates a new authentication callback handler.
      * 
@@ -76,7 +84,56 @@ public class AuthenticationCallbackHandler implements CallbackHandler {
         this(username, StringUtils.defaultString(password).toCharArray(), null);
     }
 
+    /**
+     * Checks whether the handler authenticates with the given credentials.
+     * 
+     * @param username the user name
+     * @param password the password
+     * @return true, if the credentials match and are not destroyed
+     */
+    public boolean matches(final String username, final String password) {
+        if (destroyed || !(this.username == null ? username == null : this.username.equals(username))) {
+            return false;
+        }
+        // compared in place: a char[] copy of the password would stay in memory until garbage collected
+        final String candidate = StringUtils.defaultString(password);
+        final int length = this.password == null ? 0 : this.password.length;
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (this.password[i] != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see javax.security.auth.Destroyable#destroy()
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        if (password != null) {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see javax.security.auth.Destroyable#isDestroyed()
+     */
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
     public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        if (destroyed) {
+            throw new IOException("The authentication credentials have been destroyed.");
+        }
         for (Callback current : callbacks) {
             if (current instanceof RealmCallback) {
                 RealmCallback realmCallback = (RealmCallback) current;
@@ -15,6 +15,11 @@
  ******************************************************************************/
 package uk.co.techblue.jboss.controller;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * The JBoss AS Controller Constants.
  * 
@@ -29,15 +34,72 @@ public class ControllerConstants {
 
     public static final String OPERATION_READ_RESOURCE = "read-resource";
     public static final String OPERATION_READ_ATTRIBUTE = "read-attribute";
+    public static final String OPERATION_READ_CHILDREN_NAMES = "read-children-names";
+    public static final String OPERATION_READ_CHILDREN_RESOURCES = "read-children-resources";
+    public static final Set<String> READ_OPERATIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        OPERATION_READ_RESOURCE, OPERATION_READ_ATTRIBUTE, OPERATION_READ_CHILDREN_NAMES,
+        OPERATION_READ_CHILDREN_RESOURCES)));
+    public static final String OPERATION_LIST_CHANGES = "list-changes";
     public static final String OPERATION_ENABLE = "enable";
     public static final String OPERATION_DISABLE = "disable";
+    public static final String OPERATION_RELOAD = "reload";
+    public static final String OPERATION_RESTART = "restart";
+    public static final String OPERATION_TEST_CONNECTION_IN_POOL = "test-connection-in-pool";
+    public static final String OPERATION_FLUSH_IDLE_CONNECTION_IN_POOL = "flush-idle-connection-in-pool";
+    public static final String OPERATION_FLUSH_ALL_CONNECTION_IN_POOL = "flush-all-connection-in-pool";
+    public static final String OPERATION_FLUSH_INVALID_CONNECTION_IN_POOL = "flush-invalid-connection-in-pool";
+    public static final String OPERATION_FLUSH_GRACEFULLY_CONNECTION_IN_POOL = "flush-gracefully-connection-in-pool";
+    public static final String OPERATION_READ_RESOURCE_DESCRIPTION = "read-resource-description";
+    public static final String OPERATION_UNDEFINE_ATTRIBUTE = "undefine-attribute";
 
     public static final String ADDRESS_PROFILE = "profile";
+    public static final String ADDRESS_HOST = "host";
+    public static final String ADDRESS_SERVER = "server";
+    public static final String ADDRESS_SERVER_CONFIG = "server-config";
+    public static final String ADDRESS_WILDCARD = "*";
     public static final String ADDRESS_SUBSYSTEM = "subsystem";
     public static final String ADDRESS_DATASOURCE = "data-source";
+    public static final String ADDRESS_CONNECTION_PROPERTIES = "connection-properties";
+    public static final String ADDRESS_STATISTICS = "statistics";
+    public static final String ADDRESS_STATISTICS_POOL = "pool";
     public static final String ATTRIBUTE_ENABLED = "enabled";
+    public static final String ATTRIBUTE_SERVER_STATE = "server-state";
+    public static final String ATTRIBUTE_PROFILE_NAME = "profile-name";
+    public static final String ATTRIBUTE_MANAGEMENT_MAJOR_VERSION = "management-major-version";
+    public static final String ATTRIBUTE_MANAGEMENT_MINOR_VERSION = "management-minor-version";
+    public static final String ATTRIBUTE_MANAGEMENT_MICRO_VERSION = "management-micro-version";
+    public static final String ATTRIBUTE_PRODUCT_NAME = "product-name";
+    public static final String ATTRIBUTE_PRODUCT_VERSION = "product-version";
+    public static final String ATTRIBUTE_LAUNCH_TYPE = "launch-type";
+
+    public static final String SERVER_STATE_RUNNING = "running";
+    public static final String SERVER_STATE_RELOAD_REQUIRED = "reload-required";
+    public static final String SERVER_STATE_RESTART_REQUIRED = "restart-required";
 
     public static final String GENERAL_PROPERTY_RECURSIVE = "recursive";
+    public static final String GENERAL_PROPERTY_INCLUDE_RUNTIME = "include-runtime";
+    public static final String GENERAL_PROPERTY_CHILD_TYPE = "child-type";
+    public static final String GENERAL_PROPERTY_BLOCKING = "blocking";
+    public static final String GENERAL_PROPERTY_ATTRIBUTES_ONLY = "attributes-only";
+
+    public static final String DESCRIPTION_PROPERTY_ATTRIBUTES = "attributes";
+    public static final String DESCRIPTION_PROPERTY_TYPE = "type";
+    public static final String DESCRIPTION_PROPERTY_NILLABLE = "nillable";
+    public static final String DESCRIPTION_PROPERTY_DEFAULT = "default";
+    public static final String DESCRIPTION_PROPERTY_ALTERNATIVES = "alternatives";
+    public static final String DESCRIPTION_PROPERTY_ALLOWED = "allowed";
+    public static final String DESCRIPTION_PROPERTY_MIN = "min";
+    public static final String DESCRIPTION_PROPERTY_MAX = "max";
+    public static final String DESCRIPTION_PROPERTY_MIN_LENGTH = "min-length";
+    public static final String DESCRIPTION_PROPERTY_MAX_LENGTH = "max-length";
+    public static final String DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED = "expressions-allowed";
+    public static final String DESCRIPTION_PROPERTY_ACCESS_TYPE = "access-type";
+    public static final String ACCESS_TYPE_READ_WRITE = "read-write";
+
+    public static final String OPERATION_HEADER_BLOCKING_TIMEOUT = "blocking-timeout";
+
+    public static final String CHANGE_PROPERTY_OPERATION_DATE = "operation-date";
+    public static final String CHANGE_PROPERTY_OPERATIONS = "operations";
 
     public static final String DS_PROPERTY_JNDINAME = "jndi-name";
     public static final String DS_PROPERTY_USEJAVACONTEXT = "use-java-context";
@@ -51,6 +113,7 @@ public class ControllerConstants {
     public static final String DS_PROPERTY_DRIVERNAME = "driver-name";
     public static final String DS_PROPERTY_USERNAME = "user-name";
     public static final String DS_PROPERTY_PASSWORD = "password";
+    public static final String DS_PROPERTY_CREDENTIAL_REFERENCE = "credential-reference";
     public static final String DS_PROPERTY_SECURITYDOMAIN = "security-domain";
     public static final String DS_PROPERTY_TRANSACTIONISOLATION = "transaction-isolation";
     public static final String DS_PROPERTY_MINPOOLSIZE = "min-pool-size";
@@ -65,8 +128,20 @@ public class ControllerConstants {
     public static final String DS_PROPERTY_BG_VALIDATION_MILLIS = "background-validation-millis";
     public static final String DS_PROPERTY_VALIDATE_ON_MATCH = "validate-on-match";
 
+    public static final String CREDENTIAL_REFERENCE_STORE = "store";
+    public static final String CREDENTIAL_REFERENCE_ALIAS = "alias";
+    public static final String CREDENTIAL_REFERENCE_TYPE = "type";
+
+    public static final String EXPRESSION_PREFIX = "${";
+
     public static final String RESPONSE_PROPERTY_ROLLEDBACK = "rolled-back";
+    public static final String RESPONSE_PROPERTY_STEP_PREFIX = "step-";
+
+    public static final String FAILURE_CODE_RESOURCE_NOT_FOUND = "WFLYCTL0216";
+    public static final String FAILURE_CODE_RESOURCE_NOT_FOUND_AS7 = "JBAS014807";
     
     public static final String REMOTING_PROTOCOL = "http-remoting";
+    public static final String HTTP_MANAGEMENT_PATH = "/management";
+    public static final String HTTP_CONTENT_TYPE_DMR_ENCODED = "application/dmr-encoded";
 
 }
@@ -63,7 +63,8 @@ public interface ControllerOperationExecutor {
      * @param controllerClientConfig the controller client configuration
      * @param dataSourceName the datasource configuration object
      * @return true, if datasource exists
-     * @throws ControllerOperationException the controller operation exception
+     * @throws ControllerOperationException the controller operation exception, also thrown when the datasources
+     *             subsystem defines no datasource at all
      */
     boolean isDatasourceExists(final ControllerClientConfig controllerClientConfig, final String dataSourceName)
             throws ControllerOperationException;
@@ -75,7 +76,8 @@ public interface ControllerOperationExecutor {
      * @param dataSourceName the datasource configuration object
      * @param serverProfileName the server profile name
      * @return true, if datasource exists
-     * @throws ControllerOperationException the controller operation exception
+     * @throws ControllerOperationException the controller operation exception, also thrown when the datasources
+     *             subsystem defines no datasource at all
      */
     boolean isDatasourceExists(ControllerClientConfig controllerClientConfig, String dataSourceName, String serverProfileName)
             throws ControllerOperationException;
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.BulkOperationResult;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.DatasourceRuntime;
+import uk.co.techblue.jboss.controller.vo.DatasourceSelector;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * A {@link ControllerOperationExecutor} that also provides the bulk, selection, domain-wide and raw operations the
+ * datasource services of this library are built on, such as the snapshot, diff, pool and reload services, the planner
+ * and the write batcher. Implementations of the base interface are not affected by these operations.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public interface ExtendedControllerOperationExecutor extends ControllerOperationExecutor {
+
+    /**
+     * Creates the datasources one by one, carrying on past failures. Every datasource and server profile is created in its
+     * own request so that a failing datasource does not prevent the others from being created; nothing is rolled back
+     * across items. When enabling, the add and the enable of an item are sent as one composite request, so an item
+     * reported as failed never leaves its datasource behind, added but disabled.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param dataSources the data sources
+     * @param enable whether to enable the datasources
+     * @param serverProfileNames the server profile names
+     * @return the result of every datasource in every server profile, in request order
+     */
+    List<BulkOperationResult> createDatasourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+            final List<JndiDataSource> dataSources, final boolean enable, final String... serverProfileNames);
+
+    /**
+     * Removes the datasources one by one, carrying on past failures.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @param serverProfileNames the server profile names
+     * @return the result of every datasource in every server profile, in request order
+     */
+    List<BulkOperationResult> removeDatasourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+            final List<String> datasourceNames, final String... serverProfileNames);
+
+    /**
+     * Enables the datasources one by one, carrying on past failures.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @param serverProfileNames the server profile names
+     * @return the result of every datasource in every server profile, in request order
+     */
+    List<BulkOperationResult> enableDataSourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+            final List<String> datasourceNames, final String... serverProfileNames);
+
+    /**
+     * Disables the datasources one by one, carrying on past failures.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @param serverProfileNames the server profile names
+     * @return the result of every datasource in every server profile, in request order
+     */
+    List<BulkOperationResult> disableDataSourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+            final List<String> datasourceNames, final String... serverProfileNames);
+
+    /**
+     * Selects the datasources matching a selector, from a single listing of the datasources of all the server profiles.
+     * Only the names are listed when the selector only matches names; otherwise the configurations are listed, without
+     * their children.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param selector the datasource selector
+     * @param serverProfileNames the server profile names
+     * @return the selected datasource names by server profile name, an empty name standing for a standalone server
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<String, List<String>> selectDatasources(final ControllerClientConfig controllerClientConfig,
+            final DatasourceSelector selector, final String... serverProfileNames) throws ControllerOperationException;
+
+    /**
+     * Enables the datasources matching a selector. The datasources are selected from a single listing and enabled in a
+     * single composite request, so either all of them are enabled or none is.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param selector the datasource selector
+     * @param serverProfileNames the server profile names
+     * @return the enabled datasource names by server profile name, an empty name standing for a standalone server
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<String, List<String>> enableSelectedDataSources(final ControllerClientConfig controllerClientConfig,
+            final DatasourceSelector selector, final String... serverProfileNames) throws ControllerOperationException;
+
+    /**
+     * Disables the datasources matching a selector. The datasources are selected from a single listing and disabled in a
+     * single composite request, so either all of them are disabled or none is.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param selector the datasource selector
+     * @param serverProfileNames the server profile names
+     * @return the disabled datasource names by server profile name, an empty name standing for a standalone server
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<String, List<String>> disableSelectedDataSources(final ControllerClientConfig controllerClientConfig,
+            final DatasourceSelector selector, final String... serverProfileNames) throws ControllerOperationException;
+
+    /**
+     * Updates the connection properties of a datasource to the given properties. The current properties of every
+     * server profile are read in a single request, and only the differences are sent, as a single composite request:
+     * properties no longer wanted are removed, new ones are added and changed ones are replaced.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceName the datasource name
+     * @param connectionProperties the desired connection properties, empty to remove them all
+     * @param serverProfileNames the server profile names
+     * @return true, if any connection property was updated; false, if they were all up to date
+     * @throws ControllerOperationException the controller operation exception
+     */
+    boolean updateConnectionProperties(final ControllerClientConfig controllerClientConfig, final String datasourceName,
+            final Properties connectionProperties, final String... serverProfileNames) throws ControllerOperationException;
+
+    /**
+     * Gets the datasources of every running server in a managed domain together with their status and pool runtime
+     * data. All servers are queried in a single wildcard read through the domain controller.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @param dataSourceStatus the data source status
+     * @return the datasources aggregated per server
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<ServerAddress, List<DatasourceRuntime>> getDomainDatasourceRuntime(
+            final ControllerClientConfig controllerClientConfig, final DatasourceStatus dataSourceStatus)
+            throws ControllerOperationException;
+
+    /**
+     * Checks whether the given datasource is enabled on every running server in a managed domain. All servers are queried
+     * in a single wildcard read through the domain controller.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @param datasource the datasource
+     * @return the datasource status per server, servers not having the datasource are omitted
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<ServerAddress, Boolean> getDomainDatasourceStatus(final ControllerClientConfig controllerClientConfig,
+            final String datasource) throws ControllerOperationException;
+
+    /**
+     * Gets the names of the datasources defined in the given server profile. Only the names are transferred.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     * @return the datasource names
+     * @throws ControllerOperationException the controller operation exception
+     */
+    List<String> getDatasourceNames(final ControllerClientConfig controllerClientConfig, final String serverProfileName)
+            throws ControllerOperationException;
+
+    /**
+     * Gets the complete configuration of every datasource, including child resources, defined in the given server profile
+     * in a single read.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     * @return the datasource configurations mapped by datasource name
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<String, ModelNode> getDatasourceConfigurations(final ControllerClientConfig controllerClientConfig,
+            final String serverProfileName) throws ControllerOperationException;
+
+    /**
+     * Gets the complete configuration, including child resources, of the given datasources in a single composite read.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     * @param datasourceNames the names of the datasources to read
+     * @return the datasource configurations mapped by datasource name
+     * @throws ControllerOperationException the controller operation exception
+     */
+    Map<String, ModelNode> getDatasourceConfigurations(final ControllerClientConfig controllerClientConfig,
+            final String serverProfileName, final Collection<String> datasourceNames) throws ControllerOperationException;
+
+    /**
+     * Executes a management operation as is and returns its result.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param operation the management operation
+     * @return the result of the operation
+     * @throws ControllerOperationException if the operation could not be executed or did not succeed
+     */
+    ModelNode executeOperation(final ControllerClientConfig controllerClientConfig, final ModelNode operation)
+            throws ControllerOperationException;
+
+}
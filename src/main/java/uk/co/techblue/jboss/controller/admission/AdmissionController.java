@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.admission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * Admits the operations sent to one controller host, keeping the host in its efficient operating range when many jobs
+ * send operations to it at once. A token bucket limits the operations started per second, allowing bursts of up to one
+ * second worth of operations, and a semaphore limits the operations in flight. Operations over either limit wait their
+ * turn rather than pile up on the controller until it times every request out.
+ * <p>
+ * There is one admission controller per host and port in the JVM, shared by all the executors. Its limits are the most
+ * restrictive of those of all the {@link ControllerClientConfig configs} it was
+ * {@link #forController(ControllerClientConfig) looked up} with: a config without a limit, or with a looser one, never
+ * lifts the limit set by another config of the same host. Once the host is limited, every operation admitted counts
+ * as in flight, whatever the limits of the config it is sent with. The limits of a host are only loosened or lifted
+ * explicitly, with {@link #replaceLimits(double, int)} or by {@link #clearCache() forgetting} the admission controllers.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public final class AdmissionController {
+
+    /** The admission controllers of the JVM by host and port. */
+    private static final ConcurrentMap<String, AdmissionController> ADMISSION_CONTROLLERS =
+        new ConcurrentHashMap<String, AdmissionController>();
+
+    /** The controller host and port. */
+    private final String controller;
+
+    /** The maximum operations per second, 0 for no limit. */
+    private double maxOperationsPerSecond;
+
+    /** The maximum operations in flight, 0 for no limit. */
+    private int maxInFlightOperations;
+
+    /** The tokens available, negative when operations have reserved tokens yet to come. */
+    private double tokens;
+
+    /** The time the tokens were last refilled, as per {@link System#nanoTime()}. */
+    private long refillTime = System.nanoTime();
+
+    /** The operations in flight. */
+    private int inFlightOperations;
+
+    /** The monitor of the in-flight operations. */
+    private final Object inFlightMonitor = new Object();
+
+    /**
+     * Instantiates a new admission controller.
+     * 
+     * @param controller the controller host and port
+     */
+    private AdmissionController(final String controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Gets the admission controller of the host of a config, tightening its limits to those of the config.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the admission controller
+     */
+    public static AdmissionController forController(final ControllerClientConfig controllerClientConfig) {
+        final String controller = controllerClientConfig.getHost() + ":" + controllerClientConfig.getPort();
+        AdmissionController admissionController = ADMISSION_CONTROLLERS.get(controller);
+        if (admissionController == null) {
+            final AdmissionController newAdmissionController = new AdmissionController(controller);
+            admissionController = ADMISSION_CONTROLLERS.putIfAbsent(controller, newAdmissionController);
+            if (admissionController == null) {
+                admissionController = newAdmissionController;
+            }
+        }
+        admissionController.setLimits(controllerClientConfig.getMaxOperationsPerSecond(),
+            controllerClientConfig.getMaxInFlightOperations());
+        return admissionController;
+    }
+
+    /**
+     * Forgets the admission controllers of every host, e.g. after the limits of the configs were loosened: the next
+     * lookup of a host starts from the limits of its config. The operations admitted by a forgotten admission controller
+     * are still released into it.
+     */
+    public static void clearCache() {
+        ADMISSION_CONTROLLERS.clear();
+    }
+
+    /**
+     * Replaces the limits of the controller with the given ones, whether more or less restrictive. Later lookups with a
+     * config still only tighten them.
+     * 
+     * @param operationsPerSecond the max operations per second, 0 for no limit
+     * @param inFlightOperations the max operations in flight, 0 for no limit
+     */
+    public void replaceLimits(final double operationsPerSecond, final int inFlightOperations) {
+        synchronized (this) {
+            refill(System.nanoTime());
+            final boolean wasUnlimited = maxOperationsPerSecond <= 0;
+            maxOperationsPerSecond = Math.max(0, operationsPerSecond);
+            tokens = wasUnlimited ? getBurst() : Math.min(tokens, getBurst());
+        }
+        synchronized (inFlightMonitor) {
+            maxInFlightOperations = Math.max(0, inFlightOperations);
+            inFlightMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Tightens the limits of the controller to the given ones, when they are more restrictive.
+     * 
+     * @param operationsPerSecond the max operations per second, 0 for no limit
+     * @param inFlightOperations the max operations in flight, 0 for no limit
+     */
+    private void setLimits(final double operationsPerSecond, final int inFlightOperations) {
+        synchronized (this) {
+            if (operationsPerSecond > 0 && (maxOperationsPerSecond <= 0 || operationsPerSecond < maxOperationsPerSecond)) {
+                refill(System.nanoTime());
+                final boolean wasUnlimited = maxOperationsPerSecond <= 0;
+                maxOperationsPerSecond = operationsPerSecond;
+                tokens = wasUnlimited ? getBurst() : Math.min(tokens, getBurst());
+            }
+        }
+        synchronized (inFlightMonitor) {
+            if (inFlightOperations > 0 && (maxInFlightOperations <= 0 || inFlightOperations < maxInFlightOperations)) {
+                maxInFlightOperations = inFlightOperations;
+            }
+        }
+    }
+
+    /**
+     * Waits for an operation to be admitted. An admitted operation must be {@link #release() released} once complete.
+     * An operation not admitted gives back the token it reserved, so that it does not use up the rate of the host.
+     * 
+     * @param timeout the maximum time to wait, 0 to wait indefinitely
+     * @param unit the unit of the timeout
+     * @return true, if admitted; false, if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        final long tokenWait = reserveToken(deadline);
+        if (tokenWait < 0) {
+            return false;
+        }
+        boolean admitted = false;
+        try {
+            if (tokenWait > 0) {
+                TimeUnit.NANOSECONDS.sleep(tokenWait);
+            }
+            synchronized (inFlightMonitor) {
+                while (maxInFlightOperations > 0 && inFlightOperations >= maxInFlightOperations) {
+                    if (deadline == 0) {
+                        inFlightMonitor.wait();
+                    } else {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(inFlightMonitor, remaining);
+                    }
+                }
+                inFlightOperations++;
+                admitted = true;
+            }
+        } finally {
+            if (!admitted) {
+                returnToken();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Releases an admitted operation once complete.
+     */
+    public void release() {
+        synchronized (inFlightMonitor) {
+            inFlightOperations--;
+            inFlightMonitor.notify();
+        }
+    }
+
+    /**
+     * Reserves a token of the bucket, the earliest available.
+     * 
+     * @param deadline the deadline as per {@link System#nanoTime()}, 0 for none
+     * @return the time to wait for the token in nanoseconds, -1 if the token would come after the deadline
+     */
+    private synchronized long reserveToken(final long deadline) {
+        if (maxOperationsPerSecond <= 0) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        refill(now);
+        final long wait = tokens >= 1 ? 0 : (long) ((1 - tokens) / maxOperationsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        if (deadline != 0 && now + wait > deadline) {
+            return -1;
+        }
+        tokens--;
+        return wait;
+    }
+
+    /**
+     * Gives back a token reserved by an operation that was not admitted.
+     */
+    private synchronized void returnToken() {
+        if (maxOperationsPerSecond > 0) {
+            refill(System.nanoTime());
+            tokens = Math.min(getBurst(), tokens + 1);
+        }
+    }
+
+    /**
+     * Adds the tokens accrued since the last refill, up to the burst size.
+     * 
+     * @param now the current time as per {@link System#nanoTime()}
+     */
+    private void refill(final long now) {
+        if (maxOperationsPerSecond > 0) {
+            tokens = Math.min(getBurst(), tokens + (now - refillTime) * maxOperationsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+        refillTime = now;
+    }
+
+    /**
+     * Gets the size of the bucket: one second worth of operations, at least one.
+     * 
+     * @return the burst size
+     */
+    private double getBurst() {
+        return Math.max(1, maxOperationsPerSecond);
+    }
+
+    /**
+     * Gets the number of operations in flight on the controller.
+     * 
+     * @return the in flight operations
+     */
+    public int getInFlightOperations() {
+        synchronized (inFlightMonitor) {
+            return inFlightOperations;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "AdmissionController [controller=" + controller + ", maxOperationsPerSecond=" + maxOperationsPerSecond
+            + ", maxInFlightOperations=" + maxInFlightOperations + "]";
+    }
+}
@@ -0,0 +1,422 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.as7;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_CONNECTION_PROPERTIES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_DATASOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_HOST;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_PROFILE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_ENABLED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CREDENTIAL_REFERENCE_ALIAS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CREDENTIAL_REFERENCE_STORE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CREDENTIAL_REFERENCE_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DATASOURCE_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_BG_VALIDATION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_BG_VALIDATION_MILLIS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_CONNECTIONURL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_CREDENTIAL_REFERENCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_DRIVERNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_EXCEPTION_SORTER_CLASSNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_JNDINAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_JTA_INTEGRATION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MAXPOOLSIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MINPOOLSIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_NEWCONNECTIONSQL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PASSWORD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOLNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOLPREFILL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOL_STRICT_MINIMUM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PREPARED_STATEMENTS_CACHE_SIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_SECURITYDOMAIN;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_SHARE_PREPARED_STATEMENTS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_STALE_CONNCHECKER_CLASSNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_TRANSACTIONISOLATION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USEJAVACONTEXT;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USERNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USE_CCM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALIDATE_ON_MATCH;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALID_CONNCHECKER_CLASSNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALID_CONNECTION_SQL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.EXPRESSION_PREFIX;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_DISABLE;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.jboss.dmr.ValueExpression;
+
+import uk.co.techblue.jboss.controller.vo.CredentialReference;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * Builds the management operations sent to a JBoss AS 7 management model controller for datasource related requests.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public final class DatasourceOperations {
+
+    private DatasourceOperations() {
+    }
+
+    /**
+     * Gets the server address from the address of a resource on a domain server.
+     * 
+     * @param resourceAddress the resource address
+     * @return the server address
+     */
+    public static ServerAddress getServerAddress(final ModelNode resourceAddress) {
+        String host = null;
+        String server = null;
+        for (final Property element : resourceAddress.asPropertyList()) {
+            if (ADDRESS_HOST.equals(element.getName())) {
+                host = element.getValue().asString();
+            } else if (ADDRESS_SERVER.equals(element.getName())) {
+                server = element.getValue().asString();
+            }
+        }
+        return new ServerAddress(host, server);
+    }
+
+    /**
+     * Gets the address of the datasource subsystem in the given server profile.
+     * 
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @return the datasource subsystem address
+     */
+    public static ModelNode getDatasourceSubsystemAddress(final String serverProfileName) {
+        final ModelNode address = new ModelNode().setEmptyList();
+        if (StringUtils.isNotBlank(serverProfileName)) {
+            address.add(ADDRESS_PROFILE, serverProfileName);
+        }
+        address.add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
+        return address;
+    }
+
+    /**
+     * Gets the address of a datasource in the given server profile.
+     * 
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @param datasourceName the datasource name
+     * @return the datasource address
+     */
+    public static ModelNode getDatasourceAddress(final String serverProfileName, final String datasourceName) {
+        return getDatasourceSubsystemAddress(serverProfileName).add(ADDRESS_DATASOURCE, datasourceName);
+    }
+
+    /**
+     * Gets the runtime address of the datasource subsystem on a server.
+     * 
+     * @param serverAddress the domain server, null for a standalone server
+     * @return the datasource subsystem address
+     */
+    public static ModelNode getServerDatasourceSubsystemAddress(final ServerAddress serverAddress) {
+        final ModelNode address = new ModelNode().setEmptyList();
+        if (serverAddress != null) {
+            address.add(ADDRESS_HOST, serverAddress.getHost()).add(ADDRESS_SERVER, serverAddress.getServer());
+        }
+        return address.add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
+    }
+
+    /**
+     * Gets the runtime address of a datasource on a server. Runtime operations such as the pool operations are only
+     * available on the servers, not on the profiles of a managed domain.
+     * 
+     * @param serverAddress the domain server, null for a standalone server
+     * @param datasourceName the datasource name
+     * @return the datasource address
+     */
+    public static ModelNode getServerDatasourceAddress(final ServerAddress serverAddress, final String datasourceName) {
+        return getServerDatasourceSubsystemAddress(serverAddress).add(ADDRESS_DATASOURCE, datasourceName);
+    }
+
+    /**
+     * Creates the operation adding a datasource. The datasource resource is addressed by its JNDI name. When the
+     * datasource has connection properties, they are added as child resources in the same composite operation, so the
+     * datasource is never started without them.
+     * 
+     * @param dataSource the data source
+     * @param serverProfileName the server profile name
+     * @return the add operation, or the composite adding the datasource and its connection properties
+     */
+    public static ModelNode createAddOperation(final JndiDataSource dataSource, final String serverProfileName) {
+        final ModelNode datasourceAddress = getDatasourceAddress(serverProfileName, dataSource.getJndiName());
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(ClientConstants.ADD);
+        request.get(ClientConstants.OP_ADDR).set(datasourceAddress);
+        addDatasourceProperties(request, dataSource);
+        final Properties connectionProperties = dataSource.getConnectionProperties();
+        if (connectionProperties == null || connectionProperties.isEmpty()) {
+            return request;
+        }
+        final List<ModelNode> steps = new ArrayList<ModelNode>(connectionProperties.size() + 1);
+        steps.add(request);
+        for (final String propertyName : new TreeSet<String>(connectionProperties.stringPropertyNames())) {
+            steps.add(createConnectionPropertyAddOperation(datasourceAddress, propertyName,
+                toValue(connectionProperties.getProperty(propertyName))));
+        }
+        return createCompositeOperation(steps);
+    }
+
+    /**
+     * Creates the operation creating a datasource. When the datasource must be enabled, the enable is sent as the last
+     * step of the same composite operation as the add, so that a datasource which cannot be enabled is rolled back rather
+     * than left behind disabled. This is the single operation sent by the executor, the write batcher and the planner for
+     * the creation of a datasource.
+     * 
+     * @param dataSource the data source
+     * @param enable whether to enable the datasource once added
+     * @param serverProfileName the server profile name
+     * @return the add operation, or the composite adding and enabling the datasource
+     */
+    public static ModelNode createAddOperation(final JndiDataSource dataSource, final boolean enable,
+        final String serverProfileName) {
+        final ModelNode add = createAddOperation(dataSource, serverProfileName);
+        if (!enable) {
+            return add;
+        }
+        final ModelNode enableOperation = createEnableOperation(dataSource.getJndiName(), serverProfileName);
+        if (ClientConstants.COMPOSITE.equals(add.get(ClientConstants.OP).asString())) {
+            add.get(ClientConstants.STEPS).add(enableOperation);
+            return add;
+        }
+        final List<ModelNode> steps = new ArrayList<ModelNode>(2);
+        steps.add(add);
+        steps.add(enableOperation);
+        return createCompositeOperation(steps);
+    }
+
+    /**
+     * Creates the operation adding a connection property to a datasource.
+     * 
+     * @param datasourceAddress the datasource address
+     * @param propertyName the property name
+     * @param value the property value
+     * @return the add operation
+     */
+    public static ModelNode createConnectionPropertyAddOperation(final ModelNode datasourceAddress,
+        final String propertyName, final ModelNode value) {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(ClientConstants.ADD);
+        request.get(ClientConstants.OP_ADDR).set(datasourceAddress).add(ADDRESS_CONNECTION_PROPERTIES, propertyName);
+        request.get(ClientConstants.VALUE).set(value);
+        return request;
+    }
+
+    /**
+     * Creates the operation removing a connection property from a datasource.
+     * 
+     * @param datasourceAddress the datasource address
+     * @param propertyName the property name
+     * @return the remove operation
+     */
+    public static ModelNode createConnectionPropertyRemoveOperation(final ModelNode datasourceAddress,
+        final String propertyName) {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(ClientConstants.DEPLOYMENT_REMOVE_OPERATION);
+        request.get(ClientConstants.OP_ADDR).set(datasourceAddress).add(ADDRESS_CONNECTION_PROPERTIES, propertyName);
+        return request;
+    }
+
+    /**
+     * Creates the steps bringing the connection properties of a datasource from their current to their desired values.
+     * Unchanged properties are left alone; a property whose value changed is removed and added back, since the value
+     * of a connection property cannot be written.
+     * 
+     * @param datasourceAddress the datasource address
+     * @param currentProperties the current connection-properties children, as read with read-children-resources
+     * @param desiredProperties the desired connection properties
+     * @return the steps, empty if the properties are up to date
+     */
+    public static List<ModelNode> createConnectionPropertyUpdateSteps(final ModelNode datasourceAddress,
+        final ModelNode currentProperties, final Properties desiredProperties) {
+        final List<ModelNode> steps = new ArrayList<ModelNode>();
+        final Set<String> currentNames = new HashSet<String>();
+        if (currentProperties.isDefined()) {
+            for (final Property currentProperty : currentProperties.asPropertyList()) {
+                final String propertyName = currentProperty.getName();
+                currentNames.add(propertyName);
+                final String desiredValue = desiredProperties.getProperty(propertyName);
+                if (desiredValue == null) {
+                    steps.add(createConnectionPropertyRemoveOperation(datasourceAddress, propertyName));
+                } else if (!desiredValue.equals(currentProperty.getValue().get(ClientConstants.VALUE).asString())) {
+                    steps.add(createConnectionPropertyRemoveOperation(datasourceAddress, propertyName));
+                    steps.add(createConnectionPropertyAddOperation(datasourceAddress, propertyName, toValue(desiredValue)));
+                }
+            }
+        }
+        for (final String propertyName : new TreeSet<String>(desiredProperties.stringPropertyNames())) {
+            if (!currentNames.contains(propertyName)) {
+                steps.add(createConnectionPropertyAddOperation(datasourceAddress, propertyName,
+                    toValue(desiredProperties.getProperty(propertyName))));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Creates the operation removing a datasource.
+     * 
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name
+     * @return the remove operation
+     */
+    public static ModelNode createRemoveOperation(final String datasourceName, final String serverProfileName) {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(ClientConstants.DEPLOYMENT_REMOVE_OPERATION);
+        request.get(ClientConstants.OP_ADDR).set(getDatasourceAddress(serverProfileName, datasourceName));
+        return request;
+    }
+
+    /**
+     * Creates the operation enabling a datasource.
+     * 
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name
+     * @return the enable operation
+     */
+    public static ModelNode createEnableOperation(final String datasourceName, final String serverProfileName) {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(ClientConstants.WRITE_ATTRIBUTE_OPERATION);
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_ENABLED);
+        request.get(ClientConstants.VALUE).set(true);
+        request.get(ClientConstants.OP_ADDR).set(getDatasourceAddress(serverProfileName, datasourceName));
+        return request;
+    }
+
+    /**
+     * Creates the operation disabling a datasource.
+     * 
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name
+     * @return the disable operation
+     */
+    public static ModelNode createDisableOperation(final String datasourceName, final String serverProfileName) {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_DISABLE);
+        request.get(ClientConstants.OP_ADDR).set(getDatasourceAddress(serverProfileName, datasourceName));
+        return request;
+    }
+
+    /**
+     * Creates a composite operation executing the given steps atomically.
+     * 
+     * @param steps the steps
+     * @return the composite operation
+     */
+    public static ModelNode createCompositeOperation(final List<ModelNode> steps) {
+        final ModelNode composite = new ModelNode();
+        composite.get(ClientConstants.OP).set(ClientConstants.COMPOSITE);
+        composite.get(ClientConstants.OP_ADDR).setEmptyList();
+        final ModelNode compositeSteps = composite.get(ClientConstants.STEPS).setEmptyList();
+        for (final ModelNode step : steps) {
+            compositeSteps.add(step);
+        }
+        return composite;
+    }
+
+    /**
+     * Adds the datasource attributes to the request.
+     * 
+     * @param request the request
+     * @param dataSource the data source
+     */
+    private static void addDatasourceProperties(final ModelNode request, final JndiDataSource dataSource) {
+        // DS ATTRIBUTES
+        request.get(DS_PROPERTY_JNDINAME).set(dataSource.getJndiName());
+        request.get(DS_PROPERTY_USEJAVACONTEXT).set(dataSource.isUseJavaContext());
+        request.get(DS_PROPERTY_SHARE_PREPARED_STATEMENTS).set(dataSource.isSharePreparedStatements());
+        request.get(DS_PROPERTY_PREPARED_STATEMENTS_CACHE_SIZE).set(dataSource.getStatementCacheSize());
+        request.get(DS_PROPERTY_POOLNAME).set(dataSource.getPoolName());
+
+        // CONNECTION PROPERTIES
+        setPropertyIfNotNull(request, DS_PROPERTY_CONNECTIONURL, dataSource.getConnectionURL());
+        setPropertyIfNotNull(request, DS_PROPERTY_NEWCONNECTIONSQL, dataSource.getNewConnectionSQL());
+        request.get(DS_PROPERTY_TRANSACTIONISOLATION).set(dataSource.getTransactionIsolation().name());
+        request.get(DS_PROPERTY_USE_CCM).set(dataSource.isUseCacheConnectionManager());
+        request.get(DS_PROPERTY_JTA_INTEGRATION).set(dataSource.isUseJTA());
+
+        // SECURITY
+        request.get(DS_PROPERTY_DRIVERNAME).set(dataSource.getDriverName());
+        setPropertyIfNotNull(request, DS_PROPERTY_USERNAME, dataSource.getUserName());
+        final CredentialReference credentialReference = dataSource.getCredentialReference();
+        if (credentialReference != null) {
+            final ModelNode reference = request.get(DS_PROPERTY_CREDENTIAL_REFERENCE);
+            reference.get(CREDENTIAL_REFERENCE_STORE).set(credentialReference.getStore());
+            reference.get(CREDENTIAL_REFERENCE_ALIAS).set(credentialReference.getAlias());
+            setPropertyIfNotNull(reference, CREDENTIAL_REFERENCE_TYPE, credentialReference.getType());
+        } else {
+            setPropertyIfNotNull(request, DS_PROPERTY_PASSWORD, dataSource.getPassword());
+        }
+        setPropertyIfNotNull(request, DS_PROPERTY_SECURITYDOMAIN, dataSource.getSecurityDomain());
+
+        // POOL PROPERTIES
+        request.get(DS_PROPERTY_MINPOOLSIZE).set(dataSource.getMinPoolSize());
+        request.get(DS_PROPERTY_MAXPOOLSIZE).set(dataSource.getMaxPoolSize());
+        request.get(DS_PROPERTY_POOLPREFILL).set(dataSource.isPoolPrefill());
+        request.get(DS_PROPERTY_POOL_STRICT_MINIMUM).set(dataSource.isPoolStrictMinimum());
+
+        // VALIDATION ATTRIBUTES
+        setPropertyIfNotNull(request, DS_PROPERTY_VALID_CONNECTION_SQL, dataSource.getCheckValidSQL());
+        setPropertyIfNotNull(request, DS_PROPERTY_VALID_CONNCHECKER_CLASSNAME, dataSource.getValidConnectionCheckerClassName());
+        setPropertyIfNotNull(request, DS_PROPERTY_EXCEPTION_SORTER_CLASSNAME, dataSource.getExceptionSorterClassName());
+        setPropertyIfNotNull(request, DS_PROPERTY_STALE_CONNCHECKER_CLASSNAME, dataSource.getStaleConnectionCheckerClassName());
+        request.get(DS_PROPERTY_BG_VALIDATION).set(dataSource.isBackgroundValidation());
+        if (dataSource.getBackgroundValidationMillisec() > 0) {
+            request.get(DS_PROPERTY_BG_VALIDATION_MILLIS).set(dataSource.getBackgroundValidationMillisec());
+        }
+        request.get(DS_PROPERTY_VALIDATE_ON_MATCH).set(dataSource.isValidateOnMatch());
+    }
+
+    /**
+     * Sets the property if not null. Values of the form <code>${...}</code> are set as expressions resolved by the
+     * server.
+     * 
+     * @param request the request
+     * @param propertyName the property name
+     * @param propertyValue the property value
+     */
+    private static void setPropertyIfNotNull(ModelNode request, String propertyName, String propertyValue) {
+        if (propertyValue == null) {
+            return;
+        }
+        request.get(propertyName).set(toValue(propertyValue));
+    }
+
+    /**
+     * Converts a string to a model value, values of the form <code>${...}</code> being expressions resolved by the
+     * server.
+     * 
+     * @param value the value
+     * @return the model value
+     */
+    private static ModelNode toValue(final String value) {
+        if (value.contains(EXPRESSION_PREFIX)) {
+            return new ModelNode(new ValueExpression(value));
+        }
+        return new ModelNode(value);
+    }
+}
@@ -15,65 +15,63 @@
  ******************************************************************************/
 package uk.co.techblue.jboss.controller.as7;
 
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_CONNECTION_PROPERTIES;
 import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_DATASOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_HOST;
 import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_PROFILE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_STATISTICS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_STATISTICS_POOL;
 import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_WILDCARD;
 import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_ENABLED;
 import static uk.co.techblue.jboss.controller.ControllerConstants.DATASOURCE_SUBSYSTEM;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_BG_VALIDATION;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_BG_VALIDATION_MILLIS;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_CONNECTIONURL;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_DRIVERNAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_EXCEPTION_SORTER_CLASSNAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_JNDINAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_JTA_INTEGRATION;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MAXPOOLSIZE;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MINPOOLSIZE;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_NEWCONNECTIONSQL;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PASSWORD;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOLNAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOLPREFILL;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOL_STRICT_MINIMUM;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PREPARED_STATEMENTS_CACHE_SIZE;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_SECURITYDOMAIN;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_SHARE_PREPARED_STATEMENTS;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_STALE_CONNCHECKER_CLASSNAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_TRANSACTIONISOLATION;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USEJAVACONTEXT;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USERNAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USE_CCM;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALIDATE_ON_MATCH;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALID_CONNCHECKER_CLASSNAME;
-import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALID_CONNECTION_SQL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_CHILD_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_INCLUDE_RUNTIME;
 import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_RECURSIVE;
-import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_DISABLE;
 import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_ATTRIBUTE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_CHILDREN_NAMES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_CHILDREN_RESOURCES;
 import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_RESOURCE;
-import static uk.co.techblue.jboss.controller.ControllerConstants.REMOTING_PROTOCOL;
 import static uk.co.techblue.jboss.controller.ControllerConstants.RESPONSE_PROPERTY_ROLLEDBACK;
+import static uk.co.techblue.jboss.controller.ControllerConstants.RESPONSE_PROPERTY_STEP_PREFIX;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
-import javax.security.auth.callback.CallbackHandler;
-
-import org.jboss.as.controller.client.ModelControllerClient;
-import org.jboss.as.controller.client.OperationBuilder;
 import org.jboss.as.controller.client.helpers.ClientConstants;
 import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import uk.co.techblue.jboss.auth.AuthenticationCallbackHandler;
 import uk.co.techblue.jboss.controller.ControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.capability.CapabilityProbe;
+import uk.co.techblue.jboss.controller.capability.ControllerCapabilities;
+import uk.co.techblue.jboss.controller.client.ControllerClient;
+import uk.co.techblue.jboss.controller.client.ControllerClientFactory;
+import uk.co.techblue.jboss.controller.client.TransportControllerClientFactory;
 import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.validation.DatasourceRequestValidator;
+import uk.co.techblue.jboss.controller.vo.BulkOperationResult;
+import uk.co.techblue.jboss.controller.vo.BulkOperationResult.Outcome;
 import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.DatasourceRuntime;
+import uk.co.techblue.jboss.controller.vo.DatasourceSelector;
 import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
 import uk.co.techblue.jboss.util.StringUtils;
 
 /**
@@ -81,11 +79,102 @@ import uk.co.techblue.jboss.util.StringUtils;
  * 
  * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
  */
-public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExecutor {
+public class JBoss7ControllerOpeartionExecutor implements ExtendedControllerOperationExecutor {
+
+    /** The action of adding a datasource. */
+    private static final String ACTION_ADD = "adding datasource";
+
+    /** The action of removing a datasource. */
+    private static final String ACTION_REMOVE = "removing datasource";
+
+    /** The action of enabling a datasource. */
+    private static final String ACTION_ENABLE = "enabling datasource";
+
+    /** The action of disabling a datasource. */
+    private static final String ACTION_DISABLE = "disabling datasource";
+
+    /** The action of reading the status of a datasource. */
+    private static final String ACTION_GET_STATUS = "getting the status of datasource";
+
+    /** The action of reading the datasources. */
+    private static final String ACTION_GET_DATASOURCES = "getting the datasources";
+
+    /** The action of reading the datasource names. */
+    private static final String ACTION_GET_NAMES = "getting the datasource names";
+
+    /** The action of reading the datasource configurations. */
+    private static final String ACTION_GET_CONFIGURATIONS = "getting the datasource configurations";
+
+    /** The action of reading the datasource runtime of the domain servers. */
+    private static final String ACTION_GET_DOMAIN_RUNTIME = "getting the datasource runtime of the domain servers";
+
+    /** The action of reading the status of a datasource on the domain servers. */
+    private static final String ACTION_GET_DOMAIN_STATUS = "getting the domain server status of datasource";
+
+    /** The action of executing an arbitrary operation. */
+    private static final String ACTION_EXECUTE = "executing operation";
+
+    /** The action of selecting datasources. */
+    private static final String ACTION_SELECT = "selecting datasources";
+
+    /** The action of enabling selected datasources. */
+    private static final String ACTION_ENABLE_SELECTED = "enabling selected datasources";
+
+    /** The action of disabling selected datasources. */
+    private static final String ACTION_DISABLE_SELECTED = "disabling selected datasources";
+
+    /** The action of updating the connection properties of a datasource. */
+    private static final String ACTION_UPDATE_CONNECTION_PROPERTIES = "updating the connection properties of datasource";
 
     /** The logger instance. */
     private final Logger logger = LoggerFactory.getLogger(JBoss7ControllerOpeartionExecutor.class);
 
+    /** The controller client factory. */
+    private final ControllerClientFactory controllerClientFactory;
+
+    /** The probe detecting the operations supported by each controller. */
+    private final CapabilityProbe capabilityProbe = new CapabilityProbe(this);
+
+    /** The validator of the datasource write requests, null if requests are not validated before being sent. */
+    private volatile DatasourceRequestValidator requestValidator;
+
+    /**
+     * Instantiates a new executor connecting to controllers over the transport of their config, http-remoting by
+     * default.
+     */
+    public JBoss7ControllerOpeartionExecutor() {
+        this(new TransportControllerClientFactory());
+    }
+
+    /**
+     * Instantiates a new executor connecting to controllers through the given client factory.
+     * 
+     * @param controllerClientFactory the controller client factory
+     */
+    public JBoss7ControllerOpeartionExecutor(final ControllerClientFactory controllerClientFactory) {
+        this.controllerClientFactory = controllerClientFactory;
+    }
+
+    /**
+     * Checks if the requests writing datasources are validated before being sent.
+     * 
+     * @return true, if the requests are validated
+     */
+    public boolean isValidateRequests() {
+        return requestValidator != null;
+    }
+
+    /**
+     * Sets whether the requests adding, writing or undefining datasource attributes, including composite steps, are
+     * validated against the data-source description of the controller version before being sent. An invalid request
+     * then fails without a round trip. The description is read once per management version. Disabled by default.
+     * 
+     * @param validateRequests whether the requests are validated
+     */
+    public void setValidateRequests(final boolean validateRequests) {
+        this.requestValidator = validateRequests ? new DatasourceRequestValidator(this) : null;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -112,7 +201,8 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
      * ControllerClientConfig, uk.co.techblue.jboss.controller.vo.JndiDataSource, boolean, java.lang.String)
      */
     /**
-     * Creates the datasource.
+     * Creates the datasource. When it must be enabled, the add and the enable are sent as a single composite request, so
+     * that a datasource which cannot be enabled is rolled back rather than left behind disabled.
      * 
      * @param controllerClientConfig the controller client config
      * @param dataSource the data source
@@ -123,47 +213,14 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
     private void createDatasource(final ControllerClientConfig controllerClientConfig, final JndiDataSource dataSource,
         final boolean enable, final String serverProfileName) throws ControllerOperationException {
         final String jndiName = dataSource.getJndiName();
-        final ModelNode request = new ModelNode();
-        request.get(ClientConstants.OP).set(ClientConstants.ADD);
-        if (StringUtils.isNotBlank(serverProfileName)) {
-            request.get(ClientConstants.OP_ADDR).add(ADDRESS_PROFILE, serverProfileName);
-        }
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_DATASOURCE, jndiName);
-
-        addDatasourceProperties(request, dataSource);
-
-        final ModelControllerClient client = createControllerClient(controllerClientConfig);
-        ModelNode response = null;
-        try {
+        final ModelNode request = DatasourceOperations.createAddOperation(dataSource, enable, serverProfileName);
+        if (logger.isInfoEnabled()) {
             logger.info("Adding datasource '{}' ...", jndiName);
-            response = client.execute(new OperationBuilder(request).build());
-        } catch (IOException ioe) {
-            throw new ControllerOperationException("An error occurred while executing operation on JBoss controller", ioe);
-        } finally {
-            try {
-                client.close();
-            } catch (IOException ioe) {
-                logger.error(
-                    "An error occurred when closing JBoss Controller connection with host "
-                        + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort()
-                        + " while adding datasource '" + jndiName + "'",
-                    ioe);
-            }
-        }
-        if (!isOperationSuccess(response)) {
-            if (!response.isDefined()) {
-                throw new ControllerOperationException(
-                    "A subsystem undefined response status recieved while adding datasource '" + jndiName
-                        + "'. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
-            }
-            logger.error("Operation rolled back:" + response.get(RESPONSE_PROPERTY_ROLLEDBACK));
-            throw new ControllerOperationException("An error occurred while adding datasource '" + jndiName + ".\n"
-                + response.get(ClientConstants.FAILURE_DESCRIPTION).asString());
         }
-        logger.info("Datasource '{}' added successfully!", jndiName);
-        if (enable) {
-            enableDataSource(controllerClientConfig, jndiName, serverProfileName);
+        executeRequest(controllerClientConfig, request, ACTION_ADD, jndiName);
+        if (logger.isInfoEnabled()) {
+            logger.info(enable ? "Datasource '{}' added and enabled successfully!" : "Datasource '{}' added successfully!",
+                jndiName);
         }
     }
 
@@ -195,100 +252,13 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
      */
     private void removeDatasource(final ControllerClientConfig controllerClientConfig, final String datasourceName,
         final String serverProfileName) throws ControllerOperationException {
-        final ModelNode request = new ModelNode();
-        request.get(ClientConstants.OP).set(ClientConstants.DEPLOYMENT_REMOVE_OPERATION);
-        if (StringUtils.isNotBlank(serverProfileName)) {
-            request.get(ClientConstants.OP_ADDR).add(ADDRESS_PROFILE, serverProfileName);
-        }
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_DATASOURCE, datasourceName);
-        final ModelControllerClient client = createControllerClient(controllerClientConfig);
-        ModelNode response = null;
-        try {
+        final ModelNode request = DatasourceOperations.createRemoveOperation(datasourceName, serverProfileName);
+        if (logger.isInfoEnabled()) {
             logger.info("Removing datasource '{}' ...", datasourceName);
-            response = client.execute(new OperationBuilder(request).build());
-        } catch (IOException ioe) {
-            throw new ControllerOperationException("An error occurred while removing datatsource '" + datasourceName
-                + "' from JBoss model controller", ioe);
-        } finally {
-            try {
-                client.close();
-            } catch (IOException ioe) {
-                logger.error(
-                    "An error occurred when closing JBoss Controller connection with host "
-                        + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort()
-                        + " while removing datasource '" + datasourceName + "'",
-                    ioe);
-            }
         }
-        if (!isOperationSuccess(response)) {
-            if (!response.isDefined()) {
-                throw new ControllerOperationException(
-                    "A subsystem undefined response status recieved while removing datasource '" + datasourceName
-                        + "'. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
-            }
-            logger.error("Operation rolled back:" + response.get(RESPONSE_PROPERTY_ROLLEDBACK));
-            throw new ControllerOperationException("An error occurred while removing datasource '" + datasourceName + ".\n"
-                + response.get(ClientConstants.FAILURE_DESCRIPTION).asString());
-        }
-        logger.info("Datasource '{}' removed successfully!", datasourceName);
-    }
-
-    /**
-     * Creates the datasource request.
-     * 
-     * @param request the request
-     * @param dataSource the data source
-     */
-    private void addDatasourceProperties(final ModelNode request, final JndiDataSource dataSource) {
-        // DS ATTRIBUTES
-        request.get(DS_PROPERTY_JNDINAME).set(dataSource.getJndiName());
-        request.get(DS_PROPERTY_USEJAVACONTEXT).set(dataSource.isUseJavaContext());
-        request.get(DS_PROPERTY_SHARE_PREPARED_STATEMENTS).set(dataSource.isSharePreparedStatements());
-        request.get(DS_PROPERTY_PREPARED_STATEMENTS_CACHE_SIZE).set(dataSource.getStatementCacheSize());
-        request.get(DS_PROPERTY_POOLNAME).set(dataSource.getPoolName());
-
-        // CONNECTION PROPERTIES
-        request.get(DS_PROPERTY_CONNECTIONURL).set(dataSource.getConnectionURL());
-        setPropertyIfNotNull(request, DS_PROPERTY_NEWCONNECTIONSQL, dataSource.getNewConnectionSQL());
-        request.get(DS_PROPERTY_TRANSACTIONISOLATION).set(dataSource.getTransactionIsolation().name());
-        request.get(DS_PROPERTY_USE_CCM).set(dataSource.isUseCacheConnectionManager());
-        request.get(DS_PROPERTY_JTA_INTEGRATION).set(dataSource.isUseJTA());
-
-        // SECURITY
-        request.get(DS_PROPERTY_DRIVERNAME).set(dataSource.getDriverName());
-        request.get(DS_PROPERTY_USERNAME).set(dataSource.getUserName());
-        request.get(DS_PROPERTY_PASSWORD).set(dataSource.getPassword());
-        setPropertyIfNotNull(request, DS_PROPERTY_SECURITYDOMAIN, dataSource.getSecurityDomain());
-
-        // POOL PROPERTIES
-        request.get(DS_PROPERTY_MINPOOLSIZE).set(dataSource.getMinPoolSize());
-        request.get(DS_PROPERTY_MAXPOOLSIZE).set(dataSource.getMaxPoolSize());
-        request.get(DS_PROPERTY_POOLPREFILL).set(dataSource.isPoolPrefill());
-        request.get(DS_PROPERTY_POOL_STRICT_MINIMUM).set(dataSource.isPoolStrictMinimum());
-
-        // VALIDATION ATTRIBUTES
-        setPropertyIfNotNull(request, DS_PROPERTY_VALID_CONNECTION_SQL, dataSource.getCheckValidSQL());
-        setPropertyIfNotNull(request, DS_PROPERTY_VALID_CONNCHECKER_CLASSNAME, dataSource.getValidConnectionCheckerClassName());
-        setPropertyIfNotNull(request, DS_PROPERTY_EXCEPTION_SORTER_CLASSNAME, dataSource.getExceptionSorterClassName());
-        setPropertyIfNotNull(request, DS_PROPERTY_STALE_CONNCHECKER_CLASSNAME, dataSource.getStaleConnectionCheckerClassName());
-        request.get(DS_PROPERTY_BG_VALIDATION).set(dataSource.isBackgroundValidation());
-        if (dataSource.getBackgroundValidationMillisec() > 0) {
-            request.get(DS_PROPERTY_BG_VALIDATION_MILLIS).set(dataSource.getBackgroundValidationMillisec());
-        }
-        request.get(DS_PROPERTY_VALIDATE_ON_MATCH).set(dataSource.isValidateOnMatch());
-    }
-
-    /**
-     * Sets the property if not null.
-     * 
-     * @param request the request
-     * @param propertyName the property name
-     * @param propertyValue the property value
-     */
-    private void setPropertyIfNotNull(ModelNode request, String propertyName, String propertyValue) {
-        if (propertyValue != null) {
-            request.get(propertyName).set(propertyValue);
+        executeRequest(controllerClientConfig, request, ACTION_REMOVE, datasourceName);
+        if (logger.isInfoEnabled()) {
+            logger.info("Datasource '{}' removed successfully!", datasourceName);
         }
     }
 
@@ -296,32 +266,12 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
      * Creates the controller client.
      * 
      * @param controllerClientConfig the controller client configuration
-     * @return the model controller client
+     * @return the controller client
      * @throws ControllerOperationException the controller operation exception
      */
-    private ModelControllerClient createControllerClient(final ControllerClientConfig controllerClientConfig)
+    private ControllerClient createControllerClient(final ControllerClientConfig controllerClientConfig)
         throws ControllerOperationException {
-        ModelControllerClient controllerClient = null;
-        final CallbackHandler authCallbackHandler = getAuthCallbackHandler(controllerClientConfig);
-        try {
-            controllerClient = ModelControllerClient.Factory.create(REMOTING_PROTOCOL, controllerClientConfig.getHost(), controllerClientConfig.getPort(), authCallbackHandler);
-        } catch (UnknownHostException uhe) {
-            throw new ControllerOperationException(
-                "Tried establishing connection with JBoss controller process. Unable to connect to host: "
-                    + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort(),
-                uhe);
-        }
-        return controllerClient;
-    }
-
-    /**
-     * Gets the authentication callback handler.
-     * 
-     * @param controllerClient the controller client
-     * @return the authentication callback handler
-     */
-    private CallbackHandler getAuthCallbackHandler(final ControllerClientConfig controllerClient) {
-        return new AuthenticationCallbackHandler(controllerClient.getUserName(), controllerClient.getPassword());
+        return controllerClientFactory.createClient(controllerClientConfig);
     }
 
     /**
@@ -365,25 +315,53 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
     @Override
     public boolean isDatasourceExists(final ControllerClientConfig controllerClientConfig, final String dataSourceName,
         final String serverProfileName) throws ControllerOperationException {
-        logger.info("Checking if datasource '{}' exists...", dataSourceName);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Checking if datasource '{}' exists...", dataSourceName);
+        }
+        if (getCapabilities(controllerClientConfig).isReadChildrenNamesSupported()) {
+            final List<String> datasourceNames = getDatasourceNames(controllerClientConfig, serverProfileName);
+            if (datasourceNames.isEmpty()) {
+                throw createUndefinedSubsystemException(dataSourceName);
+            }
+            final boolean exists = datasourceNames.contains(dataSourceName);
+            if (logger.isDebugEnabled()) {
+                logger.debug(exists ? "Datasource '{}' exists in datasource subsystem!"
+                    : "Datasource '{}' does not exist in datasource subsystem!", dataSourceName);
+            }
+            return exists;
+        }
         final List<ModelNode> datasources = getDatasources(controllerClientConfig, serverProfileName, DatasourceStatus.ALL);
         if (datasources != null && !datasources.isEmpty()) {
             for (final ModelNode dataSource : datasources) {
                 final String existingSourceName = dataSource.asProperty().getName();
                 if (existingSourceName.equals(dataSourceName)) {
-                    logger.info("Datasource '{}' exists in datasource subsystem!" + dataSourceName);
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Datasource '{}' exists in datasource subsystem!", dataSourceName);
+                    }
                     return true;
                 }
             }
         } else {
-            throw new ControllerOperationException(
-                "A subsystem undefined response status recieved while checking if datasource '" + dataSourceName
-                    + "' exists. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
+            throw createUndefinedSubsystemException(dataSourceName);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Datasource '{}' does not exist in datasource subsystem!", dataSourceName);
         }
-        logger.info("Datasource '{}' does not exist in datasource subsystem!", dataSourceName);
         return false;
     }
 
+    /**
+     * Creates the exception thrown when checking if a datasource exists in a subsystem defining no datasource.
+     * 
+     * @param dataSourceName the data source name
+     * @return the controller operation exception
+     */
+    private ControllerOperationException createUndefinedSubsystemException(final String dataSourceName) {
+        return new ControllerOperationException(
+            "A subsystem undefined response status recieved while checking if datasource '" + dataSourceName
+                + "' exists. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -418,47 +396,14 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
      */
     private void enableDataSource(final ControllerClientConfig controllerClientConfig, final String datasourceName,
         final String serverProfileName) throws ControllerOperationException {
-        final ModelNode request = new ModelNode();
-        request.get(ClientConstants.OP).set(ClientConstants.WRITE_ATTRIBUTE_OPERATION);
-        request.get(ClientConstants.NAME).set(ATTRIBUTE_ENABLED);
-        request.get(ClientConstants.VALUE).set(true);
-        if (StringUtils.isNotBlank(serverProfileName)) {
-            request.get(ClientConstants.OP_ADDR).add(ADDRESS_PROFILE, serverProfileName);
-        }
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_DATASOURCE, datasourceName);
-        ModelControllerClient client = createControllerClient(controllerClientConfig);
-        ModelNode response = null;
-        try {
+        final ModelNode request = DatasourceOperations.createEnableOperation(datasourceName, serverProfileName);
+        if (logger.isInfoEnabled()) {
             logger.info("Enabling datasource '{}' ...", datasourceName);
-            response = client.execute(new OperationBuilder(request).build());
-        } catch (IOException ioe) {
-            throw new ControllerOperationException(
-                "An error occurred while executing operation on JBoss controller to enable datasource '" + datasourceName
-                    + "'",
-                ioe);
-        } finally {
-            try {
-                client.close();
-            } catch (IOException ioe) {
-                logger.error(
-                    "An error occurred while closing JBoss Controller connection with host "
-                        + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort()
-                        + " during the process of enabling datasource '" + datasourceName + "'",
-                    ioe);
-            }
         }
-        if (!isOperationSuccess(response)) {
-            if (!response.isDefined()) {
-                throw new ControllerOperationException(
-                    "A subsystem undefined response status recieved while enabling datasource '" + datasourceName
-                        + "'. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
-            }
-            throw new ControllerOperationException("An error thrown from JBoss controller while enabling datasource:'"
-                + datasourceName + "'.\n" + response.get(ClientConstants.FAILURE_DESCRIPTION).asString());
-
+        executeRequest(controllerClientConfig, request, ACTION_ENABLE, datasourceName);
+        if (logger.isInfoEnabled()) {
+            logger.info("Datasource '{}' enabled successfully!", datasourceName);
         }
-        logger.info("Datasource '{}' enabled successfully!", datasourceName);
     }
 
     /**
@@ -492,38 +437,14 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
         request.get(GENERAL_PROPERTY_RECURSIVE).set(false);
         request.get(ClientConstants.OP_ADDR).add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
 
-        final ModelControllerClient controllerClient = createControllerClient(controllerClientConfig);
-        ModelNode response = null;
-        try {
-            response = controllerClient.execute(new OperationBuilder(request).build());
-        } catch (IOException ioe) {
-            throw new ControllerOperationException(
-                "An error occurred while executing operation on JBoss controller to get the datasources", ioe);
-        } finally {
-            try {
-                controllerClient.close();
-            } catch (IOException ioe) {
-                logger.error("An error occurred while closing JBoss Controller client connection with host "
-                    + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort()
-                    + " during the process of getting all the datasources", ioe);
-            }
-        }
-        if (!isOperationSuccess(response)) {
-            if (!response.isDefined()) {
-                throw new ControllerOperationException(
-                    "A subsystem undefined response status recieved while getting datasources. Most probably the "
-                        + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
-            }
-            throw new ControllerOperationException("An error thrown from JBoss controller while getting datasources.\n"
-                + response.get(ClientConstants.FAILURE_DESCRIPTION).asString());
-
-        }
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_DATASOURCES, null);
         final ModelNode datasources = response.get(ClientConstants.RESULT).get(ADDRESS_DATASOURCE);
         if (datasources.isDefined()) {
             if (datasourceStatus == DatasourceStatus.ALL) {
                 return datasources.asList();
             } else {
-                return getFilteredDataSources(controllerClientConfig, datasourceStatus, datasources.asList());
+                return getFilteredDataSources(controllerClientConfig, serverProfileName, datasourceStatus,
+                    datasources.asList());
             }
         } else {
             throw new ControllerOperationException(
@@ -536,21 +457,27 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
      * Gets the filtered data sources.
      * 
      * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
      * @param datasourceStatus the datasource status
      * @param datasourceList the datasource list
      * @return the filtered data sources
      * @throws ControllerOperationException the controller operation exception
      */
     private List<ModelNode> getFilteredDataSources(final ControllerClientConfig controllerClientConfig,
-        final DatasourceStatus datasourceStatus, final List<ModelNode> datasourceList) throws ControllerOperationException {
+        final String serverProfileName, final DatasourceStatus datasourceStatus, final List<ModelNode> datasourceList)
+        throws ControllerOperationException {
 
         List<ModelNode> datasources = null;
         if (datasourceList == null || datasourceList.isEmpty()) {
             return datasources;
         }
         datasources = new ArrayList<ModelNode>();
+        final Set<String> enabledDatasources = getCapabilities(controllerClientConfig).isWildcardReadSupported()
+            ? getEnabledDatasourceNames(controllerClientConfig, serverProfileName) : null;
         for (ModelNode datasource : datasourceList) {
-            final boolean enabled = isDatasourceEnabled(controllerClientConfig, "", datasource.asProperty().getName());
+            final String datasourceName = datasource.asProperty().getName();
+            final boolean enabled = enabledDatasources != null ? enabledDatasources.contains(datasourceName)
+                : isDatasourceEnabled(controllerClientConfig, serverProfileName, datasourceName);
             if (datasourceStatus == DatasourceStatus.ENABLED && enabled) {
                 datasources.add(datasource);
             } else if (datasourceStatus == DatasourceStatus.DISABLED && !enabled) {
@@ -560,6 +487,46 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
         return datasources;
     }
 
+    /**
+     * Gets the names of the enabled datasources of a server profile in a single wildcard read.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     * @return the enabled datasource names
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private Set<String> getEnabledDatasourceNames(final ControllerClientConfig controllerClientConfig,
+        final String serverProfileName) throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        request.get(ClientConstants.OP_ADDR).set(
+            DatasourceOperations.getDatasourceAddress(serverProfileName, ADDRESS_WILDCARD));
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_ENABLED);
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_DATASOURCES, null);
+        final Set<String> enabledDatasources = new HashSet<String>();
+        final ModelNode results = response.get(ClientConstants.RESULT);
+        if (results.isDefined()) {
+            for (final ModelNode result : results.asList()) {
+                if (isOperationSuccess(result) && result.get(ClientConstants.RESULT).asBoolean(false)) {
+                    enabledDatasources.add(getDatasourceName(result.get(ClientConstants.OP_ADDR)));
+                }
+            }
+        }
+        return enabledDatasources;
+    }
+
+    /**
+     * Gets the capabilities of a controller, probed on first use. A controller that cannot be probed is assumed to
+     * support the baseline operations only, until its probe is retried.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the controller capabilities
+     */
+    private ControllerCapabilities getCapabilities(final ControllerClientConfig controllerClientConfig) {
+        return capabilityProbe.getCapabilities(controllerClientConfig);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -578,33 +545,7 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
         request.get(ClientConstants.OP_ADDR).add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
         request.get(ClientConstants.OP_ADDR).add(ADDRESS_DATASOURCE, datasource);
         request.get(ClientConstants.NAME).set(ATTRIBUTE_ENABLED);
-        final ModelControllerClient controllerClient = createControllerClient(controllerClientConfig);
-        ModelNode response = null;
-        try {
-            response = controllerClient.execute(new OperationBuilder(request).build());
-        } catch (IOException ioe) {
-            throw new ControllerOperationException(
-                "An error occurred while executing operation on JBoss controller to get the datasource status", ioe);
-        } finally {
-            try {
-                controllerClient.close();
-            } catch (IOException ioe) {
-                logger.error("An error occurred while closing JBoss Controller client connection with host "
-                    + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort()
-                    + " during the process of getting the status of datasource '" + datasource + "'", ioe);
-            }
-        }
-        if (!isOperationSuccess(response)) {
-            if (!response.isDefined()) {
-                throw new ControllerOperationException(
-                    "A subsystem undefined response status recieved while getting the status of datasource '" + datasource
-                        + "'. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
-            }
-            throw new ControllerOperationException(
-                "An error thrown from JBoss controller while getting the status of datasource '" + datasource + "'.\n"
-                    + response.get(ClientConstants.FAILURE_DESCRIPTION).asString());
-
-        }
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_STATUS, datasource);
         return response.get(ClientConstants.RESULT).asBoolean();
     }
 
@@ -637,46 +578,14 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
     private void disableDataSource(final ControllerClientConfig controllerClientConfig, final String datasourceName,
         final String serverProfileName) throws ControllerOperationException {
 
-        final ModelNode request = new ModelNode();
-        request.get(ClientConstants.OP).set(OPERATION_DISABLE);
-        if (StringUtils.isNotBlank(serverProfileName)) {
-            request.get(ClientConstants.OP_ADDR).add(ADDRESS_PROFILE, serverProfileName);
-        }
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
-        request.get(ClientConstants.OP_ADDR).add(ADDRESS_DATASOURCE, datasourceName);
-        ModelControllerClient client = createControllerClient(controllerClientConfig);
-        ModelNode response = null;
-        try {
+        final ModelNode request = DatasourceOperations.createDisableOperation(datasourceName, serverProfileName);
+        if (logger.isInfoEnabled()) {
             logger.info("Disabling datasource '{}' ...", datasourceName);
-            response = client.execute(new OperationBuilder(request).build());
-        } catch (IOException ioe) {
-            throw new ControllerOperationException(
-                "An error occurred while executing operation on JBoss controller to disable datasource '" + datasourceName
-                    + "'",
-                ioe);
-        } finally {
-            try {
-                client.close();
-            } catch (IOException ioe) {
-                logger.error(
-                    "An error occurred while closing JBoss Controller connection with host "
-                        + controllerClientConfig.getHost() + " at port " + controllerClientConfig.getPort()
-                        + " during the process of disabling datasource '" + datasourceName + "'",
-                    ioe);
-            }
         }
-        if (!isOperationSuccess(response)) {
-            if (!response.isDefined()) {
-                throw new ControllerOperationException(
-                    "A subsystem undefined response status recieved while disabling datasource '" + datasourceName
-                        + "'. Most probably the " + DATASOURCE_SUBSYSTEM + " subsystem is not defined.");
-            }
-            throw new ControllerOperationException("An error thrown from JBoss controller while disabling datasource:'"
-                + datasourceName + "'.\n" + response.get(ClientConstants.FAILURE_DESCRIPTION).asString());
-
+        executeRequest(controllerClientConfig, request, ACTION_DISABLE, datasourceName);
+        if (logger.isInfoEnabled()) {
+            logger.info("Datasource '{}' disabled successfully!", datasourceName);
         }
-        logger.info("Datasource '{}' disabled successfully!", datasourceName);
-
     }
 
     /*
@@ -763,4 +672,614 @@ public class JBoss7ControllerOpeartionExecutor implements ControllerOperationExe
             removeDatasource(controllerClientConfig, datasourceName, serverProfileNames);
         }
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#createDatasourcesBestEffort(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.util.List, boolean, java.lang.String[])
+     */
+    @Override
+    public List<BulkOperationResult> createDatasourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+        final List<JndiDataSource> dataSources, final boolean enable, final String... serverProfileNames) {
+        if (dataSources == null || dataSources.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final String[] profiles = getBulkServerProfileNames(serverProfileNames);
+        final List<BulkOperationResult> results = new ArrayList<BulkOperationResult>(dataSources.size() * profiles.length);
+        for (final JndiDataSource dataSource : dataSources) {
+            for (final String serverProfileName : profiles) {
+                final long startTime = System.nanoTime();
+                try {
+                    createDatasource(controllerClientConfig, dataSource, enable, serverProfileName);
+                    results.add(createBulkResult(dataSource.getJndiName(), serverProfileName, startTime, null));
+                } catch (ControllerOperationException coe) {
+                    results.add(createBulkResult(dataSource.getJndiName(), serverProfileName, startTime, coe));
+                }
+            }
+        }
+        return results;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#removeDatasourcesBestEffort(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.util.List, java.lang.String[])
+     */
+    @Override
+    public List<BulkOperationResult> removeDatasourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+        final List<String> datasourceNames, final String... serverProfileNames) {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final String[] profiles = getBulkServerProfileNames(serverProfileNames);
+        final List<BulkOperationResult> results = new ArrayList<BulkOperationResult>(datasourceNames.size() * profiles.length);
+        for (final String datasourceName : datasourceNames) {
+            for (final String serverProfileName : profiles) {
+                final long startTime = System.nanoTime();
+                try {
+                    removeDatasource(controllerClientConfig, datasourceName, serverProfileName);
+                    results.add(createBulkResult(datasourceName, serverProfileName, startTime, null));
+                } catch (ControllerOperationException coe) {
+                    results.add(createBulkResult(datasourceName, serverProfileName, startTime, coe));
+                }
+            }
+        }
+        return results;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#enableDataSourcesBestEffort(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.util.List, java.lang.String[])
+     */
+    @Override
+    public List<BulkOperationResult> enableDataSourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+        final List<String> datasourceNames, final String... serverProfileNames) {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final String[] profiles = getBulkServerProfileNames(serverProfileNames);
+        final List<BulkOperationResult> results = new ArrayList<BulkOperationResult>(datasourceNames.size() * profiles.length);
+        for (final String datasourceName : datasourceNames) {
+            for (final String serverProfileName : profiles) {
+                final long startTime = System.nanoTime();
+                try {
+                    enableDataSource(controllerClientConfig, datasourceName, serverProfileName);
+                    results.add(createBulkResult(datasourceName, serverProfileName, startTime, null));
+                } catch (ControllerOperationException coe) {
+                    results.add(createBulkResult(datasourceName, serverProfileName, startTime, coe));
+                }
+            }
+        }
+        return results;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#disableDataSourcesBestEffort(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.util.List, java.lang.String[])
+     */
+    @Override
+    public List<BulkOperationResult> disableDataSourcesBestEffort(final ControllerClientConfig controllerClientConfig,
+        final List<String> datasourceNames, final String... serverProfileNames) {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final String[] profiles = getBulkServerProfileNames(serverProfileNames);
+        final List<BulkOperationResult> results = new ArrayList<BulkOperationResult>(datasourceNames.size() * profiles.length);
+        for (final String datasourceName : datasourceNames) {
+            for (final String serverProfileName : profiles) {
+                final long startTime = System.nanoTime();
+                try {
+                    disableDataSource(controllerClientConfig, datasourceName, serverProfileName);
+                    results.add(createBulkResult(datasourceName, serverProfileName, startTime, null));
+                } catch (ControllerOperationException coe) {
+                    results.add(createBulkResult(datasourceName, serverProfileName, startTime, coe));
+                }
+            }
+        }
+        return results;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#selectDatasources(uk.co.techblue.jboss.
+     * controller.vo.ControllerClientConfig, uk.co.techblue.jboss.controller.vo.DatasourceSelector, java.lang.String[])
+     */
+    @Override
+    public Map<String, List<String>> selectDatasources(final ControllerClientConfig controllerClientConfig,
+        final DatasourceSelector selector, final String... serverProfileNames) throws ControllerOperationException {
+        final String[] profiles = getBulkServerProfileNames(serverProfileNames);
+        final List<ModelNode> steps = new ArrayList<ModelNode>(profiles.length);
+        for (final String serverProfileName : profiles) {
+            final ModelNode step = new ModelNode();
+            step.get(ClientConstants.OP).set(
+                selector.isNameOnly() ? OPERATION_READ_CHILDREN_NAMES : OPERATION_READ_CHILDREN_RESOURCES);
+            step.get(ClientConstants.OP_ADDR).set(DatasourceOperations.getDatasourceSubsystemAddress(serverProfileName));
+            step.get(GENERAL_PROPERTY_CHILD_TYPE).set(ADDRESS_DATASOURCE);
+            steps.add(step);
+        }
+        final ModelNode request = steps.size() == 1 ? steps.get(0) : DatasourceOperations.createCompositeOperation(steps);
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_SELECT, null);
+        final Map<String, List<String>> selection = new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < profiles.length; i++) {
+            final ModelNode result = steps.size() == 1 ? response.get(ClientConstants.RESULT)
+                : response.get(ClientConstants.RESULT, RESPONSE_PROPERTY_STEP_PREFIX + (i + 1), ClientConstants.RESULT);
+            final List<String> datasourceNames = new ArrayList<String>();
+            if (result.isDefined()) {
+                if (selector.isNameOnly()) {
+                    for (final ModelNode datasourceName : result.asList()) {
+                        if (selector.matchesName(datasourceName.asString())) {
+                            datasourceNames.add(datasourceName.asString());
+                        }
+                    }
+                } else {
+                    for (final Property datasource : result.asPropertyList()) {
+                        if (selector.matches(datasource.getName(), datasource.getValue())) {
+                            datasourceNames.add(datasource.getName());
+                        }
+                    }
+                }
+            }
+            selection.put(profiles[i], datasourceNames);
+        }
+        return selection;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#enableSelectedDataSources(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, uk.co.techblue.jboss.controller.vo.DatasourceSelector, java.
+     * lang.String[])
+     */
+    @Override
+    public Map<String, List<String>> enableSelectedDataSources(final ControllerClientConfig controllerClientConfig,
+        final DatasourceSelector selector, final String... serverProfileNames) throws ControllerOperationException {
+        return updateSelectedDataSources(controllerClientConfig, selector, true, serverProfileNames);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#disableSelectedDataSources(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, uk.co.techblue.jboss.controller.vo.DatasourceSelector, java.
+     * lang.String[])
+     */
+    @Override
+    public Map<String, List<String>> disableSelectedDataSources(final ControllerClientConfig controllerClientConfig,
+        final DatasourceSelector selector, final String... serverProfileNames) throws ControllerOperationException {
+        return updateSelectedDataSources(controllerClientConfig, selector, false, serverProfileNames);
+    }
+
+    /**
+     * Enables or disables the datasources matching a selector in a single composite request.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param selector the datasource selector
+     * @param enable true to enable the datasources, false to disable them
+     * @param serverProfileNames the server profile names
+     * @return the updated datasource names by server profile name
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private Map<String, List<String>> updateSelectedDataSources(final ControllerClientConfig controllerClientConfig,
+        final DatasourceSelector selector, final boolean enable, final String... serverProfileNames)
+        throws ControllerOperationException {
+        final Map<String, List<String>> selection = selectDatasources(controllerClientConfig, selector, serverProfileNames);
+        final List<ModelNode> steps = new ArrayList<ModelNode>();
+        for (final Map.Entry<String, List<String>> profileSelection : selection.entrySet()) {
+            for (final String datasourceName : profileSelection.getValue()) {
+                steps.add(enable ? DatasourceOperations.createEnableOperation(datasourceName, profileSelection.getKey())
+                    : DatasourceOperations.createDisableOperation(datasourceName, profileSelection.getKey()));
+            }
+        }
+        if (steps.isEmpty()) {
+            if (logger.isInfoEnabled()) {
+                logger.info("No datasource matches {}", selector);
+            }
+            return selection;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("{} {} datasources matching {} ...", enable ? "Enabling" : "Disabling", steps.size(), selector);
+        }
+        executeRequest(controllerClientConfig, DatasourceOperations.createCompositeOperation(steps),
+            enable ? ACTION_ENABLE_SELECTED : ACTION_DISABLE_SELECTED, null);
+        if (logger.isInfoEnabled()) {
+            logger.info("{} datasources {} successfully!", steps.size(), enable ? "enabled" : "disabled");
+        }
+        return selection;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#updateConnectionProperties(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.lang.String, java.util.Properties, java.lang.String[])
+     */
+    @Override
+    public boolean updateConnectionProperties(final ControllerClientConfig controllerClientConfig,
+        final String datasourceName, final Properties connectionProperties, final String... serverProfileNames)
+        throws ControllerOperationException {
+        if (connectionProperties == null) {
+            throw new IllegalArgumentException("Connection properties cannot be null.");
+        }
+        final String[] profiles = getBulkServerProfileNames(serverProfileNames);
+        final List<ModelNode> reads = new ArrayList<ModelNode>(profiles.length);
+        for (final String serverProfileName : profiles) {
+            final ModelNode read = new ModelNode();
+            read.get(ClientConstants.OP).set(OPERATION_READ_CHILDREN_RESOURCES);
+            read.get(ClientConstants.OP_ADDR).set(DatasourceOperations.getDatasourceAddress(serverProfileName,
+                datasourceName));
+            read.get(GENERAL_PROPERTY_CHILD_TYPE).set(ADDRESS_CONNECTION_PROPERTIES);
+            reads.add(read);
+        }
+        final ModelNode response = executeRequest(controllerClientConfig, reads.size() == 1 ? reads.get(0)
+            : DatasourceOperations.createCompositeOperation(reads), ACTION_UPDATE_CONNECTION_PROPERTIES, datasourceName);
+
+        final List<ModelNode> steps = new ArrayList<ModelNode>();
+        for (int i = 0; i < profiles.length; i++) {
+            final ModelNode currentProperties = reads.size() == 1 ? response.get(ClientConstants.RESULT) : response.get(
+                ClientConstants.RESULT, RESPONSE_PROPERTY_STEP_PREFIX + (i + 1), ClientConstants.RESULT);
+            steps.addAll(DatasourceOperations.createConnectionPropertyUpdateSteps(
+                DatasourceOperations.getDatasourceAddress(profiles[i], datasourceName), currentProperties,
+                connectionProperties));
+        }
+        if (steps.isEmpty()) {
+            if (logger.isInfoEnabled()) {
+                logger.info("Connection properties of datasource '{}' are up to date", datasourceName);
+            }
+            return false;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Updating connection properties of datasource '{}' in {} steps ...", datasourceName, steps.size());
+        }
+        executeRequest(controllerClientConfig, DatasourceOperations.createCompositeOperation(steps),
+            ACTION_UPDATE_CONNECTION_PROPERTIES, datasourceName);
+        if (logger.isInfoEnabled()) {
+            logger.info("Connection properties of datasource '{}' updated successfully!", datasourceName);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the server profile names a best-effort bulk operation iterates over, an empty name standing for a standalone
+     * server.
+     * 
+     * @param serverProfileNames the server profile names
+     * @return the server profile names
+     */
+    private static String[] getBulkServerProfileNames(final String... serverProfileNames) {
+        if (serverProfileNames != null && serverProfileNames.length > 0) {
+            return serverProfileNames;
+        }
+        return new String[] { "" };
+    }
+
+    /**
+     * Creates the result of an item of a best-effort bulk operation.
+     * 
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name, empty for a standalone server
+     * @param startTime the start time of the item, as per {@link System#nanoTime()}
+     * @param failure the failure, null if the item succeeded
+     * @return the bulk operation result
+     */
+    private static BulkOperationResult createBulkResult(final String datasourceName, final String serverProfileName,
+        final long startTime, final ControllerOperationException failure) {
+        final long duration = System.nanoTime() - startTime;
+        final String profile = StringUtils.isNotBlank(serverProfileName) ? serverProfileName : null;
+        if (failure == null) {
+            return new BulkOperationResult(datasourceName, profile, Outcome.SUCCESS, null, null, false, duration);
+        }
+        final Outcome outcome = failure.getCause() != null ? Outcome.ERROR : Outcome.FAILED;
+        final String failureDescription = failure.getFailureDescription() != null ? failure.getFailureDescription()
+            : failure.getMessage();
+        return new BulkOperationResult(datasourceName, profile, outcome, failure.getFailureCode(), failureDescription,
+            failure.isRolledBack(), duration);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#getDomainDatasourceRuntime(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, uk.co.techblue.jboss.controller.ControllerOperationExecutor.
+     * DatasourceStatus)
+     */
+    @Override
+    public Map<ServerAddress, List<DatasourceRuntime>> getDomainDatasourceRuntime(
+        final ControllerClientConfig controllerClientConfig, final DatasourceStatus datasourceStatus)
+        throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_RESOURCE);
+        request.get(GENERAL_PROPERTY_RECURSIVE).set(true);
+        request.get(GENERAL_PROPERTY_INCLUDE_RUNTIME).set(true);
+        request.get(ClientConstants.OP_ADDR).set(getDomainDatasourceAddress(ADDRESS_WILDCARD));
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_DOMAIN_RUNTIME, null);
+        final Map<ServerAddress, List<DatasourceRuntime>> runtime = new LinkedHashMap<ServerAddress, List<DatasourceRuntime>>();
+        final ModelNode serverResults = response.get(ClientConstants.RESULT);
+        if (!serverResults.isDefined()) {
+            return runtime;
+        }
+        for (final ModelNode serverResult : serverResults.asList()) {
+            if (!isOperationSuccess(serverResult)) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Skipping datasource runtime of {} as the server failed to respond: {}",
+                        serverResult.get(ClientConstants.OP_ADDR), serverResult.get(ClientConstants.FAILURE_DESCRIPTION));
+                }
+                continue;
+            }
+            final ModelNode attributes = serverResult.get(ClientConstants.RESULT);
+            final boolean enabled = attributes.get(ATTRIBUTE_ENABLED).asBoolean(false);
+            if ((datasourceStatus == DatasourceStatus.ENABLED && !enabled)
+                || (datasourceStatus == DatasourceStatus.DISABLED && enabled)) {
+                continue;
+            }
+            final ServerAddress serverAddress = DatasourceOperations.getServerAddress(serverResult.get(ClientConstants.OP_ADDR));
+            List<DatasourceRuntime> serverDatasources = runtime.get(serverAddress);
+            if (serverDatasources == null) {
+                serverDatasources = new ArrayList<DatasourceRuntime>();
+                runtime.put(serverAddress, serverDatasources);
+            }
+            serverDatasources.add(new DatasourceRuntime(serverAddress, getDatasourceName(serverResult
+                .get(ClientConstants.OP_ADDR)), enabled, attributes, attributes.get(ADDRESS_STATISTICS,
+                ADDRESS_STATISTICS_POOL)));
+        }
+        return runtime;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#getDomainDatasourceStatus(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.lang.String)
+     */
+    @Override
+    public Map<ServerAddress, Boolean> getDomainDatasourceStatus(final ControllerClientConfig controllerClientConfig,
+        final String datasource) throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        request.get(ClientConstants.OP_ADDR).set(getDomainDatasourceAddress(datasource));
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_ENABLED);
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_DOMAIN_STATUS, datasource);
+        final Map<ServerAddress, Boolean> statuses = new LinkedHashMap<ServerAddress, Boolean>();
+        final ModelNode serverResults = response.get(ClientConstants.RESULT);
+        if (!serverResults.isDefined()) {
+            return statuses;
+        }
+        for (final ModelNode serverResult : serverResults.asList()) {
+            if (!isOperationSuccess(serverResult)) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Skipping status of datasource '{}' on {} as the server failed to respond: {}", datasource,
+                        serverResult.get(ClientConstants.OP_ADDR), serverResult.get(ClientConstants.FAILURE_DESCRIPTION));
+                }
+                continue;
+            }
+            statuses.put(DatasourceOperations.getServerAddress(serverResult.get(ClientConstants.OP_ADDR)),
+                serverResult.get(ClientConstants.RESULT).asBoolean());
+        }
+        return statuses;
+    }
+
+    /**
+     * Gets the address of a datasource on every running server of the domain.
+     * 
+     * @param datasourceName the datasource name or a wildcard
+     * @return the datasource address
+     */
+    private ModelNode getDomainDatasourceAddress(final String datasourceName) {
+        final ModelNode address = new ModelNode();
+        address.add(ADDRESS_HOST, ADDRESS_WILDCARD);
+        address.add(ADDRESS_SERVER, ADDRESS_WILDCARD);
+        address.add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM);
+        address.add(ADDRESS_DATASOURCE, datasourceName);
+        return address;
+    }
+
+    /**
+     * Gets the datasource name from the address of a datasource resource.
+     * 
+     * @param resourceAddress the resource address
+     * @return the datasource name
+     */
+    private String getDatasourceName(final ModelNode resourceAddress) {
+        for (final Property element : resourceAddress.asPropertyList()) {
+            if (ADDRESS_DATASOURCE.equals(element.getName())) {
+                return element.getValue().asString();
+            }
+        }
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#getDatasourceNames(uk.co.techblue.jboss.
+     * controller.vo.ControllerClientConfig, java.lang.String)
+     */
+    @Override
+    public List<String> getDatasourceNames(final ControllerClientConfig controllerClientConfig, final String serverProfileName)
+        throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_CHILDREN_NAMES);
+        request.get(ClientConstants.OP_ADDR).set(DatasourceOperations.getDatasourceSubsystemAddress(serverProfileName));
+        request.get(GENERAL_PROPERTY_CHILD_TYPE).set(ADDRESS_DATASOURCE);
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_NAMES, null);
+        final List<String> datasourceNames = new ArrayList<String>();
+        final ModelNode result = response.get(ClientConstants.RESULT);
+        if (result.isDefined()) {
+            for (final ModelNode datasourceName : result.asList()) {
+                datasourceNames.add(datasourceName.asString());
+            }
+        }
+        return datasourceNames;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#getDatasourceConfigurations(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.lang.String)
+     */
+    @Override
+    public Map<String, ModelNode> getDatasourceConfigurations(final ControllerClientConfig controllerClientConfig,
+        final String serverProfileName) throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_CHILDREN_RESOURCES);
+        request.get(ClientConstants.OP_ADDR).set(DatasourceOperations.getDatasourceSubsystemAddress(serverProfileName));
+        request.get(GENERAL_PROPERTY_CHILD_TYPE).set(ADDRESS_DATASOURCE);
+        request.get(GENERAL_PROPERTY_RECURSIVE).set(true);
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_CONFIGURATIONS, null);
+        final Map<String, ModelNode> configurations = new LinkedHashMap<String, ModelNode>();
+        final ModelNode result = response.get(ClientConstants.RESULT);
+        if (result.isDefined()) {
+            for (final Property datasource : result.asPropertyList()) {
+                configurations.put(datasource.getName(), datasource.getValue());
+            }
+        }
+        return configurations;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#getDatasourceConfigurations(uk.co.
+     * techblue.jboss.controller.vo.ControllerClientConfig, java.lang.String, java.util.Collection)
+     */
+    @Override
+    public Map<String, ModelNode> getDatasourceConfigurations(final ControllerClientConfig controllerClientConfig,
+        final String serverProfileName, final Collection<String> datasourceNames) throws ControllerOperationException {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final List<String> orderedNames = new ArrayList<String>(datasourceNames);
+        final List<ModelNode> steps = new ArrayList<ModelNode>();
+        for (final String datasourceName : orderedNames) {
+            final ModelNode step = new ModelNode();
+            step.get(ClientConstants.OP).set(OPERATION_READ_RESOURCE);
+            step.get(ClientConstants.OP_ADDR).set(
+                DatasourceOperations.getDatasourceAddress(serverProfileName, datasourceName));
+            step.get(GENERAL_PROPERTY_RECURSIVE).set(true);
+            steps.add(step);
+        }
+        final ModelNode request = DatasourceOperations.createCompositeOperation(steps);
+
+        final ModelNode response = executeRequest(controllerClientConfig, request, ACTION_GET_CONFIGURATIONS, null);
+        final Map<String, ModelNode> configurations = new LinkedHashMap<String, ModelNode>();
+        for (int i = 0; i < orderedNames.size(); i++) {
+            configurations.put(orderedNames.get(i),
+                response.get(ClientConstants.RESULT, RESPONSE_PROPERTY_STEP_PREFIX + (i + 1), ClientConstants.RESULT));
+        }
+        return configurations;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor#executeOperation(uk.co.techblue.jboss.
+     * controller.vo.ControllerClientConfig, org.jboss.dmr.ModelNode)
+     */
+    @Override
+    public ModelNode executeOperation(final ControllerClientConfig controllerClientConfig, final ModelNode operation)
+        throws ControllerOperationException {
+        return executeRequest(controllerClientConfig, operation, ACTION_EXECUTE, null).get(ClientConstants.RESULT);
+    }
+
+    /**
+     * Executes the request on the controller and verifies that it succeeded. Nothing is allocated for diagnostics unless
+     * the operation fails or the corresponding log level is enabled.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param request the request
+     * @param action the action being performed, used in error messages
+     * @param datasourceName the datasource concerned, null if the request does not concern a single datasource
+     * @return the operation response
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private ModelNode executeRequest(final ControllerClientConfig controllerClientConfig, final ModelNode request,
+        final String action, final String datasourceName) throws ControllerOperationException {
+        final DatasourceRequestValidator validator = requestValidator;
+        if (validator != null) {
+            final List<String> violations = validator.validate(controllerClientConfig, request);
+            if (!violations.isEmpty()) {
+                throw new ControllerOperationException("The request failed client-side validation while "
+                    + (datasourceName == null ? action : action + " '" + datasourceName + "'"), null, request.get(
+                    ClientConstants.OP).asString(), request.get(ClientConstants.OP_ADDR).clone(),
+                    controllerClientConfig.getHost(), controllerClientConfig.getPort(), datasourceName,
+                    String.join("; ", violations), false);
+            }
+        }
+        final ControllerClient controllerClient = createControllerClient(controllerClientConfig);
+        final ModelNode response;
+        try {
+            response = controllerClient.execute(request);
+        } catch (IOException ioe) {
+            throw createException(controllerClientConfig, request, null, action, datasourceName, ioe);
+        } finally {
+            try {
+                controllerClient.close();
+            } catch (IOException ioe) {
+                if (logger.isErrorEnabled()) {
+                    logger.error("An error occurred while closing JBoss Controller client connection with host {} at port {} "
+                        + "after {} '{}'", controllerClientConfig.getHost(), controllerClientConfig.getPort(), action,
+                        datasourceName, ioe);
+                }
+            }
+        }
+        if (!isOperationSuccess(response)) {
+            final ControllerOperationException coe = createException(controllerClientConfig, request, response, action,
+                datasourceName, null);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Operation '{}' failed on {}:{} while {} (rolled back: {})", coe.getOperation(),
+                    coe.getHost(), coe.getPort(), action, coe.isRolledBack());
+            }
+            throw coe;
+        }
+        return response;
+    }
+
+    /**
+     * Creates the exception describing a failed request.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param request the request
+     * @param response the response, null if the request could not be executed
+     * @param action the action being performed
+     * @param datasourceName the datasource concerned, null if the request does not concern a single datasource
+     * @param cause the cause, null if the controller reported the failure
+     * @return the controller operation exception
+     */
+    private static ControllerOperationException createException(final ControllerClientConfig controllerClientConfig,
+        final ModelNode request, final ModelNode response, final String action, final String datasourceName,
+        final Throwable cause) {
+        final String subject = datasourceName == null ? action : action + " '" + datasourceName + "'";
+        final String message;
+        String failureDescription = null;
+        boolean rolledBack = false;
+        if (response == null) {
+            message = "An error occurred on JBoss controller while " + subject;
+        } else if (!response.isDefined()) {
+            message = "An undefined response status recieved while " + subject + ". Most probably the "
+                + DATASOURCE_SUBSYSTEM + " subsystem is not defined.";
+        } else {
+            message = "An error thrown from JBoss controller while " + subject;
+            failureDescription = response.get(ClientConstants.FAILURE_DESCRIPTION).asString();
+            rolledBack = response.hasDefined(RESPONSE_PROPERTY_ROLLEDBACK)
+                && response.get(RESPONSE_PROPERTY_ROLLEDBACK).asBoolean();
+        }
+        final ModelNode address = request.hasDefined(ClientConstants.OP_ADDR) ? request.get(ClientConstants.OP_ADDR)
+            .clone() : null;
+        return new ControllerOperationException(message, cause, request.get(ClientConstants.OP).asString(), address,
+            controllerClientConfig.getHost(), controllerClientConfig.getPort(), datasourceName, failureDescription,
+            rolledBack);
+    }
 }
@@ -0,0 +1,478 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.batch;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.RESPONSE_PROPERTY_STEP_PREFIX;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Batches the datasource writes submitted one at a time by high-frequency callers. The writes are queued per controller
+ * client config instance, so that every item is sent with the credentials and transport it was submitted with. They
+ * are sent as one composite operation once the batch holds {@link #setMaxBatchSize(int) enough items} or its first
+ * item has waited for the {@link #setMaxDelay(long, TimeUnit) maximum delay}, so a burst of individual writes costs a
+ * handful of round trips.
+ * <p>
+ * Each submission returns a future completed with the outcome of its own item. As a composite is atomic, a failing
+ * item rolls the whole batch back, and the controller stops a composite at its first failing step. The items reported
+ * failed by the controller then fail, and the other items are split in two halves, each sent again as a composite and
+ * split again should it fail too. This bisection bounds the work of the controller: an item is sent again a number of
+ * times logarithmic in the batch size, instead of once per failing item ahead of it in the batch.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceWriteBatcher {
+
+    /** The default maximum number of items per batch. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    /** The default maximum delay of an item in milliseconds. */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 20;
+
+    /** The default number of threads sending the batches. */
+    private static final int SENDER_THREADS = 4;
+
+    /** The pattern of the keys of the failure description of a composite naming a failed step. */
+    private static final Pattern FAILED_STEP_PATTERN = Pattern.compile("Operation " + RESPONSE_PROPERTY_STEP_PREFIX
+        + "(\\d+)");
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(DatasourceWriteBatcher.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /** The scheduler sending the batches. */
+    private final ScheduledExecutorService scheduler;
+
+    /** The open batches by controller client config instance. */
+    private final Map<ControllerClientConfig, Batch> batches = new IdentityHashMap<ControllerClientConfig, Batch>();
+
+    /** The maximum number of items per batch. */
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /** The maximum delay of an item in milliseconds. */
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    /** Whether the batcher is shut down. */
+    private boolean shutdown;
+
+    /**
+     * Instantiates a new datasource write batcher.
+     * 
+     * @param operationExecutor the operation executor
+     */
+    public DatasourceWriteBatcher(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+        this.scheduler = Executors.newScheduledThreadPool(SENDER_THREADS, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "datasource-write-batcher-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sets the maximum number of items per batch. A batch reaching the size is sent at once.
+     * 
+     * @param maxBatchSize the max batch size, 50 by default
+     */
+    public void setMaxBatchSize(final int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the maximum time the first item of a batch waits for more items before the batch is sent.
+     * 
+     * @param maxDelay the max delay, 20 milliseconds by default
+     * @param unit the unit of the delay
+     */
+    public void setMaxDelay(final long maxDelay, final TimeUnit unit) {
+        this.maxDelayMillis = unit.toMillis(maxDelay);
+    }
+
+    /**
+     * Submits the creation of a datasource, with its connection properties, in a server profile.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param dataSource the data source
+     * @param enable whether to enable the datasource once added, as part of the same item
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @return the future outcome of the creation
+     */
+    public Future<ModelNode> createDatasource(final ControllerClientConfig controllerClientConfig,
+        final JndiDataSource dataSource, final boolean enable, final String serverProfileName) {
+        return submit(controllerClientConfig, DatasourceOperations.createAddOperation(dataSource, enable,
+            serverProfileName), dataSource.getJndiName());
+    }
+
+    /**
+     * Submits the removal of a datasource from a server profile.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @return the future outcome of the removal
+     */
+    public Future<ModelNode> removeDatasource(final ControllerClientConfig controllerClientConfig,
+        final String datasourceName, final String serverProfileName) {
+        return submit(controllerClientConfig, DatasourceOperations.createRemoveOperation(datasourceName,
+            serverProfileName), datasourceName);
+    }
+
+    /**
+     * Submits the enabling of a datasource in a server profile.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @return the future outcome of the enabling
+     */
+    public Future<ModelNode> enableDataSource(final ControllerClientConfig controllerClientConfig,
+        final String datasourceName, final String serverProfileName) {
+        return submit(controllerClientConfig, DatasourceOperations.createEnableOperation(datasourceName,
+            serverProfileName), datasourceName);
+    }
+
+    /**
+     * Submits the disabling of a datasource in a server profile.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @return the future outcome of the disabling
+     */
+    public Future<ModelNode> disableDataSource(final ControllerClientConfig controllerClientConfig,
+        final String datasourceName, final String serverProfileName) {
+        return submit(controllerClientConfig, DatasourceOperations.createDisableOperation(datasourceName,
+            serverProfileName), datasourceName);
+    }
+
+    /**
+     * Submits a write operation, possibly a composite executed atomically as one item.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param operation the operation
+     * @return the future result of the operation
+     */
+    public Future<ModelNode> submit(final ControllerClientConfig controllerClientConfig, final ModelNode operation) {
+        return submit(controllerClientConfig, operation, null);
+    }
+
+    /**
+     * Sends the open batches of every controller now.
+     */
+    public void flush() {
+        final List<Batch> readyBatches;
+        synchronized (this) {
+            readyBatches = new ArrayList<Batch>(batches.values());
+            batches.clear();
+        }
+        for (final Batch batch : readyBatches) {
+            batch.timer.cancel(false);
+            scheduleSend(batch);
+        }
+    }
+
+    /**
+     * Sends the open batches and stops accepting items. The items already submitted are still completed.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * Queues an item in the batch of its controller, sending the batch once full.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param operation the operation
+     * @param datasourceName the datasource concerned, null if unknown
+     * @return the future result of the operation
+     */
+    private Future<ModelNode> submit(final ControllerClientConfig controllerClientConfig, final ModelNode operation,
+        final String datasourceName) {
+        final Item item = new Item(operation, datasourceName);
+        final ControllerClientConfig key = controllerClientConfig;
+        Batch readyBatch = null;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("The datasource write batcher is shut down.");
+            }
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                final Batch newBatch = new Batch(controllerClientConfig);
+                newBatch.timer = scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (DatasourceWriteBatcher.this) {
+                            if (batches.get(key) != newBatch) {
+                                return;
+                            }
+                            batches.remove(key);
+                        }
+                        send(newBatch.controllerClientConfig, newBatch.items);
+                    }
+                }, maxDelayMillis, TimeUnit.MILLISECONDS);
+                batches.put(key, newBatch);
+                batch = newBatch;
+            }
+            batch.items.add(item);
+            if (batch.items.size() >= maxBatchSize) {
+                batches.remove(key);
+                readyBatch = batch;
+            }
+        }
+        if (readyBatch != null) {
+            readyBatch.timer.cancel(false);
+            scheduleSend(readyBatch);
+        }
+        return item.future;
+    }
+
+    /**
+     * Sends a batch in a sender thread.
+     * 
+     * @param batch the batch
+     */
+    private void scheduleSend(final Batch batch) {
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                send(batch.controllerClientConfig, batch.items);
+            }
+        });
+    }
+
+    /**
+     * Sends the items of a batch as a composite. Should the composite fail, the items reported failed fail, and the
+     * others are bisected, each half being sent the same way.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param items the items
+     */
+    private void send(final ControllerClientConfig controllerClientConfig, final List<Item> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        if (items.size() == 1) {
+            sendItem(controllerClientConfig, items.get(0));
+            return;
+        }
+        final List<ModelNode> steps = new ArrayList<ModelNode>(items.size());
+        for (final Item item : items) {
+            steps.add(item.operation);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Sending a batch of {} writes to controller host {}", steps.size(),
+                controllerClientConfig.getHost());
+        }
+        final List<Item> unresolved = new ArrayList<Item>(items.size());
+        try {
+            final ModelNode result = operationExecutor.executeOperation(controllerClientConfig,
+                DatasourceOperations.createCompositeOperation(steps));
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).future.complete(result.get(RESPONSE_PROPERTY_STEP_PREFIX + (i + 1),
+                    ClientConstants.RESULT));
+            }
+            return;
+        } catch (final ControllerOperationException coe) {
+            if (coe.getFailureDescription() == null) {
+                for (final Item item : items) {
+                    item.future.completeExceptionally(coe);
+                }
+                return;
+            }
+            final Map<Integer, String> failedSteps = getFailedSteps(coe.getFailureDescription());
+            for (int i = 0; i < items.size(); i++) {
+                final Item item = items.get(i);
+                final String failureDescription = failedSteps.get(i + 1);
+                if (failureDescription == null) {
+                    unresolved.add(item);
+                } else {
+                    item.future.completeExceptionally(new ControllerOperationException(
+                        "An error thrown from JBoss controller while executing a batched write", null, item.operation
+                            .get(ClientConstants.OP).asString(), item.operation.get(ClientConstants.OP_ADDR).clone(),
+                        controllerClientConfig.getHost(), controllerClientConfig.getPort(), item.datasourceName,
+                        failureDescription, true));
+                }
+            }
+        } catch (final RuntimeException re) {
+            for (final Item item : items) {
+                item.future.completeExceptionally(re);
+            }
+            return;
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("{} of {} batched writes failed, bisecting the {} others", items.size() - unresolved.size(),
+                items.size(), unresolved.size());
+        }
+        final int half = unresolved.size() / 2;
+        send(controllerClientConfig, unresolved.subList(0, half));
+        send(controllerClientConfig, unresolved.subList(half, unresolved.size()));
+    }
+
+    /**
+     * Sends a single item on its own.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param item the item
+     */
+    private void sendItem(final ControllerClientConfig controllerClientConfig, final Item item) {
+        try {
+            item.future.complete(operationExecutor.executeOperation(controllerClientConfig, item.operation));
+        } catch (final ControllerOperationException coe) {
+            item.future.completeExceptionally(coe);
+        } catch (final RuntimeException re) {
+            item.future.completeExceptionally(re);
+        }
+    }
+
+    /**
+     * Gets the steps named failed in the failure description of a composite, e.g.
+     * <code>{"WFLYCTL0062: Composite operation failed and was rolled back. Steps that failed:" =&gt;
+     * {"Operation step-2" =&gt; "WFLYCTL0212: Duplicate resource ..."}}</code>.
+     * 
+     * @param failureDescription the failure description, null if none
+     * @return the failure descriptions by step number, empty if none could be found
+     */
+    private static Map<Integer, String> getFailedSteps(final String failureDescription) {
+        if (failureDescription == null) {
+            return Collections.emptyMap();
+        }
+        final ModelNode description;
+        try {
+            description = ModelNode.fromString(failureDescription);
+        } catch (final IllegalArgumentException iae) {
+            return Collections.emptyMap();
+        }
+        final Map<Integer, String> failedSteps = new LinkedHashMap<Integer, String>();
+        addFailedSteps(failedSteps, description);
+        return failedSteps;
+    }
+
+    /**
+     * Adds the steps named failed at the first level of a failure description naming any.
+     * 
+     * @param failedSteps the failed steps to add to
+     * @param description the failure description
+     */
+    private static void addFailedSteps(final Map<Integer, String> failedSteps, final ModelNode description) {
+        if (description.getType() != ModelType.OBJECT) {
+            return;
+        }
+        final List<Property> properties = description.asPropertyList();
+        for (final Property property : properties) {
+            final Matcher matcher = FAILED_STEP_PATTERN.matcher(property.getName());
+            if (matcher.matches()) {
+                failedSteps.put(Integer.valueOf(matcher.group(1)), property.getValue().asString());
+            }
+        }
+        if (failedSteps.isEmpty()) {
+            for (final Property property : properties) {
+                addFailedSteps(failedSteps, property.getValue());
+            }
+        }
+    }
+
+    /**
+     * The open batch of a controller.
+     */
+    private static class Batch {
+
+        /** The controller client config of the items. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The items. */
+        private final List<Item> items = new ArrayList<Item>();
+
+        /** The timer sending the batch after the maximum delay. */
+        private ScheduledFuture<?> timer;
+
+        /**
+         * Instantiates a new batch.
+         * 
+         * @param controllerClientConfig the controller client config
+         */
+        private Batch(final ControllerClientConfig controllerClientConfig) {
+            this.controllerClientConfig = controllerClientConfig;
+        }
+    }
+
+    /**
+     * A write submitted to the batcher.
+     */
+    private static class Item {
+
+        /** The operation. */
+        private final ModelNode operation;
+
+        /** The datasource concerned, null if unknown. */
+        private final String datasourceName;
+
+        /** The future result. */
+        private final CompletableFuture<ModelNode> future = new CompletableFuture<ModelNode>();
+
+        /**
+         * Instantiates a new item.
+         * 
+         * @param operation the operation
+         * @param datasourceName the datasource concerned
+         */
+        private Item(final ModelNode operation, final String datasourceName) {
+            this.operation = operation;
+            this.datasourceName = datasourceName;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.capability;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_LAUNCH_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_MANAGEMENT_MAJOR_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_MANAGEMENT_MICRO_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_MANAGEMENT_MINOR_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_PRODUCT_NAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_PRODUCT_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_ATTRIBUTES_ONLY;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_RESOURCE;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * Detects the {@link ControllerCapabilities} of controllers from the attributes of their root resource. Each
+ * controller host is probed once, with a single read, and its capabilities are cached for the JVM. A failed probe is
+ * cached too, for {@link #FAILURE_RETRY_INTERVAL_MILLIS}, so that an unreachable controller is not probed again, and
+ * its failure logged again, on every operation.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class CapabilityProbe {
+
+    /** How long a controller that could not be probed is not probed again, in milliseconds. */
+    public static final long FAILURE_RETRY_INTERVAL_MILLIS = 60000;
+
+    /** The capabilities by controller host and port. */
+    private static final ConcurrentMap<String, ControllerCapabilities> CAPABILITIES =
+        new ConcurrentHashMap<String, ControllerCapabilities>();
+
+    /** The failed probes by controller host and port. */
+    private static final ConcurrentMap<String, FailedProbe> FAILED_PROBES = new ConcurrentHashMap<String, FailedProbe>();
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(CapabilityProbe.class);
+
+    /** The operation executor reading the root resources. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /**
+     * Instantiates a new capability probe.
+     * 
+     * @param operationExecutor the operation executor reading the root resources
+     */
+    public CapabilityProbe(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Gets the capabilities of a controller, probing it on first use. A controller whose probe failed less than
+     * {@link #FAILURE_RETRY_INTERVAL_MILLIS} ago is not probed again: the failure is thrown again instead.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the controller capabilities
+     * @throws ControllerOperationException if the controller could not be probed
+     */
+    public ControllerCapabilities probe(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final String controller = controllerClientConfig.getHost() + ":" + controllerClientConfig.getPort();
+        ControllerCapabilities capabilities = CAPABILITIES.get(controller);
+        if (capabilities != null) {
+            return capabilities;
+        }
+        final FailedProbe failedProbe = FAILED_PROBES.get(controller);
+        if (failedProbe != null && failedProbe.retryTime - System.nanoTime() > 0) {
+            throw new ControllerOperationException("Controller " + controller + " could not be probed recently: "
+                + failedProbe.failure.getMessage(), failedProbe.failure);
+        }
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_RESOURCE);
+        request.get(ClientConstants.OP_ADDR).setEmptyList();
+        request.get(GENERAL_PROPERTY_ATTRIBUTES_ONLY).set(true);
+        final ModelNode root;
+        try {
+            root = operationExecutor.executeOperation(controllerClientConfig, request);
+        } catch (final ControllerOperationException coe) {
+            FAILED_PROBES.put(controller, new FailedProbe(coe, System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(FAILURE_RETRY_INTERVAL_MILLIS)));
+            if (logger.isWarnEnabled()) {
+                logger.warn("Could not probe controller {}, not probing it again for {} ms: {}", controller,
+                    FAILURE_RETRY_INTERVAL_MILLIS, coe.getMessage());
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Probe of controller {} failed", controller, coe);
+            }
+            throw coe;
+        }
+        FAILED_PROBES.remove(controller);
+        capabilities = new ControllerCapabilities(root.get(ATTRIBUTE_MANAGEMENT_MAJOR_VERSION).asInt(1),
+            root.get(ATTRIBUTE_MANAGEMENT_MINOR_VERSION).asInt(0), root.get(ATTRIBUTE_MANAGEMENT_MICRO_VERSION).asInt(0),
+            getString(root, ATTRIBUTE_PRODUCT_NAME), getString(root, ATTRIBUTE_PRODUCT_VERSION), getString(root,
+                ATTRIBUTE_LAUNCH_TYPE));
+        if (logger.isInfoEnabled()) {
+            logger.info("Probed controller {}: {}", controller, capabilities);
+        }
+        final ControllerCapabilities cachedCapabilities = CAPABILITIES.putIfAbsent(controller, capabilities);
+        return cachedCapabilities != null ? cachedCapabilities : capabilities;
+    }
+
+    /**
+     * Gets the capabilities of a controller like {@link #probe(ControllerClientConfig)}, assuming a controller that
+     * cannot be probed supports the {@link ControllerCapabilities#BASELINE baseline} operations only.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the controller capabilities, the baseline ones if the controller could not be probed
+     */
+    public ControllerCapabilities getCapabilities(final ControllerClientConfig controllerClientConfig) {
+        try {
+            return probe(controllerClientConfig);
+        } catch (final ControllerOperationException coe) {
+            return ControllerCapabilities.BASELINE;
+        }
+    }
+
+    /**
+     * Clears the cached capabilities and probe failures, e.g. after the controllers were upgraded.
+     */
+    public static void clearCache() {
+        CAPABILITIES.clear();
+        FAILED_PROBES.clear();
+    }
+
+    /**
+     * Gets a string attribute.
+     * 
+     * @param resource the resource
+     * @param attributeName the attribute name
+     * @return the attribute value, null if undefined
+     */
+    private static String getString(final ModelNode resource, final String attributeName) {
+        return resource.hasDefined(attributeName) ? resource.get(attributeName).asString() : null;
+    }
+
+    /**
+     * A failed probe, not retried before its retry time.
+     */
+    private static class FailedProbe {
+
+        /** The failure. */
+        private final ControllerOperationException failure;
+
+        /** The time the probe may be retried, as per {@link System#nanoTime()}. */
+        private final long retryTime;
+
+        /**
+         * Instantiates a new failed probe.
+         * 
+         * @param failure the failure
+         * @param retryTime the retry time
+         */
+        private FailedProbe(final ControllerOperationException failure, final long retryTime) {
+            this.failure = failure;
+            this.retryTime = retryTime;
+        }
+    }
+}
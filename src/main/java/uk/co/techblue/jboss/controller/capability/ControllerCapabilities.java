@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.capability;
+
+/**
+ * The management model version of a controller and the operations it supports, as detected by a
+ * {@link CapabilityProbe}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class ControllerCapabilities {
+
+    /** The capabilities assumed of a controller that could not be probed, those of the first AS 7 release. */
+    public static final ControllerCapabilities BASELINE = new ControllerCapabilities(1, 0, 0, null, null, null);
+
+    /** The management major version. */
+    private final int managementMajorVersion;
+
+    /** The management minor version. */
+    private final int managementMinorVersion;
+
+    /** The management micro version. */
+    private final int managementMicroVersion;
+
+    /** The product name. */
+    private final String productName;
+
+    /** The product version. */
+    private final String productVersion;
+
+    /** The launch type. */
+    private final String launchType;
+
+    /**
+     * Instantiates new controller capabilities.
+     * 
+     * @param managementMajorVersion the management major version
+     * @param managementMinorVersion the management minor version
+     * @param managementMicroVersion the management micro version
+     * @param productName the product name, null if unknown
+     * @param productVersion the product version, null if unknown
+     * @param launchType the launch type, e.g. DOMAIN or STANDALONE, null if unknown
+     */
+    public ControllerCapabilities(final int managementMajorVersion, final int managementMinorVersion,
+        final int managementMicroVersion, final String productName, final String productVersion, final String launchType) {
+        this.managementMajorVersion = managementMajorVersion;
+        this.managementMinorVersion = managementMinorVersion;
+        this.managementMicroVersion = managementMicroVersion;
+        this.productName = productName;
+        this.productVersion = productVersion;
+        this.launchType = launchType;
+    }
+
+    /**
+     * Gets the management major version.
+     * 
+     * @return the management major version
+     */
+    public int getManagementMajorVersion() {
+        return managementMajorVersion;
+    }
+
+    /**
+     * Gets the management minor version.
+     * 
+     * @return the management minor version
+     */
+    public int getManagementMinorVersion() {
+        return managementMinorVersion;
+    }
+
+    /**
+     * Gets the management micro version.
+     * 
+     * @return the management micro version
+     */
+    public int getManagementMicroVersion() {
+        return managementMicroVersion;
+    }
+
+    /**
+     * Gets the management version.
+     * 
+     * @return the management version, as major.minor.micro
+     */
+    public String getManagementVersion() {
+        return managementMajorVersion + "." + managementMinorVersion + "." + managementMicroVersion;
+    }
+
+    /**
+     * Gets the product name.
+     * 
+     * @return the product name, null if unknown
+     */
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * Gets the product version.
+     * 
+     * @return the product version, null if unknown
+     */
+    public String getProductVersion() {
+        return productVersion;
+    }
+
+    /**
+     * Gets the launch type.
+     * 
+     * @return the launch type, e.g. DOMAIN or STANDALONE, null if unknown
+     */
+    public String getLaunchType() {
+        return launchType;
+    }
+
+    /**
+     * Checks if the management version is at least the given version.
+     * 
+     * @param majorVersion the major version
+     * @param minorVersion the minor version
+     * @return true, if the management version is the same or later
+     */
+    public boolean isAtLeast(final int majorVersion, final int minorVersion) {
+        return managementMajorVersion > majorVersion
+            || (managementMajorVersion == majorVersion && managementMinorVersion >= minorVersion);
+    }
+
+    /**
+     * Checks if the controller lists the children of a resource by name with <code>read-children-names</code>, from AS
+     * 7.1 (management version 1.1).
+     * 
+     * @return true, if read-children-names is supported
+     */
+    public boolean isReadChildrenNamesSupported() {
+        return isAtLeast(1, 1);
+    }
+
+    /**
+     * Checks if the controller reads an attribute of every resource matching a wildcard address in one operation, from
+     * AS 7.1.2 (management version 1.2).
+     * 
+     * @return true, if wildcard reads are supported
+     */
+    public boolean isWildcardReadSupported() {
+        return isAtLeast(1, 2);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "ControllerCapabilities [managementVersion=" + getManagementVersion() + ", productName=" + productName
+            + ", productVersion=" + productVersion + ", launchType=" + launchType + "]";
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.admission.AdmissionController;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * The factory decorating the clients of another factory so that every operation is admitted by the
+ * {@link AdmissionController} of its controller host before being sent. The operations sent with a config without
+ * limits are admitted too, so that they count as in flight on a host another config limits. Executors only honour the
+ * admission limits of their configs when their factory is decorated by this one.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class AdmissionControlledClientFactory implements ControllerClientFactory {
+
+    /** The decorated factory. */
+    private final ControllerClientFactory controllerClientFactory;
+
+    /**
+     * Instantiates a new admission controlled client factory.
+     * 
+     * @param controllerClientFactory the factory creating the clients sending the requests
+     */
+    public AdmissionControlledClientFactory(final ControllerClientFactory controllerClientFactory) {
+        this.controllerClientFactory = controllerClientFactory;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final AdmissionController admissionController = AdmissionController.forController(controllerClientConfig);
+        return new AdmissionControlledClient(controllerClientFactory.createClient(controllerClientConfig),
+            admissionController, controllerClientConfig.getAdmissionTimeout());
+    }
+
+    /**
+     * The client waiting for admission before each operation.
+     */
+    private static class AdmissionControlledClient implements ControllerClient {
+
+        /** The client sending the requests. */
+        private final ControllerClient controllerClient;
+
+        /** The admission controller of the controller host. */
+        private final AdmissionController admissionController;
+
+        /** The admission timeout in milliseconds, 0 to wait indefinitely. */
+        private final long admissionTimeout;
+
+        /**
+         * Instantiates a new admission controlled client.
+         * 
+         * @param controllerClient the client sending the requests
+         * @param admissionController the admission controller
+         * @param admissionTimeout the admission timeout in milliseconds
+         */
+        private AdmissionControlledClient(final ControllerClient controllerClient,
+                final AdmissionController admissionController, final long admissionTimeout) {
+            this.controllerClient = controllerClient;
+            this.admissionController = admissionController;
+            this.admissionTimeout = admissionTimeout;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see uk.co.techblue.jboss.controller.client.ControllerClient#execute(org.jboss.dmr.ModelNode)
+         */
+        @Override
+        public ModelNode execute(final ModelNode operation) throws IOException {
+            try {
+                if (!admissionController.acquire(admissionTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Operation not admitted within " + admissionTimeout + " ms by "
+                        + admissionController);
+                }
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for admission by " + admissionController);
+            }
+            try {
+                return controllerClient.execute(operation);
+            } finally {
+                admissionController.release();
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.Closeable#close()
+         */
+        @Override
+        public void close() throws IOException {
+            controllerClient.close();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.READ_OPERATIONS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * The factory decorating the clients of another factory so that identical read operations executed concurrently on the
+ * same controller share a single management request. This takes the load off the controller when many threads read the
+ * same datasources at the same moment, e.g. on service startup.
+ * <p>
+ * The first thread executing a read sends it; the threads executing the same read with the same controller client
+ * config instance before its response arrives wait for that response, and each gets its own copy. Reads are only shared
+ * between clients of the same config instance, so that they are always sent with the same credentials, SSL context and
+ * transport. A client only connects to the
+ * controller when it sends a request itself, so waiting threads never open a connection. Reads are read-resource,
+ * read-attribute, read-children-names and read-children-resources operations, and composites of them only; any other
+ * operation is sent as is. Reads are only shared while in flight: nothing is cached once the response arrived.
+ * <p>
+ * Sharing reads weakens read-your-writes: a thread reading right after its own write may get the response of a read
+ * that another thread sent before the write completed. This factory is therefore not used by default; only decorate
+ * the factory of an executor with it when the callers can tolerate such stale reads.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class CoalescingControllerClientFactory implements ControllerClientFactory {
+
+    /** The decorated factory. */
+    private final ControllerClientFactory controllerClientFactory;
+
+    /** The reads in flight by key. */
+    private final ConcurrentMap<ReadKey, InFlightRead> inFlightReads = new ConcurrentHashMap<ReadKey, InFlightRead>();
+
+    /**
+     * Instantiates a new coalescing controller client factory.
+     * 
+     * @param controllerClientFactory the factory creating the clients sending the requests
+     */
+    public CoalescingControllerClientFactory(final ControllerClientFactory controllerClientFactory) {
+        this.controllerClientFactory = controllerClientFactory;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        return new CoalescingControllerClient(controllerClientConfig);
+    }
+
+    /**
+     * Checks if an operation only reads the management model.
+     * 
+     * @param operation the operation
+     * @return true, if the operation is a read
+     */
+    private static boolean isRead(final ModelNode operation) {
+        final String operationName = operation.get(ClientConstants.OP).asString();
+        if (READ_OPERATIONS.contains(operationName)) {
+            return true;
+        }
+        if (!ClientConstants.COMPOSITE.equals(operationName) || !operation.hasDefined(ClientConstants.STEPS)) {
+            return false;
+        }
+        for (final ModelNode step : operation.get(ClientConstants.STEPS).asList()) {
+            if (!isRead(step)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The client sharing the reads in flight, and connecting to the controller on its first own request.
+     */
+    private class CoalescingControllerClient implements ControllerClient {
+
+        /** The controller client config. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The client sending the requests, null until the first request is sent. */
+        private ControllerClient controllerClient;
+
+        /**
+         * Instantiates a new coalescing controller client.
+         * 
+         * @param controllerClientConfig the controller client config
+         */
+        private CoalescingControllerClient(final ControllerClientConfig controllerClientConfig) {
+            this.controllerClientConfig = controllerClientConfig;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see uk.co.techblue.jboss.controller.client.ControllerClient#execute(org.jboss.dmr.ModelNode)
+         */
+        @Override
+        public ModelNode execute(final ModelNode operation) throws IOException {
+            if (!isRead(operation)) {
+                return send(operation);
+            }
+            final ReadKey key = new ReadKey(controllerClientConfig, operation.toString());
+            final InFlightRead read = new InFlightRead();
+            final InFlightRead sharedRead = inFlightReads.putIfAbsent(key, read);
+            if (sharedRead != null) {
+                return sharedRead.await();
+            }
+            try {
+                final ModelNode response = send(operation);
+                read.response = response.clone();
+                return response;
+            } catch (final IOException ioe) {
+                read.failure = ioe;
+                throw ioe;
+            } finally {
+                inFlightReads.remove(key, read);
+                read.completion.countDown();
+            }
+        }
+
+        /**
+         * Sends an operation to the controller, connecting on the first call.
+         * 
+         * @param operation the operation
+         * @return the response
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private synchronized ModelNode send(final ModelNode operation) throws IOException {
+            if (controllerClient == null) {
+                try {
+                    controllerClient = controllerClientFactory.createClient(controllerClientConfig);
+                } catch (final ControllerOperationException coe) {
+                    throw new IOException(coe.getMessage(), coe);
+                }
+            }
+            return controllerClient.execute(operation);
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.Closeable#close()
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (controllerClient != null) {
+                controllerClient.close();
+                controllerClient = null;
+            }
+        }
+    }
+
+    /**
+     * The key of a read in flight: the operation sent with a given controller client config instance.
+     */
+    private static class ReadKey {
+
+        /** The controller client config, compared by identity. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The operation. */
+        private final String operation;
+
+        /**
+         * Instantiates a new read key.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param operation the operation
+         */
+        private ReadKey(final ControllerClientConfig controllerClientConfig, final String operation) {
+            this.controllerClientConfig = controllerClientConfig;
+            this.operation = operation;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(controllerClientConfig) + operation.hashCode();
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ReadKey)) {
+                return false;
+            }
+            final ReadKey other = (ReadKey) obj;
+            return controllerClientConfig == other.controllerClientConfig && operation.equals(other.operation);
+        }
+    }
+
+    /**
+     * A read in flight, completed with either a response or a failure.
+     */
+    private static class InFlightRead {
+
+        /** The completion of the read. */
+        private final CountDownLatch completion = new CountDownLatch(1);
+
+        /** The response, null if the read failed. */
+        private volatile ModelNode response;
+
+        /** The failure, null if the read succeeded. */
+        private volatile IOException failure;
+
+        /**
+         * Waits for the read to complete.
+         * 
+         * @return a copy of the response
+         * @throws IOException if the read failed
+         */
+        private ModelNode await() throws IOException {
+            try {
+                completion.await();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a shared read.");
+            }
+            if (response == null) {
+                throw new IOException("Shared read failed: " + (failure == null ? "unknown" : failure.getMessage()),
+                    failure);
+            }
+            return response.clone();
+        }
+    }
+}
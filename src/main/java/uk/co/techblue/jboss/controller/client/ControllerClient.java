@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A connection to a management model controller able to execute management operations.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public interface ControllerClient extends Closeable {
+
+    /**
+     * Executes a management operation and returns the raw response containing the outcome, result and failure
+     * description.
+     * 
+     * @param operation the management operation
+     * @return the operation response
+     * @throws IOException Signals that the operation could not be sent or the response could not be received.
+     */
+    ModelNode execute(ModelNode operation) throws IOException;
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * A factory creating {@link ControllerClient}s for a controller client configuration.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public interface ControllerClientFactory {
+
+    /**
+     * Creates a client connected to the configured controller. The caller closes the client.
+     * 
+     * @param controllerClientConfig the controller client configuration
+     * @return the controller client
+     * @throws ControllerOperationException if the client cannot be created
+     */
+    ControllerClient createClient(ControllerClientConfig controllerClientConfig) throws ControllerOperationException;
+}
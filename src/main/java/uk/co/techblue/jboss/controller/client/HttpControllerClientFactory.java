@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.HTTP_CONTENT_TYPE_DMR_ENCODED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.HTTP_MANAGEMENT_PATH;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * The factory creating clients sending the management operations as HTTP POST requests to the <code>/management</code>
+ * endpoint of the HTTP management interface, for controllers reachable through proxies that only pass plain HTTP or over
+ * links where setting up a remoting channel per request is costly.
+ * <p>
+ * Operations and responses are sent as base64-encoded binary DMR (<code>application/dmr-encoded</code>), which is more
+ * compact than JSON and keeps the value types, and gzip-compressed responses are accepted. Connections are kept alive
+ * and reused across requests and clients through the connection cache of {@link HttpURLConnection}, sized by the
+ * <code>http.maxConnections</code> system property. {@link HttpURLConnection} does not pipeline requests, so each
+ * request waits for the response to the previous one on the same connection; concurrent requests use separate
+ * connections.
+ * <p>
+ * The connection is secured with the SSL context of the {@link ControllerClientConfig} when set. The user is
+ * authenticated with HTTP Digest, or Basic when that is the only scheme offered. The challenge of the controller is
+ * cached per thread and config instance, so that only the first request of a thread with a config, or the first after
+ * the nonce expired, goes through an extra round trip. Each thread thus counts the requests made with its own nonce in
+ * order, and concurrent requests are never rejected as nonce replays. A stale nonce is answered with the new challenge,
+ * while credentials rejected for a fresh challenge fail with an authentication error.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class HttpControllerClientFactory implements ControllerClientFactory {
+
+    /** The charset of the credentials. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The pattern of a parameter of an authentication challenge. */
+    private static final Pattern CHALLENGE_PARAMETER = Pattern.compile("([\\w-]+)\\s*=\\s*(?:\"([^\"]*)\"|([^,\\s]*))");
+
+    /** The size of the buffer used to drain responses. */
+    private static final int BUFFER_SIZE = 4096;
+
+    /** The maximum number of challenges answered by a request, stale nonces included. */
+    private static final int MAX_CHALLENGES = 3;
+
+    /** The random source of the client nonces. */
+    private final SecureRandom random = new SecureRandom();
+
+    /** The cached authentication challenges of each thread per config instance. */
+    private final ThreadLocal<Map<ControllerClientConfig, AuthenticationChallenge>> challenges =
+        new ThreadLocal<Map<ControllerClientConfig, AuthenticationChallenge>>() {
+
+            @Override
+            protected Map<ControllerClientConfig, AuthenticationChallenge> initialValue() {
+                return new WeakHashMap<ControllerClientConfig, AuthenticationChallenge>();
+            }
+        };
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final String protocol = controllerClientConfig.getSslContext() != null ? "https" : "http";
+        try {
+            return new HttpControllerClient(controllerClientConfig, new URL(protocol, controllerClientConfig.getHost(),
+                controllerClientConfig.getPort(), HTTP_MANAGEMENT_PATH));
+        } catch (final MalformedURLException mue) {
+            throw new ControllerOperationException("Invalid management endpoint for host "
+                + controllerClientConfig.getHost(), mue);
+        }
+    }
+
+    /**
+     * The client posting operations to the HTTP management endpoint. Closing it leaves the connections in the cache.
+     */
+    private class HttpControllerClient implements ControllerClient {
+
+        /** The controller client config. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The management endpoint. */
+        private final URL managementUrl;
+
+        /**
+         * Instantiates a new HTTP controller client.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param managementUrl the management endpoint
+         */
+        private HttpControllerClient(final ControllerClientConfig controllerClientConfig, final URL managementUrl) {
+            this.controllerClientConfig = controllerClientConfig;
+            this.managementUrl = managementUrl;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see uk.co.techblue.jboss.controller.client.ControllerClient#execute(org.jboss.dmr.ModelNode)
+         */
+        @Override
+        public ModelNode execute(final ModelNode operation) throws IOException {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            operation.writeBase64(body);
+            final byte[] requestBody = body.toByteArray();
+            final Map<ControllerClientConfig, AuthenticationChallenge> threadChallenges = challenges.get();
+            int challengeCount = 0;
+            while (true) {
+                final AuthenticationChallenge sentChallenge = threadChallenges.get(controllerClientConfig);
+                final HttpURLConnection connection = openConnection(requestBody.length, sentChallenge);
+                final OutputStream output = connection.getOutputStream();
+                try {
+                    output.write(requestBody);
+                } finally {
+                    output.close();
+                }
+                final int status = connection.getResponseCode();
+                if (status != HttpURLConnection.HTTP_UNAUTHORIZED) {
+                    return readResponse(connection, status);
+                }
+                final AuthenticationChallenge challenge =
+                    AuthenticationChallenge.parse(getHeaders(connection, "WWW-Authenticate"));
+                drain(connection.getErrorStream());
+                if (controllerClientConfig.getUserName() == null) {
+                    throw new IOException("Authentication required by " + managementUrl + " but no user name is set.");
+                }
+                if (challenge == null) {
+                    throw new IOException("No supported authentication scheme offered by " + managementUrl);
+                }
+                if ((sentChallenge != null && challengeCount > 0 && !challenge.isStale())
+                    || challengeCount >= MAX_CHALLENGES) {
+                    threadChallenges.remove(controllerClientConfig);
+                    throw new IOException("Authentication of user '" + controllerClientConfig.getUserName()
+                        + "' rejected by " + managementUrl);
+                }
+                threadChallenges.put(controllerClientConfig, challenge);
+                challengeCount++;
+            }
+        }
+
+        /**
+         * Opens a connection to the management endpoint, authenticated with the given challenge if any.
+         * 
+         * @param contentLength the length of the request body
+         * @param challenge the challenge to answer, null to send the request unauthenticated
+         * @return the connection
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private HttpURLConnection openConnection(final int contentLength, final AuthenticationChallenge challenge)
+            throws IOException {
+            final HttpURLConnection connection = (HttpURLConnection) managementUrl.openConnection();
+            if (connection instanceof HttpsURLConnection && controllerClientConfig.getSslContext() != null) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(
+                    controllerClientConfig.getSslContext().getSocketFactory());
+            }
+            connection.setConnectTimeout(controllerClientConfig.getConnectionTimeOut());
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setInstanceFollowRedirects(false);
+            connection.setFixedLengthStreamingMode(contentLength);
+            connection.setRequestProperty("Content-Type", HTTP_CONTENT_TYPE_DMR_ENCODED);
+            connection.setRequestProperty("Accept", HTTP_CONTENT_TYPE_DMR_ENCODED);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (challenge != null && controllerClientConfig.getUserName() != null) {
+                connection.setRequestProperty("Authorization", challenge.createAuthorization(
+                    controllerClientConfig.getUserName(), controllerClientConfig.getPassword(), "POST",
+                    managementUrl.getPath(), createClientNonce()));
+            }
+            return connection;
+        }
+
+        /**
+         * Reads the response of the controller. Failed operations are answered with an error status and the failure
+         * description in the body, which is returned like a successful response.
+         * 
+         * @param connection the connection
+         * @param status the HTTP status
+         * @return the operation response
+         * @throws IOException if the response does not hold an operation response
+         */
+        private ModelNode readResponse(final HttpURLConnection connection, final int status) throws IOException {
+            InputStream input = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream()
+                : connection.getErrorStream();
+            if (input == null) {
+                throw new IOException("HTTP " + status + " from " + managementUrl);
+            }
+            try {
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    input = new GZIPInputStream(input);
+                }
+                final String contentType = String.valueOf(connection.getContentType()).toLowerCase(Locale.ENGLISH);
+                // the DMR decoders close the stream they read, which must stay open to be drained
+                final InputStream body = new FilterInputStream(input) {
+
+                    @Override
+                    public void close() {
+                        // closed once drained
+                    }
+                };
+                final ModelNode response;
+                if (contentType.startsWith(HTTP_CONTENT_TYPE_DMR_ENCODED)) {
+                    response = ModelNode.fromBase64(body);
+                } else if (contentType.startsWith("application/json")) {
+                    response = ModelNode.fromJSONStream(body);
+                } else {
+                    throw new IOException("HTTP " + status + " with unexpected content type " + contentType + " from "
+                        + managementUrl);
+                }
+                drain(input);
+                return response;
+            } finally {
+                input.close();
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.Closeable#close()
+         */
+        @Override
+        public void close() {
+            // the connections stay in the keep-alive cache of HttpURLConnection
+        }
+    }
+
+    /**
+     * Gets the values of a response header, whatever the case of its name in the response.
+     * 
+     * @param connection the connection
+     * @param name the header name
+     * @return the header values, null if the header is absent
+     */
+    private static List<String> getHeaders(final HttpURLConnection connection, final String name) {
+        for (final Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a client nonce for a Digest authorization.
+     * 
+     * @return the client nonce
+     */
+    private String createClientNonce() {
+        final byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        return toHex(nonce);
+    }
+
+    /**
+     * Reads a response body to its end, so that the connection can be reused.
+     * 
+     * @param input the response body, may be null
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void drain(final InputStream input) throws IOException {
+        if (input == null) {
+            return;
+        }
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (input.read(buffer) >= 0) {
+                continue;
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Encodes bytes as lower case hexadecimal.
+     * 
+     * @param bytes the bytes
+     * @return the hexadecimal string
+     */
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte value : bytes) {
+            hex.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * An authentication challenge of the controller, Digest with MD5 or Basic.
+     */
+    private static final class AuthenticationChallenge {
+
+        /** Whether the scheme is Basic rather than Digest. */
+        private final boolean basic;
+
+        /** The challenge parameters. */
+        private final Map<String, String> parameters;
+
+        /** The number of requests made with the nonce, by the thread the challenge is cached for. */
+        private int nonceCount;
+
+        /**
+         * Instantiates a new authentication challenge.
+         * 
+         * @param basic whether the scheme is Basic
+         * @param parameters the challenge parameters
+         */
+        private AuthenticationChallenge(final boolean basic, final Map<String, String> parameters) {
+            this.basic = basic;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Parses the challenges of a response, preferring Digest with MD5 to Basic.
+         * 
+         * @param headers the <code>WWW-Authenticate</code> headers
+         * @return the challenge, null if no supported scheme is offered
+         */
+        private static AuthenticationChallenge parse(final List<String> headers) {
+            if (headers == null) {
+                return null;
+            }
+            AuthenticationChallenge basicChallenge = null;
+            for (final String header : headers) {
+                final int schemeEnd = header.indexOf(' ');
+                final String scheme = schemeEnd < 0 ? header : header.substring(0, schemeEnd);
+                final Map<String, String> parameters = new HashMap<String, String>();
+                final Matcher matcher = CHALLENGE_PARAMETER.matcher(header);
+                while (matcher.find()) {
+                    parameters.put(matcher.group(1).toLowerCase(Locale.ENGLISH),
+                        matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+                }
+                if ("Digest".equalsIgnoreCase(scheme) && parameters.containsKey("nonce")
+                    && (!parameters.containsKey("algorithm") || "MD5".equalsIgnoreCase(parameters.get("algorithm")))) {
+                    return new AuthenticationChallenge(false, parameters);
+                }
+                if ("Basic".equalsIgnoreCase(scheme)) {
+                    basicChallenge = new AuthenticationChallenge(true, parameters);
+                }
+            }
+            return basicChallenge;
+        }
+
+        /**
+         * Checks if the challenge answers a request made with an expired nonce, the credentials being valid.
+         * 
+         * @return true, if the nonce is stale
+         */
+        private boolean isStale() {
+            return "true".equalsIgnoreCase(parameters.get("stale"));
+        }
+
+        /**
+         * Creates the <code>Authorization</code> header answering the challenge.
+         * 
+         * @param userName the user name
+         * @param password the password
+         * @param method the request method
+         * @param uri the request URI
+         * @param clientNonce the client nonce
+         * @return the authorization header value
+         */
+        private String createAuthorization(final String userName, final String password, final String method,
+                final String uri, final String clientNonce) {
+            final String secret = password == null ? "" : password;
+            if (basic) {
+                return "Basic " + Base64.getEncoder().encodeToString((userName + ":" + secret).getBytes(UTF_8));
+            }
+            final String realm = parameters.get("realm");
+            final String nonce = parameters.get("nonce");
+            final String qop = parameters.get("qop");
+            final String ha1 = md5(userName + ":" + realm + ":" + secret);
+            final String ha2 = md5(method + ":" + uri);
+            final StringBuilder authorization = new StringBuilder("Digest username=\"").append(userName)
+                .append("\", realm=\"").append(realm).append("\", nonce=\"").append(nonce).append("\", uri=\"")
+                .append(uri).append("\", algorithm=MD5");
+            if (qop != null && qop.toLowerCase(Locale.ENGLISH).contains("auth")) {
+                final String nc = String.format("%08x", ++nonceCount);
+                authorization.append(", qop=auth, nc=").append(nc).append(", cnonce=\"").append(clientNonce)
+                    .append("\", response=\"").append(md5(ha1 + ":" + nonce + ":" + nc + ":" + clientNonce + ":auth:" + ha2))
+                    .append('"');
+            } else {
+                authorization.append(", response=\"").append(md5(ha1 + ":" + nonce + ":" + ha2)).append('"');
+            }
+            if (parameters.containsKey("opaque")) {
+                authorization.append(", opaque=\"").append(parameters.get("opaque")).append('"');
+            }
+            return authorization.toString();
+        }
+
+        /**
+         * Hashes a value with MD5.
+         * 
+         * @param value the value
+         * @return the hexadecimal hash
+         */
+        private static String md5(final String value) {
+            try {
+                return toHex(MessageDigest.getInstance("MD5").digest(value.getBytes(UTF_8)));
+            } catch (final NoSuchAlgorithmException nsae) {
+                throw new IllegalStateException("MD5 is not available.", nsae);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.scheduler.LaneScheduler;
+import uk.co.techblue.jboss.controller.scheduler.OperationLane;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * The factory decorating the clients of another factory so that the operations sent to each controller host go
+ * through the {@link LaneScheduler} of the host, in the {@link OperationLane} they are
+ * {@link OperationLane#classify(ModelNode) classified} in. The health check reads then overtake the bulk provisioning
+ * writes queued on the same controller instead of waiting for them.
+ * <p>
+ * The operations beyond the dispatch slots of a host wait client-side, in their lanes, and an operation holds its slot
+ * until its response arrives. Long operations, such as pool flushes waiting out a blocking timeout, therefore hold
+ * slots for as long as they run. This factory is not used by default: decorate the factory of an executor with it, and
+ * size the dispatch slots for the longest operations sent, when bulk writes do delay interactive reads.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class PriorityLaneClientFactory implements ControllerClientFactory {
+
+    /** The default maximum operations dispatched at once to a controller host. */
+    public static final int DEFAULT_DISPATCH_SLOTS = 4;
+
+    /** The decorated factory. */
+    private final ControllerClientFactory controllerClientFactory;
+
+    /** The schedulers by host and port. */
+    private final ConcurrentMap<String, LaneScheduler> laneSchedulers = new ConcurrentHashMap<String, LaneScheduler>();
+
+    /** The weights of the lanes. */
+    private final Map<OperationLane, Integer> weights = new EnumMap<OperationLane, Integer>(OperationLane.class);
+
+    /** The maximum operations dispatched at once to a controller host. */
+    private volatile int dispatchSlots = DEFAULT_DISPATCH_SLOTS;
+
+    /**
+     * Instantiates a new priority lane client factory.
+     * 
+     * @param controllerClientFactory the factory creating the clients sending the requests
+     */
+    public PriorityLaneClientFactory(final ControllerClientFactory controllerClientFactory) {
+        this.controllerClientFactory = controllerClientFactory;
+    }
+
+    /**
+     * Sets the maximum operations dispatched at once to a controller host, the others waiting in their lanes. Applies
+     * to the hosts not yet connected to.
+     * 
+     * @param dispatchSlots the dispatch slots, 4 by default
+     */
+    public void setDispatchSlots(final int dispatchSlots) {
+        if (dispatchSlots < 1) {
+            throw new IllegalArgumentException("Dispatch slots must be at least 1.");
+        }
+        this.dispatchSlots = dispatchSlots;
+    }
+
+    /**
+     * Sets the weight of a lane, its share of the dispatches relative to the other lanes when all have operations
+     * waiting. Applies to the hosts not yet connected to.
+     * 
+     * @param lane the lane
+     * @param weight the weight, at least 1
+     */
+    public void setWeight(final OperationLane lane, final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Lane weight must be at least 1.");
+        }
+        synchronized (weights) {
+            weights.put(lane, weight);
+        }
+    }
+
+    /**
+     * Gets the scheduler of a controller host, creating it on first use.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the lane scheduler
+     */
+    public LaneScheduler getLaneScheduler(final ControllerClientConfig controllerClientConfig) {
+        final String controller = controllerClientConfig.getHost() + ":" + controllerClientConfig.getPort();
+        LaneScheduler laneScheduler = laneSchedulers.get(controller);
+        if (laneScheduler == null) {
+            final LaneScheduler newLaneScheduler;
+            synchronized (weights) {
+                newLaneScheduler = new LaneScheduler(dispatchSlots, weights);
+            }
+            laneScheduler = laneSchedulers.putIfAbsent(controller, newLaneScheduler);
+            if (laneScheduler == null) {
+                laneScheduler = newLaneScheduler;
+            }
+        }
+        return laneScheduler;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        return new PriorityLaneClient(controllerClientFactory.createClient(controllerClientConfig),
+            getLaneScheduler(controllerClientConfig));
+    }
+
+    /**
+     * The client waiting for its operations to be dispatched by the scheduler of the host.
+     */
+    private static class PriorityLaneClient implements ControllerClient {
+
+        /** The client sending the requests. */
+        private final ControllerClient controllerClient;
+
+        /** The scheduler of the controller host. */
+        private final LaneScheduler laneScheduler;
+
+        /**
+         * Instantiates a new priority lane client.
+         * 
+         * @param controllerClient the client sending the requests
+         * @param laneScheduler the lane scheduler
+         */
+        private PriorityLaneClient(final ControllerClient controllerClient, final LaneScheduler laneScheduler) {
+            this.controllerClient = controllerClient;
+            this.laneScheduler = laneScheduler;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see uk.co.techblue.jboss.controller.client.ControllerClient#execute(org.jboss.dmr.ModelNode)
+         */
+        @Override
+        public ModelNode execute(final ModelNode operation) throws IOException {
+            final OperationLane lane = OperationLane.classify(operation);
+            try {
+                laneScheduler.enter(lane);
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting in lane " + lane + " of " + laneScheduler);
+            }
+            try {
+                return controllerClient.execute(operation);
+            } finally {
+                laneScheduler.exit();
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.Closeable#close()
+         */
+        @Override
+        public void close() throws IOException {
+            controllerClient.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.REMOTING_PROTOCOL;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.jboss.as.controller.client.ModelControllerClient;
+import org.jboss.as.controller.client.ModelControllerClientConfiguration;
+import org.jboss.as.controller.client.OperationBuilder;
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.auth.AuthenticationCallbackHandler;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * The factory creating clients connected over the http-remoting protocol of the native management interface. The
+ * connection timeout, SSL context and SASL options of the {@link ControllerClientConfig} are honoured.
+ * <p>
+ * The authentication handler of a config is built once and reused by every client created for the same config instance,
+ * until the credentials of the config change or are {@link #releaseCredentials(ControllerClientConfig) released}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class RemotingControllerClientFactory implements ControllerClientFactory {
+
+    /** The authentication handlers per config instance. */
+    private final Map<ControllerClientConfig, AuthenticationCallbackHandler> authCallbackHandlers = Collections
+        .synchronizedMap(new WeakHashMap<ControllerClientConfig, AuthenticationCallbackHandler>());
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final ModelControllerClientConfiguration configuration = new ModelControllerClientConfiguration.Builder()
+            .setProtocol(REMOTING_PROTOCOL).setHostName(controllerClientConfig.getHost())
+            .setPort(controllerClientConfig.getPort()).setHandler(getAuthCallbackHandler(controllerClientConfig))
+            .setSslContext(controllerClientConfig.getSslContext())
+            .setConnectionTimeout(controllerClientConfig.getConnectionTimeOut())
+            .setSaslOptions(controllerClientConfig.getSaslOptions()).build();
+        return new RemotingControllerClient(ModelControllerClient.Factory.create(configuration));
+    }
+
+    /**
+     * Destroys the cached authentication handler of a config, clearing its password from memory. The next client created
+     * for the config builds a new handler.
+     * 
+     * @param controllerClientConfig the controller client config
+     */
+    public void releaseCredentials(final ControllerClientConfig controllerClientConfig) {
+        final AuthenticationCallbackHandler authCallbackHandler = authCallbackHandlers.remove(controllerClientConfig);
+        if (authCallbackHandler != null) {
+            authCallbackHandler.destroy();
+        }
+    }
+
+    /**
+     * Gets the authentication callback handler of a config, building it on first use or when the credentials changed.
+     * Clients still using a replaced handler keep it, so it is left to the garbage collector rather than destroyed.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the authentication callback handler
+     */
+    private CallbackHandler getAuthCallbackHandler(final ControllerClientConfig controllerClientConfig) {
+        final String userName = controllerClientConfig.getUserName();
+        final String password = controllerClientConfig.getPassword();
+        synchronized (authCallbackHandlers) {
+            AuthenticationCallbackHandler authCallbackHandler = authCallbackHandlers.get(controllerClientConfig);
+            if (authCallbackHandler == null || !authCallbackHandler.matches(userName, password)) {
+                authCallbackHandler = new AuthenticationCallbackHandler(userName, password);
+                authCallbackHandlers.put(controllerClientConfig, authCallbackHandler);
+            }
+            return authCallbackHandler;
+        }
+    }
+
+    /**
+     * The client adapting a {@link ModelControllerClient}.
+     */
+    private static class RemotingControllerClient implements ControllerClient {
+
+        /** The model controller client. */
+        private final ModelControllerClient modelControllerClient;
+
+        /**
+         * Instantiates a new remoting controller client.
+         * 
+         * @param modelControllerClient the model controller client
+         */
+        private RemotingControllerClient(final ModelControllerClient modelControllerClient) {
+            this.modelControllerClient = modelControllerClient;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see uk.co.techblue.jboss.controller.client.ControllerClient#execute(org.jboss.dmr.ModelNode)
+         */
+        @Override
+        public ModelNode execute(final ModelNode operation) throws IOException {
+            return modelControllerClient.execute(new OperationBuilder(operation).build());
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.Closeable#close()
+         */
+        @Override
+        public void close() throws IOException {
+            modelControllerClient.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig.Transport;
+
+/**
+ * The factory creating clients over the {@link ControllerClientConfig#getTransport() transport} chosen by each controller
+ * client config, so that controllers reached over remoting and over plain HTTP are managed by the same executor.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class TransportControllerClientFactory implements ControllerClientFactory {
+
+    /** The factory of the remoting clients. */
+    private final RemotingControllerClientFactory remotingClientFactory;
+
+    /** The factory of the HTTP clients. */
+    private final HttpControllerClientFactory httpClientFactory;
+
+    /**
+     * Instantiates a new transport controller client factory.
+     */
+    public TransportControllerClientFactory() {
+        this(new RemotingControllerClientFactory(), new HttpControllerClientFactory());
+    }
+
+    /**
+     * Instantiates a new transport controller client factory.
+     * 
+     * @param remotingClientFactory the factory of the remoting clients
+     * @param httpClientFactory the factory of the HTTP clients
+     */
+    public TransportControllerClientFactory(final RemotingControllerClientFactory remotingClientFactory,
+            final HttpControllerClientFactory httpClientFactory) {
+        this.remotingClientFactory = remotingClientFactory;
+        this.httpClientFactory = httpClientFactory;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        if (controllerClientConfig.getTransport() == Transport.HTTP) {
+            return httpClientFactory.createClient(controllerClientConfig);
+        }
+        return remotingClientFactory.createClient(controllerClientConfig);
+    }
+
+    /**
+     * Gets the factory of the remoting clients, e.g. to release the credentials of a config.
+     * 
+     * @return the remoting client factory
+     */
+    public RemotingControllerClientFactory getRemotingClientFactory() {
+        return remotingClientFactory;
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.diff;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PASSWORD;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+
+/**
+ * A difference in one attribute of a datasource defined on both sides of a {@link DatasourceDiff}. The attributes of
+ * child resources and complex attributes are identified by their dotted path, e.g.
+ * <code>connection-properties.url.value</code>. The values of passwords, i.e. of the paths having a
+ * <code>password</code> segment, are masked by {@link #toString()}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class AttributeChange {
+
+    /** The mask of the password values. */
+    private static final String SECRET_MASK = "********";
+
+    /**
+     * The Enum to denote the kinds of attribute changes from the source to the target.
+     */
+    public enum Type {
+
+        /** The attribute is only defined on the target. */
+        ADDED,
+
+        /** The attribute is only defined on the source. */
+        REMOVED,
+
+        /** The attribute is defined on both sides with different values. */
+        CHANGED
+    }
+
+    /** The attribute path. */
+    private final String path;
+
+    /** The change type. */
+    private final Type type;
+
+    /** The source value. */
+    private final ModelNode sourceValue;
+
+    /** The target value. */
+    private final ModelNode targetValue;
+
+    /**
+     * Instantiates a new attribute change.
+     * 
+     * @param path the attribute path
+     * @param type the change type
+     * @param sourceValue the source value, undefined if added
+     * @param targetValue the target value, undefined if removed
+     */
+    public AttributeChange(final String path, final Type type, final ModelNode sourceValue, final ModelNode targetValue) {
+        this.path = path;
+        this.type = type;
+        this.sourceValue = sourceValue;
+        this.targetValue = targetValue;
+    }
+
+    /**
+     * Gets the attribute path.
+     * 
+     * @return the path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the change type.
+     * 
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the source value.
+     * 
+     * @return the source value, undefined if added
+     */
+    public ModelNode getSourceValue() {
+        return sourceValue;
+    }
+
+    /**
+     * Gets the target value.
+     * 
+     * @return the target value, undefined if removed
+     */
+    public ModelNode getTargetValue() {
+        return targetValue;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        switch (type) {
+            case ADDED:
+                return "+ " + path + " = " + format(targetValue);
+            case REMOVED:
+                return "- " + path + " = " + format(sourceValue);
+            default:
+                return "~ " + path + ": " + format(sourceValue) + " -> " + format(targetValue);
+        }
+    }
+
+    /**
+     * Formats a value of the attribute, masking passwords.
+     * 
+     * @param value the value
+     * @return the formatted value
+     */
+    private String format(final ModelNode value) {
+        for (final String segment : path.split("\\.")) {
+            if (DS_PROPERTY_PASSWORD.equals(segment)) {
+                return SECRET_MASK;
+            }
+        }
+        return value.getType() == ModelType.OBJECT ? maskSecrets(value).asString() : value.asString();
+    }
+
+    /**
+     * Returns a copy of an object value with the passwords it holds masked, at any depth.
+     * 
+     * @param value the object value
+     * @return the masked value
+     */
+    private static ModelNode maskSecrets(final ModelNode value) {
+        final ModelNode masked = new ModelNode();
+        for (final String key : value.keys()) {
+            final ModelNode child = value.get(key);
+            if (DS_PROPERTY_PASSWORD.equals(key) && child.isDefined()) {
+                masked.get(key).set(SECRET_MASK);
+            } else {
+                masked.get(key).set(child.getType() == ModelType.OBJECT ? maskSecrets(child) : child);
+            }
+        }
+        return masked;
+    }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.diff;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The differences between the datasources of a source and a target server profile, e.g. staging and production: the
+ * datasources added and removed from the source to the target, and the attribute changes of the datasources defined
+ * on both sides.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceDiff {
+
+    /** The source, as host and profile. */
+    private final String source;
+
+    /** The target, as host and profile. */
+    private final String target;
+
+    /** The datasources only defined on the target. */
+    private final Map<String, ModelNode> added;
+
+    /** The datasources only defined on the source. */
+    private final Map<String, ModelNode> removed;
+
+    /** The attribute changes of the datasources defined on both sides. */
+    private final Map<String, List<AttributeChange>> changed;
+
+    /** The number of datasources identical on both sides. */
+    private final int unchangedCount;
+
+    /**
+     * Instantiates a new datasource diff.
+     * 
+     * @param source the source, as host and profile
+     * @param target the target, as host and profile
+     * @param added the configurations of the datasources only defined on the target
+     * @param removed the configurations of the datasources only defined on the source
+     * @param changed the attribute changes of the datasources defined on both sides
+     * @param unchangedCount the number of datasources identical on both sides
+     */
+    public DatasourceDiff(final String source, final String target, final Map<String, ModelNode> added,
+        final Map<String, ModelNode> removed, final Map<String, List<AttributeChange>> changed, final int unchangedCount) {
+        this.source = source;
+        this.target = target;
+        this.added = Collections.unmodifiableMap(added);
+        this.removed = Collections.unmodifiableMap(removed);
+        this.changed = Collections.unmodifiableMap(changed);
+        this.unchangedCount = unchangedCount;
+    }
+
+    /**
+     * Gets the source, as host and profile.
+     * 
+     * @return the source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Gets the target, as host and profile.
+     * 
+     * @return the target
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Gets the datasources only defined on the target.
+     * 
+     * @return the datasource configurations mapped by datasource name
+     */
+    public Map<String, ModelNode> getAdded() {
+        return added;
+    }
+
+    /**
+     * Gets the datasources only defined on the source.
+     * 
+     * @return the datasource configurations mapped by datasource name
+     */
+    public Map<String, ModelNode> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Gets the attribute changes of the datasources defined on both sides with different configurations.
+     * 
+     * @return the attribute changes mapped by datasource name
+     */
+    public Map<String, List<AttributeChange>> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Gets the number of datasources identical on both sides.
+     * 
+     * @return the unchanged count
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    /**
+     * Checks if both sides define the same datasources with the same configurations.
+     * 
+     * @return true, if there is no difference
+     */
+    public boolean isIdentical() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("Datasource diff ").append(source).append(" -> ").append(target)
+            .append(": ").append(added.size()).append(" added, ").append(removed.size()).append(" removed, ")
+            .append(changed.size()).append(" changed, ").append(unchangedCount).append(" unchanged");
+        for (final String datasourceName : added.keySet()) {
+            builder.append("\n+ ").append(datasourceName);
+        }
+        for (final String datasourceName : removed.keySet()) {
+            builder.append("\n- ").append(datasourceName);
+        }
+        for (final Map.Entry<String, List<AttributeChange>> datasource : changed.entrySet()) {
+            builder.append("\n~ ").append(datasource.getKey());
+            for (final AttributeChange change : datasource.getValue()) {
+                builder.append("\n    ").append(change);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.diff;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * The service to compare the datasources of two server profiles, typically of two environments such as staging and
+ * production.
+ * <p>
+ * Each side is fetched in a single read of its datasources subsystem. The configurations of the datasources defined on
+ * both sides are then compared as a whole, and only those that differ are walked to list their attribute changes.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceDiffService {
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(DatasourceDiffService.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /**
+     * Instantiates a new datasource diff service.
+     * 
+     * @param operationExecutor the operation executor
+     */
+    public DatasourceDiffService(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Compares the datasources of a source and a target server profile, possibly on different controllers.
+     * 
+     * @param sourceConfig the controller client config of the source
+     * @param sourceProfileName the source server profile name, null or blank for a standalone server
+     * @param targetConfig the controller client config of the target
+     * @param targetProfileName the target server profile name, null or blank for a standalone server
+     * @return the datasource diff from the source to the target
+     * @throws ControllerOperationException the controller operation exception
+     */
+    public DatasourceDiff compare(final ControllerClientConfig sourceConfig, final String sourceProfileName,
+        final ControllerClientConfig targetConfig, final String targetProfileName) throws ControllerOperationException {
+        final Map<String, ModelNode> sourceDatasources = operationExecutor.getDatasourceConfigurations(sourceConfig,
+            sourceProfileName);
+        final Map<String, ModelNode> targetDatasources = operationExecutor.getDatasourceConfigurations(targetConfig,
+            targetProfileName);
+        final DatasourceDiff diff = compare(getLabel(sourceConfig, sourceProfileName), sourceDatasources,
+            getLabel(targetConfig, targetProfileName), targetDatasources);
+        logger.info("Compared {} source and {} target datasources: {} added, {} removed, {} changed",
+            sourceDatasources.size(), targetDatasources.size(), diff.getAdded().size(), diff.getRemoved().size(),
+            diff.getChanged().size());
+        return diff;
+    }
+
+    /**
+     * Compares two sets of datasource configurations, as read by
+     * {@link ExtendedControllerOperationExecutor#getDatasourceConfigurations(ControllerClientConfig, String)} or held by a
+     * snapshot.
+     * 
+     * @param source the label of the source
+     * @param sourceDatasources the source datasource configurations mapped by datasource name
+     * @param target the label of the target
+     * @param targetDatasources the target datasource configurations mapped by datasource name
+     * @return the datasource diff from the source to the target
+     */
+    public static DatasourceDiff compare(final String source, final Map<String, ModelNode> sourceDatasources,
+        final String target, final Map<String, ModelNode> targetDatasources) {
+        final Map<String, ModelNode> added = new LinkedHashMap<String, ModelNode>();
+        final Map<String, List<AttributeChange>> changed = new LinkedHashMap<String, List<AttributeChange>>();
+        int unchangedCount = 0;
+        for (final Map.Entry<String, ModelNode> datasource : targetDatasources.entrySet()) {
+            final ModelNode sourceConfiguration = sourceDatasources.get(datasource.getKey());
+            if (sourceConfiguration == null) {
+                added.put(datasource.getKey(), datasource.getValue());
+                continue;
+            }
+            final ModelNode targetConfiguration = datasource.getValue();
+            if (sourceConfiguration.equals(targetConfiguration)) {
+                unchangedCount++;
+                continue;
+            }
+            final List<AttributeChange> changes = new ArrayList<AttributeChange>();
+            addChanges(changes, null, sourceConfiguration, targetConfiguration);
+            if (changes.isEmpty()) {
+                unchangedCount++;
+            } else {
+                changed.put(datasource.getKey(), changes);
+            }
+        }
+        final Map<String, ModelNode> removed = new LinkedHashMap<String, ModelNode>();
+        for (final Map.Entry<String, ModelNode> datasource : sourceDatasources.entrySet()) {
+            if (!targetDatasources.containsKey(datasource.getKey())) {
+                removed.put(datasource.getKey(), datasource.getValue());
+            }
+        }
+        return new DatasourceDiff(source, target, added, removed, changed, unchangedCount);
+    }
+
+    /**
+     * Adds the changes between two values, walking into the values that are objects on both sides.
+     * 
+     * @param changes the changes to add to
+     * @param path the path of the values, null for the datasource configurations
+     * @param sourceValue the source value
+     * @param targetValue the target value
+     */
+    private static void addChanges(final List<AttributeChange> changes, final String path, final ModelNode sourceValue,
+        final ModelNode targetValue) {
+        if (sourceValue.getType() != ModelType.OBJECT || targetValue.getType() != ModelType.OBJECT) {
+            if (!sourceValue.isDefined()) {
+                if (targetValue.isDefined()) {
+                    changes.add(new AttributeChange(path, AttributeChange.Type.ADDED, sourceValue, targetValue));
+                }
+            } else if (!targetValue.isDefined()) {
+                changes.add(new AttributeChange(path, AttributeChange.Type.REMOVED, sourceValue, targetValue));
+            } else if (!sourceValue.equals(targetValue)) {
+                changes.add(new AttributeChange(path, AttributeChange.Type.CHANGED, sourceValue, targetValue));
+            }
+            return;
+        }
+        final ModelNode undefined = new ModelNode();
+        for (final String key : sourceValue.keys()) {
+            addChanges(changes, getPath(path, key), sourceValue.get(key), targetValue.has(key) ? targetValue.get(key)
+                : undefined);
+        }
+        for (final String key : targetValue.keys()) {
+            if (!sourceValue.has(key)) {
+                addChanges(changes, getPath(path, key), undefined, targetValue.get(key));
+            }
+        }
+    }
+
+    /**
+     * Gets the path of a child value.
+     * 
+     * @param path the parent path, null for the datasource configurations
+     * @param key the key of the child value
+     * @return the child path
+     */
+    private static String getPath(final String path, final String key) {
+        return path == null ? key : path + "." + key;
+    }
+
+    /**
+     * Gets the label of a side of a comparison.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     * @return the label
+     */
+    private static String getLabel(final ControllerClientConfig controllerClientConfig, final String serverProfileName) {
+        return controllerClientConfig.getHost() + ":" + controllerClientConfig.getPort()
+            + (StringUtils.isBlank(serverProfileName) ? "" : "/" + serverProfileName);
+    }
+}
@@ -15,8 +15,17 @@
  ******************************************************************************/
 package uk.co.techblue.jboss.controller.exception;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.dmr.ModelNode;
+
 /**
  * The ControllerOperationException class.
+ * <p>
+ * Failures of operations executed on a controller carry the context of the failed operation: the operation name and
+ * address, the controller host and port, the datasource concerned, the failure description returned by the controller and
+ * whether the controller rolled the operation back. The context is appended to the message only when the message is read.
  * 
  * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
  */
@@ -25,6 +34,56 @@ public class ControllerOperationException extends Exception {
     /** The Constant serialVersionUID. */
     private static final long serialVersionUID = -1802603991955512461L;
 
+    /** The pattern of the message codes in failure descriptions, e.g. <code>WFLYCTL0212:</code>. */
+    private static final Pattern FAILURE_CODE_PATTERN = Pattern.compile("\\b([A-Z]{4,}[0-9]{4,}):");
+
+    /** The operation name. */
+    private final String operation;
+
+    /** The operation address. */
+    private final ModelNode address;
+
+    /** The controller host. */
+    private final String host;
+
+    /** The controller port. */
+    private final int port;
+
+    /** The datasource name. */
+    private final String datasourceName;
+
+    /** The failure description. */
+    private final String failureDescription;
+
+    /** Whether the operation was rolled back. */
+    private final boolean rolledBack;
+
+    /**
+     * Instantiates a new controller operation exception for a failed operation.
+     * 
+     * @param message the message
+     * @param cause the cause, null if the controller reported the failure
+     * @param operation the operation name
+     * @param address the operation address
+     * @param host the controller host
+     * @param port the controller port
+     * @param datasourceName the datasource name, null if the operation does not concern a single datasource
+     * @param failureDescription the failure description returned by the controller, null if none
+     * @param rolledBack whether the controller rolled the operation back
+     */
+    public ControllerOperationException(final String message, final Throwable cause, final String operation,
+            final ModelNode address, final String host, final int port, final String datasourceName,
+            final String failureDescription, final boolean rolledBack) {
+        super(message, cause);
+        this.operation = operation;
+        this.address = address;
+        this.host = host;
+        this.port = port;
+        this.datasourceName = datasourceName;
+        this.failureDescription = failureDescription;
+        this.rolledBack = rolledBack;
+    }
+
     /**
      * Instantiates a new controller operation exception.
      * 
@@ -32,7 +91,7 @@ public class ControllerOperationException extends Exception {
      * @param cause the cause
      */
     public ControllerOperationException(String message, Throwable cause) {
-        super(message, cause);
+        this(message, cause, null, null, null, 0, null, null, false);
     }
 
     /**
@@ -41,7 +100,7 @@ public class ControllerOperationException extends Exception {
      * @param message the message
      */
     public ControllerOperationException(String message) {
-        super(message);
+        this(message, null, null, null, null, 0, null, null, false);
     }
 
     /**
@@ -50,7 +109,117 @@ public class ControllerOperationException extends Exception {
      * @param cause the cause
      */
     public ControllerOperationException(Throwable cause) {
-        super(cause);
+        this(cause == null ? null : cause.toString(), cause, null, null, null, 0, null, null, false);
+    }
+
+    /**
+     * Gets the name of the failed operation.
+     * 
+     * @return the operation, null if unknown
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the address of the failed operation.
+     * 
+     * @return the address, null if unknown
+     */
+    public ModelNode getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets the controller host.
+     * 
+     * @return the host, null if unknown
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the controller port.
+     * 
+     * @return the port, 0 if unknown
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the name of the datasource concerned.
+     * 
+     * @return the datasource name, null if the operation does not concern a single datasource
+     */
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    /**
+     * Gets the failure description returned by the controller.
+     * 
+     * @return the failure description, null if the controller did not report one
+     */
+    public String getFailureDescription() {
+        return failureDescription;
+    }
+
+    /**
+     * Gets the code of the controller message describing the failure, e.g. <code>WFLYCTL0212</code> or
+     * <code>JBAS014803</code>. When the description nests the failures of composite steps, the innermost code is returned.
+     * 
+     * @return the failure code, null if the failure description carries no code
+     */
+    public String getFailureCode() {
+        if (failureDescription == null) {
+            return null;
+        }
+        final Matcher matcher = FAILURE_CODE_PATTERN.matcher(failureDescription);
+        String failureCode = null;
+        while (matcher.find()) {
+            failureCode = matcher.group(1);
+        }
+        return failureCode;
+    }
+
+    /**
+     * Checks whether the controller rolled the failed operation back.
+     * 
+     * @return true, if rolled back
+     */
+    public boolean isRolledBack() {
+        return rolledBack;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Throwable#getMessage()
+     */
+    @Override
+    public String getMessage() {
+        final String message = super.getMessage();
+        if (operation == null) {
+            return message;
+        }
+        final StringBuilder builder = new StringBuilder();
+        if (message != null) {
+            builder.append(message).append(' ');
+        }
+        builder.append("[operation=").append(operation);
+        if (address != null) {
+            builder.append(", address=").append(address.asString());
+        }
+        builder.append(", controller=").append(host).append(':').append(port);
+        if (datasourceName != null) {
+            builder.append(", datasource=").append(datasourceName);
+        }
+        builder.append(", rolled-back=").append(rolledBack).append(']');
+        if (failureDescription != null) {
+            builder.append('\n').append(failureDescription);
+        }
+        return builder.toString();
     }
 
 }
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.fleet;
+
+import uk.co.techblue.jboss.controller.ControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * A call made by a {@link FleetExecutor} on one server profile of one controller of a fleet.
+ * 
+ * @param <T> the type of the call result
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public interface FleetCall<T> {
+
+    /**
+     * Makes the call.
+     * 
+     * @param operationExecutor the operation executor
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name, null for a standalone server or a call not bound to a profile
+     * @return the call result
+     * @throws ControllerOperationException the controller operation exception
+     */
+    T call(ControllerOperationExecutor operationExecutor, ControllerClientConfig controllerClientConfig,
+            String serverProfileName) throws ControllerOperationException;
+}
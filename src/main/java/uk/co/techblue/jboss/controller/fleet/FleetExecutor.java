@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.fleet;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * Fans a {@link FleetCall} out to many controllers, and to many server profiles of each controller, concurrently.
+ * <p>
+ * On a Java runtime with virtual threads (Java 21 and later) every call runs on its own virtual thread, so thousands of
+ * blocking management calls are in flight at a time without sizing a thread pool for them. The virtual thread executor
+ * is looked up reflectively, so that the library keeps running on Java 8: on older runtimes, or when
+ * {@link #setVirtualThreads(boolean) disabled}, the calls run on a bounded pool of
+ * {@link #setPlatformThreads(int) platform threads} instead.
+ * <p>
+ * Either way, at most {@link #setMaxCallsPerController(int) max calls per controller} calls are in flight on any one
+ * controller, across all the fan-outs of this executor, so that a large fleet does not turn into a burst on a single
+ * domain controller. The calls over the limit wait in the queue of their controller, not on a thread: a call is only
+ * handed to a thread once its controller has a free slot, so the calls queued on a slow controller never hold the
+ * platform threads the calls on the other controllers could run on.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class FleetExecutor {
+
+    /** The default maximum number of calls in flight per controller. */
+    private static final int DEFAULT_MAX_CALLS_PER_CONTROLLER = 4;
+
+    /** The default number of platform threads when virtual threads are not used. */
+    private static final int DEFAULT_PLATFORM_THREADS = 64;
+
+    /** The factory method of the virtual thread executor, null if the runtime has no virtual threads. */
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(FleetExecutor.class);
+
+    /** The operation executor. */
+    private final ControllerOperationExecutor operationExecutor;
+
+    /** The call queues by controller. */
+    private final ConcurrentMap<String, ControllerQueue> controllerQueues =
+        new ConcurrentHashMap<String, ControllerQueue>();
+
+    /** The maximum number of calls in flight per controller. */
+    private volatile int maxCallsPerController = DEFAULT_MAX_CALLS_PER_CONTROLLER;
+
+    /** The number of platform threads when virtual threads are not used. */
+    private int platformThreads = DEFAULT_PLATFORM_THREADS;
+
+    /** Whether to use virtual threads when the runtime has them. */
+    private boolean virtualThreads = true;
+
+    /**
+     * Instantiates a new fleet executor.
+     * 
+     * @param operationExecutor the operation executor the calls are made with
+     */
+    public FleetExecutor(final ControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Checks if the Java runtime has virtual threads.
+     * 
+     * @return true, if virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    /**
+     * Sets the maximum number of calls in flight on any one controller. Defaults to 4. Controllers already called keep
+     * the limit they were first called with.
+     * 
+     * @param maxCallsPerController the max calls per controller
+     */
+    public void setMaxCallsPerController(final int maxCallsPerController) {
+        if (maxCallsPerController < 1) {
+            throw new IllegalArgumentException("Max calls per controller must be at least 1.");
+        }
+        this.maxCallsPerController = maxCallsPerController;
+    }
+
+    /**
+     * Sets the number of platform threads the calls run on when virtual threads are not used. Defaults to 64.
+     * 
+     * @param platformThreads the platform threads
+     */
+    public void setPlatformThreads(final int platformThreads) {
+        if (platformThreads < 1) {
+            throw new IllegalArgumentException("Platform threads must be at least 1.");
+        }
+        this.platformThreads = platformThreads;
+    }
+
+    /**
+     * Sets whether the calls run on virtual threads when the runtime has them. Defaults to true.
+     * 
+     * @param virtualThreads true to use virtual threads when available
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Makes a call on every controller, not bound to a server profile.
+     * 
+     * @param <T> the type of the call result
+     * @param controllerClientConfigs the controller client configs
+     * @param call the call
+     * @return the result per controller, in the order of the controllers
+     * @throws ControllerOperationException if interrupted
+     */
+    public <T> List<FleetResult<T>> execute(final Collection<ControllerClientConfig> controllerClientConfigs,
+            final FleetCall<T> call) throws ControllerOperationException {
+        final List<Target> targets = new ArrayList<Target>(controllerClientConfigs.size());
+        for (final ControllerClientConfig controllerClientConfig : controllerClientConfigs) {
+            targets.add(new Target(controllerClientConfig, null));
+        }
+        return execute(targets, call);
+    }
+
+    /**
+     * Makes a call on every server profile of every controller, each on its own thread.
+     * 
+     * @param <T> the type of the call result
+     * @param serverProfileNames the server profile names by controller client config
+     * @param call the call
+     * @return the result per controller and server profile, in the order of the controllers then of the profiles
+     * @throws ControllerOperationException if interrupted
+     */
+    public <T> List<FleetResult<T>> execute(final Map<ControllerClientConfig, ? extends Collection<String>> serverProfileNames,
+            final FleetCall<T> call) throws ControllerOperationException {
+        final List<Target> targets = new ArrayList<Target>();
+        for (final Map.Entry<ControllerClientConfig, ? extends Collection<String>> controller : serverProfileNames.entrySet()) {
+            for (final String serverProfileName : controller.getValue()) {
+                targets.add(new Target(controller.getKey(), serverProfileName));
+            }
+        }
+        return execute(targets, call);
+    }
+
+    /**
+     * Makes the call on every target and collects the results.
+     * 
+     * @param <T> the type of the call result
+     * @param targets the targets
+     * @param call the call
+     * @return the results, in the order of the targets
+     * @throws ControllerOperationException if interrupted
+     */
+    private <T> List<FleetResult<T>> execute(final List<Target> targets, final FleetCall<T> call)
+            throws ControllerOperationException {
+        if (targets.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final ExecutorService executorService = createExecutorService(targets.size());
+        final List<FleetResult<T>> results = new ArrayList<FleetResult<T>>(targets.size());
+        final List<FutureTask<FleetResult<T>>> tasks = new ArrayList<FutureTask<FleetResult<T>>>(targets.size());
+        try {
+            for (final Target target : targets) {
+                final FutureTask<FleetResult<T>> task = new FutureTask<FleetResult<T>>(new Callable<FleetResult<T>>() {
+
+                    @Override
+                    public FleetResult<T> call() {
+                        return makeCall(target, call);
+                    }
+                });
+                tasks.add(task);
+                getControllerQueue(target.controllerClientConfig).submit(task, executorService);
+            }
+            for (int index = 0; index < targets.size(); index++) {
+                try {
+                    results.add(tasks.get(index).get());
+                } catch (final ExecutionException ee) {
+                    final Target target = targets.get(index);
+                    results.add(new FleetResult<T>(target.controllerClientConfig, target.serverProfileName, null,
+                        new ControllerOperationException("Fleet call failed on " + target, ee.getCause()), 0));
+                }
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ControllerOperationException("Fleet calls interrupted.", ie);
+        } finally {
+            for (final FutureTask<FleetResult<T>> task : tasks) {
+                task.cancel(true);
+            }
+            executorService.shutdownNow();
+        }
+        if (logger.isInfoEnabled()) {
+            int failures = 0;
+            for (final FleetResult<T> result : results) {
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+            }
+            logger.info("Fleet calls completed on {} targets, {} failed", results.size(), failures);
+        }
+        return results;
+    }
+
+    /**
+     * Makes the call on a target.
+     * 
+     * @param <T> the type of the call result
+     * @param target the target
+     * @param call the call
+     * @return the result
+     */
+    private <T> FleetResult<T> makeCall(final Target target, final FleetCall<T> call) {
+        final long startTime = System.nanoTime();
+        try {
+            final T value = call.call(operationExecutor, target.controllerClientConfig, target.serverProfileName);
+            return new FleetResult<T>(target.controllerClientConfig, target.serverProfileName, value, null,
+                System.nanoTime() - startTime);
+        } catch (final ControllerOperationException coe) {
+            logger.debug("Fleet call failed on {}", target, coe);
+            return new FleetResult<T>(target.controllerClientConfig, target.serverProfileName, null, coe,
+                System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Gets the call queue of a controller, shared by all the fan-outs of this executor.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @return the controller queue
+     */
+    private ControllerQueue getControllerQueue(final ControllerClientConfig controllerClientConfig) {
+        final String controller = controllerClientConfig.getHost() + ":" + controllerClientConfig.getPort();
+        ControllerQueue queue = controllerQueues.get(controller);
+        if (queue == null) {
+            final ControllerQueue newQueue = new ControllerQueue(maxCallsPerController);
+            queue = controllerQueues.putIfAbsent(controller, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Creates the executor service running the calls: a thread per call if virtual threads are available and enabled,
+     * a bounded pool of platform threads otherwise.
+     * 
+     * @param callCount the number of calls
+     * @return the executor service
+     */
+    private ExecutorService createExecutorService(final int callCount) {
+        if (virtualThreads && VIRTUAL_THREAD_EXECUTOR_FACTORY != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+            } catch (final ReflectiveOperationException roe) {
+                logger.debug("Virtual threads unavailable, falling back to platform threads", roe);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.min(platformThreads, callCount), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "fleet-executor-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Finds the factory method of the virtual thread executor, which only exists from Java 21 on, or as a preview
+     * feature before that.
+     * 
+     * @return the factory method, null if the runtime has no usable virtual threads
+     */
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (final ReflectiveOperationException roe) {
+            return null;
+        }
+    }
+
+    /**
+     * The calls of a controller: those in flight, up to the maximum, and those waiting for one of them to complete.
+     */
+    private static class ControllerQueue {
+
+        /** The maximum number of calls in flight. */
+        private final int maxCalls;
+
+        /** The calls waiting for a slot, with the executor service of their fan-out. */
+        private final Queue<QueuedCall> waitingCalls = new ArrayDeque<QueuedCall>();
+
+        /** The number of calls in flight. */
+        private int runningCalls;
+
+        /**
+         * Instantiates a new controller queue.
+         * 
+         * @param maxCalls the max calls in flight
+         */
+        ControllerQueue(final int maxCalls) {
+            this.maxCalls = maxCalls;
+        }
+
+        /**
+         * Runs a call on the executor service of its fan-out once the controller has a free slot.
+         * 
+         * @param call the call
+         * @param executorService the executor service of the fan-out
+         */
+        void submit(final Runnable call, final ExecutorService executorService) {
+            synchronized (this) {
+                if (runningCalls >= maxCalls) {
+                    waitingCalls.add(new QueuedCall(call, executorService));
+                    return;
+                }
+                runningCalls++;
+            }
+            if (!dispatch(call, executorService)) {
+                next();
+            }
+        }
+
+        /**
+         * Hands a call holding a slot to the executor service of its fan-out, the slot passing on once it completes.
+         * 
+         * @param call the call
+         * @param executorService the executor service of the fan-out
+         * @return true, if dispatched; false, if the fan-out is over and its executor service shut down
+         */
+        private boolean dispatch(final Runnable call, final ExecutorService executorService) {
+            try {
+                executorService.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            call.run();
+                        } finally {
+                            next();
+                        }
+                    }
+                });
+                return true;
+            } catch (final RejectedExecutionException ree) {
+                return false;
+            }
+        }
+
+        /**
+         * Passes the slot of a completed call on to the next waiting call, or frees it if none is waiting.
+         */
+        private void next() {
+            while (true) {
+                final QueuedCall queuedCall;
+                synchronized (this) {
+                    queuedCall = waitingCalls.poll();
+                    if (queuedCall == null) {
+                        runningCalls--;
+                        return;
+                    }
+                }
+                if (dispatch(queuedCall.call, queuedCall.executorService)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A call waiting for a slot on its controller.
+     */
+    private static class QueuedCall {
+
+        /** The call. */
+        private final Runnable call;
+
+        /** The executor service of the fan-out of the call. */
+        private final ExecutorService executorService;
+
+        /**
+         * Instantiates a new queued call.
+         * 
+         * @param call the call
+         * @param executorService the executor service of the fan-out
+         */
+        QueuedCall(final Runnable call, final ExecutorService executorService) {
+            this.call = call;
+            this.executorService = executorService;
+        }
+    }
+
+    /**
+     * A server profile of a controller a call is made on.
+     */
+    private static class Target {
+
+        /** The controller client config. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The server profile name. */
+        private final String serverProfileName;
+
+        /**
+         * Instantiates a new target.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param serverProfileName the server profile name
+         */
+        Target(final ControllerClientConfig controllerClientConfig, final String serverProfileName) {
+            this.controllerClientConfig = controllerClientConfig;
+            this.serverProfileName = serverProfileName;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            final String controller = controllerClientConfig.getHost() + ":" + controllerClientConfig.getPort();
+            return serverProfileName == null ? controller : controller + "/" + serverProfileName;
+        }
+    }
+}
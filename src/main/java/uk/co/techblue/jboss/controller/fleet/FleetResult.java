@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.fleet;
+
+import java.util.concurrent.TimeUnit;
+
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * The result of a {@link FleetCall} on one server profile of one controller.
+ * 
+ * @param <T> the type of the call result
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class FleetResult<T> {
+
+    /** The controller client config. */
+    private final ControllerClientConfig controllerClientConfig;
+
+    /** The server profile name. */
+    private final String serverProfileName;
+
+    /** The value returned by the call. */
+    private final T value;
+
+    /** The failure of the call. */
+    private final ControllerOperationException failure;
+
+    /** The duration in nanoseconds, excluding the time waiting for the controller. */
+    private final long durationNanos;
+
+    /**
+     * Instantiates a new fleet result.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     * @param value the value returned by the call
+     * @param failure the failure of the call, null if the call succeeded
+     * @param durationNanos the duration in nanoseconds
+     */
+    public FleetResult(ControllerClientConfig controllerClientConfig, String serverProfileName, T value,
+            ControllerOperationException failure, long durationNanos) {
+        this.controllerClientConfig = controllerClientConfig;
+        this.serverProfileName = serverProfileName;
+        this.value = value;
+        this.failure = failure;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Gets the controller client config.
+     * 
+     * @return the controller client config
+     */
+    public ControllerClientConfig getControllerClientConfig() {
+        return controllerClientConfig;
+    }
+
+    /**
+     * Gets the server profile name.
+     * 
+     * @return the server profile name, null if the call was not bound to a profile
+     */
+    public String getServerProfileName() {
+        return serverProfileName;
+    }
+
+    /**
+     * Gets the value returned by the call.
+     * 
+     * @return the value, null if the call failed
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the failure of the call.
+     * 
+     * @return the failure, null if the call succeeded
+     */
+    public ControllerOperationException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Checks if the call succeeded.
+     * 
+     * @return true, if successful
+     */
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    /**
+     * Gets the duration of the call in milliseconds, excluding the time spent waiting for a slot on the controller.
+     * 
+     * @return the duration millis
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * Gets the duration of the call in nanoseconds, excluding the time spent waiting for a slot on the controller.
+     * 
+     * @return the duration nanos
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(controllerClientConfig.getHost()).append(':')
+            .append(controllerClientConfig.getPort());
+        if (serverProfileName != null) {
+            builder.append('/').append(serverProfileName);
+        }
+        builder.append(isSuccess() ? " SUCCESS" : " FAILED").append(" in ").append(getDurationMillis()).append(" ms");
+        return builder.toString();
+    }
+}
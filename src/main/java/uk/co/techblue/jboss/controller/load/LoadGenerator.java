@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.load.LoadProfile.LoadOperation;
+import uk.co.techblue.jboss.controller.load.LoadReport.OperationStatistics;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Drives a configurable mix of datasource operations against a controller through a {@link ControllerOperationExecutor}
+ * to size its throughput limits. The target can be a real controller or an in-memory stand-in.
+ * <p>
+ * A run starts {@link LoadProfile#getConcurrency() concurrency} workers that each issue one operation at a time. When a
+ * {@link LoadProfile#getOperationsPerSecond() rate} is set, the workers share a schedule of evenly spaced start times and
+ * the latency of an operation is measured from its scheduled start rather than from its actual start, so that a slow
+ * controller delaying later operations shows in the percentiles instead of silently lowering the offered load.
+ * <p>
+ * Enable, read and remove operations work on datasources created earlier in the same run; when none is available, a
+ * datasource is created instead.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class LoadGenerator {
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /** The operation executor. */
+    private final ControllerOperationExecutor operationExecutor;
+
+    /**
+     * Instantiates a new load generator.
+     * 
+     * @param operationExecutor the operation executor
+     */
+    public LoadGenerator(final ControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Runs a load test and reports the throughput, latency percentiles and error rates.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param loadProfile the load profile
+     * @return the load report
+     * @throws ControllerOperationException if the run is interrupted or a worker fails unexpectedly
+     */
+    public LoadReport run(final ControllerClientConfig controllerClientConfig, final LoadProfile loadProfile)
+            throws ControllerOperationException {
+        if (loadProfile.getDurationMillis() <= 0 && loadProfile.getMaxOperations() <= 0) {
+            throw new IllegalArgumentException("Either a duration or a maximum number of operations is required.");
+        }
+        final LoadRun loadRun = new LoadRun(controllerClientConfig, loadProfile);
+        final ExecutorService workers = Executors.newFixedThreadPool(loadProfile.getConcurrency(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "load-generator-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final List<WorkerRecorder> recorders = new ArrayList<WorkerRecorder>(loadProfile.getConcurrency());
+        final long startTime = System.nanoTime();
+        long elapsedNanos;
+        try {
+            final List<Future<WorkerRecorder>> futures = new ArrayList<Future<WorkerRecorder>>();
+            for (int count = 0; count < loadProfile.getConcurrency(); count++) {
+                futures.add(workers.submit(new Worker(loadRun, startTime)));
+            }
+            for (final Future<WorkerRecorder> future : futures) {
+                recorders.add(future.get());
+            }
+            elapsedNanos = System.nanoTime() - startTime;
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ControllerOperationException("Load test interrupted.", ie);
+        } catch (final ExecutionException ee) {
+            throw new ControllerOperationException("Load test worker failed.", ee.getCause());
+        } finally {
+            workers.shutdownNow();
+            if (loadProfile.isCleanup()) {
+                cleanup(loadRun);
+            }
+        }
+        return createReport(recorders, elapsedNanos);
+    }
+
+    /**
+     * Removes the datasources created by a run and still present.
+     * 
+     * @param loadRun the load run
+     */
+    private void cleanup(final LoadRun loadRun) {
+        final List<String> datasourceNames = new ArrayList<String>(loadRun.liveDatasources);
+        if (datasourceNames.isEmpty()) {
+            return;
+        }
+        try {
+            operationExecutor.removeDatasources(loadRun.controllerClientConfig, datasourceNames,
+                loadRun.loadProfile.getServerProfileName());
+        } catch (final ControllerOperationException coe) {
+            logger.warn("Error occurred while removing the {} datasources left by the load test.", datasourceNames.size(),
+                coe);
+        }
+    }
+
+    /**
+     * Merges the worker recordings into a report.
+     * 
+     * @param recorders the worker recorders
+     * @param elapsedNanos the elapsed time of the run in nanoseconds
+     * @return the load report
+     */
+    private static LoadReport createReport(final List<WorkerRecorder> recorders, final long elapsedNanos) {
+        final Map<LoadOperation, OperationStatistics> operationStatistics = new EnumMap<LoadOperation, OperationStatistics>(
+                LoadOperation.class);
+        final LatencyRecording total = new LatencyRecording();
+        for (final LoadOperation operation : LoadOperation.values()) {
+            final LatencyRecording merged = new LatencyRecording();
+            for (final WorkerRecorder recorder : recorders) {
+                merged.addAll(recorder.recordings[operation.ordinal()]);
+            }
+            if (merged.size > 0) {
+                operationStatistics.put(operation,
+                    new OperationStatistics(merged.toArray(), merged.errors, elapsedNanos));
+                total.addAll(merged);
+            }
+        }
+        return new LoadReport(elapsedNanos, new OperationStatistics(total.toArray(), total.errors, elapsedNanos),
+            operationStatistics);
+    }
+
+    /**
+     * The state shared by the workers of a run.
+     */
+    private static class LoadRun {
+
+        /** The controller client config. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The load profile. */
+        private final LoadProfile loadProfile;
+
+        /** The cumulative operation weights, indexed by operation ordinal. */
+        private final int[] cumulativeWeights = new int[LoadOperation.values().length];
+
+        /** The names of the datasources created and not yet removed. */
+        private final ConcurrentLinkedDeque<String> liveDatasources = new ConcurrentLinkedDeque<String>();
+
+        /** The datasource name sequence. */
+        private final AtomicInteger datasourceSequence = new AtomicInteger();
+
+        /** The number of operations claimed by the workers. */
+        private final AtomicLong claimedOperations = new AtomicLong();
+
+        /** The scheduled start of the next operation, when rate limited. */
+        private final AtomicLong nextStartTime = new AtomicLong();
+
+        /** The interval between two scheduled starts in nanoseconds, zero when not rate limited. */
+        private final long intervalNanos;
+
+        /**
+         * Instantiates a new load run.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param loadProfile the load profile
+         */
+        LoadRun(final ControllerClientConfig controllerClientConfig, final LoadProfile loadProfile) {
+            this.controllerClientConfig = controllerClientConfig;
+            this.loadProfile = loadProfile;
+            int totalWeight = 0;
+            for (final LoadOperation operation : LoadOperation.values()) {
+                totalWeight += loadProfile.getOperationWeight(operation);
+                cumulativeWeights[operation.ordinal()] = totalWeight;
+            }
+            if (totalWeight == 0) {
+                throw new IllegalArgumentException("At least one operation must have a positive weight.");
+            }
+            this.intervalNanos = loadProfile.getOperationsPerSecond() > 0 ? (long) (1e9 / loadProfile
+                .getOperationsPerSecond()) : 0;
+            nextStartTime.set(System.nanoTime());
+        }
+
+        /**
+         * Picks the next operation according to the weights.
+         * 
+         * @return the load operation
+         */
+        LoadOperation nextOperation() {
+            final int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            final LoadOperation[] operations = LoadOperation.values();
+            for (int index = 0; index < cumulativeWeights.length; index++) {
+                if (pick < cumulativeWeights[index]) {
+                    return operations[index];
+                }
+            }
+            return operations[operations.length - 1];
+        }
+
+        /**
+         * Creates the configuration of the next datasource.
+         * 
+         * @return the jndi data source
+         */
+        JndiDataSource nextDatasource() {
+            return new JndiDataSource(loadProfile.getDatasourcePrefix() + datasourceSequence.incrementAndGet(),
+                loadProfile.getConnectionURL(), loadProfile.getDriverName(), loadProfile.getUserName(),
+                loadProfile.getPassword());
+        }
+    }
+
+    /**
+     * A worker issuing one operation at a time until the run ends.
+     */
+    private class Worker implements Callable<WorkerRecorder> {
+
+        /** The load run. */
+        private final LoadRun loadRun;
+
+        /** The deadline of the run, as per {@link System#nanoTime()}. */
+        private final long deadline;
+
+        /**
+         * Instantiates a new worker.
+         * 
+         * @param loadRun the load run
+         * @param startTime the start time of the run, as per {@link System#nanoTime()}
+         */
+        Worker(final LoadRun loadRun, final long startTime) {
+            this.loadRun = loadRun;
+            final long durationMillis = loadRun.loadProfile.getDurationMillis();
+            this.deadline = durationMillis > 0 ? startTime + TimeUnit.MILLISECONDS.toNanos(durationMillis) : Long.MAX_VALUE;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public WorkerRecorder call() {
+            final WorkerRecorder recorder = new WorkerRecorder();
+            final long maxOperations = loadRun.loadProfile.getMaxOperations();
+            while (!Thread.currentThread().isInterrupted()) {
+                if (maxOperations > 0 && loadRun.claimedOperations.incrementAndGet() > maxOperations) {
+                    break;
+                }
+                final long scheduledStart;
+                if (loadRun.intervalNanos > 0) {
+                    scheduledStart = loadRun.nextStartTime.getAndAdd(loadRun.intervalNanos);
+                    if (scheduledStart - deadline >= 0) {
+                        break;
+                    }
+                    for (long wait = scheduledStart - System.nanoTime(); wait > 0; wait = scheduledStart - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    scheduledStart = System.nanoTime();
+                    if (scheduledStart - deadline >= 0) {
+                        break;
+                    }
+                }
+                LoadOperation operation = loadRun.nextOperation();
+                String datasourceName = null;
+                if (operation != LoadOperation.CREATE) {
+                    datasourceName = operation == LoadOperation.REMOVE ? loadRun.liveDatasources.pollFirst()
+                        : loadRun.liveDatasources.pollLast();
+                    if (datasourceName == null) {
+                        operation = LoadOperation.CREATE;
+                    }
+                }
+                final boolean success = issue(operation, datasourceName);
+                recorder.record(operation, System.nanoTime() - scheduledStart, success);
+            }
+            return recorder;
+        }
+
+        /**
+         * Issues an operation and returns the borrowed datasource name to the live datasources, if still present.
+         * 
+         * @param operation the operation
+         * @param datasourceName the borrowed datasource name, null for create
+         * @return true, if successful
+         */
+        private boolean issue(final LoadOperation operation, final String datasourceName) {
+            final ControllerClientConfig controllerClientConfig = loadRun.controllerClientConfig;
+            final String serverProfileName = loadRun.loadProfile.getServerProfileName();
+            try {
+                switch (operation) {
+                    case CREATE:
+                        final JndiDataSource dataSource = loadRun.nextDatasource();
+                        operationExecutor.createDatasource(controllerClientConfig, dataSource, false, serverProfileName);
+                        loadRun.liveDatasources.offerLast(dataSource.getJndiName());
+                        break;
+                    case ENABLE:
+                        operationExecutor.enableDataSource(controllerClientConfig, datasourceName, serverProfileName);
+                        loadRun.liveDatasources.offerLast(datasourceName);
+                        break;
+                    case READ:
+                        operationExecutor.isDatasourceEnabled(controllerClientConfig, serverProfileName, datasourceName);
+                        loadRun.liveDatasources.offerLast(datasourceName);
+                        break;
+                    case REMOVE:
+                        operationExecutor.removeDatasource(controllerClientConfig, datasourceName, serverProfileName);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unsupported load operation: " + operation);
+                }
+                return true;
+            } catch (final ControllerOperationException coe) {
+                logger.debug("Load test operation {} failed.", operation, coe);
+                if (datasourceName != null) {
+                    loadRun.liveDatasources.offerLast(datasourceName);
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The latencies recorded by a single worker, so that recording needs no synchronisation.
+     */
+    private static class WorkerRecorder {
+
+        /** The recordings, indexed by operation ordinal. */
+        private final LatencyRecording[] recordings = new LatencyRecording[LoadOperation.values().length];
+
+        /**
+         * Instantiates a new worker recorder.
+         */
+        WorkerRecorder() {
+            for (int index = 0; index < recordings.length; index++) {
+                recordings[index] = new LatencyRecording();
+            }
+        }
+
+        /**
+         * Records an operation.
+         * 
+         * @param operation the operation
+         * @param latencyNanos the latency in nanoseconds
+         * @param success whether the operation succeeded
+         */
+        void record(final LoadOperation operation, final long latencyNanos, final boolean success) {
+            recordings[operation.ordinal()].add(latencyNanos, success);
+        }
+    }
+
+    /**
+     * A growable array of latencies with an error count.
+     */
+    private static class LatencyRecording {
+
+        /** The latencies in nanoseconds. */
+        private long[] latencies = new long[1024];
+
+        /** The number of recorded latencies. */
+        private int size;
+
+        /** The number of failed operations. */
+        private long errors;
+
+        /**
+         * Adds a latency.
+         * 
+         * @param latencyNanos the latency in nanoseconds
+         * @param success whether the operation succeeded
+         */
+        void add(final long latencyNanos, final boolean success) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latencyNanos;
+            if (!success) {
+                errors++;
+            }
+        }
+
+        /**
+         * Adds all the latencies of another recording.
+         * 
+         * @param recording the recording
+         */
+        void addAll(final LatencyRecording recording) {
+            if (size + recording.size > latencies.length) {
+                latencies = Arrays.copyOf(latencies, Math.max(size + recording.size, latencies.length * 2));
+            }
+            System.arraycopy(recording.latencies, 0, latencies, size, recording.size);
+            size += recording.size;
+            errors += recording.errors;
+        }
+
+        /**
+         * Copies the recorded latencies.
+         * 
+         * @return the latencies
+         */
+        long[] toArray() {
+            return Arrays.copyOf(latencies, size);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The configuration of a load test run by the {@link LoadGenerator}: the operation mix, the request rate, the concurrency
+ * and the run length.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class LoadProfile {
+
+    /**
+     * The Enum to denote the operations a load test issues.
+     */
+    public enum LoadOperation {
+
+        /** Creates a new, disabled datasource. */
+        CREATE,
+
+        /** Enables an existing datasource. */
+        ENABLE,
+
+        /** Reads the status of an existing datasource. */
+        READ,
+
+        /** Removes an existing datasource. */
+        REMOVE
+    }
+
+    /** The operation weights. */
+    private final Map<LoadOperation, Integer> operationWeights = new EnumMap<LoadOperation, Integer>(LoadOperation.class);
+
+    /** The target rate in operations per second. */
+    private double operationsPerSecond;
+
+    /** The number of concurrent workers. */
+    private int concurrency = 1;
+
+    /** The run duration in milliseconds. */
+    private long durationMillis = 60000;
+
+    /** The maximum number of operations. */
+    private long maxOperations;
+
+    /** The server profile name. */
+    private String serverProfileName;
+
+    /** The prefix of the generated datasource names. */
+    private String datasourcePrefix = "LoadTestDS";
+
+    /** The connection url of the generated datasources. */
+    private String connectionURL = "jdbc:h2:mem:loadtest";
+
+    /** The driver name of the generated datasources. */
+    private String driverName = "h2";
+
+    /** The user name of the generated datasources. */
+    private String userName = "sa";
+
+    /** The password of the generated datasources. */
+    private String password = "sa";
+
+    /** Whether the datasources left over are removed after the run. */
+    private boolean cleanup = true;
+
+    /**
+     * Instantiates a new load profile with an equal mix of all operations.
+     */
+    public LoadProfile() {
+        for (final LoadOperation operation : LoadOperation.values()) {
+            operationWeights.put(operation, 1);
+        }
+    }
+
+    /**
+     * Gets the weight of an operation in the mix.
+     * 
+     * @param operation the operation
+     * @return the weight
+     */
+    public int getOperationWeight(final LoadOperation operation) {
+        final Integer weight = operationWeights.get(operation);
+        return weight == null ? 0 : weight;
+    }
+
+    /**
+     * Sets the weight of an operation in the mix. An operation is picked with the probability of its weight divided by the
+     * sum of all weights. Operations needing an existing datasource create one when none is available.
+     * 
+     * @param operation the operation
+     * @param weight the weight, zero to exclude the operation
+     */
+    public void setOperationWeight(final LoadOperation operation, final int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Operation weight cannot be negative.");
+        }
+        operationWeights.put(operation, weight);
+    }
+
+    /**
+     * Gets the target rate in operations per second.
+     * 
+     * @return the operations per second
+     */
+    public double getOperationsPerSecond() {
+        return operationsPerSecond;
+    }
+
+    /**
+     * Sets the target rate in operations per second across all workers. Zero or less, the default, issues operations as
+     * fast as the workers can.
+     * 
+     * @param operationsPerSecond the new operations per second
+     */
+    public void setOperationsPerSecond(final double operationsPerSecond) {
+        this.operationsPerSecond = operationsPerSecond;
+    }
+
+    /**
+     * Gets the number of concurrent workers.
+     * 
+     * @return the concurrency
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the number of concurrent workers, i.e. the maximum number of operations in flight.
+     * 
+     * @param concurrency the new concurrency
+     */
+    public void setConcurrency(final int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Gets the run duration in milliseconds.
+     * 
+     * @return the duration millis
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Sets the run duration in milliseconds. Zero or less runs until the maximum number of operations is reached.
+     * 
+     * @param durationMillis the new duration millis
+     */
+    public void setDurationMillis(final long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Gets the maximum number of operations.
+     * 
+     * @return the max operations
+     */
+    public long getMaxOperations() {
+        return maxOperations;
+    }
+
+    /**
+     * Sets the maximum number of operations. Zero or less, the default, runs until the duration elapses.
+     * 
+     * @param maxOperations the new max operations
+     */
+    public void setMaxOperations(final long maxOperations) {
+        this.maxOperations = maxOperations;
+    }
+
+    /**
+     * Gets the server profile name.
+     * 
+     * @return the server profile name
+     */
+    public String getServerProfileName() {
+        return serverProfileName;
+    }
+
+    /**
+     * Sets the server profile the datasources are created in, null for a standalone server.
+     * 
+     * @param serverProfileName the new server profile name
+     */
+    public void setServerProfileName(final String serverProfileName) {
+        this.serverProfileName = serverProfileName;
+    }
+
+    /**
+     * Gets the prefix of the generated datasource names.
+     * 
+     * @return the datasource prefix
+     */
+    public String getDatasourcePrefix() {
+        return datasourcePrefix;
+    }
+
+    /**
+     * Sets the prefix of the generated datasource names. It must not clash with existing datasources.
+     * 
+     * @param datasourcePrefix the new datasource prefix
+     */
+    public void setDatasourcePrefix(final String datasourcePrefix) {
+        this.datasourcePrefix = datasourcePrefix;
+    }
+
+    /**
+     * Gets the connection url of the generated datasources.
+     * 
+     * @return the connection url
+     */
+    public String getConnectionURL() {
+        return connectionURL;
+    }
+
+    /**
+     * Sets the connection url of the generated datasources.
+     * 
+     * @param connectionURL the new connection url
+     */
+    public void setConnectionURL(final String connectionURL) {
+        this.connectionURL = connectionURL;
+    }
+
+    /**
+     * Gets the driver name of the generated datasources.
+     * 
+     * @return the driver name
+     */
+    public String getDriverName() {
+        return driverName;
+    }
+
+    /**
+     * Sets the driver name of the generated datasources. The driver must be installed on the target.
+     * 
+     * @param driverName the new driver name
+     */
+    public void setDriverName(final String driverName) {
+        this.driverName = driverName;
+    }
+
+    /**
+     * Gets the user name of the generated datasources.
+     * 
+     * @return the user name
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Sets the user name of the generated datasources.
+     * 
+     * @param userName the new user name
+     */
+    public void setUserName(final String userName) {
+        this.userName = userName;
+    }
+
+    /**
+     * Gets the password of the generated datasources.
+     * 
+     * @return the password
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Sets the password of the generated datasources.
+     * 
+     * @param password the new password
+     */
+    public void setPassword(final String password) {
+        this.password = password;
+    }
+
+    /**
+     * Checks whether the datasources left over are removed after the run.
+     * 
+     * @return true, if cleanup
+     */
+    public boolean isCleanup() {
+        return cleanup;
+    }
+
+    /**
+     * Sets whether the datasources left over are removed after the run. Cleanup operations are not measured.
+     * 
+     * @param cleanup the new cleanup
+     */
+    public void setCleanup(final boolean cleanup) {
+        this.cleanup = cleanup;
+    }
+}
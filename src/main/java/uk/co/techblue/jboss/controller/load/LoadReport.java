@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.load;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.co.techblue.jboss.controller.load.LoadProfile.LoadOperation;
+
+/**
+ * The result of a load test run: the throughput, the latency percentiles and the error rate, overall and per operation.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class LoadReport {
+
+    /** The elapsed time of the run in nanoseconds. */
+    private final long elapsedNanos;
+
+    /** The overall statistics. */
+    private final OperationStatistics total;
+
+    /** The statistics per operation. */
+    private final Map<LoadOperation, OperationStatistics> operationStatistics;
+
+    /**
+     * Instantiates a new load report.
+     * 
+     * @param elapsedNanos the elapsed time of the run in nanoseconds
+     * @param total the overall statistics
+     * @param operationStatistics the statistics per operation
+     */
+    LoadReport(final long elapsedNanos, final OperationStatistics total,
+            final Map<LoadOperation, OperationStatistics> operationStatistics) {
+        this.elapsedNanos = elapsedNanos;
+        this.total = total;
+        this.operationStatistics = Collections.unmodifiableMap(new EnumMap<LoadOperation, OperationStatistics>(
+                operationStatistics));
+    }
+
+    /**
+     * Gets the elapsed time of the run in milliseconds.
+     * 
+     * @return the elapsed millis
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Gets the overall statistics.
+     * 
+     * @return the total
+     */
+    public OperationStatistics getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the statistics of an operation.
+     * 
+     * @param operation the operation
+     * @return the statistics, null if the operation was never issued
+     */
+    public OperationStatistics getStatistics(final LoadOperation operation) {
+        return operationStatistics.get(operation);
+    }
+
+    /**
+     * Gets the statistics per operation.
+     * 
+     * @return the operation statistics
+     */
+    public Map<LoadOperation, OperationStatistics> getOperationStatistics() {
+        return operationStatistics;
+    }
+
+    /**
+     * Gets the overall throughput in operations per second.
+     * 
+     * @return the throughput
+     */
+    public double getThroughput() {
+        return total.getThroughput();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-8s %9s %8s %10s %9s %9s %9s %9s%n", "op", "count", "errors", "ops/s",
+            "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (final Map.Entry<LoadOperation, OperationStatistics> entry : operationStatistics.entrySet()) {
+            appendRow(builder, entry.getKey().name(), entry.getValue());
+        }
+        appendRow(builder, "TOTAL", total);
+        builder.append(String.format(Locale.ROOT, "elapsed %d ms, error rate %.2f%%", getElapsedMillis(),
+            total.getErrorRate() * 100));
+        return builder.toString();
+    }
+
+    /**
+     * Appends a statistics row.
+     * 
+     * @param builder the builder
+     * @param label the row label
+     * @param statistics the statistics
+     */
+    private static void appendRow(final StringBuilder builder, final String label, final OperationStatistics statistics) {
+        builder.append(String.format(Locale.ROOT, "%-8s %9d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n", label,
+            statistics.getCount(), statistics.getErrors(), statistics.getThroughput(), statistics.getPercentileMillis(50),
+            statistics.getPercentileMillis(90), statistics.getPercentileMillis(99), statistics.getMaxMillis()));
+    }
+
+    /**
+     * The latency and error statistics of a set of operations.
+     */
+    public static class OperationStatistics {
+
+        /** The sorted latencies in nanoseconds. */
+        private final long[] latencies;
+
+        /** The number of failed operations. */
+        private final long errors;
+
+        /** The elapsed time of the run in nanoseconds. */
+        private final long elapsedNanos;
+
+        /**
+         * Instantiates new operation statistics.
+         * 
+         * @param latencies the latencies in nanoseconds, sorted in place
+         * @param errors the number of failed operations
+         * @param elapsedNanos the elapsed time of the run in nanoseconds
+         */
+        OperationStatistics(final long[] latencies, final long errors, final long elapsedNanos) {
+            Arrays.sort(latencies);
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the number of operations issued, failed ones included.
+         * 
+         * @return the count
+         */
+        public long getCount() {
+            return latencies.length;
+        }
+
+        /**
+         * Gets the number of failed operations.
+         * 
+         * @return the errors
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets the ratio of failed operations, between 0 and 1.
+         * 
+         * @return the error rate
+         */
+        public double getErrorRate() {
+            return latencies.length == 0 ? 0 : (double) errors / latencies.length;
+        }
+
+        /**
+         * Gets the throughput in operations per second.
+         * 
+         * @return the throughput
+         */
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0 : latencies.length * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Gets a latency percentile in milliseconds, using the nearest-rank method.
+         * 
+         * @param percentile the percentile, between 0 and 100
+         * @return the latency in milliseconds, 0 if no operation was issued
+         */
+        public double getPercentileMillis(final double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+            }
+            if (latencies.length == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+            return latencies[Math.max(rank, 1) - 1] / 1e6;
+        }
+
+        /**
+         * Gets the maximum latency in milliseconds.
+         * 
+         * @return the max latency in milliseconds, 0 if no operation was issued
+         */
+        public double getMaxMillis() {
+            return latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6;
+        }
+    }
+}
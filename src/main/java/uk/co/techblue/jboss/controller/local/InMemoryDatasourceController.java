@@ -0,0 +1,1450 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.local;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ACCESS_TYPE_READ_WRITE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_CONNECTION_PROPERTIES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_DATASOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_HOST;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_PROFILE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER_CONFIG;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_STATISTICS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_STATISTICS_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_WILDCARD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_ENABLED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_LAUNCH_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_MANAGEMENT_MAJOR_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_MANAGEMENT_MICRO_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_MANAGEMENT_MINOR_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_PRODUCT_NAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_PRODUCT_VERSION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_PROFILE_NAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_SERVER_STATE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CHANGE_PROPERTY_OPERATIONS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CHANGE_PROPERTY_OPERATION_DATE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DATASOURCE_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ACCESS_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ALLOWED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ALTERNATIVES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ATTRIBUTES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_DEFAULT;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_MIN;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_MIN_LENGTH;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_NILLABLE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_BG_VALIDATION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_BG_VALIDATION_MILLIS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_CONNECTIONURL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_CREDENTIAL_REFERENCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_DRIVERNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_EXCEPTION_SORTER_CLASSNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_JNDINAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_JTA_INTEGRATION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MAXPOOLSIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MINPOOLSIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_NEWCONNECTIONSQL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PASSWORD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOLNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOLPREFILL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_POOL_STRICT_MINIMUM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PREPARED_STATEMENTS_CACHE_SIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_SECURITYDOMAIN;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_SHARE_PREPARED_STATEMENTS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_STALE_CONNCHECKER_CLASSNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_TRANSACTIONISOLATION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USEJAVACONTEXT;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USERNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_USE_CCM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALIDATE_ON_MATCH;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALID_CONNCHECKER_CLASSNAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_VALID_CONNECTION_SQL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_CHILD_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_INCLUDE_RUNTIME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_RECURSIVE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_DISABLE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_ENABLE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_ALL_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_GRACEFULLY_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_IDLE_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_INVALID_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_LIST_CHANGES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_ATTRIBUTE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_CHILDREN_NAMES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_CHILDREN_RESOURCES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_RESOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_RESOURCE_DESCRIPTION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_RELOAD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_RESTART;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_TEST_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.RESPONSE_PROPERTY_ROLLEDBACK;
+import static uk.co.techblue.jboss.controller.ControllerConstants.RESPONSE_PROPERTY_STEP_PREFIX;
+import static uk.co.techblue.jboss.controller.ControllerConstants.SERVER_STATE_RUNNING;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+
+import uk.co.techblue.jboss.controller.client.ControllerClient;
+import uk.co.techblue.jboss.controller.client.ControllerClientFactory;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * A headless, in-memory stand-in for the datasources subsystem of a management model controller. Executors created with
+ * this factory run against the in-memory model instead of a real server, which makes them usable in unit tests and for
+ * offline throughput measurements.
+ * <p>
+ * The stand-in supports the <code>add</code>, <code>remove</code>, <code>read-resource</code>,
+ * <code>read-attribute</code>, <code>write-attribute</code>, <code>enable</code> and <code>disable</code> operations on
+ * datasources and their connection properties, <code>read-children-names</code> and
+ * <code>read-children-resources</code> on the subsystem, <code>read-resource-description</code> of the data-source
+ * resource, and atomic <code>composite</code> operations. The root resource reports the management and product
+ * {@link #setVersion(int, int, int, String, String) versions}, management version 1.0.0 by default. Failure responses
+ * mimic the ones of a real controller. Latency and failures can be injected. A configuration change history, listed
+ * with <code>list-changes</code> at <code>/subsystem=core-management/service=configuration-changes</code>, can be
+ * enabled with {@link #enableChangeHistory(int)}.
+ * <p>
+ * Domain servers are added with {@link #addServer(String, String, String)}. The <code>server-state</code> and
+ * <code>profile-name</code> attributes of the servers and the <code>server-state</code> of the standalone server can be
+ * read, and the servers reloaded or restarted through their <code>server-config</code>, the standalone server through
+ * <code>reload</code> on the root resource. A reloading server is unavailable for the next
+ * {@link #setReloadDuration(int) few} requests addressing it: the standalone server rejects them as still booting and
+ * wildcard reads leave the domain server out. The datasources of a running domain server, addressed through the server,
+ * are the ones of its profile and can only be read. The pools of the enabled datasources of the standalone server and of
+ * the domain servers can be tested and flushed, and their statistics are included when reading a datasource with
+ * <code>include-runtime</code>. Addresses may contain <code>*</code>
+ * wildcards, which are answered with a result per matching resource.
+ * <p>
+ * The model starts with the standalone server profile, addressed without a profile element. Domain profiles are added with
+ * {@link #addProfile(String)}. The controller client configuration is ignored.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class InMemoryDatasourceController implements ControllerClientFactory {
+
+    /** The name of the standalone server profile. */
+    private static final String STANDALONE_PROFILE = "";
+
+    /** The default maximum size of a pool. */
+    private static final int DEFAULT_MAX_POOL_SIZE = 20;
+
+    /** The pool statistic of the open connections. */
+    private static final String STATISTIC_ACTIVE_COUNT = "ActiveCount";
+
+    /** The pool statistic of the connections that may still be obtained. */
+    private static final String STATISTIC_AVAILABLE_COUNT = "AvailableCount";
+
+    /** The pool statistic of the connections in use. */
+    private static final String STATISTIC_IN_USE_COUNT = "InUseCount";
+
+    /** The operation request properties that are not resource attributes. */
+    private static final Set<String> OPERATION_PROPERTIES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        ClientConstants.OP, ClientConstants.OP_ADDR, "operation-headers")));
+
+    /** The runtime operations on the pool of a datasource. */
+    private static final Set<String> POOL_OPERATIONS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        OPERATION_TEST_CONNECTION_IN_POOL, OPERATION_FLUSH_IDLE_CONNECTION_IN_POOL,
+        OPERATION_FLUSH_ALL_CONNECTION_IN_POOL, OPERATION_FLUSH_INVALID_CONNECTION_IN_POOL,
+        OPERATION_FLUSH_GRACEFULLY_CONNECTION_IN_POOL)));
+
+    /** The launch type of a standalone server. */
+    private static final String LAUNCH_TYPE_STANDALONE = "STANDALONE";
+
+    /** The launch type of a domain controller. */
+    private static final String LAUNCH_TYPE_DOMAIN = "DOMAIN";
+
+    /** The description of the data-source resource. */
+    private static final ModelNode DATASOURCE_DESCRIPTION = createDatasourceDescription();
+
+    /** The datasource resources per profile, guarded by the model lock. */
+    private Map<String, Map<String, ModelNode>> profiles = new LinkedHashMap<String, Map<String, ModelNode>>();
+
+    /** The model lock. */
+    private final Object modelLock = new Object();
+
+    /** The random generator deciding on injected failures and jitter. */
+    private final Random random;
+
+    /** The number of executed requests. */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /** The remaining scheduled failures per operation name. */
+    private final Map<String, AtomicInteger> scheduledFailures = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** The latency added to each request. */
+    private volatile long latencyMillis;
+
+    /** The maximum random jitter added to the latency. */
+    private volatile long latencyJitterMillis;
+
+    /** The probability of an operation failing. */
+    private volatile double failureRate;
+
+    /** The probability of a request failing with an I/O error. */
+    private volatile double ioFailureRate;
+
+    /** The configuration changes, the most recent first, guarded by the model lock. */
+    private final LinkedList<ModelNode> configurationChanges = new LinkedList<ModelNode>();
+
+    /** The maximum number of configuration changes kept, zero when the change history is not offered. */
+    private volatile int maxChangeHistory;
+
+    /** The date of the most recent configuration change in milliseconds, guarded by the model lock. */
+    private long lastChangeMillis;
+
+    /** The domain servers, guarded by the model lock. */
+    private final Map<ServerAddress, Server> servers = new LinkedHashMap<ServerAddress, Server>();
+
+    /** The standalone server, guarded by the model lock. */
+    private final Server standaloneServer = new Server(STANDALONE_PROFILE);
+
+    /** The open connections per pool, keyed by the runtime address of the datasource, guarded by the model lock. */
+    private final Map<String, Integer> openConnections = new HashMap<String, Integer>();
+
+    /** The number of requests a reloading server is unavailable for. */
+    private volatile int reloadDuration = 1;
+
+    /** The version attributes of the root resource. */
+    private volatile ModelNode versionAttributes = createVersionAttributes(1, 0, 0, null, null);
+
+    /**
+     * Instantiates a new in-memory datasource controller.
+     */
+    public InMemoryDatasourceController() {
+        this(new Random());
+    }
+
+    /**
+     * Instantiates a new in-memory datasource controller with repeatable failure injection and jitter.
+     * 
+     * @param seed the seed of the random generator
+     */
+    public InMemoryDatasourceController(final long seed) {
+        this(new Random(seed));
+    }
+
+    /**
+     * Instantiates a new in-memory datasource controller.
+     * 
+     * @param random the random generator
+     */
+    private InMemoryDatasourceController(final Random random) {
+        this.random = random;
+        profiles.put(STANDALONE_PROFILE, new LinkedHashMap<String, ModelNode>());
+    }
+
+    /**
+     * Adds an empty domain profile.
+     * 
+     * @param serverProfileName the server profile name
+     */
+    public void addProfile(final String serverProfileName) {
+        synchronized (modelLock) {
+            if (!profiles.containsKey(serverProfileName)) {
+                profiles.put(serverProfileName, new LinkedHashMap<String, ModelNode>());
+            }
+        }
+    }
+
+    /**
+     * Adds a running domain server using a server profile, adding the profile when missing.
+     * 
+     * @param host the host name
+     * @param server the server name
+     * @param serverProfileName the server profile name
+     */
+    public void addServer(final String host, final String server, final String serverProfileName) {
+        synchronized (modelLock) {
+            addProfile(serverProfileName);
+            servers.put(new ServerAddress(host, server), new Server(serverProfileName));
+        }
+    }
+
+    /**
+     * Sets the state of a server, e.g. <code>reload-required</code>.
+     * 
+     * @param serverAddress the domain server, null for the standalone server
+     * @param state the server state
+     */
+    public void setServerState(final ServerAddress serverAddress, final String state) {
+        synchronized (modelLock) {
+            getServer(serverAddress).state = state;
+        }
+    }
+
+    /**
+     * Gets the state of a server, regardless of whether it is reloading.
+     * 
+     * @param serverAddress the domain server, null for the standalone server
+     * @return the server state
+     */
+    public String getServerState(final ServerAddress serverAddress) {
+        synchronized (modelLock) {
+            return getServer(serverAddress).state;
+        }
+    }
+
+    /**
+     * Gets the number of times a server was reloaded or restarted.
+     * 
+     * @param serverAddress the domain server, null for the standalone server
+     * @return the reload count
+     */
+    public int getReloadCount(final ServerAddress serverAddress) {
+        synchronized (modelLock) {
+            return getServer(serverAddress).reloadCount;
+        }
+    }
+
+    /**
+     * Gets the number of connections open in the pool of a datasource on a server.
+     * 
+     * @param serverAddress the domain server, null for the standalone server
+     * @param datasourceName the datasource name
+     * @return the open connections
+     */
+    public int getOpenConnections(final ServerAddress serverAddress, final String datasourceName) {
+        final ModelNode address = new ModelNode();
+        if (serverAddress != null) {
+            address.add(ADDRESS_HOST, serverAddress.getHost()).add(ADDRESS_SERVER, serverAddress.getServer());
+        }
+        address.add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM).add(ADDRESS_DATASOURCE, datasourceName);
+        synchronized (modelLock) {
+            final Integer connections = openConnections.get(getPoolKey(address));
+            return connections == null ? 0 : connections;
+        }
+    }
+
+    /**
+     * Sets the number of requests addressing a reloading server that find it unavailable, 1 by default.
+     * 
+     * @param requests the number of requests
+     */
+    public void setReloadDuration(final int requests) {
+        this.reloadDuration = requests;
+    }
+
+    /**
+     * Sets the versions reported by the root resource, management version 1.0.0 without product by default.
+     * 
+     * @param managementMajorVersion the management major version
+     * @param managementMinorVersion the management minor version
+     * @param managementMicroVersion the management micro version
+     * @param productName the product name, null for none
+     * @param productVersion the product version, null for none
+     */
+    public void setVersion(final int managementMajorVersion, final int managementMinorVersion,
+        final int managementMicroVersion, final String productName, final String productVersion) {
+        this.versionAttributes = createVersionAttributes(managementMajorVersion, managementMinorVersion,
+            managementMicroVersion, productName, productVersion);
+    }
+
+    /**
+     * Gets a copy of the datasource resources of a profile.
+     * 
+     * @param serverProfileName the server profile name, null or blank for the standalone profile
+     * @return the datasource resources mapped by datasource name
+     */
+    public Map<String, ModelNode> getDatasources(final String serverProfileName) {
+        synchronized (modelLock) {
+            final Map<String, ModelNode> datasources = profiles.get(StringUtils.defaultString(serverProfileName));
+            final Map<String, ModelNode> copy = new LinkedHashMap<String, ModelNode>();
+            if (datasources != null) {
+                for (final Map.Entry<String, ModelNode> datasource : datasources.entrySet()) {
+                    copy.put(datasource.getKey(), datasource.getValue().clone());
+                }
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Sets the latency added to each request.
+     * 
+     * @param latencyMillis the fixed latency in milliseconds
+     * @param latencyJitterMillis the maximum random jitter in milliseconds added to the fixed latency
+     */
+    public void setLatency(final long latencyMillis, final long latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    /**
+     * Sets the probability of an operation, or a step of a composite, failing with a management failure.
+     * 
+     * @param failureRate the failure rate between 0 and 1
+     */
+    public void setFailureRate(final double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Sets the probability of a request failing with an I/O error, as if the connection was lost.
+     * 
+     * @param ioFailureRate the I/O failure rate between 0 and 1
+     */
+    public void setIoFailureRate(final double ioFailureRate) {
+        this.ioFailureRate = ioFailureRate;
+    }
+
+    /**
+     * Makes the next executions of the named operation fail.
+     * 
+     * @param operationName the operation name, e.g. <code>add</code>
+     * @param count the number of executions to fail
+     */
+    public void failNextOperations(final String operationName, final int count) {
+        scheduledFailures.put(operationName, new AtomicInteger(count));
+    }
+
+    /**
+     * Enables the configuration change history, which records the successful write operations from then on. Change dates
+     * are strictly increasing, one millisecond apart at least.
+     * 
+     * @param maxHistory the maximum number of changes kept
+     */
+    public void enableChangeHistory(final int maxHistory) {
+        this.maxChangeHistory = maxHistory;
+    }
+
+    /**
+     * Gets the number of requests, i.e. round trips, executed so far.
+     * 
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see uk.co.techblue.jboss.controller.client.ControllerClientFactory#createClient(uk.co.techblue.jboss.controller.vo.
+     * ControllerClientConfig)
+     */
+    @Override
+    public ControllerClient createClient(final ControllerClientConfig controllerClientConfig) {
+        return new ControllerClient() {
+
+            @Override
+            public ModelNode execute(final ModelNode operation) throws IOException {
+                return InMemoryDatasourceController.this.execute(operation);
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    /**
+     * Executes a management operation against the in-memory model.
+     * 
+     * @param operation the management operation
+     * @return the operation response
+     * @throws IOException if an I/O failure is injected
+     */
+    public ModelNode execute(final ModelNode operation) throws IOException {
+        requestCount.incrementAndGet();
+        simulateLatency();
+        if (ioFailureRate > 0 && nextRandom() < ioFailureRate) {
+            throw new IOException("Injected I/O failure while executing operation '"
+                + operation.get(ClientConstants.OP).asString() + "'");
+        }
+        final ModelNode request = operation.clone();
+        synchronized (modelLock) {
+            final String operationName = request.get(ClientConstants.OP).asString();
+            if (OPERATION_LIST_CHANGES.equals(operationName)) {
+                return listChanges(request.get(ClientConstants.OP_ADDR));
+            }
+            final ModelNode response;
+            if (!ClientConstants.COMPOSITE.equals(operationName)) {
+                response = executeStep(request, profiles);
+            } else {
+                final Map<String, Map<String, ModelNode>> workingCopy = copy(profiles);
+                response = executeComposite(request, workingCopy);
+                if (ClientConstants.SUCCESS.equals(response.get(ClientConstants.OUTCOME).asString())) {
+                    profiles = workingCopy;
+                }
+            }
+            if (ClientConstants.SUCCESS.equals(response.get(ClientConstants.OUTCOME).asString())) {
+                recordChange(request);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Lists the configuration changes, the most recent first. The caller holds the model lock.
+     * 
+     * @param address the address of the operation
+     * @return the response
+     */
+    private ModelNode listChanges(final ModelNode address) {
+        final List<Property> elements = address.isDefined() ? address.asPropertyList() : Collections.<Property> emptyList();
+        if (maxChangeHistory <= 0 || elements.size() != 2 || !ADDRESS_SUBSYSTEM.equals(elements.get(0).getName())
+            || !"core-management".equals(elements.get(0).getValue().asString())
+            || !"service".equals(elements.get(1).getName())
+            || !"configuration-changes".equals(elements.get(1).getValue().asString())) {
+            return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+        }
+        final ModelNode result = new ModelNode().setEmptyList();
+        for (final ModelNode change : configurationChanges) {
+            result.add(change);
+        }
+        return success(result);
+    }
+
+    /**
+     * Records a successfully executed request in the configuration change history, unless it only reads. The caller holds
+     * the model lock.
+     * 
+     * @param request the request
+     */
+    private void recordChange(final ModelNode request) {
+        if (maxChangeHistory <= 0) {
+            return;
+        }
+        final List<ModelNode> operations = new ArrayList<ModelNode>();
+        addWriteOperations(operations, request);
+        if (operations.isEmpty()) {
+            return;
+        }
+        lastChangeMillis = Math.max(System.currentTimeMillis(), lastChangeMillis + 1);
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final ModelNode change = new ModelNode();
+        change.get(CHANGE_PROPERTY_OPERATION_DATE).set(dateFormat.format(new Date(lastChangeMillis)));
+        change.get("access-mechanism").set("NATIVE");
+        change.get(ClientConstants.OUTCOME).set(ClientConstants.SUCCESS);
+        final ModelNode changeOperations = change.get(CHANGE_PROPERTY_OPERATIONS).setEmptyList();
+        for (final ModelNode operation : operations) {
+            changeOperations.add(operation);
+        }
+        configurationChanges.addFirst(change);
+        while (configurationChanges.size() > maxChangeHistory) {
+            configurationChanges.removeLast();
+        }
+    }
+
+    /**
+     * Adds the write operations of a request, the steps of a composite included, as recorded in a configuration change.
+     * 
+     * @param operations the operations to add to
+     * @param request the request
+     */
+    private static void addWriteOperations(final List<ModelNode> operations, final ModelNode request) {
+        final String operationName = request.get(ClientConstants.OP).asString();
+        if (ClientConstants.COMPOSITE.equals(operationName)) {
+            if (request.hasDefined(ClientConstants.STEPS)) {
+                for (final ModelNode step : request.get(ClientConstants.STEPS).asList()) {
+                    addWriteOperations(operations, step);
+                }
+            }
+        } else if (!operationName.startsWith("read-") && !POOL_OPERATIONS.contains(operationName)) {
+            final ModelNode operation = new ModelNode();
+            operation.get(ClientConstants.OP).set(operationName);
+            operation.get(ClientConstants.OP_ADDR).set(request.get(ClientConstants.OP_ADDR));
+            operations.add(operation);
+        }
+    }
+
+    /**
+     * Executes a composite operation. The caller discards the model on failure.
+     * 
+     * @param composite the composite operation
+     * @param model the model
+     * @return the response
+     */
+    private ModelNode executeComposite(final ModelNode composite, final Map<String, Map<String, ModelNode>> model) {
+        final ModelNode response = new ModelNode();
+        final ModelNode results = response.get(ClientConstants.RESULT).setEmptyObject();
+        final List<ModelNode> steps = composite.hasDefined(ClientConstants.STEPS) ? composite.get(ClientConstants.STEPS)
+            .asList() : Collections.<ModelNode> emptyList();
+        for (int i = 0; i < steps.size(); i++) {
+            final ModelNode step = steps.get(i);
+            final ModelNode stepResponse = ClientConstants.COMPOSITE.equals(step.get(ClientConstants.OP).asString())
+                ? executeComposite(step, model) : executeStep(step, model);
+            final String stepName = RESPONSE_PROPERTY_STEP_PREFIX + (i + 1);
+            results.get(stepName).set(stepResponse);
+            if (!ClientConstants.SUCCESS.equals(stepResponse.get(ClientConstants.OUTCOME).asString())) {
+                response.get(ClientConstants.OUTCOME).set("failed");
+                response.get(ClientConstants.FAILURE_DESCRIPTION,
+                    "WFLYCTL0062: Composite operation failed and was rolled back. Steps that failed:",
+                    "Operation " + stepName).set(stepResponse.get(ClientConstants.FAILURE_DESCRIPTION));
+                response.get(RESPONSE_PROPERTY_ROLLEDBACK).set(true);
+                for (final Property executedStep : results.asPropertyList()) {
+                    results.get(executedStep.getName(), RESPONSE_PROPERTY_ROLLEDBACK).set(true);
+                }
+                return response;
+            }
+        }
+        response.get(ClientConstants.OUTCOME).set(ClientConstants.SUCCESS);
+        return response;
+    }
+
+    /**
+     * Executes a single operation against the model.
+     * 
+     * @param operation the operation
+     * @param model the model
+     * @return the response
+     */
+    private ModelNode executeStep(final ModelNode operation, final Map<String, Map<String, ModelNode>> model) {
+        final String operationName = operation.get(ClientConstants.OP).asString();
+        final ModelNode address = operation.get(ClientConstants.OP_ADDR);
+        if (isFailureInjected(operationName)) {
+            return failed("Injected failure of operation '" + operationName + "' at address " + address);
+        }
+        if (OPERATION_READ_RESOURCE_DESCRIPTION.equals(operationName)) {
+            return executeDescriptionOperation(address, model);
+        }
+        if (isWildcardAddress(address)) {
+            return executeWildcardOperation(operation, model);
+        }
+        return executeResourceOperation(operation, model);
+    }
+
+    /**
+     * Reads the description of the data-source resource, answered per matching resource type at a wildcard address.
+     * 
+     * @param address the address
+     * @param model the model
+     * @return the response
+     */
+    private static ModelNode executeDescriptionOperation(final ModelNode address,
+        final Map<String, Map<String, ModelNode>> model) {
+        final String[] path = parseAddress(address);
+        if (path == null || path[1] == null || path[2] != null || !model.containsKey(path[0])
+            || (!ADDRESS_WILDCARD.equals(path[1]) && !model.get(path[0]).containsKey(path[1]))) {
+            return failed("WFLYCTL0030: No resource definition is registered for address " + address);
+        }
+        if (!ADDRESS_WILDCARD.equals(path[1])) {
+            return success(DATASOURCE_DESCRIPTION.clone());
+        }
+        final ModelNode resourceResult = new ModelNode();
+        resourceResult.get(ClientConstants.OP_ADDR).set(address);
+        resourceResult.get(ClientConstants.OUTCOME).set(ClientConstants.SUCCESS);
+        resourceResult.get(ClientConstants.RESULT).set(DATASOURCE_DESCRIPTION.clone());
+        return success(new ModelNode().add(resourceResult));
+    }
+
+    /**
+     * Executes an operation at a wildcard address, once per matching resource.
+     * 
+     * @param operation the operation
+     * @param model the model
+     * @return the response, with the address, outcome and result per matching resource
+     */
+    private ModelNode executeWildcardOperation(final ModelNode operation, final Map<String, Map<String, ModelNode>> model) {
+        final List<ModelNode> addresses = new ArrayList<ModelNode>();
+        expandAddress(operation.get(ClientConstants.OP_ADDR).asPropertyList(), 0, new ModelNode().setEmptyList(), model,
+            addresses);
+        final ModelNode result = new ModelNode().setEmptyList();
+        for (final ModelNode address : addresses) {
+            final ModelNode resourceOperation = operation.clone();
+            resourceOperation.get(ClientConstants.OP_ADDR).set(address);
+            final ModelNode response = executeResourceOperation(resourceOperation, model);
+            final ModelNode resourceResult = new ModelNode();
+            resourceResult.get(ClientConstants.OP_ADDR).set(address);
+            resourceResult.get(ClientConstants.OUTCOME).set(response.get(ClientConstants.OUTCOME));
+            if (ClientConstants.SUCCESS.equals(response.get(ClientConstants.OUTCOME).asString())) {
+                resourceResult.get(ClientConstants.RESULT).set(response.get(ClientConstants.RESULT));
+            } else {
+                resourceResult.get(ClientConstants.FAILURE_DESCRIPTION).set(
+                    response.get(ClientConstants.FAILURE_DESCRIPTION));
+            }
+            result.add(resourceResult);
+        }
+        return success(result);
+    }
+
+    /**
+     * Checks whether an address contains a wildcard.
+     * 
+     * @param address the address
+     * @return true, if an element of the address is a wildcard
+     */
+    private static boolean isWildcardAddress(final ModelNode address) {
+        if (!address.isDefined()) {
+            return false;
+        }
+        for (final Property element : address.asPropertyList()) {
+            if (ADDRESS_WILDCARD.equals(element.getValue().asString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands the wildcards of an address into the addresses of the matching resources. Reloading servers do not match.
+     * 
+     * @param elements the address elements
+     * @param index the index of the element to expand
+     * @param prefix the expanded address of the previous elements
+     * @param model the model
+     * @param addresses the addresses to add to
+     */
+    private void expandAddress(final List<Property> elements, final int index, final ModelNode prefix,
+        final Map<String, Map<String, ModelNode>> model, final List<ModelNode> addresses) {
+        if (index == elements.size()) {
+            addresses.add(prefix);
+            return;
+        }
+        final String type = elements.get(index).getName();
+        final String value = elements.get(index).getValue().asString();
+        if (!ADDRESS_WILDCARD.equals(value)) {
+            expandAddress(elements, index + 1, prefix.clone().add(type, value), model, addresses);
+            return;
+        }
+        final Set<String> names = new LinkedHashSet<String>();
+        if (ADDRESS_HOST.equals(type)) {
+            for (final ServerAddress serverAddress : servers.keySet()) {
+                names.add(serverAddress.getHost());
+            }
+        } else if (ADDRESS_SERVER.equals(type)) {
+            final String host = prefix.asPropertyList().get(prefix.asPropertyList().size() - 1).getValue().asString();
+            for (final Map.Entry<ServerAddress, Server> server : servers.entrySet()) {
+                if (server.getKey().getHost().equals(host) && !server.getValue().isReloading()) {
+                    names.add(server.getKey().getServer());
+                }
+            }
+        } else if (ADDRESS_DATASOURCE.equals(type)) {
+            final Map<String, ModelNode> datasources = model.get(getProfile(prefix));
+            if (datasources != null) {
+                names.addAll(datasources.keySet());
+            }
+        }
+        for (final String name : names) {
+            expandAddress(elements, index + 1, prefix.clone().add(type, name), model, addresses);
+        }
+    }
+
+    /**
+     * Gets the profile an address belongs to, through the server it addresses in a managed domain.
+     * 
+     * @param address the address
+     * @return the profile name, empty for the standalone profile
+     */
+    private String getProfile(final ModelNode address) {
+        String profile = STANDALONE_PROFILE;
+        String host = null;
+        for (final Property element : address.asPropertyList()) {
+            if (ADDRESS_PROFILE.equals(element.getName())) {
+                profile = element.getValue().asString();
+            } else if (ADDRESS_HOST.equals(element.getName())) {
+                host = element.getValue().asString();
+            } else if (ADDRESS_SERVER.equals(element.getName())) {
+                final Server server = servers.get(new ServerAddress(host, element.getValue().asString()));
+                profile = server == null ? null : server.profile;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Executes an operation on a single resource.
+     * 
+     * @param operation the operation
+     * @param model the model
+     * @return the response
+     */
+    private ModelNode executeResourceOperation(final ModelNode operation, final Map<String, Map<String, ModelNode>> model) {
+        final String operationName = operation.get(ClientConstants.OP).asString();
+        final ModelNode address = operation.get(ClientConstants.OP_ADDR);
+        final List<Property> elements = address.isDefined() ? address.asPropertyList() : Collections.<Property> emptyList();
+        if (elements.isEmpty() || ADDRESS_HOST.equals(elements.get(0).getName())) {
+            if (elements.size() > 2) {
+                return executeServerRuntimeOperation(operationName, operation, elements, address, model);
+            }
+            return executeServerOperation(operationName, operation, elements, address);
+        }
+        final String[] path = parseAddress(address);
+        return executeDatasourceOperation(operationName, operation, path, address, model,
+            path != null && STANDALONE_PROFILE.equals(path[0]));
+    }
+
+    /**
+     * Executes an operation on the datasources subsystem of a running domain server, which only reads the datasources
+     * of the server profile and runs operations on their pools.
+     * 
+     * @param operationName the operation name
+     * @param operation the operation
+     * @param elements the address elements
+     * @param address the address
+     * @param model the model
+     * @return the response
+     */
+    private ModelNode executeServerRuntimeOperation(final String operationName, final ModelNode operation,
+        final List<Property> elements, final ModelNode address, final Map<String, Map<String, ModelNode>> model) {
+        final Server server = ADDRESS_SERVER.equals(elements.get(1).getName()) ? servers.get(new ServerAddress(elements
+            .get(0).getValue().asString(), elements.get(1).getValue().asString())) : null;
+        if (server == null || server.isReloading()) {
+            return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+        }
+        if (!operationName.startsWith("read-") && !POOL_OPERATIONS.contains(operationName)) {
+            return failed("WFLYCTL0031: No operation named '" + operationName + "' exists at address " + address);
+        }
+        final ModelNode profileAddress = new ModelNode().add(ADDRESS_PROFILE, server.profile);
+        for (final Property element : elements.subList(2, elements.size())) {
+            profileAddress.add(element.getName(), element.getValue());
+        }
+        return executeDatasourceOperation(operationName, operation, parseAddress(profileAddress), address, model, true);
+    }
+
+    /**
+     * Executes an operation on the datasources subsystem of a profile, a datasource or a connection property.
+     * 
+     * @param operationName the operation name
+     * @param operation the operation
+     * @param path the profile, datasource and connection property names, null if not part of the subsystem
+     * @param address the address
+     * @param model the model
+     * @param runtime whether the address is one of a running server, which has runtime attributes
+     * @return the response
+     */
+    private ModelNode executeDatasourceOperation(final String operationName, final ModelNode operation,
+        final String[] path, final ModelNode address, final Map<String, Map<String, ModelNode>> model,
+        final boolean runtime) {
+        if (path == null || !model.containsKey(path[0])) {
+            return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+        }
+        final Map<String, ModelNode> datasources = model.get(path[0]);
+        if (path[1] == null) {
+            return executeSubsystemOperation(operationName, operation, datasources, address);
+        }
+        final ModelNode datasource = datasources.get(path[1]);
+        if (path[2] != null) {
+            if (datasource == null) {
+                return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+            }
+            return executeConnectionPropertyOperation(operationName, operation, datasource.get(ADDRESS_CONNECTION_PROPERTIES),
+                path[2], address);
+        }
+        if (ClientConstants.ADD.equals(operationName)) {
+            if (datasource != null) {
+                return failed("WFLYCTL0212: Duplicate resource " + address);
+            }
+            if (!operation.hasDefined(DS_PROPERTY_JNDINAME)) {
+                return failed("WFLYCTL0155: " + DS_PROPERTY_JNDINAME + " may not be null");
+            }
+            final ModelNode resource = new ModelNode();
+            for (final Property attribute : operation.asPropertyList()) {
+                if (!OPERATION_PROPERTIES.contains(attribute.getName())) {
+                    resource.get(attribute.getName()).set(attribute.getValue());
+                }
+            }
+            if (!resource.hasDefined(ATTRIBUTE_ENABLED)) {
+                resource.get(ATTRIBUTE_ENABLED).set(false);
+            }
+            resource.get(ADDRESS_CONNECTION_PROPERTIES);
+            datasources.put(path[1], resource);
+            return success(new ModelNode());
+        }
+        if (datasource == null) {
+            return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+        }
+        if (ClientConstants.DEPLOYMENT_REMOVE_OPERATION.equals(operationName)) {
+            datasources.remove(path[1]);
+            return success(new ModelNode());
+        } else if (OPERATION_READ_RESOURCE.equals(operationName)) {
+            final boolean includeRuntime = runtime && operation.get(GENERAL_PROPERTY_INCLUDE_RUNTIME).asBoolean(false);
+            return success(readDatasource(datasource, operation.get(GENERAL_PROPERTY_RECURSIVE).asBoolean(false),
+                includeRuntime ? readPoolStatistics(datasource, address) : null));
+        } else if (OPERATION_READ_CHILDREN_RESOURCES.equals(operationName)
+            && ADDRESS_CONNECTION_PROPERTIES.equals(operation.get(GENERAL_PROPERTY_CHILD_TYPE).asString())) {
+            final ModelNode connectionProperties = datasource.get(ADDRESS_CONNECTION_PROPERTIES);
+            return success(connectionProperties.isDefined() ? connectionProperties.clone() : new ModelNode().setEmptyObject());
+        } else if (OPERATION_READ_ATTRIBUTE.equals(operationName)) {
+            final String attributeName = operation.get(ClientConstants.NAME).asString();
+            return success(datasource.has(attributeName) ? datasource.get(attributeName) : new ModelNode());
+        } else if (ClientConstants.WRITE_ATTRIBUTE_OPERATION.equals(operationName)) {
+            final String attributeName = operation.get(ClientConstants.NAME).asString();
+            if (ADDRESS_CONNECTION_PROPERTIES.equals(attributeName)) {
+                return failed("WFLYCTL0048: Attribute " + attributeName + " is not writable");
+            }
+            datasource.get(attributeName).set(operation.get(ClientConstants.VALUE));
+            return success(new ModelNode());
+        } else if (OPERATION_ENABLE.equals(operationName)) {
+            datasource.get(ATTRIBUTE_ENABLED).set(true);
+            return success(new ModelNode());
+        } else if (OPERATION_DISABLE.equals(operationName)) {
+            datasource.get(ATTRIBUTE_ENABLED).set(false);
+            return success(new ModelNode());
+        } else if (runtime && POOL_OPERATIONS.contains(operationName)) {
+            return executePoolOperation(operationName, datasource, address);
+        }
+        return failed("WFLYCTL0031: No operation named '" + operationName + "' exists at address " + address);
+    }
+
+    /**
+     * Executes an operation on a server: the root resource of the standalone server, or a domain server or its
+     * configuration.
+     * 
+     * @param operationName the operation name
+     * @param operation the operation
+     * @param elements the address elements
+     * @param address the address
+     * @return the response
+     */
+    private ModelNode executeServerOperation(final String operationName, final ModelNode operation,
+        final List<Property> elements, final ModelNode address) {
+        final Server server;
+        if (elements.isEmpty()) {
+            server = standaloneServer;
+            if (server.isReloading()) {
+                return failed("WFLYCTL0379: System boot is in process; execution of remote management operations is not "
+                    + "currently available");
+            }
+        } else {
+            server = elements.size() == 2 ? servers.get(new ServerAddress(elements.get(0).getValue().asString(),
+                elements.get(1).getValue().asString())) : null;
+            if (server == null || (!ADDRESS_SERVER.equals(elements.get(1).getName())
+                && !ADDRESS_SERVER_CONFIG.equals(elements.get(1).getName()))) {
+                return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+            }
+            if (ADDRESS_SERVER_CONFIG.equals(elements.get(1).getName())) {
+                if (OPERATION_RELOAD.equals(operationName) || OPERATION_RESTART.equals(operationName)) {
+                    return reload(server);
+                }
+                return failed("WFLYCTL0031: No operation named '" + operationName + "' exists at address " + address);
+            }
+            if (server.isReloading()) {
+                return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+            }
+        }
+        if (elements.isEmpty() && OPERATION_RELOAD.equals(operationName)) {
+            return reload(server);
+        }
+        final ModelNode attributes = new ModelNode();
+        attributes.get(ATTRIBUTE_SERVER_STATE).set(server.state);
+        if (!elements.isEmpty()) {
+            attributes.get(ATTRIBUTE_PROFILE_NAME).set(server.profile);
+        } else {
+            for (final Property attribute : versionAttributes.asPropertyList()) {
+                attributes.get(attribute.getName()).set(attribute.getValue());
+            }
+            attributes.get(ATTRIBUTE_LAUNCH_TYPE).set(servers.isEmpty() ? LAUNCH_TYPE_STANDALONE : LAUNCH_TYPE_DOMAIN);
+        }
+        if (OPERATION_READ_RESOURCE.equals(operationName)) {
+            return success(attributes);
+        } else if (OPERATION_READ_ATTRIBUTE.equals(operationName)) {
+            final String attributeName = operation.get(ClientConstants.NAME).asString();
+            if (!attributes.has(attributeName)) {
+                return failed("WFLYCTL0201: Unknown attribute '" + attributeName + "'");
+            }
+            return success(attributes.get(attributeName));
+        }
+        return failed("WFLYCTL0031: No operation named '" + operationName + "' exists at address " + address);
+    }
+
+    /**
+     * Reloads a server: it is running once the next {@link #reloadDuration} requests addressing it are over.
+     * 
+     * @param server the server
+     * @return the response
+     */
+    private ModelNode reload(final Server server) {
+        server.state = SERVER_STATE_RUNNING;
+        server.reloadingRequests = reloadDuration;
+        server.reloadCount++;
+        return success(new ModelNode());
+    }
+
+    /**
+     * Gets a server.
+     * 
+     * @param serverAddress the domain server, null for the standalone server
+     * @return the server
+     * @throws IllegalArgumentException if the domain server does not exist
+     */
+    private Server getServer(final ServerAddress serverAddress) {
+        if (serverAddress == null) {
+            return standaloneServer;
+        }
+        final Server server = servers.get(serverAddress);
+        if (server == null) {
+            throw new IllegalArgumentException("Unknown server " + serverAddress);
+        }
+        return server;
+    }
+
+    /**
+     * Executes an operation on the datasources subsystem.
+     * 
+     * @param operationName the operation name
+     * @param operation the operation
+     * @param datasources the datasources of the profile
+     * @param address the address
+     * @return the response
+     */
+    private ModelNode executeSubsystemOperation(final String operationName, final ModelNode operation,
+        final Map<String, ModelNode> datasources, final ModelNode address) {
+        if (OPERATION_READ_RESOURCE.equals(operationName)) {
+            final boolean recursive = operation.get(GENERAL_PROPERTY_RECURSIVE).asBoolean(false);
+            final ModelNode result = new ModelNode();
+            final ModelNode datasourceNodes = result.get(ADDRESS_DATASOURCE);
+            for (final Map.Entry<String, ModelNode> datasource : datasources.entrySet()) {
+                if (recursive) {
+                    datasourceNodes.get(datasource.getKey()).set(readDatasource(datasource.getValue(), true, null));
+                } else {
+                    datasourceNodes.get(datasource.getKey());
+                }
+            }
+            return success(result);
+        }
+        final boolean childrenOperation = OPERATION_READ_CHILDREN_NAMES.equals(operationName)
+            || OPERATION_READ_CHILDREN_RESOURCES.equals(operationName);
+        if (!childrenOperation) {
+            return failed("WFLYCTL0031: No operation named '" + operationName + "' exists at address " + address);
+        }
+        if (!ADDRESS_DATASOURCE.equals(operation.get(GENERAL_PROPERTY_CHILD_TYPE).asString())) {
+            return failed("WFLYCTL0206: No known child type named " + operation.get(GENERAL_PROPERTY_CHILD_TYPE).asString());
+        }
+        final ModelNode result = new ModelNode();
+        if (OPERATION_READ_CHILDREN_NAMES.equals(operationName)) {
+            result.setEmptyList();
+            for (final String datasourceName : datasources.keySet()) {
+                result.add(datasourceName);
+            }
+        } else {
+            result.setEmptyObject();
+            final boolean recursive = operation.get(GENERAL_PROPERTY_RECURSIVE).asBoolean(false);
+            for (final Map.Entry<String, ModelNode> datasource : datasources.entrySet()) {
+                result.get(datasource.getKey()).set(readDatasource(datasource.getValue(), recursive, null));
+            }
+        }
+        return success(result);
+    }
+
+    /**
+     * Executes an operation on a connection property of a datasource.
+     * 
+     * @param operationName the operation name
+     * @param operation the operation
+     * @param connectionProperties the connection properties of the datasource
+     * @param propertyName the connection property name
+     * @param address the address
+     * @return the response
+     */
+    private ModelNode executeConnectionPropertyOperation(final String operationName, final ModelNode operation,
+        final ModelNode connectionProperties, final String propertyName, final ModelNode address) {
+        final boolean exists = connectionProperties.hasDefined(propertyName);
+        if (ClientConstants.ADD.equals(operationName)) {
+            if (exists) {
+                return failed("WFLYCTL0212: Duplicate resource " + address);
+            }
+            connectionProperties.get(propertyName, ClientConstants.VALUE).set(operation.get(ClientConstants.VALUE));
+            return success(new ModelNode());
+        }
+        if (!exists) {
+            return failed("WFLYCTL0216: Management resource '" + address + "' not found");
+        }
+        if (ClientConstants.DEPLOYMENT_REMOVE_OPERATION.equals(operationName)) {
+            final ModelNode remaining = new ModelNode();
+            for (final Property connectionProperty : connectionProperties.asPropertyList()) {
+                if (!connectionProperty.getName().equals(propertyName)) {
+                    remaining.get(connectionProperty.getName()).set(connectionProperty.getValue());
+                }
+            }
+            connectionProperties.set(remaining);
+            return success(new ModelNode());
+        } else if (OPERATION_READ_RESOURCE.equals(operationName)) {
+            return success(connectionProperties.get(propertyName));
+        } else if (OPERATION_READ_ATTRIBUTE.equals(operationName)
+            && ClientConstants.VALUE.equals(operation.get(ClientConstants.NAME).asString())) {
+            return success(connectionProperties.get(propertyName, ClientConstants.VALUE));
+        }
+        return failed("WFLYCTL0031: No operation named '" + operationName + "' exists at address " + address);
+    }
+
+    /**
+     * Reads a datasource resource.
+     * 
+     * @param datasource the datasource
+     * @param recursive whether child resources are included
+     * @param poolStatistics the pool statistics to include, null for none
+     * @return the datasource resource
+     */
+    private static ModelNode readDatasource(final ModelNode datasource, final boolean recursive,
+        final ModelNode poolStatistics) {
+        final ModelNode result = datasource.clone();
+        if (!recursive && result.hasDefined(ADDRESS_CONNECTION_PROPERTIES)) {
+            final ModelNode children = new ModelNode();
+            for (final String propertyName : result.get(ADDRESS_CONNECTION_PROPERTIES).keys()) {
+                children.get(propertyName);
+            }
+            result.get(ADDRESS_CONNECTION_PROPERTIES).set(children);
+        }
+        if (poolStatistics != null) {
+            result.get(ADDRESS_STATISTICS, ADDRESS_STATISTICS_POOL).set(poolStatistics);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the statistics of the pool of a datasource. No connection is ever in use. The caller holds the model lock.
+     * 
+     * @param datasource the datasource
+     * @param address the runtime address of the datasource
+     * @return the pool statistics, null if the datasource is disabled and has no pool
+     */
+    private ModelNode readPoolStatistics(final ModelNode datasource, final ModelNode address) {
+        if (!datasource.get(ATTRIBUTE_ENABLED).asBoolean(false)) {
+            return null;
+        }
+        final Integer connections = openConnections.get(getPoolKey(address));
+        final ModelNode poolStatistics = new ModelNode();
+        poolStatistics.get(STATISTIC_ACTIVE_COUNT).set(connections == null ? 0 : connections);
+        poolStatistics.get(STATISTIC_AVAILABLE_COUNT).set(
+            datasource.get(DS_PROPERTY_MAXPOOLSIZE).asInt(DEFAULT_MAX_POOL_SIZE));
+        poolStatistics.get(STATISTIC_IN_USE_COUNT).set(0);
+        return poolStatistics;
+    }
+
+    /**
+     * Executes an operation on the pool of a datasource. Testing a connection fills the pool up to its minimum size and
+     * flushing the pool closes its connections, none of which is ever in use or invalid. The caller holds the model lock.
+     * 
+     * @param operationName the operation name
+     * @param datasource the datasource
+     * @param address the runtime address of the datasource
+     * @return the response
+     */
+    private ModelNode executePoolOperation(final String operationName, final ModelNode datasource,
+        final ModelNode address) {
+        if (!datasource.get(ATTRIBUTE_ENABLED).asBoolean(false)) {
+            return failed("WFLYJCA0040: failed to invoke operation: datasource " + address
+                + " is disabled and has no pool");
+        }
+        final String poolKey = getPoolKey(address);
+        if (OPERATION_TEST_CONNECTION_IN_POOL.equals(operationName)) {
+            final Integer connections = openConnections.get(poolKey);
+            openConnections.put(poolKey, Math.max(connections == null ? 0 : connections, Math.max(1, datasource.get(
+                DS_PROPERTY_MINPOOLSIZE).asInt(0))));
+            return success(new ModelNode(true));
+        }
+        if (!OPERATION_FLUSH_INVALID_CONNECTION_IN_POOL.equals(operationName)) {
+            openConnections.remove(poolKey);
+        }
+        return success(new ModelNode());
+    }
+
+    /**
+     * Gets the key of the pool of a datasource.
+     * 
+     * @param address the runtime address of the datasource
+     * @return the pool key
+     */
+    private static String getPoolKey(final ModelNode address) {
+        final StringBuilder poolKey = new StringBuilder();
+        for (final Property element : address.asPropertyList()) {
+            poolKey.append('/').append(element.getName()).append('=').append(element.getValue().asString());
+        }
+        return poolKey.toString();
+    }
+
+    /**
+     * Parses an address into the profile, datasource and connection property names.
+     * 
+     * @param address the address
+     * @return the path elements, null if the address is not part of the datasources subsystem
+     */
+    private static String[] parseAddress(final ModelNode address) {
+        final List<Property> elements = address.isDefined() ? address.asPropertyList() : Collections.<Property> emptyList();
+        final String[] path = new String[] { STANDALONE_PROFILE, null, null };
+        int index = 0;
+        if (index < elements.size() && ADDRESS_PROFILE.equals(elements.get(index).getName())) {
+            path[0] = elements.get(index++).getValue().asString();
+        }
+        if (index >= elements.size() || !ADDRESS_SUBSYSTEM.equals(elements.get(index).getName())
+            || !DATASOURCE_SUBSYSTEM.equals(elements.get(index).getValue().asString())) {
+            return null;
+        }
+        index++;
+        if (index < elements.size()) {
+            if (!ADDRESS_DATASOURCE.equals(elements.get(index).getName())) {
+                return null;
+            }
+            path[1] = elements.get(index++).getValue().asString();
+        }
+        if (index < elements.size()) {
+            if (!ADDRESS_CONNECTION_PROPERTIES.equals(elements.get(index).getName())) {
+                return null;
+            }
+            path[2] = elements.get(index++).getValue().asString();
+        }
+        return index == elements.size() ? path : null;
+    }
+
+    /**
+     * Checks whether a failure is injected for the operation.
+     * 
+     * @param operationName the operation name
+     * @return true, if the operation must fail
+     */
+    private boolean isFailureInjected(final String operationName) {
+        final AtomicInteger remainingFailures = scheduledFailures.get(operationName);
+        if (remainingFailures != null && remainingFailures.getAndDecrement() > 0) {
+            return true;
+        }
+        return failureRate > 0 && nextRandom() < failureRate;
+    }
+
+    /**
+     * Sleeps for the configured latency.
+     * 
+     * @throws IOException if interrupted while sleeping
+     */
+    private void simulateLatency() throws IOException {
+        long latency = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            latency += (long) (nextRandom() * latencyJitterMillis);
+        }
+        if (latency <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while executing operation", ie);
+        }
+    }
+
+    /**
+     * Gets the next random number between 0 and 1.
+     * 
+     * @return the random number
+     */
+    private double nextRandom() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    /**
+     * Creates a deep copy of the model.
+     * 
+     * @param model the model
+     * @return the copy
+     */
+    private static Map<String, Map<String, ModelNode>> copy(final Map<String, Map<String, ModelNode>> model) {
+        final Map<String, Map<String, ModelNode>> copy = new LinkedHashMap<String, Map<String, ModelNode>>();
+        for (final Map.Entry<String, Map<String, ModelNode>> profile : model.entrySet()) {
+            final Map<String, ModelNode> datasources = new LinkedHashMap<String, ModelNode>();
+            for (final Map.Entry<String, ModelNode> datasource : profile.getValue().entrySet()) {
+                datasources.put(datasource.getKey(), datasource.getValue().clone());
+            }
+            copy.put(profile.getKey(), datasources);
+        }
+        return copy;
+    }
+
+    /**
+     * Creates the description of the data-source resource, with the attributes of the datasources added by the
+     * executors.
+     * 
+     * @return the description
+     */
+    private static ModelNode createDatasourceDescription() {
+        final ModelNode description = new ModelNode();
+        final ModelNode attributes = description.get(DESCRIPTION_PROPERTY_ATTRIBUTES);
+        describeAttribute(attributes, DS_PROPERTY_JNDINAME, ModelType.STRING, false).get(DESCRIPTION_PROPERTY_MIN_LENGTH)
+            .set(1);
+        describeAttribute(attributes, DS_PROPERTY_USEJAVACONTEXT, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_SHARE_PREPARED_STATEMENTS, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_PREPARED_STATEMENTS_CACHE_SIZE, ModelType.LONG, true).get(
+            DESCRIPTION_PROPERTY_MIN).set(0);
+        describeAttribute(attributes, DS_PROPERTY_POOLNAME, ModelType.STRING, true).get(
+            DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED).set(false);
+        describeAttribute(attributes, DS_PROPERTY_CONNECTIONURL, ModelType.STRING, false).get(
+            DESCRIPTION_PROPERTY_MIN_LENGTH).set(1);
+        describeAttribute(attributes, DS_PROPERTY_NEWCONNECTIONSQL, ModelType.STRING, true);
+        final ModelNode transactionIsolation = describeAttribute(attributes, DS_PROPERTY_TRANSACTIONISOLATION,
+            ModelType.STRING, true).get(DESCRIPTION_PROPERTY_ALLOWED);
+        for (final JndiDataSource.TransactionIsolation isolation : JndiDataSource.TransactionIsolation.values()) {
+            transactionIsolation.add(isolation.name());
+        }
+        describeAttribute(attributes, DS_PROPERTY_USE_CCM, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_JTA_INTEGRATION, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_DRIVERNAME, ModelType.STRING, false);
+        describeAttribute(attributes, DS_PROPERTY_USERNAME, ModelType.STRING, true);
+        describeAttribute(attributes, DS_PROPERTY_PASSWORD, ModelType.STRING, true).get(
+            DESCRIPTION_PROPERTY_ALTERNATIVES).add(DS_PROPERTY_CREDENTIAL_REFERENCE);
+        describeAttribute(attributes, DS_PROPERTY_CREDENTIAL_REFERENCE, ModelType.OBJECT, true).get(
+            DESCRIPTION_PROPERTY_ALTERNATIVES).add(DS_PROPERTY_PASSWORD);
+        describeAttribute(attributes, DS_PROPERTY_SECURITYDOMAIN, ModelType.STRING, true);
+        describeAttribute(attributes, DS_PROPERTY_MINPOOLSIZE, ModelType.INT, true).get(DESCRIPTION_PROPERTY_MIN).set(0);
+        final ModelNode maxPoolSize = describeAttribute(attributes, DS_PROPERTY_MAXPOOLSIZE, ModelType.INT, true);
+        maxPoolSize.get(DESCRIPTION_PROPERTY_MIN).set(1);
+        maxPoolSize.get(DESCRIPTION_PROPERTY_DEFAULT).set(DEFAULT_MAX_POOL_SIZE);
+        describeAttribute(attributes, DS_PROPERTY_POOLPREFILL, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_POOL_STRICT_MINIMUM, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_VALID_CONNECTION_SQL, ModelType.STRING, true);
+        describeAttribute(attributes, DS_PROPERTY_VALID_CONNCHECKER_CLASSNAME, ModelType.STRING, true);
+        describeAttribute(attributes, DS_PROPERTY_EXCEPTION_SORTER_CLASSNAME, ModelType.STRING, true);
+        describeAttribute(attributes, DS_PROPERTY_STALE_CONNCHECKER_CLASSNAME, ModelType.STRING, true);
+        describeAttribute(attributes, DS_PROPERTY_BG_VALIDATION, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, DS_PROPERTY_BG_VALIDATION_MILLIS, ModelType.LONG, true).get(
+            DESCRIPTION_PROPERTY_MIN).set(1);
+        describeAttribute(attributes, DS_PROPERTY_VALIDATE_ON_MATCH, ModelType.BOOLEAN, true);
+        describeAttribute(attributes, ATTRIBUTE_ENABLED, ModelType.BOOLEAN, true).get(DESCRIPTION_PROPERTY_DEFAULT).set(
+            false);
+        return description;
+    }
+
+    /**
+     * Adds the description of a read-write attribute allowing expressions.
+     * 
+     * @param attributes the attribute descriptions
+     * @param name the attribute name
+     * @param type the attribute type
+     * @param nillable whether the attribute may be undefined
+     * @return the attribute description
+     */
+    private static ModelNode describeAttribute(final ModelNode attributes, final String name, final ModelType type,
+        final boolean nillable) {
+        final ModelNode attribute = attributes.get(name);
+        attribute.get(DESCRIPTION_PROPERTY_TYPE).set(type);
+        attribute.get(DESCRIPTION_PROPERTY_NILLABLE).set(nillable);
+        attribute.get(DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED).set(true);
+        attribute.get(DESCRIPTION_PROPERTY_ACCESS_TYPE).set(ACCESS_TYPE_READ_WRITE);
+        return attribute;
+    }
+
+    /**
+     * Creates the version attributes of the root resource.
+     * 
+     * @param managementMajorVersion the management major version
+     * @param managementMinorVersion the management minor version
+     * @param managementMicroVersion the management micro version
+     * @param productName the product name, null for none
+     * @param productVersion the product version, null for none
+     * @return the version attributes
+     */
+    private static ModelNode createVersionAttributes(final int managementMajorVersion, final int managementMinorVersion,
+        final int managementMicroVersion, final String productName, final String productVersion) {
+        final ModelNode attributes = new ModelNode();
+        attributes.get(ATTRIBUTE_MANAGEMENT_MAJOR_VERSION).set(managementMajorVersion);
+        attributes.get(ATTRIBUTE_MANAGEMENT_MINOR_VERSION).set(managementMinorVersion);
+        attributes.get(ATTRIBUTE_MANAGEMENT_MICRO_VERSION).set(managementMicroVersion);
+        attributes.get(ATTRIBUTE_PRODUCT_NAME);
+        attributes.get(ATTRIBUTE_PRODUCT_VERSION);
+        if (productName != null) {
+            attributes.get(ATTRIBUTE_PRODUCT_NAME).set(productName);
+        }
+        if (productVersion != null) {
+            attributes.get(ATTRIBUTE_PRODUCT_VERSION).set(productVersion);
+        }
+        return attributes;
+    }
+
+    /**
+     * Creates a success response.
+     * 
+     * @param result the result
+     * @return the response
+     */
+    private static ModelNode success(final ModelNode result) {
+        final ModelNode response = new ModelNode();
+        response.get(ClientConstants.OUTCOME).set(ClientConstants.SUCCESS);
+        response.get(ClientConstants.RESULT).set(result);
+        return response;
+    }
+
+    /**
+     * Creates a failure response.
+     * 
+     * @param failureDescription the failure description
+     * @return the response
+     */
+    private static ModelNode failed(final String failureDescription) {
+        final ModelNode response = new ModelNode();
+        response.get(ClientConstants.OUTCOME).set("failed");
+        response.get(ClientConstants.FAILURE_DESCRIPTION).set(failureDescription);
+        response.get(RESPONSE_PROPERTY_ROLLEDBACK).set(true);
+        return response;
+    }
+
+    /**
+     * The state of a server.
+     */
+    private static class Server {
+
+        /** The server profile name. */
+        private final String profile;
+
+        /** The server state. */
+        private String state = SERVER_STATE_RUNNING;
+
+        /** The number of requests the server is still unavailable for while reloading. */
+        private int reloadingRequests;
+
+        /** The number of reloads and restarts. */
+        private int reloadCount;
+
+        /**
+         * Instantiates a new server.
+         * 
+         * @param profile the server profile name
+         */
+        private Server(final String profile) {
+            this.profile = profile;
+        }
+
+        /**
+         * Checks whether the server is reloading, counting the check as a request addressing it.
+         * 
+         * @return true, if reloading
+         */
+        private boolean isReloading() {
+            if (reloadingRequests > 0) {
+                reloadingRequests--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
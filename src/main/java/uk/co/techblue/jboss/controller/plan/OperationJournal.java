@@ -0,0 +1,557 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.plan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * An append-only, local write-ahead journal of the execution of an {@link OperationPlan}, from which an interrupted
+ * execution can be resumed or rolled back exactly.
+ * <p>
+ * The journal is a UTF-8 text file of one record per line. The first line holds the plan, its operations and
+ * compensations as compact JSON. Every following line records a step: <code>INTENT n</code> before operation
+ * <code>n</code> is sent, <code>DONE n</code> once it succeeded and <code>FAILED n</code> if the controller rejected it;
+ * <code>UNDO n</code> and <code>UNDONE n</code> likewise frame its compensation. <code>END COMPLETED</code> and
+ * <code>END ROLLED_BACK</code> close the journal. An operation with an intent but no outcome was in flight when the
+ * process stopped and is in doubt: whether the controller applied it must be verified before going on.
+ * <p>
+ * Every record is forced to disk before the operation it announces is sent. The file is locked while open, so that two
+ * processes cannot drive the same journal. As the operations include datasource passwords, the file is made readable by
+ * its owner only where the file system allows it.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class OperationJournal implements Closeable {
+
+    /** The journal format version. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The charset of the journal. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** The plan record. */
+    private static final String RECORD_PLAN = "PLAN";
+
+    /** The record of an operation about to be sent. */
+    private static final String RECORD_INTENT = "INTENT";
+
+    /** The record of a successful operation. */
+    private static final String RECORD_DONE = "DONE";
+
+    /** The record of an operation rejected by the controller. */
+    private static final String RECORD_FAILED = "FAILED";
+
+    /** The record of a compensation about to be sent. */
+    private static final String RECORD_UNDO = "UNDO";
+
+    /** The record of a successful compensation. */
+    private static final String RECORD_UNDONE = "UNDONE";
+
+    /** The end record. */
+    private static final String RECORD_END = "END";
+
+    /** The end status of a completed plan. */
+    private static final String STATUS_COMPLETED = "COMPLETED";
+
+    /** The end status of a rolled back plan. */
+    private static final String STATUS_ROLLED_BACK = "ROLLED_BACK";
+
+    /** The plan format version property. */
+    private static final String PROPERTY_FORMAT_VERSION = "format-version";
+
+    /** The controller host property. */
+    private static final String PROPERTY_HOST = "host";
+
+    /** The controller port property. */
+    private static final String PROPERTY_PORT = "port";
+
+    /** The rollback on failure property. */
+    private static final String PROPERTY_ROLLBACK_ON_FAILURE = "rollback-on-failure";
+
+    /** The steps property. */
+    private static final String PROPERTY_STEPS = "steps";
+
+    /** The step description property. */
+    private static final String PROPERTY_DESCRIPTION = "description";
+
+    /** The step server profile property. */
+    private static final String PROPERTY_PROFILE = "profile";
+
+    /** The step operation property. */
+    private static final String PROPERTY_OPERATION = "operation";
+
+    /** The step compensation property. */
+    private static final String PROPERTY_COMPENSATION = "compensation";
+
+    /** The journal file. */
+    private final File file;
+
+    /** The file channel. */
+    private final FileChannel channel;
+
+    /** The file lock. */
+    private final FileLock lock;
+
+    /** The controller host the plan was built for. */
+    private String host;
+
+    /** The controller port the plan was built for. */
+    private int port;
+
+    /** Whether the plan rolls back on failure. */
+    private boolean rollbackOnFailure;
+
+    /** The planned operations. */
+    private List<PlannedOperation> operations = Collections.emptyList();
+
+    /** The steps with an intent record. */
+    private final BitSet intended = new BitSet();
+
+    /** The steps with a done record. */
+    private final BitSet done = new BitSet();
+
+    /** The steps with a failed record. */
+    private final BitSet failed = new BitSet();
+
+    /** The steps with an undo record. */
+    private final BitSet undoing = new BitSet();
+
+    /** The steps with an undone record. */
+    private final BitSet undone = new BitSet();
+
+    /** The end status, null while the journal is open. */
+    private String status;
+
+    /**
+     * Instantiates a new operation journal on a locked file.
+     * 
+     * @param file the journal file
+     * @param channel the file channel
+     * @param lock the file lock
+     */
+    private OperationJournal(final File file, final FileChannel channel, final FileLock lock) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /**
+     * Creates a new journal for a plan. The file must not exist.
+     * 
+     * @param file the journal file
+     * @param plan the plan
+     * @return the operation journal, open and locked
+     * @throws IOException if the file exists or cannot be written
+     */
+    public static OperationJournal create(final File file, final OperationPlan plan) throws IOException {
+        if (!file.createNewFile()) {
+            throw new IOException("Operation journal " + file + " already exists.");
+        }
+        restrictToOwner(file);
+        final OperationJournal journal = lock(file);
+        journal.host = plan.getControllerClientConfig().getHost();
+        journal.port = plan.getControllerClientConfig().getPort();
+        journal.rollbackOnFailure = plan.isRollbackOnFailure();
+        journal.operations = plan.getOperations();
+
+        final ModelNode record = new ModelNode();
+        record.get(PROPERTY_FORMAT_VERSION).set(FORMAT_VERSION);
+        record.get(PROPERTY_HOST).set(journal.host);
+        record.get(PROPERTY_PORT).set(journal.port);
+        record.get(PROPERTY_ROLLBACK_ON_FAILURE).set(journal.rollbackOnFailure);
+        final ModelNode steps = record.get(PROPERTY_STEPS).setEmptyList();
+        for (final PlannedOperation operation : journal.operations) {
+            final ModelNode step = new ModelNode();
+            step.get(PROPERTY_DESCRIPTION).set(operation.getDescription());
+            if (operation.getServerProfileName() != null) {
+                step.get(PROPERTY_PROFILE).set(operation.getServerProfileName());
+            }
+            step.get(PROPERTY_OPERATION).set(operation.getOperation());
+            if (operation.getCompensation() != null) {
+                step.get(PROPERTY_COMPENSATION).set(operation.getCompensation());
+            }
+            steps.add(step);
+        }
+        journal.append(RECORD_PLAN + ' ' + record.toJSONString(true));
+        return journal;
+    }
+
+    /**
+     * Opens an existing journal and replays its records. A last record cut short by a crash is discarded.
+     * 
+     * @param file the journal file
+     * @return the operation journal, open and locked
+     * @throws IOException if the file cannot be read, is locked by another process or holds no plan
+     */
+    public static OperationJournal open(final File file) throws IOException {
+        final OperationJournal journal = lock(file);
+        try {
+            journal.replay();
+        } catch (IOException ioe) {
+            journal.close();
+            throw ioe;
+        } catch (RuntimeException re) {
+            journal.close();
+            throw new IOException("Operation journal " + file + " is corrupt.", re);
+        }
+        return journal;
+    }
+
+    /**
+     * Opens and locks the journal file.
+     * 
+     * @param file the journal file
+     * @return the operation journal
+     * @throws IOException if the file cannot be opened or is locked
+     */
+    private static OperationJournal lock(final File file) throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ofle) {
+            lock = null;
+        } finally {
+            if (lock == null) {
+                channel.close();
+            }
+        }
+        if (lock == null) {
+            throw new IOException("Operation journal " + file + " is in use by another execution.");
+        }
+        return new OperationJournal(file, channel, lock);
+    }
+
+    /**
+     * Makes the file readable and writable by its owner only, where supported.
+     * 
+     * @param file the file
+     */
+    private static void restrictToOwner(final File file) {
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+    }
+
+    /**
+     * Replays the records of the journal.
+     * 
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void replay() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // read the whole journal
+        }
+        int length = buffer.position();
+        while (length > 0 && buffer.get(length - 1) != '\n') {
+            length--;
+        }
+        if (length < buffer.position()) {
+            // the last record was cut short and was never acted upon
+            channel.truncate(length);
+            channel.force(false);
+        }
+        final String[] lines = new String(buffer.array(), 0, length, CHARSET).split("\n");
+        if (length == 0 || !lines[0].startsWith(RECORD_PLAN + ' ')) {
+            throw new IOException("Operation journal " + file + " holds no plan.");
+        }
+        readPlan(ModelNode.fromJSONString(lines[0].substring(RECORD_PLAN.length() + 1)));
+        for (int i = 1; i < lines.length; i++) {
+            final String line = lines[i];
+            final int separator = line.indexOf(' ');
+            final String type = line.substring(0, separator);
+            final String argument = line.substring(separator + 1);
+            if (RECORD_END.equals(type)) {
+                status = argument;
+                continue;
+            }
+            final int step = Integer.parseInt(argument);
+            if (RECORD_INTENT.equals(type)) {
+                intended.set(step);
+            } else if (RECORD_DONE.equals(type)) {
+                done.set(step);
+            } else if (RECORD_FAILED.equals(type)) {
+                failed.set(step);
+            } else if (RECORD_UNDO.equals(type)) {
+                undoing.set(step);
+            } else if (RECORD_UNDONE.equals(type)) {
+                undone.set(step);
+            } else {
+                throw new IOException("Unknown record '" + line + "' in operation journal " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads the plan record.
+     * 
+     * @param record the plan record
+     * @throws IOException if the format version is not supported
+     */
+    private void readPlan(final ModelNode record) throws IOException {
+        if (record.get(PROPERTY_FORMAT_VERSION).asInt(0) != FORMAT_VERSION) {
+            throw new IOException("Unsupported operation journal format version "
+                + record.get(PROPERTY_FORMAT_VERSION).asString());
+        }
+        host = record.get(PROPERTY_HOST).asString();
+        port = record.get(PROPERTY_PORT).asInt();
+        rollbackOnFailure = record.get(PROPERTY_ROLLBACK_ON_FAILURE).asBoolean();
+        final List<PlannedOperation> plannedOperations = new ArrayList<PlannedOperation>();
+        for (final ModelNode step : record.get(PROPERTY_STEPS).asList()) {
+            plannedOperations.add(new PlannedOperation(step.get(PROPERTY_DESCRIPTION).asString(), step
+                .hasDefined(PROPERTY_PROFILE) ? step.get(PROPERTY_PROFILE).asString() : null, step.get(PROPERTY_OPERATION),
+                step.hasDefined(PROPERTY_COMPENSATION) ? step.get(PROPERTY_COMPENSATION) : null));
+        }
+        operations = Collections.unmodifiableList(plannedOperations);
+    }
+
+    /**
+     * Appends a record and forces it to disk.
+     * 
+     * @param record the record
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void append(final String record) throws IOException {
+        if (status != null) {
+            throw new IOException("Operation journal " + file + " is closed with status " + status);
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap((record + '\n').getBytes(CHARSET));
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Records that an operation is about to be sent.
+     * 
+     * @param step the step index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void intent(final int step) throws IOException {
+        append(RECORD_INTENT + ' ' + step);
+        intended.set(step);
+        failed.clear(step);
+    }
+
+    /**
+     * Records that an operation succeeded.
+     * 
+     * @param step the step index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void done(final int step) throws IOException {
+        append(RECORD_DONE + ' ' + step);
+        done.set(step);
+    }
+
+    /**
+     * Records that the controller rejected an operation, i.e. that it was not applied.
+     * 
+     * @param step the step index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void failed(final int step) throws IOException {
+        append(RECORD_FAILED + ' ' + step);
+        failed.set(step);
+    }
+
+    /**
+     * Records that the compensation of an operation is about to be sent.
+     * 
+     * @param step the step index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void undo(final int step) throws IOException {
+        append(RECORD_UNDO + ' ' + step);
+        undoing.set(step);
+    }
+
+    /**
+     * Records that the compensation of an operation succeeded.
+     * 
+     * @param step the step index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void undone(final int step) throws IOException {
+        append(RECORD_UNDONE + ' ' + step);
+        undone.set(step);
+    }
+
+    /**
+     * Records that every operation of the plan succeeded. No record can be appended afterwards.
+     * 
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void completed() throws IOException {
+        append(RECORD_END + ' ' + STATUS_COMPLETED);
+        status = STATUS_COMPLETED;
+    }
+
+    /**
+     * Records that every applied operation of the plan was compensated. No record can be appended afterwards.
+     * 
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void rolledBack() throws IOException {
+        append(RECORD_END + ' ' + STATUS_ROLLED_BACK);
+        status = STATUS_ROLLED_BACK;
+    }
+
+    /**
+     * Gets the journal file.
+     * 
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the controller host the plan was built for.
+     * 
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the controller port the plan was built for.
+     * 
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Checks whether the plan rolls back on failure.
+     * 
+     * @return true, if rollback on failure
+     */
+    public boolean isRollbackOnFailure() {
+        return rollbackOnFailure;
+    }
+
+    /**
+     * Gets the planned operations, indexed by step.
+     * 
+     * @return the operations
+     */
+    public List<PlannedOperation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Checks whether an operation succeeded.
+     * 
+     * @param step the step index
+     * @return true, if done
+     */
+    public boolean isDone(final int step) {
+        return done.get(step);
+    }
+
+    /**
+     * Checks whether an operation is in doubt, i.e. was sent without its outcome being recorded.
+     * 
+     * @param step the step index
+     * @return true, if in doubt
+     */
+    public boolean isInDoubt(final int step) {
+        return intended.get(step) && !done.get(step) && !failed.get(step);
+    }
+
+    /**
+     * Checks whether the compensation of an operation succeeded.
+     * 
+     * @param step the step index
+     * @return true, if undone
+     */
+    public boolean isUndone(final int step) {
+        return undone.get(step);
+    }
+
+    /**
+     * Checks whether the compensation of an operation is in doubt, i.e. was sent without its outcome being recorded.
+     * 
+     * @param step the step index
+     * @return true, if the compensation is in doubt
+     */
+    public boolean isUndoInDoubt(final int step) {
+        return undoing.get(step) && !undone.get(step);
+    }
+
+    /**
+     * Checks whether every operation of the plan succeeded.
+     * 
+     * @return true, if completed
+     */
+    public boolean isCompleted() {
+        return STATUS_COMPLETED.equals(status);
+    }
+
+    /**
+     * Checks whether every applied operation of the plan was compensated.
+     * 
+     * @return true, if rolled back
+     */
+    public boolean isRolledBack() {
+        return STATUS_ROLLED_BACK.equals(status);
+    }
+
+    /**
+     * Checks whether the journal is closed with an end record.
+     * 
+     * @return true, if ended
+     */
+    public boolean isEnded() {
+        return status != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (lock.isValid()) {
+                lock.release();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
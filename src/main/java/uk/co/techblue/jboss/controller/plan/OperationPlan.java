@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * A precomputed list of management operations to be sent to a controller. A plan is built by the {@link OperationPlanner}
+ * without contacting the controller and can be inspected, approved and later executed as is, any number of times.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class OperationPlan {
+
+    /** The controller client config. */
+    private final ControllerClientConfig controllerClientConfig;
+
+    /** The operations. */
+    private final List<PlannedOperation> operations;
+
+    /** Whether completed operations are compensated when an operation fails. */
+    private final boolean rollbackOnFailure;
+
+    /**
+     * Instantiates a new operation plan.
+     * 
+     * @param controllerClientConfig the controller client config the plan is executed against
+     * @param operations the operations in execution order
+     * @param rollbackOnFailure whether completed operations are compensated when an operation fails
+     */
+    public OperationPlan(ControllerClientConfig controllerClientConfig, List<PlannedOperation> operations,
+            boolean rollbackOnFailure) {
+        this.controllerClientConfig = controllerClientConfig;
+        this.operations = Collections.unmodifiableList(new ArrayList<PlannedOperation>(operations));
+        this.rollbackOnFailure = rollbackOnFailure;
+    }
+
+    /**
+     * Gets the controller client config the plan is executed against.
+     * 
+     * @return the controller client config
+     */
+    public ControllerClientConfig getControllerClientConfig() {
+        return controllerClientConfig;
+    }
+
+    /**
+     * Gets the operations in execution order.
+     * 
+     * @return the operations
+     */
+    public List<PlannedOperation> getOperations() {
+        return operations;
+    }
+
+    /**
+     * Checks whether completed operations are compensated when an operation fails.
+     * 
+     * @return true, if rollback on failure
+     */
+    public boolean isRollbackOnFailure() {
+        return rollbackOnFailure;
+    }
+
+    /**
+     * Gets the number of round trips to the controller needed to execute the plan successfully. Each planned operation is
+     * sent in its own request.
+     * 
+     * @return the round trips
+     */
+    public int getRoundTrips() {
+        return operations.size();
+    }
+
+    /**
+     * Gets the maximum number of round trips to the controller, reached when the last operation fails and every completed
+     * operation is compensated.
+     * 
+     * @return the maximum round trips
+     */
+    public int getMaximumRoundTrips() {
+        if (!rollbackOnFailure || operations.isEmpty()) {
+            return getRoundTrips();
+        }
+        int compensations = 0;
+        for (int i = 0; i < operations.size() - 1; i++) {
+            if (operations.get(i).getCompensation() != null) {
+                compensations++;
+            }
+        }
+        return operations.size() + compensations;
+    }
+
+    /**
+     * Gets the distinct server profiles targeted by the plan. A standalone server is reported as an empty name.
+     * 
+     * @return the server profile names
+     */
+    public Set<String> getServerProfileNames() {
+        final Set<String> serverProfileNames = new LinkedHashSet<String>();
+        for (final PlannedOperation operation : operations) {
+            if (operation.getServerProfileName() != null) {
+                serverProfileNames.add(operation.getServerProfileName());
+            }
+        }
+        return serverProfileNames;
+    }
+
+    /**
+     * Converts the plan into a plan executing all operations in a single atomic composite operation. The controller rolls
+     * back the whole composite on failure, so no client side compensation is needed.
+     * 
+     * @return the composite plan
+     */
+    public OperationPlan toComposite() {
+        final List<ModelNode> steps = new ArrayList<ModelNode>();
+        for (final PlannedOperation operation : operations) {
+            steps.add(operation.getOperation());
+        }
+        final PlannedOperation composite = new PlannedOperation("Composite of " + steps.size() + " operations", null,
+            DatasourceOperations.createCompositeOperation(steps), null);
+        return new OperationPlan(controllerClientConfig, Collections.singletonList(composite), false);
+    }
+
+    /**
+     * Describes the plan in a human readable form, one operation per line. Passwords are masked.
+     * 
+     * @return the description
+     */
+    public String describe() {
+        final StringBuilder description = new StringBuilder();
+        description.append(operations.size()).append(" operation(s) against ").append(controllerClientConfig.getHost())
+            .append(':').append(controllerClientConfig.getPort()).append(" in ").append(getServerProfileNames().size())
+            .append(" profile(s), ").append(getRoundTrips()).append(" round trip(s)");
+        if (rollbackOnFailure) {
+            description.append(", up to ").append(getMaximumRoundTrips()).append(" with rollback");
+        }
+        int index = 1;
+        for (final PlannedOperation operation : operations) {
+            description.append('\n').append(index++).append(". ").append(operation);
+        }
+        return description.toString();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return describe();
+    }
+}
@@ -0,0 +1,503 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.plan;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_ENABLED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.FAILURE_CODE_RESOURCE_NOT_FOUND;
+import static uk.co.techblue.jboss.controller.ControllerConstants.FAILURE_CODE_RESOURCE_NOT_FOUND_AS7;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_DISABLE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_ENABLE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_ATTRIBUTE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_RESOURCE;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Builds {@link OperationPlan}s from the same inputs as the {@link ExtendedControllerOperationExecutor} bulk operations
+ * without contacting the controller, and executes previously built plans.
+ * <p>
+ * A plan contains exactly the operations the executor would send, in the same order. Plans for datasource creation are
+ * compensated on failure like
+ * {@link ExtendedControllerOperationExecutor#createDatasources(ControllerClientConfig, List, boolean, String...)}, the
+ * other plans stop at the first failure.
+ * <p>
+ * Plans can also be executed with an {@link OperationJournal}, so that an execution interrupted by the death of the process
+ * can later be resumed or rolled back exactly. Only the steps the journal leaves in doubt are verified against the
+ * controller, each with a single read.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class OperationPlanner {
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(OperationPlanner.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /**
+     * Instantiates a new operation planner.
+     * 
+     * @param operationExecutor the operation executor plans are executed with
+     */
+    public OperationPlanner(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Plans the creation of a datasource in the given server profiles.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param dataSource the data source
+     * @param enable whether to enable the datasource
+     * @param serverProfileNames the server profile names
+     * @return the operation plan
+     */
+    public OperationPlan planCreateDatasource(final ControllerClientConfig controllerClientConfig,
+        final JndiDataSource dataSource, final boolean enable, final String... serverProfileNames) {
+        return planCreateDatasources(controllerClientConfig, Collections.singletonList(dataSource), enable,
+            serverProfileNames);
+    }
+
+    /**
+     * Plans the creation of the datasources in the given server profiles.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param dataSources the data sources
+     * @param enable whether to enable the datasources
+     * @param serverProfileNames the server profile names
+     * @return the operation plan
+     */
+    public OperationPlan planCreateDatasources(final ControllerClientConfig controllerClientConfig,
+        final List<JndiDataSource> dataSources, final boolean enable, final String... serverProfileNames) {
+        if (dataSources == null || dataSources.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final List<PlannedOperation> operations = new ArrayList<PlannedOperation>();
+        for (final JndiDataSource dataSource : dataSources) {
+            final String jndiName = dataSource.getJndiName();
+            for (final String serverProfile : getServerProfiles(serverProfileNames)) {
+                operations.add(new PlannedOperation((enable ? "Add and enable datasource '" : "Add datasource '")
+                    + jndiName + "'" + describeProfile(serverProfile), serverProfile, DatasourceOperations
+                    .createAddOperation(dataSource, enable, serverProfile), DatasourceOperations.createRemoveOperation(
+                    jndiName, serverProfile)));
+            }
+        }
+        return new OperationPlan(controllerClientConfig, operations, true);
+    }
+
+    /**
+     * Plans the removal of the datasources from the given server profiles.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @param serverProfileNames the server profile names
+     * @return the operation plan
+     */
+    public OperationPlan planRemoveDatasources(final ControllerClientConfig controllerClientConfig,
+        final List<String> datasourceNames, final String... serverProfileNames) {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final List<PlannedOperation> operations = new ArrayList<PlannedOperation>();
+        for (final String datasourceName : datasourceNames) {
+            for (final String serverProfile : getServerProfiles(serverProfileNames)) {
+                operations.add(new PlannedOperation("Remove datasource '" + datasourceName + "'"
+                    + describeProfile(serverProfile), serverProfile, DatasourceOperations.createRemoveOperation(
+                    datasourceName, serverProfile), null));
+            }
+        }
+        return new OperationPlan(controllerClientConfig, operations, false);
+    }
+
+    /**
+     * Plans enabling the datasources in the given server profiles.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @param serverProfileNames the server profile names
+     * @return the operation plan
+     */
+    public OperationPlan planEnableDataSources(final ControllerClientConfig controllerClientConfig,
+        final List<String> datasourceNames, final String... serverProfileNames) {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final List<PlannedOperation> operations = new ArrayList<PlannedOperation>();
+        for (final String datasourceName : datasourceNames) {
+            for (final String serverProfile : getServerProfiles(serverProfileNames)) {
+                operations.add(new PlannedOperation("Enable datasource '" + datasourceName + "'"
+                    + describeProfile(serverProfile), serverProfile, DatasourceOperations.createEnableOperation(
+                    datasourceName, serverProfile), null));
+            }
+        }
+        return new OperationPlan(controllerClientConfig, operations, false);
+    }
+
+    /**
+     * Plans disabling the datasources in the given server profiles.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @param serverProfileNames the server profile names
+     * @return the operation plan
+     */
+    public OperationPlan planDisableDataSources(final ControllerClientConfig controllerClientConfig,
+        final List<String> datasourceNames, final String... serverProfileNames) {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final List<PlannedOperation> operations = new ArrayList<PlannedOperation>();
+        for (final String datasourceName : datasourceNames) {
+            for (final String serverProfile : getServerProfiles(serverProfileNames)) {
+                operations.add(new PlannedOperation("Disable datasource '" + datasourceName + "'"
+                    + describeProfile(serverProfile), serverProfile, DatasourceOperations.createDisableOperation(
+                    datasourceName, serverProfile), null));
+            }
+        }
+        return new OperationPlan(controllerClientConfig, operations, false);
+    }
+
+    /**
+     * Executes a plan. The planned operations are sent as built. If an operation fails and the plan rolls back on
+     * failure, the completed operations are compensated in reverse order before the failure is rethrown.
+     * 
+     * @param plan the plan
+     * @throws ControllerOperationException the controller operation exception
+     */
+    public void execute(final OperationPlan plan) throws ControllerOperationException {
+        final ControllerClientConfig controllerClientConfig = plan.getControllerClientConfig();
+        final List<PlannedOperation> completedOperations = new ArrayList<PlannedOperation>();
+        for (final PlannedOperation operation : plan.getOperations()) {
+            try {
+                logger.info("{} ...", operation.getDescription());
+                operationExecutor.executeOperation(controllerClientConfig, operation.getOperation());
+                completedOperations.add(operation);
+            } catch (ControllerOperationException coe) {
+                if (plan.isRollbackOnFailure()) {
+                    rollback(controllerClientConfig, completedOperations);
+                }
+                throw coe;
+            }
+        }
+        logger.info("Executed {} planned operation(s) successfully!", completedOperations.size());
+    }
+
+    /**
+     * Executes a plan like {@link #execute(OperationPlan)}, recording every step in a new write-ahead journal first.
+     * 
+     * @param plan the plan
+     * @param journalFile the journal file, which must not exist
+     * @throws ControllerOperationException the controller operation exception
+     * @throws IOException if the journal cannot be written
+     */
+    public void execute(final OperationPlan plan, final File journalFile) throws ControllerOperationException, IOException {
+        final OperationJournal journal = OperationJournal.create(journalFile, plan);
+        try {
+            execute(plan.getControllerClientConfig(), journal);
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Resumes the interrupted execution recorded in a journal. The operation in flight when the execution stopped is
+     * verified and only sent again if the controller did not apply it; the remaining operations follow. A journal that has
+     * already ended is left alone.
+     * 
+     * @param controllerClientConfig the config of the controller the journal was written for
+     * @param journalFile the journal file
+     * @throws ControllerOperationException the controller operation exception
+     * @throws IOException if the journal cannot be read or written, or is in use
+     */
+    public void resume(final ControllerClientConfig controllerClientConfig, final File journalFile)
+        throws ControllerOperationException, IOException {
+        final OperationJournal journal = openJournal(controllerClientConfig, journalFile);
+        try {
+            if (journal.isEnded()) {
+                logger.info("Operation journal {} has already ended, nothing to resume.", journalFile);
+                return;
+            }
+            execute(controllerClientConfig, journal);
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Rolls back the interrupted execution recorded in a journal by compensating the applied operations in reverse order.
+     * Operations and compensations in doubt are verified first. Failed compensations are logged and leave the journal
+     * open, so that the rollback can be repeated. A journal that has already ended is left alone.
+     * 
+     * @param controllerClientConfig the config of the controller the journal was written for
+     * @param journalFile the journal file
+     * @return true, if every applied operation is compensated
+     * @throws IOException if the journal cannot be read or written, or is in use
+     */
+    public boolean rollback(final ControllerClientConfig controllerClientConfig, final File journalFile) throws IOException {
+        final OperationJournal journal = openJournal(controllerClientConfig, journalFile);
+        try {
+            if (journal.isEnded()) {
+                logger.info("Operation journal {} has already ended, nothing to roll back.", journalFile);
+                return journal.isRolledBack();
+            }
+            return rollback(controllerClientConfig, journal);
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Opens a journal and checks that it was written for the given controller.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param journalFile the journal file
+     * @return the operation journal
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static OperationJournal openJournal(final ControllerClientConfig controllerClientConfig, final File journalFile)
+        throws IOException {
+        final OperationJournal journal = OperationJournal.open(journalFile);
+        if (!controllerClientConfig.getHost().equals(journal.getHost())
+            || controllerClientConfig.getPort() != journal.getPort()) {
+            journal.close();
+            throw new IllegalArgumentException("Operation journal " + journalFile + " was written for controller "
+                + journal.getHost() + ":" + journal.getPort());
+        }
+        return journal;
+    }
+
+    /**
+     * Executes the operations of a journal that are not done yet.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param journal the journal
+     * @throws ControllerOperationException the controller operation exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void execute(final ControllerClientConfig controllerClientConfig, final OperationJournal journal)
+        throws ControllerOperationException, IOException {
+        final List<PlannedOperation> operations = journal.getOperations();
+        for (int step = 0; step < operations.size(); step++) {
+            if (journal.isDone(step)) {
+                continue;
+            }
+            final PlannedOperation operation = operations.get(step);
+            if (journal.isInDoubt(step) && isApplied(controllerClientConfig, operation.getOperation())) {
+                logger.info("Already applied: {}", operation.getDescription());
+                journal.done(step);
+                continue;
+            }
+            journal.intent(step);
+            try {
+                logger.info("{} ...", operation.getDescription());
+                operationExecutor.executeOperation(controllerClientConfig, operation.getOperation());
+            } catch (ControllerOperationException coe) {
+                if (coe.getCause() == null) {
+                    // rejected by the controller, hence not applied; otherwise the step stays in doubt
+                    journal.failed(step);
+                }
+                if (journal.isRollbackOnFailure()) {
+                    rollback(controllerClientConfig, journal);
+                }
+                throw coe;
+            }
+            journal.done(step);
+        }
+        journal.completed();
+        logger.info("Executed {} planned operation(s) successfully!", operations.size());
+    }
+
+    /**
+     * Compensates the applied operations of a journal in reverse order.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param journal the journal
+     * @return true, if every applied operation is compensated
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private boolean rollback(final ControllerClientConfig controllerClientConfig, final OperationJournal journal)
+        throws IOException {
+        final List<PlannedOperation> operations = journal.getOperations();
+        boolean rolledBack = true;
+        for (int step = operations.size() - 1; step >= 0; step--) {
+            final PlannedOperation operation = operations.get(step);
+            if (journal.isUndone(step)) {
+                continue;
+            }
+            try {
+                if (!journal.isDone(step)) {
+                    if (!journal.isInDoubt(step) || !isApplied(controllerClientConfig, operation.getOperation())) {
+                        continue;
+                    }
+                    journal.done(step);
+                }
+                if (operation.getCompensation() == null) {
+                    continue;
+                }
+                if (journal.isUndoInDoubt(step) && isApplied(controllerClientConfig, operation.getCompensation())) {
+                    journal.undone(step);
+                    continue;
+                }
+                journal.undo(step);
+                logger.info("Rolling back: {}", operation.getDescription());
+                operationExecutor.executeOperation(controllerClientConfig, operation.getCompensation());
+                journal.undone(step);
+            } catch (ControllerOperationException coe) {
+                rolledBack = false;
+                logger.error("An error occurred while rolling back: " + operation.getDescription(), coe);
+            }
+        }
+        if (rolledBack) {
+            journal.rolledBack();
+        }
+        return rolledBack;
+    }
+
+    /**
+     * Verifies with a single read whether the controller applied an operation. A composite is verified by its first step,
+     * as composites are applied atomically.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param operation the operation
+     * @return true, if applied
+     * @throws ControllerOperationException if the controller cannot be read or the operation cannot be verified
+     */
+    private boolean isApplied(final ControllerClientConfig controllerClientConfig, final ModelNode operation)
+        throws ControllerOperationException {
+        final String operationName = operation.get(ClientConstants.OP).asString();
+        final ModelNode address = operation.get(ClientConstants.OP_ADDR);
+        if (ClientConstants.COMPOSITE.equals(operationName)) {
+            final List<ModelNode> steps = operation.get(ClientConstants.STEPS).asList();
+            return !steps.isEmpty() && isApplied(controllerClientConfig, steps.get(0));
+        } else if (ClientConstants.ADD.equals(operationName)) {
+            return isResourcePresent(controllerClientConfig, address);
+        } else if (ClientConstants.DEPLOYMENT_REMOVE_OPERATION.equals(operationName)) {
+            return !isResourcePresent(controllerClientConfig, address);
+        } else if (ClientConstants.WRITE_ATTRIBUTE_OPERATION.equals(operationName)) {
+            return readAttribute(controllerClientConfig, address, operation.get(ClientConstants.NAME).asString())
+                .asString().equals(operation.get(ClientConstants.VALUE).asString());
+        } else if (OPERATION_ENABLE.equals(operationName)) {
+            return readAttribute(controllerClientConfig, address, ATTRIBUTE_ENABLED).asBoolean(false);
+        } else if (OPERATION_DISABLE.equals(operationName)) {
+            return !readAttribute(controllerClientConfig, address, ATTRIBUTE_ENABLED).asBoolean(true);
+        }
+        throw new ControllerOperationException("Cannot verify whether operation '" + operationName + "' was applied.");
+    }
+
+    /**
+     * Checks whether a resource is present.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param address the resource address
+     * @return true, if present
+     * @throws ControllerOperationException if the controller cannot be read
+     */
+    private boolean isResourcePresent(final ControllerClientConfig controllerClientConfig, final ModelNode address)
+        throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_RESOURCE);
+        request.get(ClientConstants.OP_ADDR).set(address);
+        try {
+            operationExecutor.executeOperation(controllerClientConfig, request);
+            return true;
+        } catch (ControllerOperationException coe) {
+            final String failureCode = coe.getFailureCode();
+            if (FAILURE_CODE_RESOURCE_NOT_FOUND.equals(failureCode) || FAILURE_CODE_RESOURCE_NOT_FOUND_AS7.equals(failureCode)) {
+                return false;
+            }
+            throw coe;
+        }
+    }
+
+    /**
+     * Reads an attribute of a resource.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param address the resource address
+     * @param attributeName the attribute name
+     * @return the attribute value
+     * @throws ControllerOperationException if the controller cannot be read
+     */
+    private ModelNode readAttribute(final ControllerClientConfig controllerClientConfig, final ModelNode address,
+        final String attributeName) throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        request.get(ClientConstants.OP_ADDR).set(address);
+        request.get(ClientConstants.NAME).set(attributeName);
+        return operationExecutor.executeOperation(controllerClientConfig, request);
+    }
+
+    /**
+     * Compensates the completed operations in reverse order. Failures are logged and do not stop the rollback.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param completedOperations the completed operations
+     */
+    private void rollback(final ControllerClientConfig controllerClientConfig,
+        final List<PlannedOperation> completedOperations) {
+        for (int i = completedOperations.size() - 1; i >= 0; i--) {
+            final PlannedOperation operation = completedOperations.get(i);
+            if (operation.getCompensation() == null) {
+                continue;
+            }
+            try {
+                logger.info("Rolling back: {}", operation.getDescription());
+                operationExecutor.executeOperation(controllerClientConfig, operation.getCompensation());
+            } catch (ControllerOperationException coe) {
+                logger.error("An error occurred while rolling back: " + operation.getDescription(), coe);
+            }
+        }
+    }
+
+    /**
+     * Gets the server profiles to plan for, a single blank profile for a standalone server.
+     * 
+     * @param serverProfileNames the server profile names
+     * @return the server profiles
+     */
+    private static String[] getServerProfiles(final String... serverProfileNames) {
+        if (serverProfileNames != null && serverProfileNames.length > 0) {
+            return serverProfileNames;
+        }
+        return new String[] { "" };
+    }
+
+    /**
+     * Describes the server profile for operation descriptions.
+     * 
+     * @param serverProfile the server profile
+     * @return the description
+     */
+    private static String describeProfile(final String serverProfile) {
+        return serverProfile.length() == 0 ? "" : " in profile '" + serverProfile + "'";
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.plan;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_PASSWORD;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+
+/**
+ * A management operation of an {@link OperationPlan}, built upfront and sent as is when the plan is executed.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class PlannedOperation {
+
+    /** The mask replacing secrets in descriptions. */
+    private static final String SECRET_MASK = "********";
+
+    /** The description. */
+    private final String description;
+
+    /** The server profile name. */
+    private final String serverProfileName;
+
+    /** The operation. */
+    private final ModelNode operation;
+
+    /** The compensating operation. */
+    private final ModelNode compensation;
+
+    /**
+     * Instantiates a new planned operation. The operations are protected against modification.
+     * 
+     * @param description the human readable description
+     * @param serverProfileName the server profile name the operation targets, null for operations spanning profiles
+     * @param operation the management operation
+     * @param compensation the management operation undoing the operation, null if it is not undone on failure
+     */
+    public PlannedOperation(String description, String serverProfileName, ModelNode operation, ModelNode compensation) {
+        this.description = description;
+        this.serverProfileName = serverProfileName;
+        this.operation = operation;
+        this.operation.protect();
+        this.compensation = compensation;
+        if (compensation != null) {
+            this.compensation.protect();
+        }
+    }
+
+    /**
+     * Gets the human readable description.
+     * 
+     * @return the description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Gets the server profile name the operation targets.
+     * 
+     * @return the server profile name
+     */
+    public String getServerProfileName() {
+        return serverProfileName;
+    }
+
+    /**
+     * Gets the management operation.
+     * 
+     * @return the operation
+     */
+    public ModelNode getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the management operation undoing this operation.
+     * 
+     * @return the compensation, null if the operation is not undone on failure
+     */
+    public ModelNode getCompensation() {
+        return compensation;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return description + ": " + maskSecrets(operation).toJSONString(true);
+    }
+
+    /**
+     * Returns a copy of the operation with passwords masked.
+     * 
+     * @param operation the operation
+     * @return the masked operation
+     */
+    static ModelNode maskSecrets(final ModelNode operation) {
+        final ModelNode masked = operation.clone();
+        if (masked.hasDefined(DS_PROPERTY_PASSWORD)) {
+            masked.get(DS_PROPERTY_PASSWORD).set(SECRET_MASK);
+        }
+        if (masked.hasDefined(ClientConstants.STEPS)) {
+            final ModelNode steps = new ModelNode().setEmptyList();
+            for (final ModelNode step : masked.get(ClientConstants.STEPS).asList()) {
+                steps.add(maskSecrets(step));
+            }
+            masked.get(ClientConstants.STEPS).set(steps);
+        }
+        return masked;
+    }
+}
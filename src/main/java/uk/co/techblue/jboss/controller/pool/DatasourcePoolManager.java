@@ -0,0 +1,775 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.pool;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_DATASOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_HOST;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_WILDCARD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_ENABLED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_PROFILE_NAME;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DATASOURCE_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_HEADER_BLOCKING_TIMEOUT;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_ATTRIBUTE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.pool.PoolOperationResult.Outcome;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * Runs the runtime operations on the connection pools of datasources, in parallel across datasources and servers: pool
+ * warmup, health sweeps and flushes.
+ * <p>
+ * At most {@link #setConcurrency(int) concurrency} operations are in flight at a time, and each datasource of each
+ * server is given the {@link #setTimeout(long, TimeUnit) timeout} to complete: the remaining time is passed to the
+ * controller as the <code>blocking-timeout</code> operation header, and a datasource still running once it has elapsed
+ * is reported as {@link Outcome#TIMED_OUT timed out} without holding up the others. The failure of one datasource never
+ * stops the others; each gets its own {@link PoolOperationResult}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourcePoolManager {
+
+    /** The default concurrency. */
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    /** The default timeout per datasource in milliseconds. */
+    private static final long DEFAULT_TIMEOUT = 30000;
+
+    /** The default interval between two warmup attempts in milliseconds. */
+    private static final long DEFAULT_RETRY_INTERVAL = 1000;
+
+    /** The interval at which the start of a queued operation is checked, in milliseconds. */
+    private static final long QUEUED_CHECK_INTERVAL = 100;
+
+    /** The pattern matching every datasource name. */
+    private static final Pattern ALL_DATASOURCES = Pattern.compile(".*");
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(DatasourcePoolManager.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /** The maximum number of operations in flight. */
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    /** The timeout per datasource in milliseconds. */
+    private long timeoutMillis = DEFAULT_TIMEOUT;
+
+    /** The interval between two warmup attempts in milliseconds. */
+    private long retryIntervalMillis = DEFAULT_RETRY_INTERVAL;
+
+    /** The flush run before warming up a pool, null for none. */
+    private PoolOperation warmupFlush = PoolOperation.FLUSH_INVALID;
+
+    /**
+     * Instantiates a new datasource pool manager.
+     * 
+     * @param operationExecutor the operation executor
+     */
+    public DatasourcePoolManager(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Sets the maximum number of pool operations in flight. Defaults to 4.
+     * 
+     * @param concurrency the new concurrency
+     */
+    public void setConcurrency(final int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets how long each datasource of each server is given to complete. Defaults to 30 seconds.
+     * 
+     * @param timeout the timeout
+     * @param unit the unit
+     */
+    public void setTimeout(final long timeout, final TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive.");
+        }
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Sets the interval between two connection tests while warming up a pool. Defaults to 1 second.
+     * 
+     * @param retryInterval the retry interval
+     * @param unit the unit
+     */
+    public void setRetryInterval(final long retryInterval, final TimeUnit unit) {
+        this.retryIntervalMillis = unit.toMillis(retryInterval);
+    }
+
+    /**
+     * Sets the flush run on a pool before warming it up. Defaults to {@link PoolOperation#FLUSH_INVALID}, which drops
+     * the connections gone stale, e.g. after a database failover. {@link PoolOperation#FLUSH_ALL} recycles every
+     * connection, and null warms up the pool as it is.
+     * 
+     * @param warmupFlush the flush operation, null for none
+     */
+    public void setWarmupFlush(final PoolOperation warmupFlush) {
+        if (warmupFlush == PoolOperation.TEST_CONNECTION) {
+            throw new IllegalArgumentException("The warmup flush must be a flush operation.");
+        }
+        this.warmupFlush = warmupFlush;
+    }
+
+    /**
+     * Warms up the pools of datasources of a standalone server.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceNames the datasource names
+     * @return the warmup result per datasource, in the order of the datasource names
+     * @throws ControllerOperationException if interrupted
+     * @see #warmUp(ControllerClientConfig, Collection, Collection)
+     */
+    public List<PoolOperationResult> warmUp(final ControllerClientConfig controllerClientConfig,
+            final Collection<String> datasourceNames) throws ControllerOperationException {
+        return warmUp(controllerClientConfig, null, datasourceNames);
+    }
+
+    /**
+     * Warms up the pools of datasources on the given servers in parallel, so that they are ready before traffic is let
+     * in, e.g. after a deployment or a database failover.
+     * <p>
+     * Each pool is first {@link #setWarmupFlush(PoolOperation) flushed}, then its connection is tested until the test
+     * succeeds, every {@link #setRetryInterval(long, TimeUnit) retry interval} within the
+     * {@link #setTimeout(long, TimeUnit) timeout}. Testing a connection makes the pool open its connections up to its
+     * minimum size. The duration of a successful result is the time-to-ready of the pool.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverAddresses the domain servers, null or empty for a standalone server
+     * @param datasourceNames the datasource names
+     * @return the warmup result per server and datasource, ordered by server then by datasource
+     * @throws ControllerOperationException if interrupted
+     */
+    public List<PoolOperationResult> warmUp(final ControllerClientConfig controllerClientConfig,
+            final Collection<ServerAddress> serverAddresses, final Collection<String> datasourceNames)
+            throws ControllerOperationException {
+        if (datasourceNames == null || datasourceNames.isEmpty()) {
+            throw new IllegalArgumentException("Datasource list cannot be blank or null.");
+        }
+        final List<PoolTask> tasks = new ArrayList<PoolTask>();
+        for (final ServerAddress serverAddress : getServers(serverAddresses)) {
+            for (final String datasourceName : datasourceNames) {
+                tasks.add(new WarmupTask(controllerClientConfig, serverAddress, datasourceName));
+            }
+        }
+        final List<PoolOperationResult> results = execute(tasks);
+        if (logger.isInfoEnabled()) {
+            int ready = 0;
+            for (final PoolOperationResult result : results) {
+                if (result.isSuccess()) {
+                    ready++;
+                }
+            }
+            logger.info("Warmed up {} of {} datasource pools", ready, results.size());
+        }
+        return results;
+    }
+
+    /**
+     * Sweeps the health of every enabled datasource pool of a server: the connection of each pool is tested once, in
+     * parallel. The disabled datasources have no pool to test and are left out of the matrix.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverAddress the domain server, null for a standalone server
+     * @return the health matrix, with a single row
+     * @throws ControllerOperationException if the datasources could not be listed or if interrupted
+     */
+    public PoolHealthMatrix sweepServer(final ControllerClientConfig controllerClientConfig,
+            final ServerAddress serverAddress) throws ControllerOperationException {
+        final ModelNode serversAddress = new ModelNode().setEmptyList();
+        if (serverAddress != null) {
+            serversAddress.add(ADDRESS_HOST, serverAddress.getHost()).add(ADDRESS_SERVER, serverAddress.getServer());
+        }
+        return sweep(controllerClientConfig, findDatasources(controllerClientConfig, serversAddress, ALL_DATASOURCES));
+    }
+
+    /**
+     * Sweeps the health of every enabled datasource pool of a server profile of a managed domain, on every running
+     * server using the profile. The servers and their enabled datasources are found with two wildcard reads, and the
+     * connection of each pool of each server is tested once, in parallel.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @param serverProfileName the server profile name
+     * @return the health matrix, with a row per server
+     * @throws ControllerOperationException if the servers or the datasources could not be listed or if interrupted
+     */
+    public PoolHealthMatrix sweepProfile(final ControllerClientConfig controllerClientConfig,
+            final String serverProfileName) throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        request.get(ClientConstants.OP_ADDR).add(ADDRESS_HOST, ADDRESS_WILDCARD).add(ADDRESS_SERVER, ADDRESS_WILDCARD);
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_PROFILE_NAME);
+        final ModelNode result = operationExecutor.executeOperation(controllerClientConfig, request);
+        final List<ServerAddress> serverAddresses = new ArrayList<ServerAddress>();
+        if (result.isDefined()) {
+            for (final ModelNode serverResult : result.asList()) {
+                if (ClientConstants.SUCCESS.equals(serverResult.get(ClientConstants.OUTCOME).asString())
+                    && serverProfileName.equals(serverResult.get(ClientConstants.RESULT).asString())) {
+                    serverAddresses.add(DatasourceOperations.getServerAddress(serverResult.get(ClientConstants.OP_ADDR)));
+                }
+            }
+        }
+        if (serverAddresses.isEmpty()) {
+            return new PoolHealthMatrix(Collections.<PoolOperationResult> emptyList());
+        }
+        final Map<ServerAddress, List<String>> datasources =
+            findDatasources(controllerClientConfig, true, ALL_DATASOURCES);
+        datasources.keySet().retainAll(serverAddresses);
+        return sweep(controllerClientConfig, datasources);
+    }
+
+    /**
+     * Tests the connection of every given datasource pool once, in parallel.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasources the datasource names by server
+     * @return the health matrix
+     * @throws ControllerOperationException if interrupted
+     */
+    private PoolHealthMatrix sweep(final ControllerClientConfig controllerClientConfig,
+            final Map<ServerAddress, List<String>> datasources) throws ControllerOperationException {
+        final List<PoolTask> tasks = new ArrayList<PoolTask>();
+        for (final Map.Entry<ServerAddress, List<String>> serverEntry : datasources.entrySet()) {
+            for (final String datasourceName : serverEntry.getValue()) {
+                tasks.add(new OperationTask(controllerClientConfig, serverEntry.getKey(), datasourceName,
+                    PoolOperation.TEST_CONNECTION));
+            }
+        }
+        final PoolHealthMatrix healthMatrix = new PoolHealthMatrix(execute(tasks));
+        if (logger.isInfoEnabled()) {
+            logger.info("Swept {} datasource pools on {} servers, {} unhealthy", tasks.size(), datasources.size(),
+                healthMatrix.getFailures().size());
+        }
+        return healthMatrix;
+    }
+
+    /**
+     * Flushes the pools of the datasources matching a glob pattern, e.g. <code>Orders*</code>.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverAddresses the domain servers, null or empty for a standalone server
+     * @param flushOperation the flush operation
+     * @param datasourceGlob the glob pattern of the datasource names
+     * @return the flush result per datasource and server
+     * @throws ControllerOperationException if the datasources could not be listed or if interrupted
+     * @see #flush(ControllerClientConfig, Collection, PoolOperation, Pattern)
+     */
+    public List<PoolOperationResult> flush(final ControllerClientConfig controllerClientConfig,
+            final Collection<ServerAddress> serverAddresses, final PoolOperation flushOperation,
+            final String datasourceGlob) throws ControllerOperationException {
+        return flush(controllerClientConfig, serverAddresses, flushOperation, StringUtils.globToPattern(datasourceGlob));
+    }
+
+    /**
+     * Flushes the pools of the datasources matching a pattern on every running server of a managed domain, in
+     * parallel.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @param flushOperation the flush operation
+     * @param datasourcePattern the pattern of the datasource names
+     * @return the flush result per datasource and server
+     * @throws ControllerOperationException if the datasources could not be listed or if interrupted
+     * @see #flush(ControllerClientConfig, Collection, PoolOperation, Pattern)
+     */
+    public List<PoolOperationResult> flushDomain(final ControllerClientConfig controllerClientConfig,
+            final PoolOperation flushOperation, final Pattern datasourcePattern) throws ControllerOperationException {
+        return flush(controllerClientConfig, findDatasources(controllerClientConfig, true, datasourcePattern),
+            flushOperation);
+    }
+
+    /**
+     * Flushes the pools of the datasources matching a pattern on the given servers, in parallel.
+     * <p>
+     * The enabled datasources of the servers are listed with a single wildcard read, and those whose name entirely
+     * matches the pattern are flushed. The flushes are interleaved across the servers, so that the operations in flight
+     * are spread over the servers rather than queued on one of them.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverAddresses the domain servers, null or empty for a standalone server
+     * @param flushOperation the flush operation
+     * @param datasourcePattern the pattern of the datasource names
+     * @return the flush result per datasource and server, ordered by datasource then by server
+     * @throws ControllerOperationException if the datasources could not be listed or if interrupted
+     */
+    public List<PoolOperationResult> flush(final ControllerClientConfig controllerClientConfig,
+            final Collection<ServerAddress> serverAddresses, final PoolOperation flushOperation,
+            final Pattern datasourcePattern) throws ControllerOperationException {
+        final boolean domain = serverAddresses != null && !serverAddresses.isEmpty();
+        final Map<ServerAddress, List<String>> datasources =
+            findDatasources(controllerClientConfig, domain, datasourcePattern);
+        if (domain) {
+            datasources.keySet().retainAll(serverAddresses);
+        }
+        return flush(controllerClientConfig, datasources, flushOperation);
+    }
+
+    /**
+     * Flushes the pools of the given datasources, interleaved across the servers.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasources the datasource names by server
+     * @param flushOperation the flush operation
+     * @return the flush results
+     * @throws ControllerOperationException if interrupted
+     */
+    private List<PoolOperationResult> flush(final ControllerClientConfig controllerClientConfig,
+            final Map<ServerAddress, List<String>> datasources, final PoolOperation flushOperation)
+            throws ControllerOperationException {
+        if (flushOperation == null || flushOperation == PoolOperation.TEST_CONNECTION) {
+            throw new IllegalArgumentException("A flush operation is required.");
+        }
+        final Set<String> datasourceNames = new TreeSet<String>();
+        for (final List<String> serverDatasourceNames : datasources.values()) {
+            datasourceNames.addAll(serverDatasourceNames);
+        }
+        final List<PoolTask> tasks = new ArrayList<PoolTask>();
+        for (final String datasourceName : datasourceNames) {
+            for (final Map.Entry<ServerAddress, List<String>> serverEntry : datasources.entrySet()) {
+                if (serverEntry.getValue().contains(datasourceName)) {
+                    tasks.add(new OperationTask(controllerClientConfig, serverEntry.getKey(), datasourceName,
+                        flushOperation));
+                }
+            }
+        }
+        final List<PoolOperationResult> results = execute(tasks);
+        if (logger.isInfoEnabled()) {
+            int flushed = 0;
+            for (final PoolOperationResult result : results) {
+                if (result.isSuccess()) {
+                    flushed++;
+                }
+            }
+            logger.info("Ran {} on {} of {} datasource pools", flushOperation.getOperationName(), flushed,
+                results.size());
+        }
+        return results;
+    }
+
+    /**
+     * Finds the enabled datasources whose name matches a pattern with a single wildcard read.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param domain true to look on every server of a managed domain, false for a standalone server
+     * @param datasourcePattern the pattern of the datasource names
+     * @return the matching datasource names by server, the server being null for a standalone server
+     * @throws ControllerOperationException if the datasources could not be listed
+     */
+    private Map<ServerAddress, List<String>> findDatasources(final ControllerClientConfig controllerClientConfig,
+            final boolean domain, final Pattern datasourcePattern) throws ControllerOperationException {
+        final ModelNode serversAddress = new ModelNode().setEmptyList();
+        if (domain) {
+            serversAddress.add(ADDRESS_HOST, ADDRESS_WILDCARD).add(ADDRESS_SERVER, ADDRESS_WILDCARD);
+        }
+        return findDatasources(controllerClientConfig, serversAddress, datasourcePattern);
+    }
+
+    /**
+     * Finds the enabled datasources whose name matches a pattern on the servers of an address with a single read.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serversAddress the address of the servers, with or without wildcards, empty for a standalone server
+     * @param datasourcePattern the pattern of the datasource names
+     * @return the matching datasource names by server, the server being null for a standalone server
+     * @throws ControllerOperationException if the datasources could not be listed
+     */
+    private Map<ServerAddress, List<String>> findDatasources(final ControllerClientConfig controllerClientConfig,
+            final ModelNode serversAddress, final Pattern datasourcePattern) throws ControllerOperationException {
+        final boolean domain = !serversAddress.asList().isEmpty();
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        final ModelNode address = request.get(ClientConstants.OP_ADDR).set(serversAddress);
+        address.add(ADDRESS_SUBSYSTEM, DATASOURCE_SUBSYSTEM).add(ADDRESS_DATASOURCE, ADDRESS_WILDCARD);
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_ENABLED);
+        final ModelNode result = operationExecutor.executeOperation(controllerClientConfig, request);
+        final Map<ServerAddress, List<String>> datasources = new LinkedHashMap<ServerAddress, List<String>>();
+        if (!result.isDefined()) {
+            return datasources;
+        }
+        for (final ModelNode datasourceResult : result.asList()) {
+            if (!ClientConstants.SUCCESS.equals(datasourceResult.get(ClientConstants.OUTCOME).asString())) {
+                continue;
+            }
+            final ModelNode datasourceAddress = datasourceResult.get(ClientConstants.OP_ADDR);
+            final List<Property> addressElements = datasourceAddress.asPropertyList();
+            final String datasourceName = addressElements.get(addressElements.size() - 1).getValue().asString();
+            if (!datasourcePattern.matcher(datasourceName).matches()) {
+                continue;
+            }
+            if (!datasourceResult.get(ClientConstants.RESULT).asBoolean(false)) {
+                logger.debug("Skipping disabled datasource {}", datasourceName);
+                continue;
+            }
+            final ServerAddress serverAddress = domain ? DatasourceOperations.getServerAddress(datasourceAddress) : null;
+            List<String> serverDatasourceNames = datasources.get(serverAddress);
+            if (serverDatasourceNames == null) {
+                serverDatasourceNames = new ArrayList<String>();
+                datasources.put(serverAddress, serverDatasourceNames);
+            }
+            serverDatasourceNames.add(datasourceName);
+        }
+        return datasources;
+    }
+
+    /**
+     * Gets the servers to run on, a single null element for a standalone server.
+     * 
+     * @param serverAddresses the server addresses
+     * @return the servers
+     */
+    private Collection<ServerAddress> getServers(final Collection<ServerAddress> serverAddresses) {
+        if (serverAddresses == null || serverAddresses.isEmpty()) {
+            return Collections.singletonList(null);
+        }
+        return serverAddresses;
+    }
+
+    /**
+     * Runs the tasks in parallel, at most {@link #concurrency} at a time, and collects their results.
+     * 
+     * @param tasks the tasks
+     * @return the results, in the order of the tasks
+     * @throws ControllerOperationException if interrupted
+     */
+    private List<PoolOperationResult> execute(final List<PoolTask> tasks) throws ControllerOperationException {
+        final List<PoolOperationResult> results = new ArrayList<PoolOperationResult>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        final ExecutorService workers = Executors.newFixedThreadPool(Math.min(concurrency, tasks.size()),
+            new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "datasource-pool-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        try {
+            final List<Future<PoolOperationResult>> futures = new ArrayList<Future<PoolOperationResult>>(tasks.size());
+            for (final PoolTask task : tasks) {
+                futures.add(workers.submit(task));
+            }
+            for (int index = 0; index < tasks.size(); index++) {
+                results.add(await(tasks.get(index), futures.get(index)));
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ControllerOperationException("Pool operations interrupted.", ie);
+        } finally {
+            workers.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Waits for the result of a task, at most the timeout from the moment it started. A task still queued after the
+     * timeout, because the workers are held by operations that do not respond to interruption, times out as well.
+     * 
+     * @param task the task
+     * @param future the future of the task
+     * @return the result
+     * @throws InterruptedException if interrupted
+     */
+    private PoolOperationResult await(final PoolTask task, final Future<PoolOperationResult> future)
+            throws InterruptedException {
+        final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final long awaitStartTime = System.nanoTime();
+        while (true) {
+            final long startTime = task.startTime;
+            final long waitNanos;
+            if (startTime == 0) {
+                waitNanos = System.nanoTime() - awaitStartTime < timeoutNanos
+                    ? TimeUnit.MILLISECONDS.toNanos(QUEUED_CHECK_INTERVAL) : 0;
+            } else {
+                waitNanos = startTime + timeoutNanos - System.nanoTime();
+            }
+            if (waitNanos <= 0 && !future.isDone()) {
+                future.cancel(true);
+                return task.createTimedOutResult();
+            }
+            try {
+                return future.get(Math.max(waitNanos, 0), TimeUnit.NANOSECONDS);
+            } catch (final TimeoutException te) {
+                continue;
+            } catch (final ExecutionException ee) {
+                return task.createResult(Outcome.ERROR, String.valueOf(ee.getCause()));
+            }
+        }
+    }
+
+    /**
+     * Creates a pool operation on a datasource, bounded on the controller side by the given time.
+     * 
+     * @param operation the operation
+     * @param serverAddress the domain server, null for a standalone server
+     * @param datasourceName the datasource name
+     * @param remainingNanos the time left to the datasource
+     * @return the operation
+     */
+    private ModelNode createPoolOperation(final PoolOperation operation, final ServerAddress serverAddress,
+            final String datasourceName, final long remainingNanos) {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(operation.getOperationName());
+        request.get(ClientConstants.OP_ADDR).set(
+            DatasourceOperations.getServerDatasourceAddress(serverAddress, datasourceName));
+        request.get(ClientConstants.OPERATION_HEADERS, OPERATION_HEADER_BLOCKING_TIMEOUT).set(
+            Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos)));
+        return request;
+    }
+
+    /**
+     * Gets the failure description to report for an operation exception.
+     * 
+     * @param coe the operation exception
+     * @return the failure description
+     */
+    private static String getFailureDescription(final ControllerOperationException coe) {
+        return coe.getFailureDescription() != null ? coe.getFailureDescription() : String.valueOf(coe.getCause());
+    }
+
+    /**
+     * The base of the tasks run on one datasource of one server.
+     */
+    private abstract class PoolTask implements Callable<PoolOperationResult> {
+
+        /** The controller client config. */
+        protected final ControllerClientConfig controllerClientConfig;
+
+        /** The server, null for a standalone server. */
+        protected final ServerAddress serverAddress;
+
+        /** The datasource name. */
+        protected final String datasourceName;
+
+        /** The operation reported in the result. */
+        protected final PoolOperation operation;
+
+        /** The start time in nanoseconds, 0 while queued. */
+        protected volatile long startTime;
+
+        /** The number of attempts so far. */
+        protected volatile int attempts;
+
+        /** The failure description of the last attempt. */
+        protected volatile String lastFailureDescription;
+
+        /**
+         * Instantiates a new pool task.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param serverAddress the server address
+         * @param datasourceName the datasource name
+         * @param operation the operation
+         */
+        protected PoolTask(final ControllerClientConfig controllerClientConfig, final ServerAddress serverAddress,
+                final String datasourceName, final PoolOperation operation) {
+            this.controllerClientConfig = controllerClientConfig;
+            this.serverAddress = serverAddress;
+            this.datasourceName = datasourceName;
+            this.operation = operation;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public PoolOperationResult call() {
+            startTime = System.nanoTime();
+            return run();
+        }
+
+        /**
+         * Runs the task.
+         * 
+         * @return the result
+         */
+        protected abstract PoolOperationResult run();
+
+        /**
+         * Gets the time left to the task.
+         * 
+         * @return the remaining nanos
+         */
+        protected long getRemainingNanos() {
+            return startTime + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime();
+        }
+
+        /**
+         * Executes one attempt of a pool operation.
+         * 
+         * @param poolOperation the pool operation
+         * @throws ControllerOperationException the controller operation exception
+         */
+        protected void executeAttempt(final PoolOperation poolOperation) throws ControllerOperationException {
+            operationExecutor.executeOperation(controllerClientConfig,
+                createPoolOperation(poolOperation, serverAddress, datasourceName, getRemainingNanos()));
+        }
+
+        /**
+         * Creates the result of the task.
+         * 
+         * @param outcome the outcome
+         * @param failureDescription the failure description
+         * @return the result
+         */
+        protected PoolOperationResult createResult(final Outcome outcome, final String failureDescription) {
+            final long durationNanos = startTime == 0 ? 0 : System.nanoTime() - startTime;
+            return new PoolOperationResult(serverAddress, datasourceName, operation, outcome, failureDescription,
+                durationNanos, attempts);
+        }
+
+        /**
+         * Creates the result of the task timed out.
+         * 
+         * @return the result
+         */
+        protected PoolOperationResult createTimedOutResult() {
+            return createResult(Outcome.TIMED_OUT, lastFailureDescription);
+        }
+    }
+
+    /**
+     * Runs a pool operation once on one datasource of one server.
+     */
+    private class OperationTask extends PoolTask {
+
+        /**
+         * Instantiates a new operation task.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param serverAddress the server address
+         * @param datasourceName the datasource name
+         * @param operation the operation
+         */
+        OperationTask(final ControllerClientConfig controllerClientConfig, final ServerAddress serverAddress,
+                final String datasourceName, final PoolOperation operation) {
+            super(controllerClientConfig, serverAddress, datasourceName, operation);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see uk.co.techblue.jboss.controller.pool.DatasourcePoolManager.PoolTask#run()
+         */
+        @Override
+        protected PoolOperationResult run() {
+            attempts++;
+            try {
+                executeAttempt(operation);
+                return createResult(Outcome.SUCCESS, null);
+            } catch (final ControllerOperationException coe) {
+                lastFailureDescription = getFailureDescription(coe);
+                return createResult(coe.getCause() != null ? Outcome.ERROR : Outcome.FAILED, lastFailureDescription);
+            }
+        }
+    }
+
+    /**
+     * Warms up the pool of one datasource of one server.
+     */
+    private class WarmupTask extends PoolTask {
+
+        /**
+         * Instantiates a new warmup task.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param serverAddress the server address
+         * @param datasourceName the datasource name
+         */
+        WarmupTask(final ControllerClientConfig controllerClientConfig, final ServerAddress serverAddress,
+                final String datasourceName) {
+            super(controllerClientConfig, serverAddress, datasourceName, PoolOperation.TEST_CONNECTION);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see uk.co.techblue.jboss.controller.pool.DatasourcePoolManager.PoolTask#run()
+         */
+        @Override
+        protected PoolOperationResult run() {
+            if (warmupFlush != null) {
+                try {
+                    executeAttempt(warmupFlush);
+                } catch (final ControllerOperationException coe) {
+                    logger.debug("Flush before warmup failed on datasource {}", datasourceName, coe);
+                }
+            }
+            final long retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+            while (true) {
+                attempts++;
+                Outcome outcome;
+                try {
+                    executeAttempt(PoolOperation.TEST_CONNECTION);
+                    return createResult(Outcome.SUCCESS, null);
+                } catch (final ControllerOperationException coe) {
+                    outcome = coe.getCause() != null ? Outcome.ERROR : Outcome.FAILED;
+                    lastFailureDescription = getFailureDescription(coe);
+                }
+                if (getRemainingNanos() <= retryIntervalNanos) {
+                    return createResult(outcome, lastFailureDescription);
+                }
+                try {
+                    Thread.sleep(retryIntervalMillis);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return createTimedOutResult();
+                }
+            }
+        }
+    }
+}
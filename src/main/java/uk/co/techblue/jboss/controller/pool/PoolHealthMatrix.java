@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.pool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * The results of a pool health sweep, as a matrix of servers by datasources. Each cell holds the outcome and the latency
+ * of the connection test of one datasource on one server.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class PoolHealthMatrix {
+
+    /** The results by server then by datasource, the server being null for a standalone server. */
+    private final Map<ServerAddress, Map<String, PoolOperationResult>> results =
+        new LinkedHashMap<ServerAddress, Map<String, PoolOperationResult>>();
+
+    /** The datasource names, in the order of the sweep. */
+    private final Set<String> datasourceNames = new LinkedHashSet<String>();
+
+    /**
+     * Instantiates a new pool health matrix.
+     * 
+     * @param sweepResults the results of the sweep
+     */
+    public PoolHealthMatrix(final Collection<PoolOperationResult> sweepResults) {
+        for (final PoolOperationResult result : sweepResults) {
+            Map<String, PoolOperationResult> serverResults = results.get(result.getServerAddress());
+            if (serverResults == null) {
+                serverResults = new LinkedHashMap<String, PoolOperationResult>();
+                results.put(result.getServerAddress(), serverResults);
+            }
+            serverResults.put(result.getDatasourceName(), result);
+            datasourceNames.add(result.getDatasourceName());
+        }
+    }
+
+    /**
+     * Gets the servers swept, the only element being null for a standalone server.
+     * 
+     * @return the servers
+     */
+    public Set<ServerAddress> getServers() {
+        return results.keySet();
+    }
+
+    /**
+     * Gets the datasources swept on any of the servers.
+     * 
+     * @return the datasource names
+     */
+    public Set<String> getDatasourceNames() {
+        return datasourceNames;
+    }
+
+    /**
+     * Gets the result of one datasource on one server.
+     * 
+     * @param serverAddress the server, null for a standalone server
+     * @param datasourceName the datasource name
+     * @return the result, null if the datasource was not swept on the server
+     */
+    public PoolOperationResult getResult(final ServerAddress serverAddress, final String datasourceName) {
+        final Map<String, PoolOperationResult> serverResults = results.get(serverAddress);
+        return serverResults == null ? null : serverResults.get(datasourceName);
+    }
+
+    /**
+     * Gets the results of one server by datasource.
+     * 
+     * @param serverAddress the server, null for a standalone server
+     * @return the results of the server, null if the server was not swept
+     */
+    public Map<String, PoolOperationResult> getResults(final ServerAddress serverAddress) {
+        return results.get(serverAddress);
+    }
+
+    /**
+     * Gets the results that did not succeed.
+     * 
+     * @return the unhealthy results
+     */
+    public List<PoolOperationResult> getFailures() {
+        final List<PoolOperationResult> failures = new ArrayList<PoolOperationResult>();
+        for (final Map<String, PoolOperationResult> serverResults : results.values()) {
+            for (final PoolOperationResult result : serverResults.values()) {
+                if (!result.isSuccess()) {
+                    failures.add(result);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Checks if every datasource of every server passed its connection test.
+     * 
+     * @return true, if healthy
+     */
+    public boolean isHealthy() {
+        return getFailures().isEmpty();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        int serverWidth = "server".length();
+        for (final ServerAddress serverAddress : results.keySet()) {
+            serverWidth = Math.max(serverWidth, getServerLabel(serverAddress).length());
+        }
+        final StringBuilder builder = new StringBuilder(String.format("%-" + serverWidth + "s", "server"));
+        final List<Integer> widths = new ArrayList<Integer>();
+        for (final String datasourceName : datasourceNames) {
+            final int width = Math.max(datasourceName.length(), "TIMED_OUT".length());
+            widths.add(width);
+            builder.append("  ").append(String.format("%-" + width + "s", datasourceName));
+        }
+        for (final Map.Entry<ServerAddress, Map<String, PoolOperationResult>> serverEntry : results.entrySet()) {
+            builder.append('\n').append(String.format("%-" + serverWidth + "s", getServerLabel(serverEntry.getKey())));
+            int column = 0;
+            for (final String datasourceName : datasourceNames) {
+                final PoolOperationResult result = serverEntry.getValue().get(datasourceName);
+                final String cell;
+                if (result == null) {
+                    cell = "-";
+                } else if (result.isSuccess()) {
+                    cell = result.getDurationMillis() + " ms";
+                } else {
+                    cell = result.getOutcome().name();
+                }
+                builder.append("  ").append(String.format("%-" + widths.get(column++) + "s", cell));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the label of a server in the matrix.
+     * 
+     * @param serverAddress the server address
+     * @return the server label
+     */
+    private static String getServerLabel(final ServerAddress serverAddress) {
+        return serverAddress == null ? "standalone" : serverAddress.toString();
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.pool;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_ALL_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_GRACEFULLY_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_IDLE_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_FLUSH_INVALID_CONNECTION_IN_POOL;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_TEST_CONNECTION_IN_POOL;
+
+/**
+ * The runtime operations on the connection pool of a datasource.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public enum PoolOperation {
+
+    /** Obtains a connection from the pool and validates it, filling the pool if needed. */
+    TEST_CONNECTION(OPERATION_TEST_CONNECTION_IN_POOL),
+
+    /** Closes the idle connections of the pool. */
+    FLUSH_IDLE(OPERATION_FLUSH_IDLE_CONNECTION_IN_POOL),
+
+    /** Closes all the connections of the pool, including those in use. */
+    FLUSH_ALL(OPERATION_FLUSH_ALL_CONNECTION_IN_POOL),
+
+    /** Closes the connections of the pool that fail validation. */
+    FLUSH_INVALID(OPERATION_FLUSH_INVALID_CONNECTION_IN_POOL),
+
+    /** Closes the idle connections of the pool, and the connections in use once they are returned to the pool. */
+    FLUSH_GRACEFULLY(OPERATION_FLUSH_GRACEFULLY_CONNECTION_IN_POOL);
+
+    /** The operation name. */
+    private final String operationName;
+
+    /**
+     * Instantiates a new pool operation.
+     * 
+     * @param operationName the operation name
+     */
+    private PoolOperation(final String operationName) {
+        this.operationName = operationName;
+    }
+
+    /**
+     * Gets the name of the management operation.
+     * 
+     * @return the operation name
+     */
+    public String getOperationName() {
+        return operationName;
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.pool;
+
+import java.util.concurrent.TimeUnit;
+
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * The result of a pool operation on one datasource of one server.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class PoolOperationResult {
+
+    /**
+     * The Enum to denote the outcome of a pool operation.
+     */
+    public enum Outcome {
+
+        /** The operation succeeded. */
+        SUCCESS,
+
+        /** The controller executed the operation and reported a failure. */
+        FAILED,
+
+        /** The operation did not complete in time. */
+        TIMED_OUT,
+
+        /** The operation could not be executed, e.g. the controller was unreachable. */
+        ERROR
+    }
+
+    /** The server, null for a standalone server. */
+    private final ServerAddress serverAddress;
+
+    /** The datasource name. */
+    private final String datasourceName;
+
+    /** The operation. */
+    private final PoolOperation operation;
+
+    /** The outcome. */
+    private final Outcome outcome;
+
+    /** The failure description. */
+    private final String failureDescription;
+
+    /** The duration in nanoseconds. */
+    private final long durationNanos;
+
+    /** The number of attempts. */
+    private final int attempts;
+
+    /**
+     * Instantiates a new pool operation result.
+     * 
+     * @param serverAddress the server, null for a standalone server
+     * @param datasourceName the datasource name
+     * @param operation the operation
+     * @param outcome the outcome
+     * @param failureDescription the failure description, null if the operation succeeded
+     * @param durationNanos the duration in nanoseconds
+     * @param attempts the number of attempts
+     */
+    public PoolOperationResult(ServerAddress serverAddress, String datasourceName, PoolOperation operation,
+            Outcome outcome, String failureDescription, long durationNanos, int attempts) {
+        this.serverAddress = serverAddress;
+        this.datasourceName = datasourceName;
+        this.operation = operation;
+        this.outcome = outcome;
+        this.failureDescription = failureDescription;
+        this.durationNanos = durationNanos;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Gets the server.
+     * 
+     * @return the server address, null for a standalone server
+     */
+    public ServerAddress getServerAddress() {
+        return serverAddress;
+    }
+
+    /**
+     * Gets the datasource name.
+     * 
+     * @return the datasource name
+     */
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    /**
+     * Gets the operation.
+     * 
+     * @return the operation
+     */
+    public PoolOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the outcome.
+     * 
+     * @return the outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Checks if the operation succeeded.
+     * 
+     * @return true, if successful
+     */
+    public boolean isSuccess() {
+        return outcome == Outcome.SUCCESS;
+    }
+
+    /**
+     * Gets the failure description of the last attempt.
+     * 
+     * @return the failure description, null if the operation succeeded
+     */
+    public String getFailureDescription() {
+        return failureDescription;
+    }
+
+    /**
+     * Gets the duration in milliseconds. For a warmup, this is the time until the pool was ready.
+     * 
+     * @return the duration millis
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * Gets the duration in nanoseconds.
+     * 
+     * @return the duration nanos
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Gets the number of times the operation was attempted.
+     * 
+     * @return the attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        if (serverAddress != null) {
+            builder.append(serverAddress).append(' ');
+        }
+        builder.append(datasourceName).append(' ').append(operation).append(": ").append(outcome).append(" in ")
+            .append(getDurationMillis()).append(" ms");
+        if (attempts > 1) {
+            builder.append(" after ").append(attempts).append(" attempts");
+        }
+        return builder.toString();
+    }
+}
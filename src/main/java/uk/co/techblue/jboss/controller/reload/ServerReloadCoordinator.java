@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.reload;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_HOST;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SERVER_CONFIG;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_WILDCARD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ATTRIBUTE_SERVER_STATE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.GENERAL_PROPERTY_BLOCKING;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_ATTRIBUTE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_RELOAD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_RESTART;
+import static uk.co.techblue.jboss.controller.ControllerConstants.SERVER_STATE_RELOAD_REQUIRED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.SERVER_STATE_RESTART_REQUIRED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.SERVER_STATE_RUNNING;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * Detects the servers left in <code>reload-required</code> or <code>restart-required</code> state by configuration
+ * changes and brings them back to <code>running</code>.
+ * <p>
+ * Domain servers are reloaded in rolling batches of {@link #setConcurrency(int) concurrency} servers: the servers of a
+ * batch are reloaded, or restarted when a restart is required, through their host controller without blocking, and the
+ * next batch only starts once every server of the batch is running again, so the remaining servers keep serving. The
+ * state of all the servers is polled with a single wildcard read per {@link #setPollInterval(long, TimeUnit) poll
+ * interval}. A batch not running within the {@link #setTimeout(long, TimeUnit) timeout} stops the rollout.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class ServerReloadCoordinator {
+
+    /** The default poll interval in milliseconds. */
+    private static final long DEFAULT_POLL_INTERVAL = 2000;
+
+    /** The default timeout per batch in milliseconds. */
+    private static final long DEFAULT_TIMEOUT = 300000;
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(ServerReloadCoordinator.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /** The number of servers reloaded at a time. */
+    private int concurrency = 1;
+
+    /** The poll interval in milliseconds. */
+    private long pollIntervalMillis = DEFAULT_POLL_INTERVAL;
+
+    /** The timeout per batch in milliseconds. */
+    private long timeoutMillis = DEFAULT_TIMEOUT;
+
+    /**
+     * Instantiates a new server reload coordinator.
+     * 
+     * @param operationExecutor the operation executor
+     */
+    public ServerReloadCoordinator(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Sets the number of servers reloaded at a time. Defaults to 1.
+     * 
+     * @param concurrency the new concurrency
+     */
+    public void setConcurrency(final int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets the interval between two reads of the server states. Defaults to 2 seconds.
+     * 
+     * @param pollInterval the poll interval
+     * @param unit the unit
+     */
+    public void setPollInterval(final long pollInterval, final TimeUnit unit) {
+        this.pollIntervalMillis = unit.toMillis(pollInterval);
+    }
+
+    /**
+     * Sets how long the servers of a batch may take to be running again. Defaults to 5 minutes.
+     * 
+     * @param timeout the timeout
+     * @param unit the unit
+     */
+    public void setTimeout(final long timeout, final TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * Gets the state of every running server of a managed domain in a single wildcard read, e.g. <code>running</code> or
+     * <code>reload-required</code>. Servers that are stopped or in the middle of a reload are omitted.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @return the server states
+     * @throws ControllerOperationException the controller operation exception
+     */
+    public Map<ServerAddress, String> getServerStates(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        request.get(ClientConstants.OP_ADDR).add(ADDRESS_HOST, ADDRESS_WILDCARD).add(ADDRESS_SERVER, ADDRESS_WILDCARD);
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_SERVER_STATE);
+        final ModelNode result = operationExecutor.executeOperation(controllerClientConfig, request);
+        final Map<ServerAddress, String> states = new LinkedHashMap<ServerAddress, String>();
+        if (result.isDefined()) {
+            for (final ModelNode serverResult : result.asList()) {
+                if (ClientConstants.SUCCESS.equals(serverResult.get(ClientConstants.OUTCOME).asString())) {
+                    states.put(DatasourceOperations.getServerAddress(serverResult.get(ClientConstants.OP_ADDR)),
+                        serverResult.get(ClientConstants.RESULT).asString());
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Gets the servers of a managed domain that need a reload or a restart to apply configuration changes.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @return the servers requiring a reload or a restart, with their state
+     * @throws ControllerOperationException the controller operation exception
+     */
+    public Map<ServerAddress, String> getServersRequiringReload(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final Map<ServerAddress, String> servers = getServerStates(controllerClientConfig);
+        servers.values().retainAll(Arrays.asList(SERVER_STATE_RELOAD_REQUIRED, SERVER_STATE_RESTART_REQUIRED));
+        return servers;
+    }
+
+    /**
+     * Reloads, or restarts where required, every server of a managed domain needing it, in rolling batches.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @return the servers reloaded or restarted
+     * @throws ControllerOperationException if a server cannot be reloaded or is not running in time
+     */
+    public Set<ServerAddress> reloadServers(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final Map<ServerAddress, String> servers = getServersRequiringReload(controllerClientConfig);
+        if (servers.isEmpty()) {
+            logger.info("No server requires a reload.");
+        } else {
+            reloadServers(controllerClientConfig, servers);
+        }
+        return servers.keySet();
+    }
+
+    /**
+     * Reloads the given servers of a managed domain in rolling batches. Servers in <code>restart-required</code> state are
+     * restarted instead.
+     * 
+     * @param controllerClientConfig the domain controller client config
+     * @param servers the servers
+     * @throws ControllerOperationException if a server cannot be reloaded or is not running in time
+     */
+    public void reloadServers(final ControllerClientConfig controllerClientConfig, final Collection<ServerAddress> servers)
+        throws ControllerOperationException {
+        reloadServers(controllerClientConfig, getServerStates(controllerClientConfig, servers));
+    }
+
+    /**
+     * Reloads the standalone server and waits until it is running again. The connection drops during the reload and a
+     * booting server rejects the read, e.g. with <i>System boot is in process</i>, so the server state is polled until the
+     * server answers again: a failed read is only rethrown once the timeout has passed.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @throws ControllerOperationException if the server cannot be reloaded or is not running in time
+     */
+    public void reloadStandaloneServer(final ControllerClientConfig controllerClientConfig)
+        throws ControllerOperationException {
+        final ModelNode reload = new ModelNode();
+        reload.get(ClientConstants.OP).set(OPERATION_RELOAD);
+        reload.get(ClientConstants.OP_ADDR).setEmptyList();
+        logger.info("Reloading server {}:{} ...", controllerClientConfig.getHost(), controllerClientConfig.getPort());
+        operationExecutor.executeOperation(controllerClientConfig, reload);
+
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_ATTRIBUTE);
+        request.get(ClientConstants.OP_ADDR).setEmptyList();
+        request.get(ClientConstants.NAME).set(ATTRIBUTE_SERVER_STATE);
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            pause();
+            try {
+                if (SERVER_STATE_RUNNING.equals(operationExecutor.executeOperation(controllerClientConfig, request)
+                    .asString())) {
+                    logger.info("Server {}:{} reloaded successfully!", controllerClientConfig.getHost(),
+                        controllerClientConfig.getPort());
+                    return;
+                }
+            } catch (ControllerOperationException coe) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw coe;
+                }
+                logger.debug("Server {}:{} not running yet: {}", controllerClientConfig.getHost(),
+                    controllerClientConfig.getPort(), coe.getMessage());
+                continue;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new ControllerOperationException("Server " + controllerClientConfig.getHost() + ":"
+                    + controllerClientConfig.getPort() + " is not running " + timeoutMillis + " ms after the reload.");
+            }
+        }
+    }
+
+    /**
+     * Gets the current state of the given servers, blank for servers not running.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param servers the servers
+     * @return the server states
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private Map<ServerAddress, String> getServerStates(final ControllerClientConfig controllerClientConfig,
+        final Collection<ServerAddress> servers) throws ControllerOperationException {
+        final Map<ServerAddress, String> allStates = getServerStates(controllerClientConfig);
+        final Map<ServerAddress, String> states = new LinkedHashMap<ServerAddress, String>();
+        for (final ServerAddress server : servers) {
+            final String state = allStates.get(server);
+            states.put(server, state == null ? "" : state);
+        }
+        return states;
+    }
+
+    /**
+     * Reloads the servers in rolling batches.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param servers the servers with their state before the reload
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private void reloadServers(final ControllerClientConfig controllerClientConfig, final Map<ServerAddress, String> servers)
+        throws ControllerOperationException {
+        final List<ServerAddress> pending = new ArrayList<ServerAddress>(servers.keySet());
+        for (int from = 0; from < pending.size(); from += concurrency) {
+            final List<ServerAddress> batch = pending.subList(from, Math.min(from + concurrency, pending.size()));
+            for (final ServerAddress server : batch) {
+                final boolean restart = SERVER_STATE_RESTART_REQUIRED.equals(servers.get(server));
+                final ModelNode request = new ModelNode();
+                request.get(ClientConstants.OP).set(restart ? OPERATION_RESTART : OPERATION_RELOAD);
+                request.get(ClientConstants.OP_ADDR).add(ADDRESS_HOST, server.getHost())
+                    .add(ADDRESS_SERVER_CONFIG, server.getServer());
+                request.get(GENERAL_PROPERTY_BLOCKING).set(false);
+                logger.info("{} server {} ...", restart ? "Restarting" : "Reloading", server);
+                operationExecutor.executeOperation(controllerClientConfig, request);
+            }
+            awaitRunning(controllerClientConfig, batch, servers);
+        }
+    }
+
+    /**
+     * Polls the server states until every server of a batch is running. A server that was running before its reload
+     * only counts once it has been seen in another state, so that the reload is not mistaken as done before it started.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param batch the servers of the batch
+     * @param initialStates the server states before the reload
+     * @throws ControllerOperationException if the servers are not running in time
+     */
+    private void awaitRunning(final ControllerClientConfig controllerClientConfig, final List<ServerAddress> batch,
+        final Map<ServerAddress, String> initialStates) throws ControllerOperationException {
+        final Set<ServerAddress> waiting = new HashSet<ServerAddress>(batch);
+        final Set<ServerAddress> transitioned = new HashSet<ServerAddress>();
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            pause();
+            final Map<ServerAddress, String> states = getServerStates(controllerClientConfig);
+            for (final ServerAddress server : batch) {
+                final String state = states.get(server);
+                if (!SERVER_STATE_RUNNING.equals(state)) {
+                    transitioned.add(server);
+                } else if (transitioned.contains(server) || !SERVER_STATE_RUNNING.equals(initialStates.get(server))) {
+                    if (waiting.remove(server)) {
+                        logger.info("Server {} is running", server);
+                    }
+                }
+            }
+            if (waiting.isEmpty()) {
+                return;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new ControllerOperationException("Servers " + waiting + " are not running " + timeoutMillis
+                    + " ms after the reload, the remaining servers were left untouched.");
+            }
+        }
+    }
+
+    /**
+     * Waits for one poll interval.
+     * 
+     * @throws ControllerOperationException if interrupted
+     */
+    private void pause() throws ControllerOperationException {
+        try {
+            Thread.sleep(pollIntervalMillis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ControllerOperationException("Interrupted while waiting for the servers to be running.", ie);
+        }
+    }
+}
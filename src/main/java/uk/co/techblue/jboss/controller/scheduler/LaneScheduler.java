@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Schedules the operations sent to one controller, so that a large provisioning rollout does not delay the reads
+ * queued behind it. At most a number of operations are dispatched to the controller at once; the others wait in the
+ * queue of their {@link OperationLane}. Whenever a dispatch slot frees, the next operation is taken from the waiting
+ * lanes by smooth weighted round robin, so that each lane with operations waiting gets dispatches in proportion to its
+ * weight, and no lane starves.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class LaneScheduler {
+
+    /** The maximum operations dispatched at once. */
+    private final int dispatchSlots;
+
+    /** The weights of the lanes. */
+    private final Map<OperationLane, Integer> weights;
+
+    /** The queues of operations waiting by lane. */
+    private final Map<OperationLane, Queue<Ticket>> queues = new EnumMap<OperationLane, Queue<Ticket>>(
+        OperationLane.class);
+
+    /** The current weights of the lanes for the smooth weighted round robin. */
+    private final Map<OperationLane, Integer> currentWeights = new EnumMap<OperationLane, Integer>(OperationLane.class);
+
+    /** The operations dispatched. */
+    private int dispatched;
+
+    /**
+     * Instantiates a new lane scheduler.
+     * 
+     * @param dispatchSlots the maximum operations dispatched at once
+     * @param weights the weights of the lanes, the lanes missing having their default weights
+     */
+    public LaneScheduler(final int dispatchSlots, final Map<OperationLane, Integer> weights) {
+        if (dispatchSlots < 1) {
+            throw new IllegalArgumentException("Dispatch slots must be at least 1.");
+        }
+        this.dispatchSlots = dispatchSlots;
+        this.weights = new EnumMap<OperationLane, Integer>(OperationLane.class);
+        for (final OperationLane lane : OperationLane.values()) {
+            final Integer weight = weights.get(lane);
+            this.weights.put(lane, weight == null ? lane.getDefaultWeight() : weight);
+            queues.put(lane, new ArrayDeque<Ticket>());
+            currentWeights.put(lane, 0);
+        }
+    }
+
+    /**
+     * Waits for an operation of a lane to be dispatched. A dispatched operation must {@link #exit() exit} once
+     * complete.
+     * 
+     * @param lane the lane of the operation
+     * @throws InterruptedException if interrupted while waiting, the operation then not being dispatched
+     */
+    public synchronized void enter(final OperationLane lane) throws InterruptedException {
+        if (dispatched < dispatchSlots && isIdle()) {
+            dispatched++;
+            return;
+        }
+        final Ticket ticket = new Ticket();
+        queues.get(lane).add(ticket);
+        try {
+            while (!ticket.dispatched) {
+                wait();
+            }
+        } catch (final InterruptedException ie) {
+            if (ticket.dispatched) {
+                exit();
+            } else {
+                queues.get(lane).remove(ticket);
+            }
+            throw ie;
+        }
+    }
+
+    /**
+     * Frees the dispatch slot of a complete operation, dispatching the next operation waiting.
+     */
+    public synchronized void exit() {
+        dispatched--;
+        while (dispatched < dispatchSlots) {
+            final OperationLane lane = nextLane();
+            if (lane == null) {
+                return;
+            }
+            final Queue<Ticket> queue = queues.get(lane);
+            queue.poll().dispatched = true;
+            if (queue.isEmpty()) {
+                currentWeights.put(lane, 0);
+            }
+            dispatched++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gets the number of operations waiting in a lane.
+     * 
+     * @param lane the lane
+     * @return the operations waiting
+     */
+    public synchronized int getWaiting(final OperationLane lane) {
+        return queues.get(lane).size();
+    }
+
+    /**
+     * Checks if no operation is waiting in any lane.
+     * 
+     * @return true, if all the queues are empty
+     */
+    private boolean isIdle() {
+        for (final Queue<Ticket> queue : queues.values()) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the lane to dispatch next by smooth weighted round robin over the lanes with operations waiting.
+     * 
+     * @return the lane, null if no operation is waiting
+     */
+    private OperationLane nextLane() {
+        OperationLane nextLane = null;
+        int totalWeight = 0;
+        for (final OperationLane lane : OperationLane.values()) {
+            if (queues.get(lane).isEmpty()) {
+                continue;
+            }
+            final int weight = weights.get(lane);
+            final int currentWeight = currentWeights.get(lane) + weight;
+            currentWeights.put(lane, currentWeight);
+            totalWeight += weight;
+            if (nextLane == null || currentWeight > currentWeights.get(nextLane)) {
+                nextLane = lane;
+            }
+        }
+        if (nextLane != null) {
+            currentWeights.put(nextLane, currentWeights.get(nextLane) - totalWeight);
+        }
+        return nextLane;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public synchronized String toString() {
+        final StringBuilder builder = new StringBuilder("LaneScheduler [dispatched=").append(dispatched).append('/')
+            .append(dispatchSlots);
+        for (final OperationLane lane : OperationLane.values()) {
+            builder.append(", ").append(lane).append("=").append(queues.get(lane).size()).append(" waiting (weight ")
+                .append(weights.get(lane)).append(')');
+        }
+        return builder.append("]").toString();
+    }
+
+    /**
+     * The ticket of an operation waiting to be dispatched.
+     */
+    private static class Ticket {
+
+        /** Whether the operation was dispatched. */
+        private boolean dispatched;
+    }
+}
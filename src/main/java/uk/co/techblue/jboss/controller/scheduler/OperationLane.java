@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.scheduler;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.READ_OPERATIONS;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.pool.PoolOperation;
+
+/**
+ * The priority lanes of the operations sent to a controller, dispatched by a {@link LaneScheduler} in proportion to
+ * their weights.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public enum OperationLane {
+
+    /** The latency sensitive reads of the management model, such as listing datasources or checking one is enabled. */
+    INTERACTIVE(8),
+
+    /** The health sweeps testing and flushing the connection pools. */
+    HEALTH(2),
+
+    /** The bulk provisioning writes, such as creating or removing datasources. */
+    BULK(1);
+
+    /** The default weight. */
+    private final int defaultWeight;
+
+    /**
+     * Instantiates a new operation lane.
+     * 
+     * @param defaultWeight the default weight
+     */
+    private OperationLane(final int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * Gets the default weight of the lane, the share of dispatches it gets relative to the other lanes when all have
+     * operations waiting.
+     * 
+     * @return the default weight
+     */
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    /**
+     * Classifies an operation. A composite goes in the lowest priority lane of its steps.
+     * 
+     * @param operation the operation
+     * @return the lane of the operation
+     */
+    public static OperationLane classify(final ModelNode operation) {
+        final String operationName = operation.get(ClientConstants.OP).asString();
+        if (READ_OPERATIONS.contains(operationName)) {
+            return INTERACTIVE;
+        }
+        for (final PoolOperation poolOperation : PoolOperation.values()) {
+            if (poolOperation.getOperationName().equals(operationName)) {
+                return HEALTH;
+            }
+        }
+        if (!ClientConstants.COMPOSITE.equals(operationName) || !operation.hasDefined(ClientConstants.STEPS)) {
+            return BULK;
+        }
+        OperationLane lane = INTERACTIVE;
+        for (final ModelNode step : operation.get(ClientConstants.STEPS).asList()) {
+            final OperationLane stepLane = classify(step);
+            if (stepLane.compareTo(lane) > 0) {
+                lane = stepLane;
+            }
+        }
+        return lane;
+    }
+}
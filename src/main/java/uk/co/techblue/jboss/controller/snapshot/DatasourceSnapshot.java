@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+
+import uk.co.techblue.jboss.controller.ControllerConstants;
+
+/**
+ * A point-in-time copy of the datasource configurations of a server profile that can be written to and read from a file.
+ * <p>
+ * The snapshot contains the datasource attributes as returned by the controller, which includes plaintext passwords unless
+ * the datasources use a security domain or credential store. Snapshot files must be protected accordingly.
+ * <p>
+ * Only the non-XA datasources are held, i.e. the <code>data-source</code> resources of the datasources subsystem: the
+ * <code>xa-data-source</code> and <code>jdbc-driver</code> resources are neither exported nor imported.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceSnapshot {
+
+    /**
+     * The Enum to denote the snapshot file formats.
+     */
+    public enum Format {
+
+        /** The gzip compressed DMR binary format. Compact and fast to read, the default. */
+        DMR,
+
+        /**
+         * The JSON format. Human readable and suitable for version control, but it does not keep the DMR value types
+         * JSON has no counterpart for: numbers are read back as int or big decimal values, whatever their type when
+         * exported, and expressions and bytes are written as objects wrapping their value, which only DMR reads back as
+         * such. Use the DMR format to restore the snapshot exactly.
+         */
+        JSON
+    }
+
+    /** The current snapshot format version. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The snapshot property holding the format version. */
+    private static final String PROPERTY_FORMAT_VERSION = "format-version";
+
+    /** The snapshot property holding the source host. */
+    private static final String PROPERTY_SOURCE_HOST = "source-host";
+
+    /** The snapshot property holding the source profile. */
+    private static final String PROPERTY_SOURCE_PROFILE = "source-profile";
+
+    /** The snapshot property holding the creation time. */
+    private static final String PROPERTY_CREATED = "created";
+
+    /** The charset of the JSON format. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** The source host. */
+    private final String sourceHost;
+
+    /** The source profile. */
+    private final String sourceProfile;
+
+    /** The creation time. */
+    private final long created;
+
+    /** The datasource configurations. */
+    private final Map<String, ModelNode> datasources;
+
+    /**
+     * Instantiates a new datasource snapshot.
+     * 
+     * @param sourceHost the host of the controller the snapshot was taken from
+     * @param sourceProfile the server profile the snapshot was taken from, null for a standalone server
+     * @param created the creation time in milliseconds since the epoch
+     * @param datasources the datasource configurations mapped by datasource name
+     */
+    public DatasourceSnapshot(String sourceHost, String sourceProfile, long created, Map<String, ModelNode> datasources) {
+        this.sourceHost = sourceHost;
+        this.sourceProfile = sourceProfile;
+        this.created = created;
+        this.datasources = Collections.unmodifiableMap(new LinkedHashMap<String, ModelNode>(datasources));
+    }
+
+    /**
+     * Gets the host of the controller the snapshot was taken from.
+     * 
+     * @return the source host
+     */
+    public String getSourceHost() {
+        return sourceHost;
+    }
+
+    /**
+     * Gets the server profile the snapshot was taken from.
+     * 
+     * @return the source profile
+     */
+    public String getSourceProfile() {
+        return sourceProfile;
+    }
+
+    /**
+     * Gets the creation time in milliseconds since the epoch.
+     * 
+     * @return the creation time
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Gets the datasource configurations mapped by datasource name.
+     * 
+     * @return the datasources
+     */
+    public Map<String, ModelNode> getDatasources() {
+        return datasources;
+    }
+
+    /**
+     * Writes the snapshot to a file.
+     * 
+     * @param file the file
+     * @param format the file format
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void write(final File file, final Format format) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            write(out, format);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the snapshot to a stream. The stream is not closed.
+     * 
+     * @param out the output stream
+     * @param format the format
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void write(final OutputStream out, final Format format) throws IOException {
+        final ModelNode snapshot = new ModelNode();
+        snapshot.get(PROPERTY_FORMAT_VERSION).set(FORMAT_VERSION);
+        if (sourceHost != null) {
+            snapshot.get(PROPERTY_SOURCE_HOST).set(sourceHost);
+        }
+        if (sourceProfile != null) {
+            snapshot.get(PROPERTY_SOURCE_PROFILE).set(sourceProfile);
+        }
+        snapshot.get(PROPERTY_CREATED).set(created);
+        final ModelNode datasourceNodes = snapshot.get(ControllerConstants.ADDRESS_DATASOURCE).setEmptyObject();
+        for (final Map.Entry<String, ModelNode> datasource : datasources.entrySet()) {
+            datasourceNodes.get(datasource.getKey()).set(datasource.getValue());
+        }
+        if (format == Format.JSON) {
+            out.write(snapshot.toJSONString(false).getBytes(UTF8));
+        } else {
+            final GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+            final DataOutputStream dataOut = new DataOutputStream(gzipOut);
+            snapshot.writeExternal((DataOutput) dataOut);
+            dataOut.flush();
+            gzipOut.finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot from a file written in any of the supported formats.
+     * 
+     * @param file the file
+     * @return the datasource snapshot
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static DatasourceSnapshot read(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot from a stream written in any of the supported formats. The stream is not closed.
+     * 
+     * @param in the input stream
+     * @return the datasource snapshot
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static DatasourceSnapshot read(final InputStream in) throws IOException {
+        final BufferedInputStream bufferedIn = new BufferedInputStream(in);
+        bufferedIn.mark(2);
+        final int magic = bufferedIn.read() | (bufferedIn.read() << 8);
+        bufferedIn.reset();
+        final ModelNode snapshot = new ModelNode();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            snapshot.readExternal((DataInput) new DataInputStream(new GZIPInputStream(bufferedIn)));
+        } else {
+            final ByteArrayOutputStream json = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = bufferedIn.read(buffer)) != -1) {
+                json.write(buffer, 0, read);
+            }
+            snapshot.set(ModelNode.fromJSONString(new String(json.toByteArray(), UTF8)));
+        }
+        if (snapshot.get(PROPERTY_FORMAT_VERSION).asInt(0) != FORMAT_VERSION) {
+            throw new IOException("Unsupported datasource snapshot format version "
+                + snapshot.get(PROPERTY_FORMAT_VERSION).asString());
+        }
+        final Map<String, ModelNode> datasources = new LinkedHashMap<String, ModelNode>();
+        if (snapshot.hasDefined(ControllerConstants.ADDRESS_DATASOURCE)) {
+            for (final Property datasource : snapshot.get(ControllerConstants.ADDRESS_DATASOURCE).asPropertyList()) {
+                datasources.put(datasource.getName(), datasource.getValue());
+            }
+        }
+        return new DatasourceSnapshot(snapshot.hasDefined(PROPERTY_SOURCE_HOST) ? snapshot.get(PROPERTY_SOURCE_HOST)
+            .asString() : null, snapshot.hasDefined(PROPERTY_SOURCE_PROFILE) ? snapshot.get(PROPERTY_SOURCE_PROFILE)
+            .asString() : null, snapshot.get(PROPERTY_CREATED).asLong(0), datasources);
+    }
+}
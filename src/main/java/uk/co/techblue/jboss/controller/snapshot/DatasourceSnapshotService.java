@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.snapshot;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_CONNECTION_PROPERTIES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_STATISTICS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * The service to export the datasources of a server profile into a {@link DatasourceSnapshot} and to import a snapshot
+ * into another controller.
+ * <p>
+ * An export is a single read of the datasources subsystem. An import replays the snapshot as composite operations, by
+ * default one composite per import so that the import is applied atomically.
+ * <p>
+ * Only the non-XA datasources are exported and imported. XA datasources and JDBC drivers are left out: they must be
+ * defined on the target controller by other means, the drivers before importing the datasources that use them.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceSnapshotService {
+
+    /** The datasource child resource types that are not sent as attributes. */
+    private static final Set<String> DATASOURCE_CHILD_TYPES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        ADDRESS_CONNECTION_PROPERTIES, ADDRESS_STATISTICS)));
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(DatasourceSnapshotService.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /** The maximum number of datasources per composite operation. */
+    private int batchSize;
+
+    /**
+     * Instantiates a new datasource snapshot service.
+     * 
+     * @param operationExecutor the operation executor
+     */
+    public DatasourceSnapshotService(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Gets the maximum number of datasources per composite operation.
+     * 
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of datasources per composite operation used by imports. Zero or less, the default, sends the
+     * whole import as a single composite operation which is applied atomically. With smaller batches, a failing batch only
+     * rolls back its own datasources: the steps replacing a datasource and adding its connection properties are never
+     * split across batches.
+     * 
+     * @param batchSize the new batch size
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Exports the non-XA datasources of a server profile in a single read.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     * @return the datasource snapshot
+     * @throws ControllerOperationException the controller operation exception
+     */
+    public DatasourceSnapshot exportDatasources(final ControllerClientConfig controllerClientConfig,
+        final String serverProfileName) throws ControllerOperationException {
+        final Map<String, ModelNode> datasources = operationExecutor.getDatasourceConfigurations(controllerClientConfig,
+            serverProfileName);
+        logger.info("Exported {} datasources from controller host {}", datasources.size(), controllerClientConfig.getHost());
+        return new DatasourceSnapshot(controllerClientConfig.getHost(), StringUtils.isBlank(serverProfileName) ? null
+            : serverProfileName, System.currentTimeMillis(), datasources);
+    }
+
+    /**
+     * Imports the datasources of a snapshot into the given server profiles.
+     * 
+     * @param controllerClientConfig the controller client config of the target controller
+     * @param snapshot the snapshot to import
+     * @param replaceExisting whether datasources already defined on the target are replaced; otherwise an existing
+     *        datasource fails the import
+     * @param serverProfileNames the server profile names to import into, none for a standalone server
+     * @throws ControllerOperationException the controller operation exception
+     */
+    public void importDatasources(final ControllerClientConfig controllerClientConfig, final DatasourceSnapshot snapshot,
+        final boolean replaceExisting, final String... serverProfileNames) throws ControllerOperationException {
+        if (snapshot.getDatasources().isEmpty()) {
+            logger.info("The datasource snapshot is empty, nothing to import.");
+            return;
+        }
+        final List<List<ModelNode>> datasourceSteps = new ArrayList<List<ModelNode>>();
+        if (serverProfileNames != null && serverProfileNames.length > 0) {
+            for (final String serverProfile : serverProfileNames) {
+                addImportSteps(datasourceSteps, controllerClientConfig, snapshot, replaceExisting, serverProfile);
+            }
+        } else {
+            addImportSteps(datasourceSteps, controllerClientConfig, snapshot, replaceExisting, "");
+        }
+
+        final int datasourcesPerBatch = batchSize > 0 ? batchSize : datasourceSteps.size();
+        for (int fromIndex = 0; fromIndex < datasourceSteps.size(); fromIndex += datasourcesPerBatch) {
+            final int toIndex = Math.min(fromIndex + datasourcesPerBatch, datasourceSteps.size());
+            final List<ModelNode> steps = new ArrayList<ModelNode>();
+            for (final List<ModelNode> datasource : datasourceSteps.subList(fromIndex, toIndex)) {
+                steps.addAll(datasource);
+            }
+            logger.info("Importing datasources into controller host {}, datasources {} to {} of {} ...",
+                controllerClientConfig.getHost(), fromIndex + 1, toIndex, datasourceSteps.size());
+            operationExecutor.executeOperation(controllerClientConfig, DatasourceOperations.createCompositeOperation(
+                steps));
+        }
+        logger.info("{} datasources imported successfully!", snapshot.getDatasources().size());
+    }
+
+    /**
+     * Adds the steps importing the snapshot into a server profile, one list of steps per datasource.
+     * 
+     * @param datasourceSteps the lists of steps to add to
+     * @param controllerClientConfig the controller client config
+     * @param snapshot the snapshot
+     * @param replaceExisting whether existing datasources are replaced
+     * @param serverProfileName the server profile name
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private void addImportSteps(final List<List<ModelNode>> datasourceSteps,
+        final ControllerClientConfig controllerClientConfig, final DatasourceSnapshot snapshot,
+        final boolean replaceExisting, final String serverProfileName) throws ControllerOperationException {
+        final Collection<String> existingDatasources = replaceExisting ? operationExecutor.getDatasourceNames(
+            controllerClientConfig, serverProfileName) : Collections.<String> emptySet();
+        for (final Map.Entry<String, ModelNode> datasource : snapshot.getDatasources().entrySet()) {
+            final ModelNode datasourceAddress = DatasourceOperations.getDatasourceAddress(serverProfileName,
+                datasource.getKey());
+            final List<ModelNode> steps = new ArrayList<ModelNode>();
+            if (existingDatasources.contains(datasource.getKey())) {
+                steps.add(DatasourceOperations.createRemoveOperation(datasource.getKey(), serverProfileName));
+            }
+            final ModelNode configuration = datasource.getValue();
+            final ModelNode add = new ModelNode();
+            add.get(ClientConstants.OP).set(ClientConstants.ADD);
+            add.get(ClientConstants.OP_ADDR).set(datasourceAddress);
+            for (final Property attribute : configuration.asPropertyList()) {
+                if (attribute.getValue().isDefined() && !DATASOURCE_CHILD_TYPES.contains(attribute.getName())) {
+                    add.get(attribute.getName()).set(attribute.getValue());
+                }
+            }
+            steps.add(add);
+            if (configuration.hasDefined(ADDRESS_CONNECTION_PROPERTIES)) {
+                for (final Property connectionProperty : configuration.get(ADDRESS_CONNECTION_PROPERTIES).asPropertyList()) {
+                    steps.add(DatasourceOperations.createConnectionPropertyAddOperation(datasourceAddress,
+                        connectionProperty.getName(), connectionProperty.getValue().get(ClientConstants.VALUE)));
+                }
+            }
+            datasourceSteps.add(steps);
+        }
+    }
+}
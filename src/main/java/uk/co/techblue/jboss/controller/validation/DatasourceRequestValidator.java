@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.validation;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ACCESS_TYPE_READ_WRITE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_DATASOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_WILDCARD;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ACCESS_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ALLOWED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ALTERNATIVES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_ATTRIBUTES;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_DEFAULT;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_MAX;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_MAX_LENGTH;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_MIN;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_MIN_LENGTH;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_NILLABLE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DESCRIPTION_PROPERTY_TYPE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MAXPOOLSIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_MINPOOLSIZE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_READ_RESOURCE_DESCRIPTION;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_UNDEFINE_ATTRIBUTE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ModelType;
+import org.jboss.dmr.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.capability.CapabilityProbe;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * Validates the requests adding, writing or undefining datasource attributes against the description of the
+ * data-source resource of the server version, before they are sent. Invalid values, such as a minimum pool size over the
+ * maximum, a transaction isolation not allowed or an attribute unknown to the server version, are then reported without
+ * a round trip, and without the rollback of a whole composite.
+ * <p>
+ * The description is read once per management version with <code>read-resource-description</code> and cached for the
+ * JVM. The management version of each controller host is detected by a {@link CapabilityProbe}. Requests not concerning datasources are not validated.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceRequestValidator {
+
+    /** The numeric attribute types. */
+    private static final Set<ModelType> NUMERIC_TYPES = Collections.unmodifiableSet(new HashSet<ModelType>(Arrays.asList(
+        ModelType.INT, ModelType.LONG, ModelType.DOUBLE, ModelType.BIG_INTEGER, ModelType.BIG_DECIMAL)));
+
+    /** The request properties that are not attributes. */
+    private static final Set<String> REQUEST_PROPERTIES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        ClientConstants.OP, ClientConstants.OP_ADDR, ClientConstants.OPERATION_HEADERS)));
+
+    /** The data-source resource descriptions by management version. */
+    private static final ConcurrentMap<String, ModelNode> DESCRIPTIONS = new ConcurrentHashMap<String, ModelNode>();
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(DatasourceRequestValidator.class);
+
+    /** The operation executor reading the descriptions. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /** The probe detecting the controller versions. */
+    private final CapabilityProbe capabilityProbe;
+
+    /**
+     * Instantiates a new datasource request validator.
+     * 
+     * @param operationExecutor the operation executor reading the descriptions
+     */
+    public DatasourceRequestValidator(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+        this.capabilityProbe = new CapabilityProbe(operationExecutor);
+    }
+
+    /**
+     * Validates a request before it is sent to a controller, reading the data-source description of the controller
+     * version on first use.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param request the request
+     * @return the violations, empty if the request is valid or does not concern datasources
+     * @throws ControllerOperationException if the description could not be read
+     */
+    public List<String> validate(final ControllerClientConfig controllerClientConfig, final ModelNode request)
+        throws ControllerOperationException {
+        final ModelNode datasourceAddress = findDatasourceWrite(request);
+        if (datasourceAddress == null) {
+            return Collections.emptyList();
+        }
+        return validate(getDescription(controllerClientConfig, datasourceAddress), request);
+    }
+
+    /**
+     * Validates a request against a data-source resource description.
+     * 
+     * @param description the data-source resource description
+     * @param request the request
+     * @return the violations, empty if the request is valid or does not concern datasources
+     */
+    public static List<String> validate(final ModelNode description, final ModelNode request) {
+        final List<String> violations = new ArrayList<String>();
+        addViolations(violations, description.get(DESCRIPTION_PROPERTY_ATTRIBUTES), request);
+        return violations;
+    }
+
+    /**
+     * Clears the cached descriptions, e.g. after the controllers were upgraded.
+     */
+    public static void clearCache() {
+        DESCRIPTIONS.clear();
+    }
+
+    /**
+     * Adds the violations of a request, and of the steps of a composite.
+     * 
+     * @param violations the violations to add to
+     * @param attributes the attribute descriptions
+     * @param request the request
+     */
+    private static void addViolations(final List<String> violations, final ModelNode attributes, final ModelNode request) {
+        final String operationName = request.get(ClientConstants.OP).asString();
+        if (ClientConstants.COMPOSITE.equals(operationName)) {
+            if (request.hasDefined(ClientConstants.STEPS)) {
+                for (final ModelNode step : request.get(ClientConstants.STEPS).asList()) {
+                    addViolations(violations, attributes, step);
+                }
+            }
+            return;
+        }
+        final String datasourceName = getDatasourceName(request);
+        if (datasourceName == null) {
+            return;
+        }
+        final String subject = "Datasource '" + datasourceName + "': ";
+        if (ClientConstants.ADD.equals(operationName)) {
+            for (final String name : request.keys()) {
+                if (!REQUEST_PROPERTIES.contains(name)) {
+                    addAttributeViolations(violations, subject, attributes, name, request.get(name));
+                }
+            }
+            for (final Property attribute : attributes.asPropertyList()) {
+                if (isRequired(attribute.getValue()) && !request.hasDefined(attribute.getName())) {
+                    violations.add(subject + "attribute '" + attribute.getName() + "' is required");
+                }
+            }
+            addPoolSizeViolations(violations, subject, request);
+        } else if (ClientConstants.WRITE_ATTRIBUTE_OPERATION.equals(operationName)) {
+            addAttributeViolations(violations, subject, attributes, request.get(ClientConstants.NAME).asString(),
+                request.get(ClientConstants.VALUE));
+        } else if (OPERATION_UNDEFINE_ATTRIBUTE.equals(operationName)) {
+            addAttributeViolations(violations, subject, attributes, request.get(ClientConstants.NAME).asString(),
+                new ModelNode());
+        }
+    }
+
+    /**
+     * Adds the violations of an attribute value.
+     * 
+     * @param violations the violations to add to
+     * @param subject the subject of the violations
+     * @param attributes the attribute descriptions
+     * @param name the attribute name
+     * @param value the attribute value
+     */
+    private static void addAttributeViolations(final List<String> violations, final String subject,
+        final ModelNode attributes, final String name, final ModelNode value) {
+        if (!attributes.has(name)) {
+            violations.add(subject + "attribute '" + name + "' is not known to the server version");
+            return;
+        }
+        final ModelNode attribute = attributes.get(name);
+        if (attribute.hasDefined(DESCRIPTION_PROPERTY_ACCESS_TYPE)
+            && !ACCESS_TYPE_READ_WRITE.equals(attribute.get(DESCRIPTION_PROPERTY_ACCESS_TYPE).asString())) {
+            violations.add(subject + "attribute '" + name + "' is not writable");
+            return;
+        }
+        if (!value.isDefined()) {
+            if (attribute.hasDefined(DESCRIPTION_PROPERTY_NILLABLE)
+                && !attribute.get(DESCRIPTION_PROPERTY_NILLABLE).asBoolean()) {
+                violations.add(subject + "attribute '" + name + "' cannot be undefined");
+            }
+            return;
+        }
+        if (value.getType() == ModelType.EXPRESSION) {
+            if (!attribute.hasDefined(DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED)
+                || !attribute.get(DESCRIPTION_PROPERTY_EXPRESSIONS_ALLOWED).asBoolean()) {
+                violations.add(subject + "attribute '" + name + "' does not allow expressions");
+            }
+            return;
+        }
+        final ModelType type = attribute.hasDefined(DESCRIPTION_PROPERTY_TYPE) ? attribute.get(DESCRIPTION_PROPERTY_TYPE)
+            .asType() : ModelType.UNDEFINED;
+        if (!isOfType(value, type)) {
+            violations.add(subject + "attribute '" + name + "' must be of type " + type + ", not '" + value.asString()
+                + "'");
+            return;
+        }
+        if (attribute.hasDefined(DESCRIPTION_PROPERTY_ALLOWED)) {
+            boolean allowed = false;
+            for (final ModelNode allowedValue : attribute.get(DESCRIPTION_PROPERTY_ALLOWED).asList()) {
+                allowed |= allowedValue.asString().equals(value.asString());
+            }
+            if (!allowed) {
+                violations.add(subject + "attribute '" + name + "' must be one of "
+                    + attribute.get(DESCRIPTION_PROPERTY_ALLOWED).asString() + ", not '" + value.asString() + "'");
+                return;
+            }
+        }
+        if (NUMERIC_TYPES.contains(type)) {
+            final double number = value.asDouble();
+            if (attribute.hasDefined(DESCRIPTION_PROPERTY_MIN) && number < attribute.get(DESCRIPTION_PROPERTY_MIN).asDouble()) {
+                violations.add(subject + "attribute '" + name + "' must be at least "
+                    + attribute.get(DESCRIPTION_PROPERTY_MIN).asString() + ", not " + value.asString());
+            } else if (attribute.hasDefined(DESCRIPTION_PROPERTY_MAX)
+                && number > attribute.get(DESCRIPTION_PROPERTY_MAX).asDouble()) {
+                violations.add(subject + "attribute '" + name + "' must be at most "
+                    + attribute.get(DESCRIPTION_PROPERTY_MAX).asString() + ", not " + value.asString());
+            }
+        } else if (type == ModelType.STRING) {
+            final int length = value.asString().length();
+            if (attribute.hasDefined(DESCRIPTION_PROPERTY_MIN_LENGTH)
+                && length < attribute.get(DESCRIPTION_PROPERTY_MIN_LENGTH).asLong()) {
+                violations.add(subject + "attribute '" + name + "' must be at least "
+                    + attribute.get(DESCRIPTION_PROPERTY_MIN_LENGTH).asString() + " characters long");
+            } else if (attribute.hasDefined(DESCRIPTION_PROPERTY_MAX_LENGTH)
+                && length > attribute.get(DESCRIPTION_PROPERTY_MAX_LENGTH).asLong()) {
+                violations.add(subject + "attribute '" + name + "' must be at most "
+                    + attribute.get(DESCRIPTION_PROPERTY_MAX_LENGTH).asString() + " characters long");
+            }
+        }
+    }
+
+    /**
+     * Adds the violation of a minimum pool size over the maximum pool size of an added datasource.
+     * 
+     * @param violations the violations to add to
+     * @param subject the subject of the violations
+     * @param request the add request
+     */
+    private static void addPoolSizeViolations(final List<String> violations, final String subject, final ModelNode request) {
+        if (!request.hasDefined(DS_PROPERTY_MINPOOLSIZE) || !request.hasDefined(DS_PROPERTY_MAXPOOLSIZE)) {
+            return;
+        }
+        final ModelNode minPoolSize = request.get(DS_PROPERTY_MINPOOLSIZE);
+        final ModelNode maxPoolSize = request.get(DS_PROPERTY_MAXPOOLSIZE);
+        if (!isOfType(minPoolSize, ModelType.INT) || !isOfType(maxPoolSize, ModelType.INT)
+            || minPoolSize.getType() == ModelType.EXPRESSION || maxPoolSize.getType() == ModelType.EXPRESSION) {
+            return;
+        }
+        if (minPoolSize.asInt() > maxPoolSize.asInt()) {
+            violations.add(subject + DS_PROPERTY_MINPOOLSIZE + " " + minPoolSize.asInt() + " is greater than "
+                + DS_PROPERTY_MAXPOOLSIZE + " " + maxPoolSize.asInt());
+        }
+    }
+
+    /**
+     * Checks if an attribute must be defined when adding the resource.
+     * 
+     * @param attribute the attribute description
+     * @return true, if required
+     */
+    private static boolean isRequired(final ModelNode attribute) {
+        if (!attribute.hasDefined(DESCRIPTION_PROPERTY_NILLABLE) || attribute.get(DESCRIPTION_PROPERTY_NILLABLE).asBoolean()) {
+            return false;
+        }
+        return !attribute.hasDefined(DESCRIPTION_PROPERTY_DEFAULT) && !attribute.hasDefined(DESCRIPTION_PROPERTY_ALTERNATIVES)
+            && (!attribute.hasDefined(DESCRIPTION_PROPERTY_ACCESS_TYPE) || ACCESS_TYPE_READ_WRITE.equals(attribute.get(
+                DESCRIPTION_PROPERTY_ACCESS_TYPE).asString()));
+    }
+
+    /**
+     * Checks if a value converts to an attribute type, as the controller would convert it.
+     * 
+     * @param value the value
+     * @param type the attribute type, {@link ModelType#UNDEFINED} if unknown
+     * @return true, if the value converts to the type
+     */
+    private static boolean isOfType(final ModelNode value, final ModelType type) {
+        if (value.getType() == ModelType.EXPRESSION) {
+            return true;
+        }
+        switch (type) {
+            case BOOLEAN:
+                return value.getType() == ModelType.BOOLEAN || "true".equalsIgnoreCase(value.asString())
+                    || "false".equalsIgnoreCase(value.asString());
+            case INT:
+            case LONG:
+            case BIG_INTEGER:
+                try {
+                    value.asBigInteger();
+                    return true;
+                } catch (final IllegalArgumentException iae) {
+                    return false;
+                }
+            case DOUBLE:
+            case BIG_DECIMAL:
+                try {
+                    value.asBigDecimal();
+                    return true;
+                } catch (final IllegalArgumentException iae) {
+                    return false;
+                }
+            case OBJECT:
+                return value.getType() == ModelType.OBJECT;
+            case LIST:
+                return value.getType() == ModelType.LIST;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Finds the data-source address of a request adding, writing or undefining datasource attributes, directly or as
+     * a composite step.
+     * 
+     * @param request the request
+     * @return the address of the first datasource written, null if the request writes no datasource
+     */
+    private static ModelNode findDatasourceWrite(final ModelNode request) {
+        final String operationName = request.get(ClientConstants.OP).asString();
+        if (ClientConstants.COMPOSITE.equals(operationName)) {
+            if (request.hasDefined(ClientConstants.STEPS)) {
+                for (final ModelNode step : request.get(ClientConstants.STEPS).asList()) {
+                    final ModelNode datasourceAddress = findDatasourceWrite(step);
+                    if (datasourceAddress != null) {
+                        return datasourceAddress;
+                    }
+                }
+            }
+            return null;
+        }
+        if (!ClientConstants.ADD.equals(operationName) && !ClientConstants.WRITE_ATTRIBUTE_OPERATION.equals(operationName)
+            && !OPERATION_UNDEFINE_ATTRIBUTE.equals(operationName)) {
+            return null;
+        }
+        return getDatasourceName(request) == null ? null : request.get(ClientConstants.OP_ADDR);
+    }
+
+    /**
+     * Gets the name of the datasource a request is addressed to.
+     * 
+     * @param request the request
+     * @return the datasource name, null if the request is not addressed to a datasource
+     */
+    private static String getDatasourceName(final ModelNode request) {
+        if (!request.hasDefined(ClientConstants.OP_ADDR)) {
+            return null;
+        }
+        final List<Property> address = request.get(ClientConstants.OP_ADDR).asPropertyList();
+        if (address.isEmpty()) {
+            return null;
+        }
+        final Property lastElement = address.get(address.size() - 1);
+        return ADDRESS_DATASOURCE.equals(lastElement.getName()) ? lastElement.getValue().asString() : null;
+    }
+
+    /**
+     * Gets the data-source description of the version of a controller, reading it on first use.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param datasourceAddress the address of a datasource of the controller
+     * @return the data-source resource description
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private ModelNode getDescription(final ControllerClientConfig controllerClientConfig,
+        final ModelNode datasourceAddress) throws ControllerOperationException {
+        final String version = capabilityProbe.probe(controllerClientConfig).getManagementVersion();
+        ModelNode description = DESCRIPTIONS.get(version);
+        if (description != null) {
+            return description;
+        }
+        final ModelNode descriptionAddress = new ModelNode().setEmptyList();
+        final List<Property> address = datasourceAddress.asPropertyList();
+        for (final Property element : address.subList(0, address.size() - 1)) {
+            descriptionAddress.add(element.getName(), element.getValue().asString());
+        }
+        descriptionAddress.add(ADDRESS_DATASOURCE, ADDRESS_WILDCARD);
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_READ_RESOURCE_DESCRIPTION);
+        request.get(ClientConstants.OP_ADDR).set(descriptionAddress);
+        description = operationExecutor.executeOperation(controllerClientConfig, request);
+        if (description.getType() == ModelType.LIST) {
+            description = description.get(0).get(ClientConstants.RESULT);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Read the data-source description of management version {} from controller host {}", version,
+                controllerClientConfig.getHost());
+        }
+        final ModelNode cachedDescription = DESCRIPTIONS.putIfAbsent(version, description);
+        return cachedDescription != null ? cachedDescription : description;
+    }
+}
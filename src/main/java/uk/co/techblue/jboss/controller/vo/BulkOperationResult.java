@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.vo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of a single item of a bulk operation executed on a best-effort basis, i.e. of one datasource in one server
+ * profile.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class BulkOperationResult {
+
+    /**
+     * The Enum to denote the outcome of an item.
+     */
+    public enum Outcome {
+
+        /** The operation succeeded. */
+        SUCCESS,
+
+        /** The controller executed the operation and reported a failure. */
+        FAILED,
+
+        /** The operation could not be executed, e.g. the controller was unreachable. */
+        ERROR
+    }
+
+    /** The datasource name. */
+    private final String datasourceName;
+
+    /** The server profile name. */
+    private final String serverProfileName;
+
+    /** The outcome. */
+    private final Outcome outcome;
+
+    /** The failure code. */
+    private final String failureCode;
+
+    /** The failure description. */
+    private final String failureDescription;
+
+    /** Whether the operation was rolled back. */
+    private final boolean rolledBack;
+
+    /** The duration in nanoseconds. */
+    private final long durationNanos;
+
+    /**
+     * Instantiates a new bulk operation result.
+     * 
+     * @param datasourceName the datasource name
+     * @param serverProfileName the server profile name, null for a standalone server
+     * @param outcome the outcome
+     * @param failureCode the failure code, e.g. <code>WFLYCTL0212</code>, null if none
+     * @param failureDescription the failure description, null if the item succeeded
+     * @param rolledBack whether the controller rolled the operation back
+     * @param durationNanos the duration in nanoseconds
+     */
+    public BulkOperationResult(String datasourceName, String serverProfileName, Outcome outcome, String failureCode,
+            String failureDescription, boolean rolledBack, long durationNanos) {
+        this.datasourceName = datasourceName;
+        this.serverProfileName = serverProfileName;
+        this.outcome = outcome;
+        this.failureCode = failureCode;
+        this.failureDescription = failureDescription;
+        this.rolledBack = rolledBack;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Gets the datasource name.
+     * 
+     * @return the datasource name
+     */
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    /**
+     * Gets the server profile name.
+     * 
+     * @return the server profile name, null for a standalone server
+     */
+    public String getServerProfileName() {
+        return serverProfileName;
+    }
+
+    /**
+     * Gets the outcome.
+     * 
+     * @return the outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Checks if the item succeeded.
+     * 
+     * @return true, if successful
+     */
+    public boolean isSuccess() {
+        return outcome == Outcome.SUCCESS;
+    }
+
+    /**
+     * Gets the code of the controller message describing the failure, e.g. <code>WFLYCTL0212</code> for a duplicate
+     * resource or <code>WFLYCTL0216</code> for a missing one.
+     * 
+     * @return the failure code, null if the item succeeded or the failure carried no code
+     */
+    public String getFailureCode() {
+        return failureCode;
+    }
+
+    /**
+     * Gets the failure description.
+     * 
+     * @return the failure description, null if the item succeeded
+     */
+    public String getFailureDescription() {
+        return failureDescription;
+    }
+
+    /**
+     * Checks whether the controller rolled the operation back.
+     * 
+     * @return true, if rolled back
+     */
+    public boolean isRolledBack() {
+        return rolledBack;
+    }
+
+    /**
+     * Gets the duration of the item in milliseconds.
+     * 
+     * @return the duration millis
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    /**
+     * Gets the duration of the item in nanoseconds.
+     * 
+     * @return the duration nanos
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(datasourceName);
+        if (serverProfileName != null) {
+            builder.append('@').append(serverProfileName);
+        }
+        builder.append(": ").append(outcome);
+        if (failureCode != null) {
+            builder.append(' ').append(failureCode);
+        }
+        if (rolledBack) {
+            builder.append(" (rolled back)");
+        }
+        return builder.append(" in ").append(getDurationMillis()).append(" ms").toString();
+    }
+}
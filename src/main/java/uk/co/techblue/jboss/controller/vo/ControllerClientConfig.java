@@ -26,6 +26,18 @@ import javax.net.ssl.SSLContext;
  */
 public class ControllerClientConfig {
 
+    /**
+     * The Enum to denote the transport the management operations are sent over.
+     */
+    public enum Transport {
+
+        /** The http-remoting protocol of the native management interface. */
+        REMOTING,
+
+        /** Plain HTTP POST requests to the <code>/management</code> endpoint of the HTTP management interface. */
+        HTTP
+    }
+
     /** The host. */
     private final String host;
 
@@ -47,6 +59,18 @@ public class ControllerClientConfig {
     /** The s sl context. */
     private SSLContext sslContext;
 
+    /** The transport. */
+    private Transport transport = Transport.REMOTING;
+
+    /** The maximum operations per second, 0 for no limit. */
+    private double maxOperationsPerSecond;
+
+    /** The maximum operations in flight, 0 for no limit. */
+    private int maxInFlightOperations;
+
+    /** The admission timeout in milliseconds, 0 to wait indefinitely. */
+    private long admissionTimeout;
+
     /**
      * Instantiates a new controller client config.
      * 
@@ -175,4 +199,83 @@ public class ControllerClientConfig {
     public void setSslContext(SSLContext sslContext) {
         this.sslContext = sslContext;
     }
+
+    /**
+     * Gets the transport the management operations are sent over.
+     * 
+     * @return the transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport the management operations are sent over. Defaults to {@link Transport#REMOTING}.
+     * 
+     * @param transport the new transport
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Gets the maximum number of operations per second sent to the controller host.
+     * 
+     * @return the max operations per second, 0 for no limit
+     */
+    public double getMaxOperationsPerSecond() {
+        return maxOperationsPerSecond;
+    }
+
+    /**
+     * Sets the maximum number of operations per second sent to the controller host by all the executors of the JVM, with
+     * bursts of up to one second worth of operations. Defaults to 0, for no limit. Only honoured by the executors whose
+     * client factory is decorated by an {@link uk.co.techblue.jboss.controller.client.AdmissionControlledClientFactory},
+     * and the most restrictive limit of the configs of the same host applies.
+     * 
+     * @param maxOperationsPerSecond the new max operations per second
+     */
+    public void setMaxOperationsPerSecond(double maxOperationsPerSecond) {
+        this.maxOperationsPerSecond = maxOperationsPerSecond;
+    }
+
+    /**
+     * Gets the maximum number of operations in flight on the controller host.
+     * 
+     * @return the max in flight operations, 0 for no limit
+     */
+    public int getMaxInFlightOperations() {
+        return maxInFlightOperations;
+    }
+
+    /**
+     * Sets the maximum number of operations in flight on the controller host across all the executors of the JVM.
+     * Defaults to 0, for no limit. Only honoured by the executors whose client factory is decorated by an
+     * {@link uk.co.techblue.jboss.controller.client.AdmissionControlledClientFactory}, and the most restrictive limit of
+     * the configs of the same host applies.
+     * 
+     * @param maxInFlightOperations the new max in flight operations
+     */
+    public void setMaxInFlightOperations(int maxInFlightOperations) {
+        this.maxInFlightOperations = maxInFlightOperations;
+    }
+
+    /**
+     * Gets how long an operation waits to be admitted by the rate and in-flight limits.
+     * 
+     * @return the admission timeout in milliseconds, 0 to wait indefinitely
+     */
+    public long getAdmissionTimeout() {
+        return admissionTimeout;
+    }
+
+    /**
+     * Sets how long an operation waits to be admitted by the rate and in-flight limits before failing. Defaults to 0, to
+     * wait indefinitely.
+     * 
+     * @param admissionTimeout the new admission timeout in milliseconds
+     */
+    public void setAdmissionTimeout(long admissionTimeout) {
+        this.admissionTimeout = admissionTimeout;
+    }
 }
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.vo;
+
+/**
+ * A reference to a credential held in a credential store of the server, used in place of a plain text password so that
+ * the password never travels in management requests.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class CredentialReference {
+
+    /** The credential store name. */
+    private final String store;
+
+    /** The credential alias. */
+    private final String alias;
+
+    /** The credential type. */
+    private String type;
+
+    /**
+     * Instantiates a new credential reference.
+     * 
+     * @param store the name of the credential store defined on the server
+     * @param alias the alias of the credential in the store
+     */
+    public CredentialReference(String store, String alias) {
+        this.store = store;
+        this.alias = alias;
+    }
+
+    /**
+     * Gets the credential store name.
+     * 
+     * @return the store
+     */
+    public String getStore() {
+        return store;
+    }
+
+    /**
+     * Gets the credential alias.
+     * 
+     * @return the alias
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    /**
+     * Gets the credential type.
+     * 
+     * @return the type, null for the server default
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the fully qualified class name of the credential type, e.g.
+     * <code>org.wildfly.security.credential.PasswordCredential</code>. Defaults to the server default.
+     * 
+     * @param type the new type
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+}
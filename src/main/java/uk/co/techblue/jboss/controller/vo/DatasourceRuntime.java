@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.vo;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The runtime view of a datasource as deployed on a single running server.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceRuntime {
+
+    /** The server the datasource runs on. */
+    private final ServerAddress serverAddress;
+
+    /** The datasource name. */
+    private final String name;
+
+    /** Whether the datasource is enabled. */
+    private final boolean enabled;
+
+    /** The datasource attributes as read from the server. */
+    private final ModelNode attributes;
+
+    /** The pool statistics. */
+    private final ModelNode poolStatistics;
+
+    /**
+     * Instantiates a new datasource runtime.
+     * 
+     * @param serverAddress the server the datasource runs on
+     * @param name the datasource name
+     * @param enabled whether the datasource is enabled
+     * @param attributes the datasource attributes
+     * @param poolStatistics the pool statistics, undefined if statistics are not enabled on the server
+     */
+    public DatasourceRuntime(ServerAddress serverAddress, String name, boolean enabled, ModelNode attributes,
+            ModelNode poolStatistics) {
+        this.serverAddress = serverAddress;
+        this.name = name;
+        this.enabled = enabled;
+        this.attributes = attributes;
+        this.poolStatistics = poolStatistics;
+    }
+
+    /**
+     * Gets the server the datasource runs on.
+     * 
+     * @return the server address
+     */
+    public ServerAddress getServerAddress() {
+        return serverAddress;
+    }
+
+    /**
+     * Gets the datasource name.
+     * 
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks if the datasource is enabled on the server.
+     * 
+     * @return true, if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the datasource attributes as read from the server.
+     * 
+     * @return the attributes
+     */
+    public ModelNode getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Gets the pool runtime statistics, e.g. <code>ActiveCount</code>, <code>AvailableCount</code> and
+     * <code>InUseCount</code>. The values are only populated when statistics are enabled for the datasource.
+     * 
+     * @return the pool statistics
+     */
+    public ModelNode getPoolStatistics() {
+        return poolStatistics;
+    }
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.vo;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.DS_PROPERTY_CONNECTIONURL;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * Selects datasources by name and by configuration attributes, for the bulk operations working on a selection rather than
+ * on a list of names. All the criteria set must match for a datasource to be selected; a selector without criteria
+ * selects every datasource.
+ * <p>
+ * Names and attribute values are matched as a whole, either against a glob pattern, where <code>*</code> matches any
+ * sequence of characters and <code>?</code> any single character, or against a regular expression. Attribute values
+ * holding an expression are matched against the expression itself, e.g. <code>${env.DB_URL}</code>, not its resolved
+ * value.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceSelector {
+
+    /** The pattern of the host in a JDBC URL using the <code>//host:port</code> or <code>@host:port</code> forms. */
+    private static final Pattern URL_AUTHORITY = Pattern.compile("(?://|@(?://)?)([^/;?:@(]+|\\[[^\\]]*\\])");
+
+    /** The pattern of a host in a JDBC URL holding a TNS descriptor. */
+    private static final Pattern URL_TNS_HOST = Pattern.compile("\\(\\s*HOST\\s*=\\s*([^)\\s]+)", Pattern.CASE_INSENSITIVE);
+
+    /** The name pattern. */
+    private Pattern namePattern;
+
+    /** The attribute patterns by attribute name. */
+    private final Map<String, Pattern> attributePatterns = new LinkedHashMap<String, Pattern>();
+
+    /** The connection URL host pattern. */
+    private Pattern connectionUrlHostPattern;
+
+    /**
+     * Sets the glob pattern the datasource names must match, e.g. <code>Orders*</code>.
+     * 
+     * @param nameGlob the name glob
+     */
+    public void setNameGlob(final String nameGlob) {
+        this.namePattern = nameGlob == null ? null : StringUtils.globToPattern(nameGlob);
+    }
+
+    /**
+     * Sets the regular expression the datasource names must match.
+     * 
+     * @param namePattern the name pattern
+     */
+    public void setNamePattern(final Pattern namePattern) {
+        this.namePattern = namePattern;
+    }
+
+    /**
+     * Gets the pattern the datasource names must match.
+     * 
+     * @return the name pattern, null if any name is selected
+     */
+    public Pattern getNamePattern() {
+        return namePattern;
+    }
+
+    /**
+     * Adds a glob pattern an attribute of the datasources must match, e.g. <code>driver-name</code> and
+     * <code>postgres*</code>. An undefined attribute never matches.
+     * 
+     * @param attributeName the attribute name
+     * @param valueGlob the value glob
+     */
+    public void addAttributeGlob(final String attributeName, final String valueGlob) {
+        addAttributePattern(attributeName, StringUtils.globToPattern(valueGlob));
+    }
+
+    /**
+     * Adds a regular expression an attribute of the datasources must match. An undefined attribute never matches.
+     * 
+     * @param attributeName the attribute name
+     * @param valuePattern the value pattern
+     */
+    public void addAttributePattern(final String attributeName, final Pattern valuePattern) {
+        attributePatterns.put(attributeName, valuePattern);
+    }
+
+    /**
+     * Gets the patterns the attributes of the datasources must match.
+     * 
+     * @return the attribute patterns by attribute name
+     */
+    public Map<String, Pattern> getAttributePatterns() {
+        return Collections.unmodifiableMap(attributePatterns);
+    }
+
+    /**
+     * Sets the glob pattern a host of the connection URL of the datasources must match, ignoring case, e.g.
+     * <code>db-eu-*.example.com</code>. The host is found in the <code>//host:port</code> and <code>@host:port</code>
+     * forms of the JDBC URLs and in the <code>HOST</code> entries of TNS descriptors; a URL without any host, e.g. of an
+     * embedded database, never matches.
+     * 
+     * @param hostGlob the host glob
+     */
+    public void setConnectionUrlHostGlob(final String hostGlob) {
+        this.connectionUrlHostPattern = hostGlob == null ? null
+            : Pattern.compile(StringUtils.globToPattern(hostGlob).pattern(), Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Gets the pattern a host of the connection URL must match.
+     * 
+     * @return the connection URL host pattern, null if any host is selected
+     */
+    public Pattern getConnectionUrlHostPattern() {
+        return connectionUrlHostPattern;
+    }
+
+    /**
+     * Checks if the selector only matches names, in which case the datasource names are enough to select and the
+     * configurations need not be read.
+     * 
+     * @return true, if the selector only matches names
+     */
+    public boolean isNameOnly() {
+        return attributePatterns.isEmpty() && connectionUrlHostPattern == null;
+    }
+
+    /**
+     * Checks if a datasource matches the name criterion.
+     * 
+     * @param datasourceName the datasource name
+     * @return true, if the name matches
+     */
+    public boolean matchesName(final String datasourceName) {
+        return namePattern == null || namePattern.matcher(datasourceName).matches();
+    }
+
+    /**
+     * Checks if a datasource matches all the criteria.
+     * 
+     * @param datasourceName the datasource name
+     * @param configuration the datasource configuration, as read from the controller
+     * @return true, if the datasource is selected
+     */
+    public boolean matches(final String datasourceName, final ModelNode configuration) {
+        if (!matchesName(datasourceName)) {
+            return false;
+        }
+        for (final Map.Entry<String, Pattern> attributePattern : attributePatterns.entrySet()) {
+            final ModelNode value = configuration.get(attributePattern.getKey());
+            if (!value.isDefined() || !attributePattern.getValue().matcher(value.asString()).matches()) {
+                return false;
+            }
+        }
+        if (connectionUrlHostPattern != null) {
+            final ModelNode connectionUrl = configuration.get(DS_PROPERTY_CONNECTIONURL);
+            if (!connectionUrl.isDefined()) {
+                return false;
+            }
+            for (final String host : getConnectionUrlHosts(connectionUrl.asString())) {
+                if (connectionUrlHostPattern.matcher(host).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the hosts of a JDBC connection URL, e.g. <code>db1</code> and <code>db2</code> for
+     * <code>jdbc:mysql://db1:3306,db2:3306/orders</code>.
+     * 
+     * @param connectionUrl the connection URL
+     * @return the hosts, empty if the URL does not name any
+     */
+    public static List<String> getConnectionUrlHosts(final String connectionUrl) {
+        final List<String> hosts = new ArrayList<String>();
+        final Matcher tnsMatcher = URL_TNS_HOST.matcher(connectionUrl);
+        while (tnsMatcher.find()) {
+            hosts.add(tnsMatcher.group(1));
+        }
+        if (!hosts.isEmpty()) {
+            return hosts;
+        }
+        final Matcher authorityMatcher = URL_AUTHORITY.matcher(connectionUrl);
+        if (authorityMatcher.find()) {
+            final int authorityStart = authorityMatcher.start(1);
+            int authorityEnd = connectionUrl.length();
+            for (final char separator : new char[] { '/', ';', '?' }) {
+                final int index = connectionUrl.indexOf(separator, authorityStart);
+                if (index >= 0 && index < authorityEnd) {
+                    authorityEnd = index;
+                }
+            }
+            for (final String hostAndPort : connectionUrl.substring(authorityStart, authorityEnd).split(",")) {
+                final String host = getHost(hostAndPort.trim());
+                if (!host.isEmpty()) {
+                    hosts.add(host);
+                }
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * Gets the host of a <code>host:port</code> pair, IPv6 literals keeping their brackets.
+     * 
+     * @param hostAndPort the host and port
+     * @return the host
+     */
+    private static String getHost(final String hostAndPort) {
+        if (hostAndPort.startsWith("[")) {
+            final int end = hostAndPort.indexOf(']');
+            return end < 0 ? hostAndPort : hostAndPort.substring(0, end + 1);
+        }
+        final int portIndex = hostAndPort.indexOf(':');
+        return portIndex < 0 ? hostAndPort : hostAndPort.substring(0, portIndex);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("DatasourceSelector [");
+        builder.append("name=").append(namePattern);
+        for (final Map.Entry<String, Pattern> attributePattern : attributePatterns.entrySet()) {
+            builder.append(", ").append(attributePattern.getKey()).append('=').append(attributePattern.getValue());
+        }
+        if (connectionUrlHostPattern != null) {
+            builder.append(", connection-url-host=").append(connectionUrlHostPattern);
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -21,6 +21,10 @@ import uk.co.techblue.jboss.util.StringUtils;
 
 /**
  * A java bean class to hold Jndi DataSource configuration.
+ * <p>
+ * String values of the form <code>${...}</code>, e.g. <code>${env.DB_URL}</code> or
+ * <code>${VAULT::ds::password::1}</code>, are sent to the server as expressions and resolved there. The password can
+ * also be replaced by a {@link CredentialReference} to a credential store, in which case no password is sent.
  * 
  * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
  */
@@ -61,6 +65,9 @@ public class JndiDataSource {
     /** The password. */
     private final String password;
 
+    /** The credential reference. */
+    private CredentialReference credentialReference;
+
     /** The transaction isolation. */
     private TransactionIsolation transactionIsolation = TransactionIsolation.TRANSACTION_READ_UNCOMMITTED;
 
@@ -140,7 +147,7 @@ public class JndiDataSource {
      * @param driverName Defines the JDBC driver the datasource should use. It is a symbolic name matching the the name of
      *        installed driver. In case the driver is deployed as jar, the name is the name of deployment unit
      * @param userName Specify the user name used when creating a new connection
-     * @param password Specifies the password used when creating a new connection
+     * @param password Specifies the password used when creating a new connection, null if a credential reference is used
      */
     public JndiDataSource(String name, String jndiName, String connectionURL, String driverName, String userName,
             String password) {
@@ -249,6 +256,24 @@ public class JndiDataSource {
         return password;
     }
 
+    /**
+     * Gets the reference to the credential store entry holding the password.
+     * 
+     * @return the credential reference, null if the password is used
+     */
+    public CredentialReference getCredentialReference() {
+        return credentialReference;
+    }
+
+    /**
+     * Sets the reference to the credential store entry holding the password. When set, the password is not sent.
+     * 
+     * @param credentialReference the new credential reference
+     */
+    public void setCredentialReference(CredentialReference credentialReference) {
+        this.credentialReference = credentialReference;
+    }
+
     /**
      * Gets the transaction isolation.
      * 
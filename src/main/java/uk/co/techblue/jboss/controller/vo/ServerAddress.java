@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.vo;
+
+/**
+ * Identifies a running server instance of a managed domain by its host controller and server name.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class ServerAddress {
+
+    /** The host controller name. */
+    private final String host;
+
+    /** The server name. */
+    private final String server;
+
+    /**
+     * Instantiates a new server address.
+     * 
+     * @param host the name of the host controller
+     * @param server the name of the server on the host
+     */
+    public ServerAddress(String host, String server) {
+        this.host = host;
+        this.server = server;
+    }
+
+    /**
+     * Gets the name of the host controller.
+     * 
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the name of the server on the host.
+     * 
+     * @return the server
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((host == null) ? 0 : host.hashCode());
+        result = prime * result + ((server == null) ? 0 : server.hashCode());
+        return result;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ServerAddress)) {
+            return false;
+        }
+        final ServerAddress other = (ServerAddress) obj;
+        return (host == null ? other.host == null : host.equals(other.host))
+            && (server == null ? other.server == null : server.equals(other.server));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return host + "/" + server;
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.watch;
+
+import java.util.Set;
+
+import org.jboss.dmr.ModelNode;
+
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * An event describing a change of a datasource detected by a {@link DatasourceWatcher}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceChangeEvent {
+
+    /**
+     * The Enum to denote the type of change.
+     */
+    public enum Type {
+
+        /** The datasource was added. */
+        ADDED,
+
+        /** The datasource was removed. */
+        REMOVED,
+
+        /** The datasource configuration was changed. */
+        CHANGED
+    }
+
+    /** The change type. */
+    private final Type type;
+
+    /** The controller client config. */
+    private final ControllerClientConfig controllerClientConfig;
+
+    /** The server profile name. */
+    private final String serverProfileName;
+
+    /** The datasource name. */
+    private final String datasourceName;
+
+    /** The previous configuration. */
+    private final ModelNode previousConfiguration;
+
+    /** The current configuration. */
+    private final ModelNode currentConfiguration;
+
+    /** The changed attributes. */
+    private final Set<String> changedAttributes;
+
+    /**
+     * Instantiates a new datasource change event.
+     * 
+     * @param type the change type
+     * @param controllerClientConfig the controller the change was detected on
+     * @param serverProfileName the server profile name
+     * @param datasourceName the datasource name
+     * @param previousConfiguration the previous configuration, null for added datasources
+     * @param currentConfiguration the current configuration, null for removed datasources
+     * @param changedAttributes the names of the changed attributes and child resource types
+     */
+    public DatasourceChangeEvent(Type type, ControllerClientConfig controllerClientConfig, String serverProfileName,
+            String datasourceName, ModelNode previousConfiguration, ModelNode currentConfiguration,
+            Set<String> changedAttributes) {
+        this.type = type;
+        this.controllerClientConfig = controllerClientConfig;
+        this.serverProfileName = serverProfileName;
+        this.datasourceName = datasourceName;
+        this.previousConfiguration = previousConfiguration;
+        this.currentConfiguration = currentConfiguration;
+        this.changedAttributes = changedAttributes;
+    }
+
+    /**
+     * Gets the change type.
+     * 
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the configuration of the controller the change was detected on.
+     * 
+     * @return the controller client config
+     */
+    public ControllerClientConfig getControllerClientConfig() {
+        return controllerClientConfig;
+    }
+
+    /**
+     * Gets the server profile name.
+     * 
+     * @return the server profile name
+     */
+    public String getServerProfileName() {
+        return serverProfileName;
+    }
+
+    /**
+     * Gets the datasource name.
+     * 
+     * @return the datasource name
+     */
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    /**
+     * Gets the configuration known before the change, null for added datasources.
+     * 
+     * @return the previous configuration
+     */
+    public ModelNode getPreviousConfiguration() {
+        return previousConfiguration;
+    }
+
+    /**
+     * Gets the configuration after the change, null for removed datasources.
+     * 
+     * @return the current configuration
+     */
+    public ModelNode getCurrentConfiguration() {
+        return currentConfiguration;
+    }
+
+    /**
+     * Gets the names of the changed attributes and child resource types.
+     * 
+     * @return the changed attributes
+     */
+    public Set<String> getChangedAttributes() {
+        return changedAttributes;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return type + " datasource '" + datasourceName + "' on " + controllerClientConfig.getHost() + ":"
+            + controllerClientConfig.getPort() + (serverProfileName == null ? "" : " (profile " + serverProfileName + ")")
+            + (changedAttributes.isEmpty() ? "" : " " + changedAttributes);
+    }
+}
@@ -0,0 +1,502 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.watch;
+
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_DATASOURCE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_PROFILE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.ADDRESS_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CHANGE_PROPERTY_OPERATIONS;
+import static uk.co.techblue.jboss.controller.ControllerConstants.CHANGE_PROPERTY_OPERATION_DATE;
+import static uk.co.techblue.jboss.controller.ControllerConstants.DATASOURCE_SUBSYSTEM;
+import static uk.co.techblue.jboss.controller.ControllerConstants.OPERATION_LIST_CHANGES;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.as.controller.client.helpers.ClientConstants;
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.techblue.jboss.controller.ExtendedControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.util.StringUtils;
+
+/**
+ * Watches the datasources subsystem of one or more controllers and notifies listeners about added, removed and changed
+ * datasources.
+ * <p>
+ * The watcher keeps the last known configuration of every datasource per watched controller and fetches incrementally. A
+ * regular poll only reads the datasource names and re-reads the configuration of new datasources. Changed attributes are
+ * detected either from the configuration change history of the controller, when {@link #setChangeHistoryAddress(ModelNode)
+ * configured}, or by a full read every {@link #setFullSyncInterval(int) full sync interval} polls, in which only the
+ * datasources whose configuration differs are reported.
+ * <p>
+ * <b>Without a change history address, attribute changes are only detected every {@link #setFullSyncInterval(int)
+ * full sync interval} polls, every 10th poll by default</b>: a datasource whose attributes change is reported up to
+ * ten poll periods late, while added and removed datasources are reported on the next poll. Set the change history
+ * address on controllers offering one, or lower the full sync interval, down to 1 for a full read on every poll, when
+ * attribute changes must be reported promptly.
+ * <p>
+ * The first poll of a controller establishes the baseline and does not emit any event.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceWatcher {
+
+    /** The default number of polls between two full reads. */
+    private static final int DEFAULT_FULL_SYNC_INTERVAL = 10;
+
+    /** The logger instance. */
+    private final Logger logger = LoggerFactory.getLogger(DatasourceWatcher.class);
+
+    /** The operation executor. */
+    private final ExtendedControllerOperationExecutor operationExecutor;
+
+    /** The listeners. */
+    private final List<DatasourceChangeListener> listeners = new CopyOnWriteArrayList<DatasourceChangeListener>();
+
+    /** The watched controllers. */
+    private final List<WatchedController> watchedControllers = new CopyOnWriteArrayList<WatchedController>();
+
+    /** The number of polls between two full reads. */
+    private volatile int fullSyncInterval = DEFAULT_FULL_SYNC_INTERVAL;
+
+    /** The address of the configuration changes service. */
+    private volatile ModelNode changeHistoryAddress;
+
+    /** The poll scheduler. */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Instantiates a new datasource watcher.
+     * 
+     * @param operationExecutor the operation executor used to read the datasources
+     */
+    public DatasourceWatcher(final ExtendedControllerOperationExecutor operationExecutor) {
+        this.operationExecutor = operationExecutor;
+    }
+
+    /**
+     * Starts watching the datasources of the given server profile.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name, null or blank for a standalone server
+     */
+    public void watch(final ControllerClientConfig controllerClientConfig, final String serverProfileName) {
+        watchedControllers.add(new WatchedController(controllerClientConfig, serverProfileName));
+    }
+
+    /**
+     * Stops watching the datasources of the given server profile on the host and port of the given config.
+     * 
+     * @param controllerClientConfig the controller client config
+     * @param serverProfileName the server profile name
+     */
+    public void unwatch(final ControllerClientConfig controllerClientConfig, final String serverProfileName) {
+        for (final WatchedController watchedController : watchedControllers) {
+            if (watchedController.controllerClientConfig.getHost().equals(controllerClientConfig.getHost())
+                && watchedController.controllerClientConfig.getPort() == controllerClientConfig.getPort()
+                && StringUtils.defaultString(serverProfileName).equals(
+                    StringUtils.defaultString(watchedController.serverProfileName))) {
+                watchedControllers.remove(watchedController);
+            }
+        }
+    }
+
+    /**
+     * Adds a change listener.
+     * 
+     * @param listener the listener
+     */
+    public void addListener(final DatasourceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a change listener.
+     * 
+     * @param listener the listener
+     */
+    public void removeListener(final DatasourceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of polls between two full reads of the datasource configurations.
+     * 
+     * @return the full sync interval
+     */
+    public int getFullSyncInterval() {
+        return fullSyncInterval;
+    }
+
+    /**
+     * Sets the number of polls between two full reads of the datasource configurations, 10 by default. Without a change
+     * history, attribute changes are only detected by full reads, so they are reported up to this many polls late; 1
+     * reads the full configurations on every poll. Zero or less disables full reads.
+     * 
+     * @param fullSyncInterval the new full sync interval
+     */
+    public void setFullSyncInterval(final int fullSyncInterval) {
+        this.fullSyncInterval = fullSyncInterval;
+    }
+
+    /**
+     * Gets the address of the configuration changes service.
+     * 
+     * @return the change history address
+     */
+    public ModelNode getChangeHistoryAddress() {
+        return changeHistoryAddress;
+    }
+
+    /**
+     * Sets the address of the configuration changes service, e.g.
+     * <code>/subsystem=core-management/service=configuration-changes</code> on WildFly 11 onwards. When set, each poll
+     * lists the recent changes and re-reads only the datasources they touched. Controllers not offering the service fall
+     * back to full reads.
+     * 
+     * @param changeHistoryAddress the new change history address
+     */
+    public void setChangeHistoryAddress(final ModelNode changeHistoryAddress) {
+        this.changeHistoryAddress = changeHistoryAddress;
+    }
+
+    /**
+     * Starts polling the watched controllers periodically in a background thread.
+     * 
+     * @param period the period between two polls
+     * @param unit the time unit of the period
+     */
+    public synchronized void start(final long period, final TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("The datasource watcher is already started.");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "datasource-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, 0, period, unit);
+    }
+
+    /**
+     * Stops the periodic polling.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Polls every watched controller once and notifies the listeners about the detected changes. A failure on one
+     * controller, including an unexpected runtime exception, is logged and does not prevent the others from being polled,
+     * nor cancels the periodic polling.
+     */
+    public void poll() {
+        for (final WatchedController watchedController : watchedControllers) {
+            try {
+                poll(watchedController);
+            } catch (ControllerOperationException coe) {
+                logger.error("An error occurred while polling the datasources of controller host "
+                    + watchedController.controllerClientConfig.getHost() + " at port "
+                    + watchedController.controllerClientConfig.getPort(), coe);
+            } catch (RuntimeException re) {
+                logger.error("An unexpected error occurred while polling the datasources of controller host "
+                    + watchedController.controllerClientConfig.getHost() + " at port "
+                    + watchedController.controllerClientConfig.getPort(), re);
+            }
+        }
+    }
+
+    /**
+     * Polls a watched controller.
+     * 
+     * @param watchedController the watched controller
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private void poll(final WatchedController watchedController) throws ControllerOperationException {
+        synchronized (watchedController) {
+            final ControllerClientConfig controllerClientConfig = watchedController.controllerClientConfig;
+            final String serverProfileName = watchedController.serverProfileName;
+            if (watchedController.configurations == null) {
+                getChangedDatasourceNames(watchedController);
+                final Map<String, ModelNode> configurations = operationExecutor.getDatasourceConfigurations(
+                    controllerClientConfig, serverProfileName);
+                watchedController.configurations = new HashMap<String, ModelNode>(configurations);
+                return;
+            }
+            watchedController.pollCount++;
+            if (fullSyncInterval > 0 && watchedController.pollCount % fullSyncInterval == 0) {
+                getChangedDatasourceNames(watchedController);
+                compare(watchedController, operationExecutor.getDatasourceConfigurations(controllerClientConfig,
+                    serverProfileName), true);
+                return;
+            }
+            final List<String> datasourceNames = operationExecutor.getDatasourceNames(controllerClientConfig,
+                serverProfileName);
+            final Set<String> datasourcesToRead = new LinkedHashSet<String>();
+            for (final String datasourceName : datasourceNames) {
+                if (!watchedController.configurations.containsKey(datasourceName)) {
+                    datasourcesToRead.add(datasourceName);
+                }
+            }
+            for (final String changedDatasource : getChangedDatasourceNames(watchedController)) {
+                if (datasourceNames.contains(changedDatasource)) {
+                    datasourcesToRead.add(changedDatasource);
+                }
+            }
+            final Map<String, ModelNode> configurations = new HashMap<String, ModelNode>();
+            for (final String datasourceName : datasourceNames) {
+                configurations.put(datasourceName, null);
+            }
+            configurations.putAll(operationExecutor.getDatasourceConfigurations(controllerClientConfig, serverProfileName,
+                datasourcesToRead));
+            compare(watchedController, configurations, false);
+        }
+    }
+
+    /**
+     * Compares the fetched configurations with the known state, updates the state and notifies the listeners.
+     * 
+     * @param watchedController the watched controller
+     * @param configurations the fetched configurations, a null value denotes a datasource that exists but was not re-read
+     * @param complete whether the configurations contain every datasource
+     */
+    private void compare(final WatchedController watchedController, final Map<String, ModelNode> configurations,
+        final boolean complete) {
+        for (final String knownDatasource : new HashSet<String>(watchedController.configurations.keySet())) {
+            if (!configurations.containsKey(knownDatasource)) {
+                final ModelNode previous = watchedController.configurations.remove(knownDatasource);
+                notifyListeners(new DatasourceChangeEvent(DatasourceChangeEvent.Type.REMOVED,
+                    watchedController.controllerClientConfig, watchedController.serverProfileName, knownDatasource,
+                    previous, null, Collections.<String> emptySet()));
+            }
+        }
+        for (final Map.Entry<String, ModelNode> configuration : configurations.entrySet()) {
+            final String datasourceName = configuration.getKey();
+            final ModelNode current = configuration.getValue();
+            if (current == null) {
+                continue;
+            }
+            final ModelNode previous = watchedController.configurations.get(datasourceName);
+            if (previous == null) {
+                watchedController.configurations.put(datasourceName, current);
+                notifyListeners(new DatasourceChangeEvent(DatasourceChangeEvent.Type.ADDED,
+                    watchedController.controllerClientConfig, watchedController.serverProfileName, datasourceName, null,
+                    current, Collections.<String> emptySet()));
+            } else if (!previous.equals(current)) {
+                watchedController.configurations.put(datasourceName, current);
+                notifyListeners(new DatasourceChangeEvent(DatasourceChangeEvent.Type.CHANGED,
+                    watchedController.controllerClientConfig, watchedController.serverProfileName, datasourceName,
+                    previous, current, getChangedAttributes(previous, current)));
+            }
+        }
+        if (complete && logger.isDebugEnabled()) {
+            logger.debug("Full synchronisation of {} datasources completed for controller host {} at port {}",
+                configurations.size(), watchedController.controllerClientConfig.getHost(),
+                watchedController.controllerClientConfig.getPort());
+        }
+    }
+
+    /**
+     * Gets the names of the datasources touched by configuration changes since the last poll and remembers the most recent
+     * change. Changes recorded within the same millisecond as the last seen change can be missed; these are caught by the
+     * next full read.
+     * 
+     * @param watchedController the watched controller
+     * @return the changed datasource names
+     */
+    private Set<String> getChangedDatasourceNames(final WatchedController watchedController) {
+        final ModelNode historyAddress = changeHistoryAddress;
+        if (historyAddress == null || watchedController.changeHistoryUnavailable) {
+            return Collections.emptySet();
+        }
+        final ModelNode request = new ModelNode();
+        request.get(ClientConstants.OP).set(OPERATION_LIST_CHANGES);
+        request.get(ClientConstants.OP_ADDR).set(historyAddress);
+        final ModelNode changes;
+        try {
+            changes = operationExecutor.executeOperation(watchedController.controllerClientConfig, request);
+        } catch (ControllerOperationException coe) {
+            logger.warn("The configuration change history is not available on controller host {} at port {}, "
+                + "attribute changes will be detected by full reads only: {}",
+                watchedController.controllerClientConfig.getHost(), watchedController.controllerClientConfig.getPort(),
+                coe.getMessage());
+            watchedController.changeHistoryUnavailable = true;
+            return Collections.emptySet();
+        }
+        final Set<String> changedDatasources = new HashSet<String>();
+        if (!changes.isDefined()) {
+            return changedDatasources;
+        }
+        String latestChangeDate = null;
+        // the change history is ordered from the most recent change
+        for (final ModelNode change : changes.asList()) {
+            final String changeDate = change.get(CHANGE_PROPERTY_OPERATION_DATE).asString();
+            if (watchedController.lastChangeDate != null && changeDate.compareTo(watchedController.lastChangeDate) <= 0) {
+                break;
+            }
+            if (latestChangeDate == null) {
+                latestChangeDate = changeDate;
+            }
+            if (change.hasDefined(CHANGE_PROPERTY_OPERATIONS)) {
+                for (final ModelNode operation : change.get(CHANGE_PROPERTY_OPERATIONS).asList()) {
+                    final String datasourceName = getDatasourceName(operation.get(ClientConstants.OP_ADDR),
+                        watchedController.serverProfileName);
+                    if (datasourceName != null) {
+                        changedDatasources.add(datasourceName);
+                    }
+                }
+            }
+        }
+        if (latestChangeDate != null) {
+            watchedController.lastChangeDate = latestChangeDate;
+        }
+        return changedDatasources;
+    }
+
+    /**
+     * Gets the name of the datasource the given address belongs to.
+     * 
+     * @param address the operation address
+     * @param serverProfileName the server profile name the datasource must belong to
+     * @return the datasource name, null if the address does not belong to a datasource of the profile
+     */
+    private static String getDatasourceName(final ModelNode address, final String serverProfileName) {
+        if (!address.isDefined()) {
+            return null;
+        }
+        String profile = null;
+        String subsystem = null;
+        String datasource = null;
+        for (final Property element : address.asPropertyList()) {
+            if (ADDRESS_PROFILE.equals(element.getName())) {
+                profile = element.getValue().asString();
+            } else if (ADDRESS_SUBSYSTEM.equals(element.getName())) {
+                subsystem = element.getValue().asString();
+            } else if (ADDRESS_DATASOURCE.equals(element.getName())) {
+                datasource = element.getValue().asString();
+            }
+        }
+        if (!DATASOURCE_SUBSYSTEM.equals(subsystem)
+            || !StringUtils.defaultString(serverProfileName).equals(StringUtils.defaultString(profile))) {
+            return null;
+        }
+        return datasource;
+    }
+
+    /**
+     * Gets the names of the attributes and child resource types that differ between two configurations.
+     * 
+     * @param previous the previous configuration
+     * @param current the current configuration
+     * @return the changed attributes
+     */
+    private static Set<String> getChangedAttributes(final ModelNode previous, final ModelNode current) {
+        final Set<String> attributeNames = new TreeSet<String>();
+        if (previous.isDefined()) {
+            attributeNames.addAll(previous.keys());
+        }
+        if (current.isDefined()) {
+            attributeNames.addAll(current.keys());
+        }
+        final Set<String> changedAttributes = new TreeSet<String>();
+        for (final String attributeName : attributeNames) {
+            final ModelNode previousValue = previous.has(attributeName) ? previous.get(attributeName) : new ModelNode();
+            final ModelNode currentValue = current.has(attributeName) ? current.get(attributeName) : new ModelNode();
+            if (!previousValue.equals(currentValue)) {
+                changedAttributes.add(attributeName);
+            }
+        }
+        return changedAttributes;
+    }
+
+    /**
+     * Notifies the listeners about a change. A failing listener does not prevent the others from being notified.
+     * 
+     * @param event the change event
+     */
+    private void notifyListeners(final DatasourceChangeEvent event) {
+        logger.info("Detected datasource change: {}", event);
+        for (final DatasourceChangeListener listener : listeners) {
+            try {
+                listener.datasourceChanged(event);
+            } catch (RuntimeException re) {
+                logger.error("Datasource change listener " + listener + " failed to handle the event " + event, re);
+            }
+        }
+    }
+
+    /**
+     * The state kept for a watched controller.
+     */
+    private static class WatchedController {
+
+        /** The controller client config. */
+        private final ControllerClientConfig controllerClientConfig;
+
+        /** The server profile name. */
+        private final String serverProfileName;
+
+        /** The known datasource configurations, null until the first poll. */
+        private Map<String, ModelNode> configurations;
+
+        /** The number of polls since the baseline. */
+        private int pollCount;
+
+        /** The date of the most recent change seen in the change history. */
+        private String lastChangeDate;
+
+        /** Whether the controller does not offer a change history. */
+        private boolean changeHistoryUnavailable;
+
+        /**
+         * Instantiates a new watched controller.
+         * 
+         * @param controllerClientConfig the controller client config
+         * @param serverProfileName the server profile name
+         */
+        private WatchedController(final ControllerClientConfig controllerClientConfig, final String serverProfileName) {
+            this.controllerClientConfig = controllerClientConfig;
+            this.serverProfileName = serverProfileName;
+        }
+    }
+}
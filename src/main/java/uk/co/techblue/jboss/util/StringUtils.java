@@ -15,6 +15,8 @@
  ******************************************************************************/
 package uk.co.techblue.jboss.util;
 
+import java.util.regex.Pattern;
+
 /**
  * The Utility class for String operations.
  * 
@@ -63,4 +65,32 @@ public class StringUtils {
     public static boolean isNotBlank(CharSequence cs) {
         return !isBlank(cs);
     }
+
+    /**
+     * Compiles a glob pattern, where <code>*</code> matches any sequence of characters and <code>?</code> any single
+     * character, into a regular expression matching the whole value.
+     * 
+     * @param glob the glob pattern
+     * @return the compiled pattern
+     */
+    public static Pattern globToPattern(String glob) {
+        final StringBuilder regex = new StringBuilder();
+        final StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
 }
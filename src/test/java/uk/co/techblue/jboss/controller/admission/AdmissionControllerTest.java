@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.client.AdmissionControlledClientFactory;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+
+/**
+ * Tests of {@link AdmissionController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class AdmissionControllerTest {
+
+    /**
+     * Forgets the admission controllers of the tests.
+     */
+    @After
+    public void tearDown() {
+        AdmissionController.clearCache();
+    }
+
+    /**
+     * The operations over the in-flight limit wait until an operation is released, or time out.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testInFlightLimit() throws Exception {
+        final AdmissionController admissionController = AdmissionController.forController(createConfig(0, 2));
+
+        assertTrue(admissionController.acquire(0, TimeUnit.MILLISECONDS));
+        assertTrue(admissionController.acquire(0, TimeUnit.MILLISECONDS));
+        assertFalse(admissionController.acquire(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, admissionController.getInFlightOperations());
+
+        admissionController.release();
+        assertTrue(admissionController.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A config without limits or with looser ones does not lift the limits set by another config of the same host.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testLimitsOnlyTightenedByConfigs() throws Exception {
+        final AdmissionController admissionController = AdmissionController.forController(createConfig(0, 1));
+
+        assertSame(admissionController, AdmissionController.forController(createConfig(0, 0)));
+        assertSame(admissionController, AdmissionController.forController(createConfig(0, 5)));
+
+        assertTrue(admissionController.acquire(0, TimeUnit.MILLISECONDS));
+        assertFalse(admissionController.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Replaced limits may be looser, and admit the operations waiting on the former ones.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testReplaceLimits() throws Exception {
+        final AdmissionController admissionController = AdmissionController.forController(createConfig(0, 1));
+        assertTrue(admissionController.acquire(0, TimeUnit.MILLISECONDS));
+
+        admissionController.replaceLimits(0, 2);
+
+        assertTrue(admissionController.acquire(10, TimeUnit.MILLISECONDS));
+        assertFalse(admissionController.acquire(10, TimeUnit.MILLISECONDS));
+        admissionController.replaceLimits(0, 0);
+        assertTrue(admissionController.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Once the admission controllers are forgotten, the next lookup starts from the limits of its config.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testClearCache() throws Exception {
+        final AdmissionController limited = AdmissionController.forController(createConfig(0, 1));
+        assertTrue(limited.acquire(0, TimeUnit.MILLISECONDS));
+
+        AdmissionController.clearCache();
+        final AdmissionController unlimited = AdmissionController.forController(createConfig(0, 0));
+
+        assertNotSame(limited, unlimited);
+        assertTrue(unlimited.acquire(10, TimeUnit.MILLISECONDS));
+        assertTrue(unlimited.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * An operation timing out while waiting for an in-flight slot gives back the token it reserved.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testTimedOutOperationGivesBackToken() throws Exception {
+        final AdmissionController admissionController = AdmissionController.forController(createConfig(1, 1));
+        assertTrue(admissionController.acquire(0, TimeUnit.MILLISECONDS));
+
+        // reserves the next token, due in one second, then times out waiting for the operation in flight
+        assertFalse(admissionController.acquire(1500, TimeUnit.MILLISECONDS));
+        admissionController.release();
+
+        // half a token accrued since, and the given back token fills the bucket
+        assertTrue(admissionController.acquire(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * The operations of an executor whose factory is decorated are admitted and released.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testOperationsAdmittedByClientFactory() throws Exception {
+        final ControllerClientConfig controllerClientConfig = createConfig(0, 1);
+        final JBoss7ControllerOpeartionExecutor executor = new JBoss7ControllerOpeartionExecutor(
+            new AdmissionControlledClientFactory(new InMemoryDatasourceController(1L)));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(executor.getDatasourceNames(controllerClientConfig, null).isEmpty());
+        }
+
+        assertEquals(0, AdmissionController.forController(controllerClientConfig).getInFlightOperations());
+    }
+
+    /**
+     * Creates a config of the same host with the given limits.
+     * 
+     * @param maxOperationsPerSecond the max operations per second, 0 for no limit
+     * @param maxInFlightOperations the max operations in flight, 0 for no limit
+     * @return the controller client config
+     */
+    private static ControllerClientConfig createConfig(final double maxOperationsPerSecond,
+        final int maxInFlightOperations) {
+        final ControllerClientConfig controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+        controllerClientConfig.setMaxOperationsPerSecond(maxOperationsPerSecond);
+        controllerClientConfig.setMaxInFlightOperations(maxInFlightOperations);
+        return controllerClientConfig;
+    }
+}
@@ -0,0 +1,410 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.as7;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.ControllerOperationExecutor.DatasourceStatus;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.BulkOperationResult;
+import uk.co.techblue.jboss.controller.vo.BulkOperationResult.Outcome;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.DatasourceRuntime;
+import uk.co.techblue.jboss.controller.vo.DatasourceSelector;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * Tests of {@link JBoss7ControllerOpeartionExecutor} against an {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class JBoss7ControllerOpeartionExecutorTest {
+
+    /** The domain server profile used by the tests. */
+    private static final String PROFILE = "full";
+
+    /** The first server of the profile. */
+    private static final ServerAddress SERVER_ONE = new ServerAddress("master", "server-one");
+
+    /** The second server of the profile. */
+    private static final ServerAddress SERVER_TWO = new ServerAddress("master", "server-two");
+
+    /** The server of another profile. */
+    private static final ServerAddress SERVER_THREE = new ServerAddress("slave", "server-three");
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor under test. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates an executor running against an empty in-memory controller.
+     */
+    @Before
+    public void setUp() {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile(PROFILE);
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * A created datasource exists, enabled when requested.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testCreateDatasource() throws ControllerOperationException {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1"), true, PROFILE);
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db1"), false, PROFILE);
+
+        assertTrue(executor.isDatasourceExists(controllerClientConfig, "java:/OrdersDS", PROFILE));
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/OrdersDS"));
+        assertFalse(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/ReportsDS"));
+        assertTrue(controller.getDatasources("").isEmpty());
+    }
+
+    /**
+     * A datasource can be disabled, enabled again and removed.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testDisableEnableAndRemoveDatasource() throws ControllerOperationException {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1"), true);
+
+        executor.disableDataSource(controllerClientConfig, "java:/OrdersDS");
+        assertFalse(executor.isDatasourceEnabled(controllerClientConfig, null, "java:/OrdersDS"));
+        executor.enableDataSource(controllerClientConfig, "java:/OrdersDS");
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, null, "java:/OrdersDS"));
+        executor.removeDatasource(controllerClientConfig, "java:/OrdersDS");
+        assertTrue(controller.getDatasources("").isEmpty());
+    }
+
+    /**
+     * Removing a missing datasource reports the failure of the controller.
+     */
+    @Test
+    public void testRemoveMissingDatasource() {
+        try {
+            executor.removeDatasource(controllerClientConfig, "java:/MissingDS", PROFILE);
+            fail("The removal of a missing datasource should fail");
+        } catch (ControllerOperationException coe) {
+            assertEquals("WFLYCTL0216", coe.getFailureCode());
+            assertEquals("java:/MissingDS", coe.getDatasourceName());
+        }
+    }
+
+    /**
+     * The add and the enable are a single composite, so a datasource that cannot be enabled is not left behind.
+     */
+    @Test
+    public void testCreateDatasourceRolledBackWhenEnableFails() {
+        controller.failNextOperations("write-attribute", 1);
+        try {
+            executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1"), true, PROFILE);
+            fail("The creation should fail with the enable step");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.isRolledBack());
+        }
+        assertTrue(controller.getDatasources(PROFILE).isEmpty());
+        assertEquals(1, controller.getRequestCount());
+    }
+
+    /**
+     * The selected datasources are updated in a single composite, rolled back as a whole when one of its steps fails.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testSelectedDataSourcesRolledBackWhenAStepFails() throws ControllerOperationException {
+        executor.createDatasources(controllerClientConfig, Arrays.asList(createDataSource("OrdersDS", "db1"),
+            createDataSource("ReportsDS", "db1")), true, PROFILE);
+        final DatasourceSelector selector = new DatasourceSelector();
+        selector.setConnectionUrlHostGlob("db1");
+        controller.failNextOperations("disable", 1);
+
+        try {
+            executor.disableSelectedDataSources(controllerClientConfig, selector, PROFILE);
+            fail("The disabling should fail with its first step");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.isRolledBack());
+        }
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/OrdersDS"));
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/ReportsDS"));
+    }
+
+    /**
+     * A best-effort creation reports the outcome of every item and goes on after a failure.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testCreateDatasourcesBestEffort() throws ControllerOperationException {
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db1"), false, PROFILE);
+
+        final List<BulkOperationResult> results = executor.createDatasourcesBestEffort(controllerClientConfig,
+            Arrays.asList(createDataSource("OrdersDS", "db1"), createDataSource("ReportsDS", "db1"),
+                createDataSource("AuditDS", "db1")), true, PROFILE);
+
+        assertEquals(3, results.size());
+        assertEquals(Outcome.SUCCESS, results.get(0).getOutcome());
+        assertEquals(Outcome.FAILED, results.get(1).getOutcome());
+        assertEquals("java:/ReportsDS", results.get(1).getDatasourceName());
+        assertEquals(PROFILE, results.get(1).getServerProfileName());
+        assertTrue(results.get(1).isRolledBack());
+        assertEquals(Outcome.SUCCESS, results.get(2).getOutcome());
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/AuditDS"));
+        assertFalse(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/ReportsDS"));
+    }
+
+    /**
+     * A best-effort operation reports an unreachable controller as an error rather than a failure.
+     */
+    @Test
+    public void testBestEffortReportsErrors() {
+        controller.setIoFailureRate(1);
+
+        final List<BulkOperationResult> results = executor.disableDataSourcesBestEffort(controllerClientConfig,
+            Arrays.asList("java:/OrdersDS", "java:/ReportsDS"));
+
+        assertEquals(2, results.size());
+        for (final BulkOperationResult result : results) {
+            assertEquals(Outcome.ERROR, result.getOutcome());
+            assertNull(result.getServerProfileName());
+            assertFalse(result.isSuccess());
+        }
+    }
+
+    /**
+     * The datasources are selected by name, attribute and connection URL host.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testSelectDatasources() throws ControllerOperationException {
+        executor.createDatasources(controllerClientConfig, Arrays.asList(createDataSource("OrdersDS", "db1"),
+            createDataSource("OrdersArchiveDS", "db2"), createDataSource("ReportsDS", "db1")), false, PROFILE);
+
+        final DatasourceSelector nameSelector = new DatasourceSelector();
+        nameSelector.setNameGlob("java:/Orders*");
+        assertEquals(Collections.singletonMap(PROFILE, Arrays.asList("java:/OrdersDS", "java:/OrdersArchiveDS")),
+            executor.selectDatasources(controllerClientConfig, nameSelector, PROFILE));
+
+        final DatasourceSelector hostSelector = new DatasourceSelector();
+        hostSelector.setConnectionUrlHostGlob("db1");
+        assertEquals(Collections.singletonMap(PROFILE, Arrays.asList("java:/OrdersDS", "java:/ReportsDS")),
+            executor.selectDatasources(controllerClientConfig, hostSelector, PROFILE));
+
+        final DatasourceSelector combinedSelector = new DatasourceSelector();
+        combinedSelector.setNameGlob("java:/Orders*");
+        combinedSelector.setConnectionUrlHostGlob("db2");
+        assertEquals(Collections.singletonMap(PROFILE, Arrays.asList("java:/OrdersArchiveDS")),
+            executor.selectDatasources(controllerClientConfig, combinedSelector, PROFILE));
+    }
+
+    /**
+     * The selected datasources are enabled in a single composite request.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testEnableSelectedDataSources() throws ControllerOperationException {
+        executor.createDatasources(controllerClientConfig, Arrays.asList(createDataSource("OrdersDS", "db1"),
+            createDataSource("OrdersArchiveDS", "db2"), createDataSource("ReportsDS", "db1")), false, PROFILE);
+        final DatasourceSelector selector = new DatasourceSelector();
+        selector.setConnectionUrlHostGlob("db1");
+        final long requestCount = controller.getRequestCount();
+
+        executor.enableSelectedDataSources(controllerClientConfig, selector, PROFILE);
+
+        assertEquals(2, controller.getRequestCount() - requestCount);
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/OrdersDS"));
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/ReportsDS"));
+        assertFalse(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/OrdersArchiveDS"));
+    }
+
+    /**
+     * Only the connection properties that differ are changed, and up-to-date properties cost a single read.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Test
+    public void testUpdateConnectionProperties() throws ControllerOperationException {
+        final Properties connectionProperties = new Properties();
+        connectionProperties.setProperty("ssl", "true");
+        connectionProperties.setProperty("loginTimeout", "5");
+        executor.createDatasource(controllerClientConfig, withConnectionProperties(createDataSource("OrdersDS", "db1"),
+            connectionProperties), true, PROFILE);
+
+        final Properties desiredProperties = new Properties();
+        desiredProperties.setProperty("ssl", "true");
+        desiredProperties.setProperty("loginTimeout", "10");
+        desiredProperties.setProperty("applicationName", "orders");
+        long requestCount = controller.getRequestCount();
+        assertTrue(executor.updateConnectionProperties(controllerClientConfig, "java:/OrdersDS", desiredProperties,
+            PROFILE));
+        assertEquals(2, controller.getRequestCount() - requestCount);
+
+        final ModelNode currentProperties = getConnectionProperties(PROFILE, "java:/OrdersDS");
+        assertEquals(3, currentProperties.keys().size());
+        assertEquals("true", currentProperties.get("ssl", "value").asString());
+        assertEquals("10", currentProperties.get("loginTimeout", "value").asString());
+        assertEquals("orders", currentProperties.get("applicationName", "value").asString());
+
+        requestCount = controller.getRequestCount();
+        assertFalse(executor.updateConnectionProperties(controllerClientConfig, "java:/OrdersDS", desiredProperties,
+            PROFILE));
+        assertEquals(1, controller.getRequestCount() - requestCount);
+
+        desiredProperties.remove("ssl");
+        assertTrue(executor.updateConnectionProperties(controllerClientConfig, "java:/OrdersDS", desiredProperties,
+            PROFILE));
+        assertFalse(getConnectionProperties(PROFILE, "java:/OrdersDS").has("ssl"));
+    }
+
+    /**
+     * The datasources of every running server are read in a single request, with the pool statistics of the enabled ones,
+     * and filtered by status; a reloading server is left out.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testGetDomainDatasourceRuntime() throws Exception {
+        addDomainServers();
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1"), true, PROFILE);
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db1"), false, PROFILE);
+        executor.createDatasource(controllerClientConfig, createDataSource("AuditDS", "db2"), true, "other");
+
+        final long requestCount = controller.getRequestCount();
+        final Map<ServerAddress, List<DatasourceRuntime>> runtime = executor.getDomainDatasourceRuntime(
+            controllerClientConfig, DatasourceStatus.ALL);
+        assertEquals(1, controller.getRequestCount() - requestCount);
+
+        assertEquals(Arrays.asList(SERVER_ONE, SERVER_THREE), new ArrayList<ServerAddress>(runtime.keySet()));
+        final List<DatasourceRuntime> serverOneDatasources = runtime.get(SERVER_ONE);
+        assertEquals(2, serverOneDatasources.size());
+        assertEquals("java:/OrdersDS", serverOneDatasources.get(0).getName());
+        assertTrue(serverOneDatasources.get(0).isEnabled());
+        assertEquals(SERVER_ONE, serverOneDatasources.get(0).getServerAddress());
+        assertEquals(0, serverOneDatasources.get(0).getPoolStatistics().get("ActiveCount").asInt());
+        assertEquals("java:/ReportsDS", serverOneDatasources.get(1).getName());
+        assertFalse(serverOneDatasources.get(1).isEnabled());
+        assertFalse(serverOneDatasources.get(1).getPoolStatistics().isDefined());
+        assertEquals("java:/AuditDS", runtime.get(SERVER_THREE).get(0).getName());
+
+        final Map<ServerAddress, List<DatasourceRuntime>> disabled = executor.getDomainDatasourceRuntime(
+            controllerClientConfig, DatasourceStatus.DISABLED);
+        assertEquals(Collections.singleton(SERVER_ONE), disabled.keySet());
+        assertEquals("java:/ReportsDS", disabled.get(SERVER_ONE).get(0).getName());
+    }
+
+    /**
+     * The status of a datasource is read on every running server having it in a single request.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testGetDomainDatasourceStatus() throws Exception {
+        addDomainServers();
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1"), true, PROFILE);
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db2"), false, "other");
+
+        final Map<ServerAddress, Boolean> statuses = executor.getDomainDatasourceStatus(controllerClientConfig,
+            "java:/OrdersDS");
+
+        assertEquals(2, statuses.size());
+        assertEquals(Boolean.TRUE, statuses.get(SERVER_ONE));
+        assertEquals(Boolean.FALSE, statuses.get(SERVER_THREE));
+        assertTrue(executor.getDomainDatasourceStatus(controllerClientConfig, "java:/MissingDS").isEmpty());
+    }
+
+    /**
+     * Adds two servers of the profile, one of them reloading, and a server of another profile on another host.
+     * 
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void addDomainServers() throws IOException {
+        controller.addServer(SERVER_ONE.getHost(), SERVER_ONE.getServer(), PROFILE);
+        controller.addServer(SERVER_TWO.getHost(), SERVER_TWO.getServer(), PROFILE);
+        controller.addServer(SERVER_THREE.getHost(), SERVER_THREE.getServer(), "other");
+        controller.setReloadDuration(Integer.MAX_VALUE);
+        final ModelNode reload = new ModelNode();
+        reload.get("operation").set("reload");
+        reload.get("address").add("host", SERVER_TWO.getHost()).add("server-config", SERVER_TWO.getServer());
+        assertEquals("success", controller.execute(reload).get("outcome").asString());
+    }
+
+    /**
+     * Creates a data source.
+     * 
+     * @param name the datasource name
+     * @param databaseHost the database host
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name, final String databaseHost) {
+        return new JndiDataSource(name, "jdbc:postgresql://" + databaseHost + ":5432/" + name.toLowerCase(),
+            "postgresql", "app", "secret");
+    }
+
+    /**
+     * Sets the connection properties of a data source.
+     * 
+     * @param dataSource the data source
+     * @param connectionProperties the connection properties
+     * @return the data source
+     */
+    private static JndiDataSource withConnectionProperties(final JndiDataSource dataSource,
+        final Properties connectionProperties) {
+        dataSource.setConnectionProperties(connectionProperties);
+        return dataSource;
+    }
+
+    /**
+     * Gets the connection properties of a datasource from the in-memory model.
+     * 
+     * @param serverProfileName the server profile name
+     * @param datasourceName the datasource name
+     * @return the connection-properties children
+     */
+    private ModelNode getConnectionProperties(final String serverProfileName, final String datasourceName) {
+        final Map<String, ModelNode> datasources = controller.getDatasources(serverProfileName);
+        assertTrue(datasources.containsKey(datasourceName));
+        return datasources.get(datasourceName).get("connection-properties");
+    }
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link DatasourceWriteBatcher} against an {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceWriteBatcherTest {
+
+    /** The domain server profile used by the tests. */
+    private static final String PROFILE = "full";
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor running against the in-memory controller. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The batcher under test. */
+    private DatasourceWriteBatcher batcher;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates a batcher running against an empty in-memory controller. The batches are only sent once full or flushed.
+     */
+    @Before
+    public void setUp() {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile(PROFILE);
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        batcher = new DatasourceWriteBatcher(executor);
+        batcher.setMaxDelay(1, TimeUnit.HOURS);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * Stops the batcher.
+     */
+    @After
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    /**
+     * The items of a batch are sent as a single composite request.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testItemsSentInOneRequest() throws Exception {
+        final List<Future<ModelNode>> futures = new ArrayList<Future<ModelNode>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batcher.createDatasource(controllerClientConfig, createDataSource("OrdersDS" + i), true, PROFILE));
+        }
+        batcher.flush();
+
+        for (final Future<ModelNode> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, controller.getRequestCount());
+        assertEquals(10, controller.getDatasources(PROFILE).size());
+        assertTrue(controller.getDatasources(PROFILE).get("java:/OrdersDS9").get("enabled").asBoolean());
+    }
+
+    /**
+     * A full batch is sent without waiting for the delay or a flush.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFullBatchSent() throws Exception {
+        batcher.setMaxBatchSize(2);
+
+        final Future<ModelNode> first = batcher.createDatasource(controllerClientConfig, createDataSource("OrdersDS"),
+            false, PROFILE);
+        final Future<ModelNode> second = batcher.createDatasource(controllerClientConfig, createDataSource("ReportsDS"),
+            false, PROFILE);
+
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+        assertEquals(2, controller.getDatasources(PROFILE).size());
+    }
+
+    /**
+     * A failing item fails its own future only; the other items of its batch are still applied.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailingItemFailsItsOwnFuture() throws Exception {
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS"), false, PROFILE);
+
+        final Future<ModelNode> orders = batcher.createDatasource(controllerClientConfig, createDataSource("OrdersDS"),
+            true, PROFILE);
+        final Future<ModelNode> reports = batcher.createDatasource(controllerClientConfig, createDataSource("ReportsDS"),
+            true, PROFILE);
+        final Future<ModelNode> disable = batcher.disableDataSource(controllerClientConfig, "java:/ReportsDS", PROFILE);
+        final Future<ModelNode> missing = batcher.removeDatasource(controllerClientConfig, "java:/MissingDS", PROFILE);
+        batcher.flush();
+
+        orders.get(10, TimeUnit.SECONDS);
+        disable.get(10, TimeUnit.SECONDS);
+        assertFailed(reports);
+        assertFailed(missing);
+        assertTrue(controller.getDatasources(PROFILE).get("java:/OrdersDS").get("enabled").asBoolean());
+        assertFalse(controller.getDatasources(PROFILE).get("java:/ReportsDS").get("enabled").asBoolean());
+    }
+
+    /**
+     * Asserts that the future of an item failed with a controller operation exception.
+     * 
+     * @param future the future
+     * @throws Exception if the future did not complete
+     */
+    private static void assertFailed(final Future<ModelNode> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The item should fail");
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof ControllerOperationException);
+        }
+    }
+
+    /**
+     * Creates a data source.
+     * 
+     * @param name the datasource name
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name) {
+        return new JndiDataSource(name, "jdbc:postgresql://db1:5432/" + name.toLowerCase(), "postgresql", "app",
+            "secret");
+    }
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.capability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.ControllerOperationExecutor.DatasourceStatus;
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link CapabilityProbe} probing an {@link InMemoryDatasourceController}, and of the executor reads chosen
+ * from the capabilities.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class CapabilityProbeTest {
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor running against the controller. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates the executor, without cached capabilities.
+     */
+    @Before
+    public void setUp() {
+        CapabilityProbe.clearCache();
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile("full");
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * Forgets the capabilities of the tests.
+     */
+    @After
+    public void tearDown() {
+        CapabilityProbe.clearCache();
+    }
+
+    /**
+     * A controller is probed once for all the probes of its host and port, in a single read.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testProbedOnce() throws Exception {
+        controller.setVersion(19, 0, 0, "WildFly Full", "26.1.3.Final");
+
+        final ControllerCapabilities capabilities = new CapabilityProbe(executor).probe(controllerClientConfig);
+
+        assertEquals("19.0.0", capabilities.getManagementVersion());
+        assertEquals("WildFly Full", capabilities.getProductName());
+        assertEquals("26.1.3.Final", capabilities.getProductVersion());
+        assertEquals("STANDALONE", capabilities.getLaunchType());
+        assertTrue(capabilities.isReadChildrenNamesSupported());
+        assertTrue(capabilities.isWildcardReadSupported());
+        assertSame(capabilities, new CapabilityProbe(executor).probe(new ControllerClientConfig("localhost", 9999)));
+        assertEquals(1, controller.getRequestCount());
+    }
+
+    /**
+     * A controller of the first management version supports the baseline operations only.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testBaselineController() throws Exception {
+        final ControllerCapabilities capabilities = new CapabilityProbe(executor).probe(controllerClientConfig);
+
+        assertEquals("1.0.0", capabilities.getManagementVersion());
+        assertNull(capabilities.getProductName());
+        assertFalse(capabilities.isReadChildrenNamesSupported());
+        assertFalse(capabilities.isWildcardReadSupported());
+    }
+
+    /**
+     * A failed probe is not retried until the cache is cleared, the controller being assumed to support the baseline
+     * operations meanwhile.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailedProbeNotRetried() throws Exception {
+        controller.setVersion(19, 0, 0, null, null);
+        controller.failNextOperations("read-resource", 1);
+        final CapabilityProbe capabilityProbe = new CapabilityProbe(executor);
+        try {
+            capabilityProbe.probe(controllerClientConfig);
+            fail("The probe should fail");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getFailureDescription(), coe.getFailureDescription().contains("Injected failure"));
+        }
+
+        try {
+            capabilityProbe.probe(controllerClientConfig);
+            fail("The probe should not be retried");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getMessage(), coe.getMessage().contains("could not be probed recently"));
+        }
+        assertSame(ControllerCapabilities.BASELINE, capabilityProbe.getCapabilities(controllerClientConfig));
+        assertEquals(1, controller.getRequestCount());
+
+        CapabilityProbe.clearCache();
+        assertEquals("19.0.0", capabilityProbe.probe(controllerClientConfig).getManagementVersion());
+    }
+
+    /**
+     * The executor reads the enabled datasources one by one from a baseline controller, and in a single wildcard read
+     * from a controller supporting it.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testExecutorReadsByCapabilities() throws Exception {
+        for (final String name : Arrays.asList("OrdersDS", "ReportsDS", "AuditDS")) {
+            executor.createDatasource(controllerClientConfig, new JndiDataSource(name, "jdbc:postgresql://db1:5432/"
+                + name.toLowerCase(), "postgresql", "app", "secret"), !"AuditDS".equals(name), "full");
+        }
+        assertEquals(2, executor.getDatasources(controllerClientConfig, "full", DatasourceStatus.ENABLED).size());
+        final long baselineRequests = controller.getRequestCount();
+
+        CapabilityProbe.clearCache();
+        controller.setVersion(19, 0, 0, null, null);
+        assertEquals(2, executor.getDatasources(controllerClientConfig, "full", DatasourceStatus.ENABLED).size());
+
+        // the list read, the probe, and one read per datasource or a single wildcard read
+        assertEquals(3 + 1 + 1 + 3, baselineRequests);
+        assertEquals(baselineRequests + 1 + 1 + 1, controller.getRequestCount());
+    }
+}
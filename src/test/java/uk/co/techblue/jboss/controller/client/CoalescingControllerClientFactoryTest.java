@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link CoalescingControllerClientFactory} decorating an {@link InMemoryDatasourceController} whose requests
+ * are held until released.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class CoalescingControllerClientFactoryTest {
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The release of the held requests. */
+    private CountDownLatch release;
+
+    /** The requests arrived at the controller, held or not. */
+    private CountDownLatch arrivedRequests;
+
+    /** The number of clients created by the decorated factory. */
+    private final AtomicInteger createdClients = new AtomicInteger();
+
+    /** Whether the held requests fail with an I/O error once released. */
+    private volatile boolean failRequests;
+
+    /** The factory under test. */
+    private CoalescingControllerClientFactory factory;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /** The threads executing the operations. */
+    private ExecutorService threads;
+
+    /**
+     * Creates the factory decorating a factory whose requests are held until released.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Before
+    public void setUp() throws ControllerOperationException {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile("full");
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+        new JBoss7ControllerOpeartionExecutor(controller).createDatasource(controllerClientConfig, new JndiDataSource(
+            "OrdersDS", "jdbc:postgresql://db1:5432/orders", "postgresql", "app", "secret"), true, "full");
+        release = new CountDownLatch(1);
+        arrivedRequests = new CountDownLatch(1);
+        factory = new CoalescingControllerClientFactory(new ControllerClientFactory() {
+            @Override
+            public ControllerClient createClient(final ControllerClientConfig config) {
+                createdClients.incrementAndGet();
+                return new ControllerClient() {
+
+                    @Override
+                    public ModelNode execute(final ModelNode operation) throws IOException {
+                        arrivedRequests.countDown();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException ie) {
+                            throw new IOException(ie);
+                        }
+                        if (failRequests) {
+                            throw new IOException("Connection lost");
+                        }
+                        return controller.execute(operation);
+                    }
+
+                    @Override
+                    public void close() {
+                        // nothing to release
+                    }
+                };
+            }
+        });
+        threads = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Stops the threads.
+     */
+    @After
+    public void tearDown() {
+        release.countDown();
+        threads.shutdownNow();
+    }
+
+    /**
+     * Identical reads executed while the first is in flight share its request, and each gets its own copy of the
+     * response; the waiting clients never connect.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testConcurrentReadsShareOneRequest() throws Exception {
+        final List<Future<ModelNode>> responses = executeConcurrently(createReadOperation(), controllerClientConfig,
+            controllerClientConfig, controllerClientConfig);
+
+        assertEquals(1, controller.getRequestCount() - 1);
+        assertEquals(1, createdClients.get());
+        final ModelNode first = responses.get(0).get();
+        assertEquals("java:/OrdersDS", first.get("result").asList().get(0).asString());
+        for (final Future<ModelNode> response : responses.subList(1, responses.size())) {
+            assertEquals(first, response.get());
+            assertNotSame(first, response.get());
+        }
+    }
+
+    /**
+     * Reads with different config instances, writes and reads after the response are sent on their own.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testUnsharedOperations() throws Exception {
+        executeConcurrently(createReadOperation(), controllerClientConfig, new ControllerClientConfig("localhost",
+            9999));
+        assertEquals(2, controller.getRequestCount() - 1);
+
+        final ModelNode write = new ModelNode();
+        write.get("operation").set("write-attribute");
+        write.get("address").set(DatasourceOperations.getDatasourceAddress("full", "java:/OrdersDS"));
+        write.get("name").set("max-pool-size");
+        write.get("value").set(50);
+        executeConcurrently(write, controllerClientConfig, controllerClientConfig);
+        assertEquals(4, controller.getRequestCount() - 1);
+
+        factory.createClient(controllerClientConfig).execute(createReadOperation());
+        assertEquals(5, controller.getRequestCount() - 1);
+    }
+
+    /**
+     * The failure of a shared read fails the reads waiting for it.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSharedReadFailure() throws Exception {
+        failRequests = true;
+        final List<Future<ModelNode>> responses = executeConcurrently(createReadOperation(), controllerClientConfig,
+            controllerClientConfig);
+
+        for (final Future<ModelNode> response : responses) {
+            try {
+                response.get();
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof IOException);
+                continue;
+            }
+            throw new AssertionError("The read should fail");
+        }
+        assertEquals(1, createdClients.get());
+    }
+
+    /**
+     * Executes an operation on a client of each config, on its own thread: the first is executed alone and held, the
+     * others while it is held, then the held requests are released.
+     * 
+     * @param operation the operation
+     * @param configs the config of each client
+     * @return the futures of the responses, waited for
+     * @throws Exception if the operations could not be executed
+     */
+    private List<Future<ModelNode>> executeConcurrently(final ModelNode operation,
+        final ControllerClientConfig... configs) throws Exception {
+        release = new CountDownLatch(1);
+        arrivedRequests = new CountDownLatch(1);
+        final List<Future<ModelNode>> responses = new ArrayList<Future<ModelNode>>();
+        for (final ControllerClientConfig config : configs) {
+            final ControllerClient client = factory.createClient(config);
+            responses.add(threads.submit(new Callable<ModelNode>() {
+                @Override
+                public ModelNode call() throws IOException {
+                    return client.execute(operation);
+                }
+            }));
+            if (responses.size() == 1) {
+                assertTrue(arrivedRequests.await(5, TimeUnit.SECONDS));
+            }
+        }
+        // gives the other threads the time to reach the controller or the shared read
+        Thread.sleep(100);
+        release.countDown();
+        for (final Future<ModelNode> response : responses) {
+            try {
+                response.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException ee) {
+                continue;
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Creates the read of the datasource names of the profile.
+     * 
+     * @return the operation
+     */
+    private static ModelNode createReadOperation() {
+        final ModelNode operation = new ModelNode();
+        operation.get("operation").set("read-children-names");
+        operation.get("address").set(DatasourceOperations.getDatasourceSubsystemAddress("full"));
+        operation.get("child-type").set("data-source");
+        return operation;
+    }
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link HttpControllerClientFactory} against an HTTP management endpoint authenticating with Digest and
+ * answering in gzip-compressed DMR from an {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class HttpControllerClientFactoryTest {
+
+    /** The charset of the credentials. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The user name. */
+    private static final String USER_NAME = "admin";
+
+    /** The password. */
+    private static final String PASSWORD = "secret";
+
+    /** The realm. */
+    private static final String REALM = "ManagementRealm";
+
+    /** The pattern of a parameter of an authorization. */
+    private static final Pattern AUTHORIZATION_PARAMETER = Pattern.compile("([\\w-]+)=(?:\"([^\"]*)\"|([^,\\s]*))");
+
+    /** The in-memory controller behind the endpoint. */
+    private InMemoryDatasourceController controller;
+
+    /** The HTTP server. */
+    private HttpServer server;
+
+    /** The number of challenges sent. */
+    private final AtomicInteger challengeCount = new AtomicInteger();
+
+    /** The current nonce of the endpoint. */
+    private volatile String nonce = "nonce-1";
+
+    /** The executor under test. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Starts the HTTP management endpoint on an ephemeral port.
+     * 
+     * @throws Exception if the endpoint could not be started
+     */
+    @Before
+    public void setUp() throws Exception {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile("full");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/management", new ManagementHandler());
+        server.start();
+        executor = new JBoss7ControllerOpeartionExecutor();
+        controllerClientConfig = createConfig(PASSWORD);
+    }
+
+    /**
+     * Stops the HTTP management endpoint.
+     */
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Operations and responses travel as DMR, and the challenge is only answered by the first request of the config.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testOperationsOverHttp() throws Exception {
+        executor.createDatasource(controllerClientConfig, new JndiDataSource("OrdersDS",
+            "jdbc:postgresql://db1:5432/orders", "postgresql", "app", "secret"), true, "full");
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Arrays.asList("java:/OrdersDS"), executor.getDatasourceNames(controllerClientConfig, "full"));
+        }
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, "full", "java:/OrdersDS"));
+        assertTrue(controller.getDatasources("full").containsKey("java:/OrdersDS"));
+        assertEquals(1, challengeCount.get());
+    }
+
+    /**
+     * A failed operation, answered with an error status, is reported with the failure description of the controller.
+     */
+    @Test
+    public void testFailedOperation() {
+        try {
+            executor.removeDatasource(controllerClientConfig, "java:/MissingDS", "full");
+            fail("The remove should fail");
+        } catch (ControllerOperationException coe) {
+            assertNull(coe.getCause());
+            assertTrue(coe.getFailureDescription().contains("WFLYCTL0216"));
+        }
+    }
+
+    /**
+     * A stale nonce is answered with the new challenge without failing the request.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testStaleNonceRenewed() throws Exception {
+        executor.getDatasourceNames(controllerClientConfig, "full");
+        nonce = "nonce-2";
+
+        assertTrue(executor.getDatasourceNames(controllerClientConfig, "full").isEmpty());
+        assertEquals(2, challengeCount.get());
+    }
+
+    /**
+     * Rejected credentials fail the request with an authentication error instead of retrying.
+     */
+    @Test
+    public void testRejectedCredentials() {
+        try {
+            executor.getDatasourceNames(createConfig("wrong"), "full");
+            fail("The credentials should be rejected");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getCause() instanceof IOException);
+            assertTrue(coe.getCause().getMessage().contains("rejected"));
+        }
+        assertEquals(2, challengeCount.get());
+    }
+
+    /**
+     * Creates a config of the HTTP transport to the endpoint.
+     * 
+     * @param password the password
+     * @return the controller client config
+     */
+    private ControllerClientConfig createConfig(final String password) {
+        final ControllerClientConfig config = new ControllerClientConfig("127.0.0.1", server.getAddress().getPort());
+        config.setTransport(ControllerClientConfig.Transport.HTTP);
+        config.setUserName(USER_NAME);
+        config.setPassword(password);
+        return config;
+    }
+
+    /**
+     * Hashes a value with MD5.
+     * 
+     * @param value the value
+     * @return the hexadecimal hash
+     * @throws Exception if MD5 is not available
+     */
+    private static String md5(final String value) throws Exception {
+        final StringBuilder hex = new StringBuilder();
+        for (final byte digestByte : MessageDigest.getInstance("MD5").digest(value.getBytes(UTF_8))) {
+            hex.append(String.format("%02x", digestByte));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Reads a stream to its end.
+     * 
+     * @param input the stream
+     * @return the bytes read
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static byte[] readFully(final InputStream input) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The management endpoint, authenticating with Digest and executing the operations on the in-memory controller.
+     */
+    private class ManagementHandler implements HttpHandler {
+
+        /*
+         * (non-Javadoc)
+         * @see com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+         */
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                final byte[] request = readFully(exchange.getRequestBody());
+                final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+                final Map<String, String> parameters = new HashMap<String, String>();
+                if (authorization != null) {
+                    final Matcher matcher = AUTHORIZATION_PARAMETER.matcher(authorization);
+                    while (matcher.find()) {
+                        parameters.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher
+                            .group(3));
+                    }
+                }
+                final boolean valid = authorization != null && isValid(parameters);
+                if (!valid || !nonce.equals(parameters.get("nonce"))) {
+                    challengeCount.incrementAndGet();
+                    exchange.getResponseHeaders().add("WWW-Authenticate", "Digest realm=\"" + REALM + "\", nonce=\""
+                        + nonce + "\", opaque=\"opaque\", algorithm=MD5, qop=\"auth\"" + (valid ? ", stale=true" : ""));
+                    exchange.sendResponseHeaders(401, -1);
+                    return;
+                }
+                final ModelNode response = controller.execute(ModelNode.fromBase64(new ByteArrayInputStream(request)));
+                final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                final GZIPOutputStream gzip = new GZIPOutputStream(body);
+                response.writeBase64(gzip);
+                gzip.close();
+                exchange.getResponseHeaders().add("Content-Type", "application/dmr-encoded");
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders("success".equals(response.get("outcome").asString()) ? 200 : 500, body
+                    .size());
+                exchange.getResponseBody().write(body.toByteArray());
+            } catch (Exception e) {
+                throw new IOException(e);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Checks whether a Digest authorization holds the right credentials, whatever its nonce.
+         * 
+         * @param parameters the authorization parameters
+         * @return true, if the response matches the password of the user
+         * @throws Exception if MD5 is not available
+         */
+        private boolean isValid(final Map<String, String> parameters) throws Exception {
+            final String ha1 = md5(USER_NAME + ":" + REALM + ":" + PASSWORD);
+            final String ha2 = md5("POST:" + parameters.get("uri"));
+            return USER_NAME.equals(parameters.get("username")) && "opaque".equals(parameters.get("opaque"))
+                && md5(ha1 + ":" + parameters.get("nonce") + ":" + parameters.get("nc") + ":" + parameters.get("cnonce")
+                    + ":auth:" + ha2).equals(parameters.get("response"));
+        }
+    }
+}
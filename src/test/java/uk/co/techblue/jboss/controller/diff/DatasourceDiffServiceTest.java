@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link DatasourceDiffService} comparing the datasources of two profiles of an
+ * {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceDiffServiceTest {
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor running against the controller. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates the staging and production profiles.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Before
+    public void setUp() throws ControllerOperationException {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile("staging");
+        controller.addProfile("production");
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * The datasources only defined on one side are added or removed, those defined differently on both sides are
+     * changed with their attribute changes, and the others are unchanged.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testCompareProfiles() throws Exception {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1", "eu"), true, "staging");
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db1", null), true, "staging");
+        executor.createDatasource(controllerClientConfig, createDataSource("LegacyDS", "db1", null), true, "staging");
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db2", "us"), true,
+            "production");
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db1", null), true,
+            "production");
+        executor.createDatasource(controllerClientConfig, createDataSource("AuditDS", "db2", null), true, "production");
+        final long requestCount = controller.getRequestCount();
+
+        final DatasourceDiff diff = new DatasourceDiffService(executor).compare(controllerClientConfig, "staging",
+            controllerClientConfig, "production");
+
+        assertEquals(2, controller.getRequestCount() - requestCount);
+        assertEquals("localhost:9999/staging", diff.getSource());
+        assertEquals("localhost:9999/production", diff.getTarget());
+        assertEquals(Arrays.asList("java:/AuditDS"), Arrays.asList(diff.getAdded().keySet().toArray()));
+        assertEquals(Arrays.asList("java:/LegacyDS"), Arrays.asList(diff.getRemoved().keySet().toArray()));
+        assertEquals(1, diff.getUnchangedCount());
+        assertFalse(diff.isIdentical());
+
+        final List<AttributeChange> changes = diff.getChanged().get("java:/OrdersDS");
+        assertEquals(diff.toString(), 2, changes.size());
+        assertChange(changes.get(0), "connection-url", AttributeChange.Type.CHANGED);
+        assertEquals("jdbc:postgresql://db2:5432/ordersds", changes.get(0).getTargetValue().asString());
+        assertChange(changes.get(1), "connection-properties.region.value", AttributeChange.Type.CHANGED);
+        assertEquals("eu", changes.get(1).getSourceValue().asString());
+    }
+
+    /**
+     * A profile compared with itself is identical.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testIdenticalProfiles() throws Exception {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1", "eu"), true, "staging");
+
+        final DatasourceDiff diff = new DatasourceDiffService(executor).compare(controllerClientConfig, "staging",
+            controllerClientConfig, "staging");
+
+        assertTrue(diff.toString(), diff.isIdentical());
+        assertEquals(1, diff.getUnchangedCount());
+    }
+
+    /**
+     * The attributes only defined on one side are added or removed, and the objects defined on both sides are walked
+     * into.
+     */
+    @Test
+    public void testCompareConfigurations() {
+        final ModelNode source = new ModelNode();
+        source.get("min-pool-size").set(5);
+        source.get("jndi-name").set("java:/OrdersDS");
+        source.get("validation", "background").set(true);
+        source.get("validation", "interval").set(1000);
+        final ModelNode target = source.clone();
+        target.get("min-pool-size").set(new ModelNode());
+        target.get("max-pool-size").set(50);
+        target.get("validation", "interval").set(2000);
+
+        final DatasourceDiff diff = DatasourceDiffService.compare("source", singleton(source), "target",
+            singleton(target));
+
+        final List<AttributeChange> changes = diff.getChanged().get("java:/OrdersDS");
+        assertEquals(diff.toString(), 3, changes.size());
+        assertChange(changes.get(0), "min-pool-size", AttributeChange.Type.REMOVED);
+        assertFalse(changes.get(0).getTargetValue().isDefined());
+        assertChange(changes.get(1), "validation.interval", AttributeChange.Type.CHANGED);
+        assertEquals(1000, changes.get(1).getSourceValue().asInt());
+        assertEquals(2000, changes.get(1).getTargetValue().asInt());
+        assertChange(changes.get(2), "max-pool-size", AttributeChange.Type.ADDED);
+        assertEquals(0, diff.getUnchangedCount());
+    }
+
+    /**
+     * Configurations only differing by attributes undefined on one side and missing on the other are unchanged.
+     */
+    @Test
+    public void testUndefinedAttributesUnchanged() {
+        final ModelNode source = new ModelNode();
+        source.get("jndi-name").set("java:/OrdersDS");
+        final ModelNode target = source.clone();
+        target.get("max-pool-size");
+
+        final DatasourceDiff diff = DatasourceDiffService.compare("source", singleton(source), "target",
+            singleton(target));
+
+        assertTrue(diff.toString(), diff.isIdentical());
+        assertEquals(1, diff.getUnchangedCount());
+    }
+
+    /**
+     * Asserts the path and type of a change.
+     * 
+     * @param change the change
+     * @param path the expected path
+     * @param type the expected type
+     */
+    private static void assertChange(final AttributeChange change, final String path, final AttributeChange.Type type) {
+        assertEquals(change.toString(), path, change.getPath());
+        assertSame(change.toString(), type, change.getType());
+    }
+
+    /**
+     * Maps a configuration by its JNDI name.
+     * 
+     * @param configuration the configuration
+     * @return the configurations
+     */
+    private static Map<String, ModelNode> singleton(final ModelNode configuration) {
+        final Map<String, ModelNode> configurations = new LinkedHashMap<String, ModelNode>();
+        configurations.put(configuration.get("jndi-name").asString(), configuration);
+        return configurations;
+    }
+
+    /**
+     * Creates a data source.
+     * 
+     * @param name the datasource name
+     * @param host the database host
+     * @param region the region connection property, null for none
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name, final String host, final String region) {
+        final JndiDataSource dataSource = new JndiDataSource(name, "jdbc:postgresql://" + host + ":5432/"
+            + name.toLowerCase(), "postgresql", "app", "secret");
+        if (region != null) {
+            final Properties connectionProperties = new Properties();
+            connectionProperties.setProperty("region", region);
+            dataSource.setConnectionProperties(connectionProperties);
+        }
+        return dataSource;
+    }
+}
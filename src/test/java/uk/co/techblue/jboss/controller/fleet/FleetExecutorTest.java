@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.fleet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.ControllerOperationExecutor;
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link FleetExecutor} on platform threads, against an {@link InMemoryDatasourceController} standing in for
+ * every controller of the fleet.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class FleetExecutorTest {
+
+    /** The fleet executor under test. */
+    private FleetExecutor fleetExecutor;
+
+    /** The config of the first controller. */
+    private ControllerClientConfig firstController;
+
+    /** The config of the second controller. */
+    private ControllerClientConfig secondController;
+
+    /**
+     * Creates a fleet executor on platform threads, and two profiles with a datasource each.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Before
+    public void setUp() throws ControllerOperationException {
+        final InMemoryDatasourceController controller = new InMemoryDatasourceController(1L);
+        controller.addProfile("full");
+        controller.addProfile("ha");
+        final JBoss7ControllerOpeartionExecutor executor = new JBoss7ControllerOpeartionExecutor(controller);
+        firstController = new ControllerClientConfig("dc1", 9999);
+        secondController = new ControllerClientConfig("dc2", 9999);
+        executor.createDatasource(firstController, createDataSource("OrdersDS"), true, "full");
+        executor.createDatasource(firstController, createDataSource("ReportsDS"), true, "ha");
+        fleetExecutor = new FleetExecutor(executor);
+        fleetExecutor.setVirtualThreads(false);
+    }
+
+    /**
+     * A call is made on every profile of every controller, and the results come back in the order of the targets.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testResultsPerControllerAndProfile() throws Exception {
+        final Map<ControllerClientConfig, List<String>> serverProfileNames =
+            new LinkedHashMap<ControllerClientConfig, List<String>>();
+        serverProfileNames.put(firstController, Arrays.asList("full", "ha"));
+        serverProfileNames.put(secondController, Arrays.asList("ha"));
+
+        final List<FleetResult<Boolean>> results = fleetExecutor.execute(serverProfileNames, new FleetCall<Boolean>() {
+            @Override
+            public Boolean call(final ControllerOperationExecutor operationExecutor,
+                final ControllerClientConfig controllerClientConfig, final String serverProfileName)
+                throws ControllerOperationException {
+                return operationExecutor.isDatasourceExists(controllerClientConfig, "java:/OrdersDS", serverProfileName);
+            }
+        });
+
+        assertEquals(3, results.size());
+        assertResult(results.get(0), firstController, "full", Boolean.TRUE);
+        assertResult(results.get(1), firstController, "ha", Boolean.FALSE);
+        assertResult(results.get(2), secondController, "ha", Boolean.FALSE);
+    }
+
+    /**
+     * A failing call is reported in its own result and does not fail the calls on the other controllers.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFailureReportedPerController() throws Exception {
+        final List<FleetResult<String>> results = fleetExecutor.execute(Arrays.asList(firstController,
+            secondController), new FleetCall<String>() {
+            @Override
+            public String call(final ControllerOperationExecutor operationExecutor,
+                final ControllerClientConfig controllerClientConfig, final String serverProfileName)
+                throws ControllerOperationException {
+                if (controllerClientConfig == secondController) {
+                    throw new ControllerOperationException("Controller unreachable.");
+                }
+                return controllerClientConfig.getHost();
+            }
+        });
+
+        assertEquals(2, results.size());
+        assertResult(results.get(0), firstController, null, "dc1");
+        assertFalse(results.get(1).isSuccess());
+        assertNull(results.get(1).getValue());
+        assertEquals("Controller unreachable.", results.get(1).getFailure().getMessage());
+    }
+
+    /**
+     * No more calls than the maximum are in flight on a controller, whatever the number of threads.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testMaxCallsPerController() throws Exception {
+        fleetExecutor.setMaxCallsPerController(2);
+        fleetExecutor.setPlatformThreads(8);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final List<String> serverProfileNames = new ArrayList<String>();
+        for (int i = 0; i < 8; i++) {
+            serverProfileNames.add("profile-" + i);
+        }
+
+        final List<FleetResult<Integer>> results = fleetExecutor.execute(Collections.singletonMap(firstController,
+            serverProfileNames), new FleetCall<Integer>() {
+            @Override
+            public Integer call(final ControllerOperationExecutor operationExecutor,
+                final ControllerClientConfig controllerClientConfig, final String serverProfileName)
+                throws ControllerOperationException {
+                final int calls = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), calls));
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ie) {
+                    throw new ControllerOperationException("Interrupted.", ie);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                return calls;
+            }
+        });
+
+        assertEquals(8, results.size());
+        for (final FleetResult<Integer> result : results) {
+            assertTrue(result.toString(), result.isSuccess());
+        }
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    /**
+     * The calls queued on a slow controller wait in its queue rather than on a thread, so the calls on another controller
+     * run while the slow controller holds all its slots.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testQueuedCallsDoNotHoldThreads() throws Exception {
+        fleetExecutor.setMaxCallsPerController(1);
+        fleetExecutor.setPlatformThreads(2);
+        final CountDownLatch secondControllerCalls = new CountDownLatch(3);
+        final Map<ControllerClientConfig, List<String>> serverProfileNames =
+            new LinkedHashMap<ControllerClientConfig, List<String>>();
+        serverProfileNames.put(firstController, Arrays.asList("a", "b", "c"));
+        serverProfileNames.put(secondController, Arrays.asList("a", "b", "c"));
+
+        final List<FleetResult<Boolean>> results = fleetExecutor.execute(serverProfileNames, new FleetCall<Boolean>() {
+            @Override
+            public Boolean call(final ControllerOperationExecutor operationExecutor,
+                final ControllerClientConfig controllerClientConfig, final String serverProfileName)
+                throws ControllerOperationException {
+                if (controllerClientConfig == secondController) {
+                    secondControllerCalls.countDown();
+                    return Boolean.TRUE;
+                }
+                try {
+                    return secondControllerCalls.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    throw new ControllerOperationException("Interrupted.", ie);
+                }
+            }
+        });
+
+        for (final FleetResult<Boolean> result : results) {
+            assertEquals(result.toString(), Boolean.TRUE, result.getValue());
+        }
+    }
+
+    /**
+     * Asserts a successful result.
+     * 
+     * @param <T> the type of the call result
+     * @param result the result
+     * @param controllerClientConfig the expected controller client config
+     * @param serverProfileName the expected server profile name
+     * @param value the expected value
+     */
+    private static <T> void assertResult(final FleetResult<T> result, final ControllerClientConfig controllerClientConfig,
+        final String serverProfileName, final T value) {
+        assertTrue(result.toString(), result.isSuccess());
+        assertTrue(controllerClientConfig == result.getControllerClientConfig());
+        assertEquals(serverProfileName, result.getServerProfileName());
+        assertEquals(value, result.getValue());
+    }
+
+    /**
+     * Creates a data source.
+     * 
+     * @param name the datasource name
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name) {
+        return new JndiDataSource(name, "jdbc:postgresql://db1:5432/" + name.toLowerCase(), "postgresql", "app",
+            "secret");
+    }
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.plan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of the journaled execution, resume and rollback of {@link OperationPlanner} against an
+ * {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class OperationPlannerTest {
+
+    /** The domain server profile used by the tests. */
+    private static final String PROFILE = "full";
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor running against the in-memory controller. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The planner under test. */
+    private OperationPlanner planner;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /** The journal file. */
+    private File journalFile;
+
+    /**
+     * Creates a planner running against an empty in-memory controller.
+     * 
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Before
+    public void setUp() throws IOException {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile(PROFILE);
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        planner = new OperationPlanner(executor);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+        journalFile = File.createTempFile("operation-journal", ".log");
+        assertTrue(journalFile.delete());
+    }
+
+    /**
+     * Deletes the journal file.
+     */
+    @After
+    public void tearDown() {
+        journalFile.delete();
+    }
+
+    /**
+     * The creation of a datasource is planned as the single add and enable composite the executor sends, so that the
+     * enable of a datasource is never journaled apart from its add.
+     */
+    @Test
+    public void testCreationPlannedAsExecutorOperation() {
+        final OperationPlan plan = planCreateDatasources();
+
+        final ModelNode operation = plan.getOperations().get(0).getOperation();
+        assertEquals("composite", operation.get("operation").asString());
+        final List<ModelNode> steps = operation.get("steps").asList();
+        assertEquals(2, steps.size());
+        assertEquals("add", steps.get(0).get("operation").asString());
+        assertEquals("write-attribute", steps.get(1).get("operation").asString());
+    }
+
+    /**
+     * A failing plan that rolls back on failure compensates its completed operations and ends the journal rolled back.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testExecuteRollsBackOnFailure() throws Exception {
+        final OperationPlan plan = planCreateDatasources();
+        executor.createDatasource(controllerClientConfig, new JndiDataSource("ReportsDS",
+            "jdbc:postgresql://db2:5432/reports", "postgresql", "app", "secret"), false, PROFILE);
+
+        try {
+            planner.execute(plan, journalFile);
+            fail("The plan should fail with the creation of the second datasource");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getFailureDescription().contains("java:/ReportsDS"));
+        }
+        // the first datasource is compensated, the one existing before the plan is left alone
+        assertEquals(1, controller.getDatasources(PROFILE).size());
+        assertEquals("jdbc:postgresql://db2:5432/reports", controller.getDatasources(PROFILE).get("java:/ReportsDS").get(
+            "connection-url").asString());
+        final OperationJournal journal = OperationJournal.open(journalFile);
+        try {
+            assertTrue(journal.isRolledBack());
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * A resumed execution verifies the operation in flight, does not send it again when it was applied, and completes the
+     * remaining operations.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testResumeSkipsAppliedOperationInDoubt() throws Exception {
+        final OperationPlan plan = planCreateDatasources();
+        interruptAfterApplying(plan, 1);
+        final long requestCount = controller.getRequestCount();
+
+        planner.resume(controllerClientConfig, journalFile);
+
+        // one read verifying the creation in doubt, then the creation of the second datasource
+        assertEquals(2, controller.getRequestCount() - requestCount);
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/OrdersDS"));
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/ReportsDS"));
+        final OperationJournal journal = OperationJournal.open(journalFile);
+        try {
+            assertTrue(journal.isCompleted());
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * A resumed execution sends again the operation in flight when the controller did not apply it.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testResumeResendsOperationNotApplied() throws Exception {
+        final OperationPlan plan = planCreateDatasources();
+        final OperationJournal journal = OperationJournal.create(journalFile, plan);
+        journal.intent(0);
+        journal.close();
+
+        planner.resume(controllerClientConfig, journalFile);
+
+        assertEquals(2, controller.getDatasources(PROFILE).size());
+        assertTrue(executor.isDatasourceEnabled(controllerClientConfig, PROFILE, "java:/OrdersDS"));
+    }
+
+    /**
+     * A rollback compensates the applied operations, including the one in doubt, in reverse order.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testRollbackCompensatesAppliedOperations() throws Exception {
+        final OperationPlan plan = planCreateDatasources();
+        interruptAfterApplying(plan, 2);
+
+        assertTrue(planner.rollback(controllerClientConfig, journalFile));
+
+        assertTrue(controller.getDatasources(PROFILE).isEmpty());
+        final OperationJournal journal = OperationJournal.open(journalFile);
+        try {
+            assertTrue(journal.isRolledBack());
+            assertFalse(journal.isCompleted());
+        } finally {
+            journal.close();
+        }
+        assertTrue(planner.rollback(controllerClientConfig, journalFile));
+    }
+
+    /**
+     * A journal written for another controller is refused.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testResumeRefusesJournalOfAnotherController() throws Exception {
+        OperationJournal.create(journalFile, planCreateDatasources()).close();
+
+        planner.resume(new ControllerClientConfig("localhost", 10090), journalFile);
+    }
+
+    /**
+     * Plans the creation and enabling of two datasources, i.e. two operations.
+     * 
+     * @return the operation plan
+     */
+    private OperationPlan planCreateDatasources() {
+        final List<JndiDataSource> dataSources = Arrays.asList(new JndiDataSource("OrdersDS",
+            "jdbc:postgresql://db1:5432/orders", "postgresql", "app", "secret"), new JndiDataSource("ReportsDS",
+            "jdbc:postgresql://db1:5432/reports", "postgresql", "app", "secret"));
+        final OperationPlan plan = planner.planCreateDatasources(controllerClientConfig, dataSources, true, PROFILE);
+        assertEquals(2, plan.getOperations().size());
+        return plan;
+    }
+
+    /**
+     * Journals a plan as if the execution stopped right after the controller applied an operation, before the journal
+     * recorded it as done.
+     * 
+     * @param plan the plan
+     * @param steps the number of operations applied, the last one being in doubt
+     * @throws Exception if the operations cannot be applied or journaled
+     */
+    private void interruptAfterApplying(final OperationPlan plan, final int steps) throws Exception {
+        final OperationJournal journal = OperationJournal.create(journalFile, plan);
+        try {
+            for (int step = 0; step < steps; step++) {
+                journal.intent(step);
+                executor.executeOperation(controllerClientConfig, plan.getOperations().get(step).getOperation());
+                if (step < steps - 1) {
+                    journal.done(step);
+                }
+            }
+        } finally {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.pool.PoolOperationResult.Outcome;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * Tests of {@link DatasourcePoolManager} against an {@link InMemoryDatasourceController} with a standalone server and
+ * a domain.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourcePoolManagerTest {
+
+    /** The domain server profile used by the tests. */
+    private static final String PROFILE = "full";
+
+    /** The first server of the profile. */
+    private static final ServerAddress SERVER_ONE = new ServerAddress("master", "server-one");
+
+    /** The second server of the profile. */
+    private static final ServerAddress SERVER_TWO = new ServerAddress("slave", "server-two");
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor running against the in-memory controller. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The pool manager under test. */
+    private DatasourcePoolManager poolManager;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates a pool manager retrying every millisecond, and two servers of a profile.
+     */
+    @Before
+    public void setUp() {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addServer(SERVER_ONE.getHost(), SERVER_ONE.getServer(), PROFILE);
+        controller.addServer(SERVER_TWO.getHost(), SERVER_TWO.getServer(), PROFILE);
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        poolManager = new DatasourcePoolManager(executor);
+        poolManager.setRetryInterval(1, TimeUnit.MILLISECONDS);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * The pools of a standalone server are filled up to their minimum size.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testWarmUpStandaloneServer() throws Exception {
+        createDatasource("OrdersDS", true, null);
+        createDatasource("ReportsDS", true, null);
+
+        final List<PoolOperationResult> results = poolManager.warmUp(controllerClientConfig, Arrays.asList(
+            "java:/OrdersDS", "java:/ReportsDS"));
+
+        assertEquals(2, results.size());
+        assertResult(results.get(0), null, "java:/OrdersDS", Outcome.SUCCESS);
+        assertResult(results.get(1), null, "java:/ReportsDS", Outcome.SUCCESS);
+        assertEquals(1, results.get(0).getAttempts());
+        assertEquals(5, controller.getOpenConnections(null, "java:/OrdersDS"));
+        assertEquals(5, controller.getOpenConnections(null, "java:/ReportsDS"));
+    }
+
+    /**
+     * The pools of every given domain server are warmed up, and a failing connection test is retried until it succeeds.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testWarmUpRetriesUntilReady() throws Exception {
+        createDatasource("OrdersDS", true, PROFILE);
+        poolManager.setConcurrency(1);
+        controller.failNextOperations("test-connection-in-pool", 2);
+
+        final List<PoolOperationResult> results = poolManager.warmUp(controllerClientConfig, Arrays.asList(SERVER_ONE,
+            SERVER_TWO), Arrays.asList("java:/OrdersDS"));
+
+        assertEquals(2, results.size());
+        assertResult(results.get(0), SERVER_ONE, "java:/OrdersDS", Outcome.SUCCESS);
+        assertEquals(3, results.get(0).getAttempts());
+        assertResult(results.get(1), SERVER_TWO, "java:/OrdersDS", Outcome.SUCCESS);
+        assertEquals(1, results.get(1).getAttempts());
+        assertEquals(5, controller.getOpenConnections(SERVER_ONE, "java:/OrdersDS"));
+        assertEquals(5, controller.getOpenConnections(SERVER_TWO, "java:/OrdersDS"));
+        assertEquals(0, controller.getOpenConnections(null, "java:/OrdersDS"));
+    }
+
+    /**
+     * A pool never ready within the timeout is reported with the last failure, without holding up the other pools.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testWarmUpReportsPoolNeverReady() throws Exception {
+        createDatasource("OrdersDS", true, null);
+        createDatasource("ReportsDS", false, null);
+        poolManager.setTimeout(50, TimeUnit.MILLISECONDS);
+
+        final List<PoolOperationResult> results = poolManager.warmUp(controllerClientConfig, Arrays.asList(
+            "java:/OrdersDS", "java:/ReportsDS"));
+
+        assertResult(results.get(0), null, "java:/OrdersDS", Outcome.SUCCESS);
+        final PoolOperationResult neverReady = results.get(1);
+        assertTrue(neverReady.getOutcome() == Outcome.FAILED || neverReady.getOutcome() == Outcome.TIMED_OUT);
+        assertTrue(neverReady.getAttempts() > 1);
+        assertTrue(neverReady.getFailureDescription().contains("disabled"));
+    }
+
+    /**
+     * The warmup flush empties a pool before its connection is tested again.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testWarmUpFlushesFirst() throws Exception {
+        createDatasource("OrdersDS", true, null);
+        poolManager.warmUp(controllerClientConfig, Arrays.asList("java:/OrdersDS"));
+        controller.failNextOperations("test-connection-in-pool", 1);
+        poolManager.setWarmupFlush(PoolOperation.FLUSH_ALL);
+        poolManager.setTimeout(50, TimeUnit.MILLISECONDS);
+        poolManager.setRetryInterval(1, TimeUnit.SECONDS);
+
+        final List<PoolOperationResult> results = poolManager.warmUp(controllerClientConfig, Arrays.asList(
+            "java:/OrdersDS"));
+
+        assertResult(results.get(0), null, "java:/OrdersDS", Outcome.FAILED);
+        assertEquals(0, controller.getOpenConnections(null, "java:/OrdersDS"));
+    }
+
+    /**
+     * A server sweep tests the pool of every enabled datasource of the server once, and leaves the disabled ones out.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSweepServer() throws Exception {
+        createDatasource("OrdersDS", true, null);
+        createDatasource("ReportsDS", false, null);
+        createDatasource("AuditDS", true, null);
+        poolManager.setConcurrency(1);
+        controller.failNextOperations("test-connection-in-pool", 1);
+
+        final PoolHealthMatrix healthMatrix = poolManager.sweepServer(controllerClientConfig, null);
+
+        assertEquals(new HashSet<String>(Arrays.asList("java:/OrdersDS", "java:/AuditDS")), healthMatrix
+            .getDatasourceNames());
+        assertFalse(healthMatrix.isHealthy());
+        assertEquals(1, healthMatrix.getFailures().size());
+        assertResult(healthMatrix.getResult(null, "java:/OrdersDS"), null, "java:/OrdersDS", Outcome.FAILED);
+        assertResult(healthMatrix.getResult(null, "java:/AuditDS"), null, "java:/AuditDS", Outcome.SUCCESS);
+        assertEquals(1, healthMatrix.getResult(null, "java:/AuditDS").getAttempts());
+    }
+
+    /**
+     * A profile sweep tests the pools on the running servers of the profile only, with a row per server.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSweepProfile() throws Exception {
+        final ServerAddress otherServer = new ServerAddress("slave", "server-three");
+        controller.addServer(otherServer.getHost(), otherServer.getServer(), "other");
+        createDatasource("OrdersDS", true, PROFILE);
+        createDatasource("ReportsDS", false, PROFILE);
+        createDatasource("AuditDS", true, "other");
+
+        final PoolHealthMatrix healthMatrix = poolManager.sweepProfile(controllerClientConfig, PROFILE);
+
+        assertTrue(healthMatrix.isHealthy());
+        assertEquals(new HashSet<ServerAddress>(Arrays.asList(SERVER_ONE, SERVER_TWO)), healthMatrix.getServers());
+        assertEquals(Collections.singleton("java:/OrdersDS"), healthMatrix.getDatasourceNames());
+        assertEquals(5, controller.getOpenConnections(SERVER_TWO, "java:/OrdersDS"));
+        assertEquals(0, controller.getOpenConnections(otherServer, "java:/AuditDS"));
+        assertTrue(poolManager.sweepProfile(controllerClientConfig, "missing").getServers().isEmpty());
+    }
+
+    /**
+     * A glob flush only flushes the enabled datasources whose name matches, on the given servers, interleaved across the
+     * servers.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFlushGlob() throws Exception {
+        createDatasource("OrdersDS", true, PROFILE);
+        createDatasource("OrdersArchiveDS", true, PROFILE);
+        createDatasource("OrdersLegacyDS", false, PROFILE);
+        createDatasource("ReportsDS", true, PROFILE);
+        final List<ServerAddress> servers = Arrays.asList(SERVER_ONE, SERVER_TWO);
+        poolManager.warmUp(controllerClientConfig, servers, Arrays.asList("java:/OrdersDS", "java:/OrdersArchiveDS",
+            "java:/ReportsDS"));
+
+        final List<PoolOperationResult> results = poolManager.flush(controllerClientConfig, servers,
+            PoolOperation.FLUSH_ALL, "java:/Orders*");
+
+        assertEquals(4, results.size());
+        assertResult(results.get(0), SERVER_ONE, "java:/OrdersArchiveDS", Outcome.SUCCESS);
+        assertResult(results.get(1), SERVER_TWO, "java:/OrdersArchiveDS", Outcome.SUCCESS);
+        assertResult(results.get(2), SERVER_ONE, "java:/OrdersDS", Outcome.SUCCESS);
+        assertResult(results.get(3), SERVER_TWO, "java:/OrdersDS", Outcome.SUCCESS);
+        assertEquals(PoolOperation.FLUSH_ALL, results.get(0).getOperation());
+        assertEquals(0, controller.getOpenConnections(SERVER_ONE, "java:/OrdersDS"));
+        assertEquals(0, controller.getOpenConnections(SERVER_TWO, "java:/OrdersArchiveDS"));
+        assertEquals(5, controller.getOpenConnections(SERVER_ONE, "java:/ReportsDS"));
+    }
+
+    /**
+     * A domain flush runs on every running server, and a standalone flush on the standalone server only.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testFlushDomainAndStandaloneServer() throws Exception {
+        createDatasource("OrdersDS", true, PROFILE);
+        createDatasource("OrdersDS", true, null);
+        poolManager.warmUp(controllerClientConfig, Arrays.asList(SERVER_ONE, SERVER_TWO), Arrays.asList(
+            "java:/OrdersDS"));
+        poolManager.warmUp(controllerClientConfig, Arrays.asList("java:/OrdersDS"));
+
+        final List<PoolOperationResult> standaloneResults = poolManager.flush(controllerClientConfig, null,
+            PoolOperation.FLUSH_IDLE, "*");
+        assertEquals(1, standaloneResults.size());
+        assertResult(standaloneResults.get(0), null, "java:/OrdersDS", Outcome.SUCCESS);
+        assertEquals(0, controller.getOpenConnections(null, "java:/OrdersDS"));
+        assertEquals(5, controller.getOpenConnections(SERVER_ONE, "java:/OrdersDS"));
+
+        final List<PoolOperationResult> domainResults = poolManager.flushDomain(controllerClientConfig,
+            PoolOperation.FLUSH_GRACEFULLY, Pattern.compile(".*Orders.*"));
+        assertEquals(2, domainResults.size());
+        assertEquals(0, controller.getOpenConnections(SERVER_ONE, "java:/OrdersDS"));
+        assertEquals(0, controller.getOpenConnections(SERVER_TWO, "java:/OrdersDS"));
+    }
+
+    /**
+     * A connection test is not a flush.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFlushRequiresFlushOperation() throws Exception {
+        poolManager.flush(controllerClientConfig, null, PoolOperation.TEST_CONNECTION, "*");
+    }
+
+    /**
+     * Asserts the server, datasource and outcome of a result.
+     * 
+     * @param result the result
+     * @param serverAddress the expected server
+     * @param datasourceName the expected datasource name
+     * @param outcome the expected outcome
+     */
+    private static void assertResult(final PoolOperationResult result, final ServerAddress serverAddress,
+        final String datasourceName, final Outcome outcome) {
+        assertEquals(serverAddress, result.getServerAddress());
+        assertEquals(datasourceName, result.getDatasourceName());
+        assertEquals(result.toString(), outcome, result.getOutcome());
+    }
+
+    /**
+     * Creates a datasource with a minimum pool size of 5.
+     * 
+     * @param name the datasource name
+     * @param enable whether to enable the datasource
+     * @param serverProfileName the server profile name, null for the standalone server
+     * @throws ControllerOperationException the controller operation exception
+     */
+    private void createDatasource(final String name, final boolean enable, final String serverProfileName)
+        throws ControllerOperationException {
+        final JndiDataSource dataSource = new JndiDataSource(name, "jdbc:postgresql://db1:5432/" + name.toLowerCase(),
+            "postgresql", "app", "secret");
+        dataSource.setMinPoolSize(5);
+        executor.createDatasource(controllerClientConfig, dataSource, enable, serverProfileName);
+    }
+}
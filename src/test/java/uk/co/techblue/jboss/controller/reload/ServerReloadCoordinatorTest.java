@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.reload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.ServerAddress;
+
+/**
+ * Tests of {@link ServerReloadCoordinator} against an {@link InMemoryDatasourceController} with three domain servers.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class ServerReloadCoordinatorTest {
+
+    /** The first server. */
+    private static final ServerAddress SERVER_ONE = new ServerAddress("master", "server-one");
+
+    /** The second server. */
+    private static final ServerAddress SERVER_TWO = new ServerAddress("master", "server-two");
+
+    /** The third server. */
+    private static final ServerAddress SERVER_THREE = new ServerAddress("slave", "server-three");
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The coordinator under test. */
+    private ServerReloadCoordinator coordinator;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates a coordinator polling every millisecond a domain with three running servers.
+     */
+    @Before
+    public void setUp() {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addServer(SERVER_ONE.getHost(), SERVER_ONE.getServer(), "full");
+        controller.addServer(SERVER_TWO.getHost(), SERVER_TWO.getServer(), "full");
+        controller.addServer(SERVER_THREE.getHost(), SERVER_THREE.getServer(), "full");
+        coordinator = new ServerReloadCoordinator(new JBoss7ControllerOpeartionExecutor(controller));
+        coordinator.setPollInterval(1, TimeUnit.MILLISECONDS);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * The servers requiring a reload or a restart are found with their state.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testGetServersRequiringReload() throws Exception {
+        controller.setServerState(SERVER_ONE, "reload-required");
+        controller.setServerState(SERVER_THREE, "restart-required");
+
+        final Map<ServerAddress, String> servers = coordinator.getServersRequiringReload(controllerClientConfig);
+
+        assertEquals(2, servers.size());
+        assertEquals("reload-required", servers.get(SERVER_ONE));
+        assertEquals("restart-required", servers.get(SERVER_THREE));
+    }
+
+    /**
+     * Every server requiring it is reloaded once, and is running afterwards; the others are left alone.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testReloadServers() throws Exception {
+        controller.setReloadDuration(3);
+        controller.setServerState(SERVER_ONE, "reload-required");
+        controller.setServerState(SERVER_THREE, "restart-required");
+
+        assertEquals(new HashSet<ServerAddress>(Arrays.asList(SERVER_ONE, SERVER_THREE)), coordinator
+            .reloadServers(controllerClientConfig));
+
+        assertTrue(coordinator.getServersRequiringReload(controllerClientConfig).isEmpty());
+        assertEquals(1, controller.getReloadCount(SERVER_ONE));
+        assertEquals(0, controller.getReloadCount(SERVER_TWO));
+        assertEquals(1, controller.getReloadCount(SERVER_THREE));
+    }
+
+    /**
+     * A batch not running within the timeout stops the rollout and leaves the remaining servers untouched.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testTimeoutStopsRollout() throws Exception {
+        controller.setReloadDuration(Integer.MAX_VALUE);
+        coordinator.setTimeout(20, TimeUnit.MILLISECONDS);
+        controller.setServerState(SERVER_ONE, "reload-required");
+        controller.setServerState(SERVER_TWO, "reload-required");
+
+        try {
+            coordinator.reloadServers(controllerClientConfig);
+            fail("The rollout should time out");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getMessage().contains(SERVER_ONE.toString()));
+        }
+        assertEquals(0, controller.getReloadCount(SERVER_TWO));
+        assertEquals("reload-required", controller.getServerState(SERVER_TWO));
+    }
+
+    /**
+     * A standalone server still booting after its reload rejects the state reads, which are retried until it runs.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testReloadStandaloneServerWaitsForBoot() throws Exception {
+        controller.setReloadDuration(3);
+        controller.setServerState(null, "reload-required");
+
+        coordinator.reloadStandaloneServer(controllerClientConfig);
+
+        assertEquals("running", controller.getServerState(null));
+        assertEquals(1, controller.getReloadCount(null));
+    }
+
+    /**
+     * A standalone server still booting at the timeout fails the reload with the last rejection.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testReloadStandaloneServerTimesOut() throws Exception {
+        controller.setReloadDuration(Integer.MAX_VALUE);
+        coordinator.setTimeout(20, TimeUnit.MILLISECONDS);
+
+        try {
+            coordinator.reloadStandaloneServer(controllerClientConfig);
+            fail("The reload should time out");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getFailureDescription().contains("System boot is in process"));
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.client.PriorityLaneClientFactory;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.pool.PoolOperation;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link LaneScheduler}, of the classification of the operations in their {@link OperationLane} and of the
+ * {@link PriorityLaneClientFactory} dispatching them.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class LaneSchedulerTest {
+
+    /**
+     * Reads are interactive, pool operations health checks, and writes and composites with a write bulk.
+     */
+    @Test
+    public void testClassify() {
+        final ModelNode read = new ModelNode();
+        read.get("operation").set("read-children-names");
+        read.get("address").set(DatasourceOperations.getDatasourceSubsystemAddress("full"));
+        read.get("child-type").set("data-source");
+        final ModelNode flush = new ModelNode();
+        flush.get("operation").set(PoolOperation.FLUSH_ALL.getOperationName());
+        final ModelNode add = DatasourceOperations.createAddOperation(new JndiDataSource("OrdersDS",
+            "jdbc:postgresql://db1:5432/orders", "postgresql", "app", "secret"), "full");
+
+        assertSame(OperationLane.INTERACTIVE, OperationLane.classify(read));
+        assertSame(OperationLane.HEALTH, OperationLane.classify(flush));
+        assertSame(OperationLane.BULK, OperationLane.classify(add));
+        assertSame(OperationLane.INTERACTIVE, OperationLane.classify(DatasourceOperations.createCompositeOperation(
+            Arrays.asList(read, read))));
+        assertSame(OperationLane.HEALTH, OperationLane.classify(DatasourceOperations.createCompositeOperation(
+            Arrays.asList(read, flush))));
+        assertSame(OperationLane.BULK, OperationLane.classify(DatasourceOperations.createCompositeOperation(Arrays
+            .asList(read, add))));
+    }
+
+    /**
+     * An interactive read queued behind bulk writes is dispatched before them.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testInteractiveOvertakesBulk() throws Exception {
+        final LaneScheduler laneScheduler = new LaneScheduler(1, Collections.<OperationLane, Integer> emptyMap());
+        laneScheduler.enter(OperationLane.BULK);
+
+        final List<OperationLane> dispatched = dispatchQueued(laneScheduler, OperationLane.BULK, OperationLane.BULK,
+            OperationLane.HEALTH, OperationLane.INTERACTIVE);
+
+        assertEquals(Arrays.asList(OperationLane.INTERACTIVE, OperationLane.HEALTH, OperationLane.BULK,
+            OperationLane.BULK), dispatched);
+    }
+
+    /**
+     * The lanes with operations waiting share the dispatches in proportion to their weights, without starving the
+     * lighter lanes.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testWeightedDispatches() throws Exception {
+        final Map<OperationLane, Integer> weights = Collections.singletonMap(OperationLane.INTERACTIVE, 2);
+        final LaneScheduler laneScheduler = new LaneScheduler(1, weights);
+        laneScheduler.enter(OperationLane.BULK);
+
+        final List<OperationLane> dispatched = dispatchQueued(laneScheduler, OperationLane.INTERACTIVE,
+            OperationLane.INTERACTIVE, OperationLane.INTERACTIVE, OperationLane.INTERACTIVE, OperationLane.BULK,
+            OperationLane.BULK);
+
+        assertEquals(Arrays.asList(OperationLane.INTERACTIVE, OperationLane.BULK, OperationLane.INTERACTIVE,
+            OperationLane.INTERACTIVE, OperationLane.BULK, OperationLane.INTERACTIVE), dispatched);
+    }
+
+    /**
+     * An operation interrupted while waiting leaves its lane without being dispatched.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        final LaneScheduler laneScheduler = new LaneScheduler(1, Collections.<OperationLane, Integer> emptyMap());
+        laneScheduler.enter(OperationLane.BULK);
+        final List<OperationLane> dispatched = Collections.synchronizedList(new ArrayList<OperationLane>());
+        final Thread waiting = startEntering(laneScheduler, OperationLane.HEALTH, dispatched);
+        awaitWaiting(laneScheduler, OperationLane.HEALTH, 1);
+
+        waiting.interrupt();
+        waiting.join(5000);
+
+        assertEquals(0, laneScheduler.getWaiting(OperationLane.HEALTH));
+        laneScheduler.exit();
+        laneScheduler.enter(OperationLane.BULK);
+        assertTrue(dispatched.isEmpty());
+    }
+
+    /**
+     * The operations of an executor whose factory is decorated go through the scheduler of their host, which is shared
+     * by the configs of the host.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testOperationsDispatchedByClientFactory() throws Exception {
+        final PriorityLaneClientFactory factory = new PriorityLaneClientFactory(new InMemoryDatasourceController(1L));
+        factory.setDispatchSlots(1);
+        final JBoss7ControllerOpeartionExecutor executor = new JBoss7ControllerOpeartionExecutor(factory);
+        final ControllerClientConfig controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(executor.getDatasourceNames(controllerClientConfig, null).isEmpty());
+        }
+
+        final LaneScheduler laneScheduler = factory.getLaneScheduler(controllerClientConfig);
+        assertSame(laneScheduler, factory.getLaneScheduler(new ControllerClientConfig("localhost", 9999)));
+        assertNotSame(laneScheduler, factory.getLaneScheduler(new ControllerClientConfig("localhost", 9990)));
+        // the slot of each operation was freed, so the single slot is available
+        laneScheduler.enter(OperationLane.BULK);
+    }
+
+    /**
+     * A scheduler needs at least one dispatch slot.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDispatchSlots() {
+        new LaneScheduler(0, Collections.<OperationLane, Integer> emptyMap());
+    }
+
+    /**
+     * Queues an operation of each lane, one after the other, behind the operation holding the only dispatch slot, then
+     * frees the slot and records the order in which the queued operations are dispatched.
+     * 
+     * @param laneScheduler the lane scheduler, with its only slot held
+     * @param lanes the lanes of the operations queued
+     * @return the lanes in the order of dispatch
+     * @throws Exception if the operations could not be dispatched
+     */
+    private static List<OperationLane> dispatchQueued(final LaneScheduler laneScheduler, final OperationLane... lanes)
+        throws Exception {
+        final List<OperationLane> dispatched = Collections.synchronizedList(new ArrayList<OperationLane>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (final OperationLane lane : lanes) {
+            final int waiting = laneScheduler.getWaiting(lane);
+            threads.add(startEntering(laneScheduler, lane, dispatched));
+            awaitWaiting(laneScheduler, lane, waiting + 1);
+        }
+        laneScheduler.exit();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+        return dispatched;
+    }
+
+    /**
+     * Starts a thread entering a lane, recording the lane once dispatched and exiting straight away.
+     * 
+     * @param laneScheduler the lane scheduler
+     * @param lane the lane
+     * @param dispatched the lanes dispatched
+     * @return the thread
+     */
+    private static Thread startEntering(final LaneScheduler laneScheduler, final OperationLane lane,
+        final List<OperationLane> dispatched) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    laneScheduler.enter(lane);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                dispatched.add(lane);
+                laneScheduler.exit();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Waits for a number of operations to wait in a lane.
+     * 
+     * @param laneScheduler the lane scheduler
+     * @param lane the lane
+     * @param waiting the operations waiting
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void awaitWaiting(final LaneScheduler laneScheduler, final OperationLane lane, final int waiting)
+        throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (laneScheduler.getWaiting(lane) < waiting) {
+            assertTrue(laneScheduler.toString(), System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link DatasourceSnapshotService} exporting from and importing into {@link InMemoryDatasourceController}s.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceSnapshotServiceTest {
+
+    /** The domain server profile used by the tests. */
+    private static final String PROFILE = "full";
+
+    /** The in-memory controller exported from. */
+    private InMemoryDatasourceController source;
+
+    /** The in-memory controller imported into. */
+    private InMemoryDatasourceController target;
+
+    /** The executor running against the source controller. */
+    private JBoss7ControllerOpeartionExecutor sourceExecutor;
+
+    /** The executor running against the target controller. */
+    private JBoss7ControllerOpeartionExecutor targetExecutor;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates a source controller holding two datasources with connection properties and an empty target controller.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Before
+    public void setUp() throws ControllerOperationException {
+        source = new InMemoryDatasourceController(1L);
+        source.addProfile(PROFILE);
+        sourceExecutor = new JBoss7ControllerOpeartionExecutor(source);
+        target = new InMemoryDatasourceController(1L);
+        target.addProfile(PROFILE);
+        targetExecutor = new JBoss7ControllerOpeartionExecutor(target);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+        sourceExecutor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db1"), true, PROFILE);
+        sourceExecutor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db2"), false, PROFILE);
+    }
+
+    /**
+     * An exported snapshot written to a stream and read back is imported with its connection properties.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testExportWriteReadAndImport() throws Exception {
+        final DatasourceSnapshotService service = new DatasourceSnapshotService(sourceExecutor);
+        final DatasourceSnapshot snapshot = service.exportDatasources(controllerClientConfig, PROFILE);
+        assertEquals(2, snapshot.getDatasources().size());
+        assertEquals(PROFILE, snapshot.getSourceProfile());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out, DatasourceSnapshot.Format.DMR);
+
+        new DatasourceSnapshotService(targetExecutor).importDatasources(controllerClientConfig, DatasourceSnapshot
+            .read(new ByteArrayInputStream(out.toByteArray())), false, PROFILE);
+
+        final Map<String, ModelNode> datasources = target.getDatasources(PROFILE);
+        assertEquals(source.getDatasources(PROFILE), datasources);
+        assertTrue(datasources.get("java:/OrdersDS").get("enabled").asBoolean());
+        assertFalse(datasources.get("java:/ReportsDS").get("enabled").asBoolean());
+        assertEquals(1, target.getRequestCount());
+    }
+
+    /**
+     * An import replacing existing datasources removes them first, within the same composite.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testImportReplacesExistingDatasources() throws Exception {
+        targetExecutor.createDatasource(controllerClientConfig, createDataSource("OrdersDS", "db9"), false, PROFILE);
+        final DatasourceSnapshot snapshot = new DatasourceSnapshotService(sourceExecutor).exportDatasources(
+            controllerClientConfig, PROFILE);
+
+        new DatasourceSnapshotService(targetExecutor).importDatasources(controllerClientConfig, snapshot, true, PROFILE);
+
+        assertEquals(source.getDatasources(PROFILE), target.getDatasources(PROFILE));
+    }
+
+    /**
+     * Batches are cut between datasources, so a failing datasource only rolls back its own batch and never leaves another
+     * datasource without its connection properties.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testBatchesKeepEachDatasourceWhole() throws Exception {
+        targetExecutor.createDatasource(controllerClientConfig, createDataSource("ReportsDS", "db9"), false, PROFILE);
+        final DatasourceSnapshot snapshot = new DatasourceSnapshotService(sourceExecutor).exportDatasources(
+            controllerClientConfig, PROFILE);
+        final DatasourceSnapshotService service = new DatasourceSnapshotService(targetExecutor);
+        service.setBatchSize(1);
+        final long requestCount = target.getRequestCount();
+
+        try {
+            service.importDatasources(controllerClientConfig, snapshot, false, PROFILE);
+            fail("The import should fail with the existing datasource");
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getFailureDescription().contains("java:/ReportsDS"));
+        }
+
+        // one composite per datasource, each with the add and the two connection properties
+        assertEquals(2, target.getRequestCount() - requestCount);
+        final Map<String, ModelNode> datasources = target.getDatasources(PROFILE);
+        assertEquals(source.getDatasources(PROFILE).get("java:/OrdersDS"), datasources.get("java:/OrdersDS"));
+        assertEquals("jdbc:postgresql://db9:5432/reportsds", datasources.get("java:/ReportsDS").get("connection-url")
+            .asString());
+    }
+
+    /**
+     * Creates a data source with two connection properties.
+     * 
+     * @param name the datasource name
+     * @param host the database host
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name, final String host) {
+        final JndiDataSource dataSource = new JndiDataSource(name, "jdbc:postgresql://" + host + ":5432/"
+            + name.toLowerCase(), "postgresql", "app", "secret");
+        final Properties connectionProperties = new Properties();
+        connectionProperties.setProperty("ssl", "true");
+        connectionProperties.setProperty("loginTimeout", "10");
+        dataSource.setConnectionProperties(connectionProperties);
+        return dataSource;
+    }
+}
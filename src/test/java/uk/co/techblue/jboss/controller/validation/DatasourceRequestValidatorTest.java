@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+import org.jboss.dmr.ValueExpression;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.capability.CapabilityProbe;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link DatasourceRequestValidator} checking the requests of an executor against the data-source description
+ * of an {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceRequestValidatorTest {
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor validating its requests. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /**
+     * Creates an executor validating its requests, without cached descriptions or capabilities.
+     */
+    @Before
+    public void setUp() {
+        DatasourceRequestValidator.clearCache();
+        CapabilityProbe.clearCache();
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile("full");
+        executor = new JBoss7ControllerOpeartionExecutor(controller);
+        executor.setValidateRequests(true);
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+    }
+
+    /**
+     * Forgets the descriptions and capabilities of the tests.
+     */
+    @After
+    public void tearDown() {
+        DatasourceRequestValidator.clearCache();
+        CapabilityProbe.clearCache();
+    }
+
+    /**
+     * A valid datasource is created, the description being read once for all the requests.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testValidRequestsSent() throws Exception {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS"), true, "full");
+        // the probe of the controller version and the read of the description precede the add
+        assertEquals(3, controller.getRequestCount());
+
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS"), true, "full");
+        executor.getDatasourceNames(controllerClientConfig, "full");
+
+        assertEquals(5, controller.getRequestCount());
+        assertEquals(2, controller.getDatasources("full").size());
+    }
+
+    /**
+     * A minimum pool size over the maximum fails the creation without sending the add.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPoolSizesRejected() throws Exception {
+        final JndiDataSource dataSource = createDataSource("OrdersDS");
+        dataSource.setMinPoolSize(30);
+        dataSource.setMaxPoolSize(10);
+
+        try {
+            executor.createDatasource(controllerClientConfig, dataSource, true, "full");
+            fail("The creation should fail validation");
+        } catch (ControllerOperationException coe) {
+            assertNull(coe.getCause());
+            assertEquals("Datasource 'java:/OrdersDS': min-pool-size 30 is greater than max-pool-size 10", coe
+                .getFailureDescription());
+        }
+
+        assertEquals(2, controller.getRequestCount());
+        assertTrue(controller.getDatasources("full").isEmpty());
+    }
+
+    /**
+     * The writes of values not allowed, of unknown attributes, of expressions where not allowed and the undefining of
+     * required attributes are rejected.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testInvalidWritesRejected() throws Exception {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS"), true, "full");
+
+        assertRejected(createWrite("transaction-isolation", new ModelNode("SNAPSHOT")), "must be one of");
+        assertRejected(createWrite("max-pool-size", new ModelNode(0)), "must be at least 1, not 0");
+        assertRejected(createWrite("max-pool-size", new ModelNode("many")), "must be of type INT");
+        assertRejected(createWrite("statement-timeout", new ModelNode(10)), "is not known to the server version");
+        assertRejected(createWrite("pool-name", new ModelNode(new ValueExpression("${pool.name}"))),
+            "does not allow expressions");
+        final ModelNode undefine = createWrite("driver-name", new ModelNode());
+        undefine.get("operation").set("undefine-attribute");
+        undefine.remove("value");
+        assertRejected(undefine, "cannot be undefined");
+
+        executor.executeOperation(controllerClientConfig, createWrite("max-pool-size", new ModelNode(
+            new ValueExpression("${pool.max:50}"))));
+    }
+
+    /**
+     * The violations of every step of a composite are reported, and requests not writing datasources are not
+     * validated.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testCompositeSteps() throws Exception {
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS"), true, "full");
+        final ModelNode composite = new ModelNode();
+        composite.get("operation").set("composite");
+        composite.get("address").setEmptyList();
+        composite.get("steps").add(createWrite("min-pool-size", new ModelNode(-1)));
+        composite.get("steps").add(createWrite("use-ccm", new ModelNode("sometimes")));
+
+        final List<String> violations = new DatasourceRequestValidator(executor).validate(controllerClientConfig,
+            composite);
+
+        assertEquals(violations.toString(), 2, violations.size());
+        final ModelNode read = new ModelNode();
+        read.get("operation").set("read-attribute");
+        read.get("address").set(DatasourceOperations.getDatasourceAddress("full", "java:/OrdersDS"));
+        read.get("name").set("unknown");
+        assertTrue(new DatasourceRequestValidator(executor).validate(controllerClientConfig, read).isEmpty());
+    }
+
+    /**
+     * Asserts that an operation fails validation, without being sent.
+     * 
+     * @param operation the operation
+     * @param violation the expected part of the violation
+     */
+    private void assertRejected(final ModelNode operation, final String violation) {
+        final long requestCount = controller.getRequestCount();
+        try {
+            executor.executeOperation(controllerClientConfig, operation);
+            fail("The operation should fail validation: " + operation);
+        } catch (ControllerOperationException coe) {
+            assertTrue(coe.getFailureDescription(), coe.getFailureDescription().contains(violation));
+        }
+        assertEquals(requestCount, controller.getRequestCount());
+    }
+
+    /**
+     * Creates the write of an attribute of the datasource.
+     * 
+     * @param name the attribute name
+     * @param value the attribute value
+     * @return the operation
+     */
+    private static ModelNode createWrite(final String name, final ModelNode value) {
+        final ModelNode operation = new ModelNode();
+        operation.get("operation").set("write-attribute");
+        operation.get("address").set(DatasourceOperations.getDatasourceAddress("full", "java:/OrdersDS"));
+        operation.get("name").set(name);
+        operation.get("value").set(value);
+        return operation;
+    }
+
+    /**
+     * Creates a data source.
+     * 
+     * @param name the datasource name
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name) {
+        return new JndiDataSource(name, "jdbc:postgresql://db1:5432/" + name.toLowerCase(), "postgresql", "app",
+            "secret");
+    }
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright 2013 Technology Blueprint Ltd
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package uk.co.techblue.jboss.controller.watch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.techblue.jboss.controller.as7.DatasourceOperations;
+import uk.co.techblue.jboss.controller.as7.JBoss7ControllerOpeartionExecutor;
+import uk.co.techblue.jboss.controller.client.ControllerClient;
+import uk.co.techblue.jboss.controller.client.ControllerClientFactory;
+import uk.co.techblue.jboss.controller.exception.ControllerOperationException;
+import uk.co.techblue.jboss.controller.local.InMemoryDatasourceController;
+import uk.co.techblue.jboss.controller.vo.ControllerClientConfig;
+import uk.co.techblue.jboss.controller.vo.JndiDataSource;
+
+/**
+ * Tests of {@link DatasourceWatcher} against an {@link InMemoryDatasourceController}.
+ * 
+ * @author <a href="mailto:ajay.deshwal@techblue.co.uk">Ajay Deshwal</a>
+ */
+public class DatasourceWatcherTest {
+
+    /** The domain server profile used by the tests. */
+    private static final String PROFILE = "full";
+
+    /** The host of the controller failing with a runtime exception. */
+    private static final String BROKEN_HOST = "broken";
+
+    /** The in-memory controller. */
+    private InMemoryDatasourceController controller;
+
+    /** The executor running against the in-memory controller. */
+    private JBoss7ControllerOpeartionExecutor executor;
+
+    /** The watcher under test. */
+    private DatasourceWatcher watcher;
+
+    /** The controller client config. */
+    private ControllerClientConfig controllerClientConfig;
+
+    /** The received events. */
+    private final List<DatasourceChangeEvent> events = new CopyOnWriteArrayList<DatasourceChangeEvent>();
+
+    /**
+     * Creates a watcher of a profile holding one datasource. The clients of the broken host fail with a runtime exception.
+     * 
+     * @throws ControllerOperationException the controller operation exception
+     */
+    @Before
+    public void setUp() throws ControllerOperationException {
+        controller = new InMemoryDatasourceController(1L);
+        controller.addProfile(PROFILE);
+        executor = new JBoss7ControllerOpeartionExecutor(new ControllerClientFactory() {
+            @Override
+            public ControllerClient createClient(final ControllerClientConfig controllerClientConfig)
+                throws ControllerOperationException {
+                if (BROKEN_HOST.equals(controllerClientConfig.getHost())) {
+                    throw new IllegalStateException("Broken client");
+                }
+                return controller.createClient(controllerClientConfig);
+            }
+        });
+        controllerClientConfig = new ControllerClientConfig("localhost", 9999);
+        executor.createDatasource(controllerClientConfig, createDataSource("OrdersDS"), true, PROFILE);
+        watcher = new DatasourceWatcher(executor);
+        watcher.addListener(new DatasourceChangeListener() {
+            @Override
+            public void datasourceChanged(final DatasourceChangeEvent event) {
+                events.add(event);
+            }
+        });
+        watcher.watch(controllerClientConfig, PROFILE);
+    }
+
+    /**
+     * Stops the watcher.
+     */
+    @After
+    public void tearDown() {
+        watcher.stop();
+    }
+
+    /**
+     * The first poll establishes the baseline without emitting events; added and removed datasources are reported on the
+     * next poll.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testAddedAndRemovedDatasources() throws Exception {
+        watcher.poll();
+        assertTrue(events.isEmpty());
+
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS"), false, PROFILE);
+        executor.removeDatasource(controllerClientConfig, "java:/OrdersDS", PROFILE);
+        watcher.poll();
+
+        assertEquals(2, events.size());
+        assertEvent(DatasourceChangeEvent.Type.REMOVED, "java:/OrdersDS", events.get(0));
+        assertEvent(DatasourceChangeEvent.Type.ADDED, "java:/ReportsDS", events.get(1));
+    }
+
+    /**
+     * Without a change history, attribute changes are reported by the next full read only.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testAttributeChangeDetectedByFullRead() throws Exception {
+        watcher.setFullSyncInterval(2);
+        watcher.poll();
+
+        writeAttribute("java:/OrdersDS", "max-pool-size", new ModelNode(50));
+        watcher.poll();
+        assertTrue(events.isEmpty());
+        watcher.poll();
+
+        assertEquals(1, events.size());
+        assertEvent(DatasourceChangeEvent.Type.CHANGED, "java:/OrdersDS", events.get(0));
+        assertEquals(Collections.singleton("max-pool-size"), events.get(0).getChangedAttributes());
+    }
+
+    /**
+     * With a change history, attribute changes are reported by the next poll, which re-reads only the changed datasources.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testAttributeChangeDetectedFromChangeHistory() throws Exception {
+        controller.enableChangeHistory(10);
+        watcher.setChangeHistoryAddress(new ModelNode().add("subsystem", "core-management").add("service",
+            "configuration-changes"));
+        watcher.setFullSyncInterval(0);
+        watcher.poll();
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS"), false, PROFILE);
+        watcher.poll();
+        events.clear();
+
+        writeAttribute("java:/OrdersDS", "max-pool-size", new ModelNode(50));
+        watcher.poll();
+
+        assertEquals(1, events.size());
+        assertEvent(DatasourceChangeEvent.Type.CHANGED, "java:/OrdersDS", events.get(0));
+        assertEquals(Collections.singleton("max-pool-size"), events.get(0).getChangedAttributes());
+    }
+
+    /**
+     * A controller without a change history falls back to full reads.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testChangeHistoryUnavailable() throws Exception {
+        watcher.setChangeHistoryAddress(new ModelNode().add("subsystem", "core-management").add("service",
+            "configuration-changes"));
+        watcher.setFullSyncInterval(1);
+        watcher.poll();
+
+        writeAttribute("java:/OrdersDS", "max-pool-size", new ModelNode(50));
+        watcher.poll();
+
+        assertEquals(1, events.size());
+        assertEvent(DatasourceChangeEvent.Type.CHANGED, "java:/OrdersDS", events.get(0));
+    }
+
+    /**
+     * A runtime exception while polling a controller neither prevents the other controllers from being polled nor cancels
+     * the periodic polling.
+     * 
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testRuntimeExceptionDoesNotStopPolling() throws Exception {
+        watcher.unwatch(controllerClientConfig, PROFILE);
+        watcher.watch(new ControllerClientConfig(BROKEN_HOST, 9999), PROFILE);
+        watcher.watch(controllerClientConfig, PROFILE);
+        final CountDownLatch added = new CountDownLatch(1);
+        watcher.addListener(new DatasourceChangeListener() {
+            @Override
+            public void datasourceChanged(final DatasourceChangeEvent event) {
+                added.countDown();
+            }
+        });
+
+        watcher.start(10, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        executor.createDatasource(controllerClientConfig, createDataSource("ReportsDS"), false, PROFILE);
+
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        assertEvent(DatasourceChangeEvent.Type.ADDED, "java:/ReportsDS", events.get(0));
+    }
+
+    /**
+     * Writes a datasource attribute.
+     * 
+     * @param datasourceName the datasource name
+     * @param attributeName the attribute name
+     * @param value the value
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void writeAttribute(final String datasourceName, final String attributeName, final ModelNode value)
+        throws IOException {
+        final ModelNode operation = new ModelNode();
+        operation.get("operation").set("write-attribute");
+        operation.get("address").set(DatasourceOperations.getDatasourceAddress(PROFILE, datasourceName));
+        operation.get("name").set(attributeName);
+        operation.get("value").set(value);
+        assertEquals("success", controller.execute(operation).get("outcome").asString());
+    }
+
+    /**
+     * Asserts the type and datasource of an event.
+     * 
+     * @param type the expected type
+     * @param datasourceName the expected datasource name
+     * @param event the event
+     */
+    private static void assertEvent(final DatasourceChangeEvent.Type type, final String datasourceName,
+        final DatasourceChangeEvent event) {
+        assertEquals(type, event.getType());
+        assertEquals(datasourceName, event.getDatasourceName());
+        assertEquals(PROFILE, event.getServerProfileName());
+    }
+
+    /**
+     * Creates a data source.
+     * 
+     * @param name the datasource name
+     * @return the JNDI data source
+     */
+    private static JndiDataSource createDataSource(final String name) {
+        return new JndiDataSource(name, "jdbc:postgresql://db1:5432/" + name.toLowerCase(), "postgresql", "app",
+            "secret");
+    }
+}